@@ -0,0 +1,26 @@
+plugins {
+    alias(libs.plugins.java)
+    alias(libs.plugins.jmh)
+}
+
+val javaVersion: String by project
+
+java {
+    sourceCompatibility = JavaVersion.toVersion(javaVersion)
+    targetCompatibility = JavaVersion.toVersion(javaVersion)
+}
+
+dependencies {
+    // the benchmarks live in the library package to reach the package-private codec methods
+    jmh(project(":"))
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+    includes.set(providers.gradleProperty("jmhIncludes").map { listOf(it) }.orElse(listOf(".*")))
+}
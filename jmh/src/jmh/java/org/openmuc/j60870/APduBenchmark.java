@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.util.concurrent.TimeUnit;
+import org.openmuc.j60870.APdu.ApciType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures encoding of complete I-format and S-format APDUs, for I-format APDUs also encoding the
+ * ASDU in place.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class APduBenchmark {
+
+    private final ConnectionSettings settings = new ConnectionSettings();
+    private final byte[] buffer = new byte[APdu.MAX_APDU_LENGTH + 2];
+    private ASdu aSdu;
+    private APdu iFormatAPdu;
+    private APdu sFormatAPdu;
+
+    @Setup
+    public void setup() {
+        byte[] aSduBuffer = new byte[APdu.MAX_APDU_LENGTH];
+        aSdu = CodecBenchmark.createASdu(ASduType.M_ME_NC_1, false);
+        int length = aSdu.encode(aSduBuffer, 0, settings);
+        byte[] encodedASdu = new byte[length];
+        System.arraycopy(aSduBuffer, 0, encodedASdu, 0, length);
+
+        iFormatAPdu = new APdu(1234, 4321, ApciType.I_FORMAT, encodedASdu);
+        sFormatAPdu = new APdu(0, 4321, ApciType.S_FORMAT);
+    }
+
+    @Benchmark
+    public int encodeIFormat() {
+        return iFormatAPdu.encode(buffer, settings);
+    }
+
+    /** Encodes the ASDU behind the reserved APCI and fills in the APCI, as the connection does. */
+    @Benchmark
+    public int encodeIFormatInPlace() {
+        int aSduLength = aSdu.encode(buffer, APdu.HEADER_LENGTH, settings);
+        return APdu.encodeIFormatHeader(buffer, aSduLength, 1234, 4321);
+    }
+
+    @Benchmark
+    public int encodeSFormat() {
+        return sFormatAPdu.encode(buffer, settings);
+    }
+}
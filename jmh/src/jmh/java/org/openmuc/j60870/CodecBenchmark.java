@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.IeSinglePointWithQuality;
+import org.openmuc.j60870.ie.IeTime56;
+import org.openmuc.j60870.ie.InformationElement;
+import org.openmuc.j60870.ie.InformationObject;
+import org.openmuc.j60870.internal.ByteBufferInputStream;
+import org.openmuc.j60870.internal.ExtendedDataInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures encoding and decoding of ASDUs per type, for both structure qualifiers (SQ=0 and SQ=1)
+ * and for the minimum and maximum COT, common address and IOA field lengths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+
+    private static final int NUM_ELEMENTS = 16;
+
+    @Param({"M_SP_NA_1", "M_ME_NC_1", "M_ME_TF_1"})
+    public String type;
+
+    @Param({"false", "true"})
+    public boolean sequence;
+
+    /** COT, common address and IOA field lengths separated by slashes. */
+    @Param({"1/1/1", "2/2/3"})
+    public String fieldLengths;
+
+    private ConnectionSettings settings;
+    private ASdu aSdu;
+    private final byte[] encodeBuffer = new byte[APdu.MAX_APDU_LENGTH];
+    private ByteBuffer encoded;
+    private int encodedLength;
+    private final ByteBufferInputStream byteBufferInputStream = new ByteBufferInputStream();
+    private final ExtendedDataInputStream inputStream = new ExtendedDataInputStream(byteBufferInputStream);
+    private ASduView view;
+
+    @Setup
+    public void setup() {
+        String[] lengths = fieldLengths.split("/");
+        settings = new ConnectionSettings();
+        settings.setCotFieldLength(Integer.parseInt(lengths[0]));
+        settings.setCommonAddressFieldLength(Integer.parseInt(lengths[1]));
+        settings.setIoaFieldLength(Integer.parseInt(lengths[2]));
+
+        aSdu = createASdu(ASduType.valueOf(type), sequence);
+
+        encodedLength = aSdu.encode(encodeBuffer, 0, settings);
+        encoded = ByteBuffer.wrap(encodeBuffer.clone(), 0, encodedLength);
+        view = new ASduView(settings);
+    }
+
+    @Benchmark
+    public int encode() {
+        return aSdu.encode(encodeBuffer, 0, settings);
+    }
+
+    @Benchmark
+    public ASdu decode() throws IOException {
+        byteBufferInputStream.setBuffer(encoded, 0, encodedLength);
+        return ASdu.decode(inputStream, settings, encodedLength);
+    }
+
+    @Benchmark
+    public int decodeView() throws IOException {
+        // for comparison with decode(), reads all values without creating any objects
+        view.wrap(encoded, 0, encodedLength);
+        int sum = 0;
+        for (int i = 0; i < view.getSequenceLength(); i++) {
+            sum += view.ioa(i) + view.quality(i);
+        }
+        return sum;
+    }
+
+    static ASdu createASdu(ASduType type, boolean sequence) {
+        long timestamp = System.currentTimeMillis();
+        InformationElement[][] elements = new InformationElement[NUM_ELEMENTS][];
+        for (int i = 0; i < NUM_ELEMENTS; i++) {
+            elements[i] = createElements(type, i, timestamp);
+        }
+
+        InformationObject[] informationObjects;
+        if (sequence) {
+            informationObjects = new InformationObject[] {new InformationObject(100, elements)};
+        } else {
+            informationObjects = new InformationObject[NUM_ELEMENTS];
+            for (int i = 0; i < NUM_ELEMENTS; i++) {
+                informationObjects[i] = new InformationObject(100 + i * 2, elements[i]);
+            }
+        }
+
+        return new ASdu(type, sequence, CauseOfTransmission.SPONTANEOUS, false, false, 0, 1, informationObjects);
+    }
+
+    private static InformationElement[] createElements(ASduType type, int i, long timestamp) {
+        switch (type) {
+            case M_SP_NA_1:
+                return new InformationElement[] {new IeSinglePointWithQuality(i % 2 == 0, false, false, false, false)};
+            case M_ME_NC_1:
+                return new InformationElement[] {
+                    new IeShortFloat(i * 1.5f), new IeQuality(false, false, false, false, false)
+                };
+            case M_ME_TF_1:
+                return new InformationElement[] {
+                    new IeShortFloat(i * 1.5f),
+                    new IeQuality(false, false, false, false, false),
+                    new IeTime56(timestamp + i)
+                };
+            default:
+                throw new IllegalArgumentException("Unsupported type: " + type);
+        }
+    }
+}
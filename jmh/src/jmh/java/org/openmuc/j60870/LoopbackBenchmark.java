@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.IeSingleCommand;
+import org.openmuc.j60870.ie.InformationObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the throughput and the command round trip latency of a client connected to a server
+ * over the loopback interface, for the blocking and the selector transport.
+ */
+@State(Scope.Benchmark)
+public class LoopbackBenchmark {
+
+    /** Multiple of the default w so that the last ASDU of a batch is always confirmed at once. */
+    private static final int BATCH_SIZE = 64;
+
+    @Param({"blocking", "selector"})
+    public String transport;
+
+    @Param({"0", "1"})
+    public int maxWriteDelay;
+
+    private Server server;
+    private Connection connection;
+    private ASdu measuredValue;
+    private ASdu command;
+
+    @Setup
+    public void setup() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        Server.Builder serverBuilder = Server.builder().setPort(port).setMaxWriteDelay(maxWriteDelay);
+        ClientConnectionBuilder clientBuilder = new ClientConnectionBuilder(InetAddress.getLoopbackAddress())
+                .setPort(port)
+                .setMaxWriteDelay(maxWriteDelay);
+        if ("selector".equals(transport)) {
+            serverBuilder.useSelectorTransport(1);
+            clientBuilder.useSelectorTransport(1);
+        }
+
+        server = serverBuilder.build();
+        server.start(new ServerListener());
+
+        connection = clientBuilder.build();
+        connection.startDataTransfer();
+
+        measuredValue = new ASdu(
+                ASduType.M_ME_NC_1,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                0,
+                1,
+                new InformationObject(100, new IeShortFloat(1.5f), new IeQuality(false, false, false, false, false)));
+        command = new ASdu(
+                ASduType.C_SC_NA_1,
+                false,
+                CauseOfTransmission.ACTIVATION,
+                false,
+                false,
+                0,
+                1,
+                new InformationObject(200, new IeSingleCommand(true, 0, false)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.close();
+        server.stop();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void throughput() throws Exception {
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            last = connection.sendAsync(measuredValue);
+        }
+        last.get(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public ASdu commandLatency() throws Exception {
+        // the command stays pending until it is terminated
+        return connection.sendCommand(command, 10_000).getTermination().get(10, TimeUnit.SECONDS);
+    }
+
+    private static class ServerListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {
+                    if (aSdu.getTypeIdentification() == ASduType.C_SC_NA_1) {
+                        try {
+                            connection.sendConfirmation(aSdu);
+                            connection.sendConfirmation(
+                                    aSdu,
+                                    aSdu.getCommonAddress(),
+                                    false,
+                                    CauseOfTransmission.ACTIVATION_TERMINATION);
+                        } catch (IOException e) {
+                            // the benchmark fails with a timeout
+                        }
+                    }
+                }
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import org.openmuc.j60870.ie.CP56Time2a;
+import org.openmuc.j60870.ie.IeTime56;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Measures the conversion between epoch milliseconds and CP56Time2a time tags. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class Time56Benchmark {
+
+    private final TimeZone timeZone = TimeZone.getTimeZone("Europe/Berlin");
+    private long timestamp;
+    private IeTime56 time56;
+    private final byte[] buffer = new byte[CP56Time2a.LENGTH];
+
+    @Setup
+    public void setup() {
+        timestamp = System.currentTimeMillis();
+        time56 = new IeTime56(timestamp);
+        CP56Time2a.encode(timestamp, timeZone, false, buffer, 0);
+    }
+
+    @Benchmark
+    public IeTime56 construct() {
+        return new IeTime56(timestamp);
+    }
+
+    @Benchmark
+    public IeTime56 constructWithTimeZone() {
+        return new IeTime56(timestamp, timeZone, false);
+    }
+
+    @Benchmark
+    public long getTimestamp() {
+        return time56.getTimestamp();
+    }
+
+    @Benchmark
+    public byte[] encodeInPlace() {
+        CP56Time2a.encode(timestamp, timeZone, false, buffer, 0);
+        return buffer;
+    }
+
+    @Benchmark
+    public long decodeInPlace() {
+        return CP56Time2a.decodeEpochMillis(buffer, 0, 1970, timeZone);
+    }
+}
@@ -13,4 +13,4 @@ dependencyResolutionManagement {
     }
 }
 
-include(":", ":cli-app")
+include(":", ":cli-app", ":jmh")
@@ -23,31 +23,38 @@ package org.openmuc.j60870;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.text.MessageFormat;
-import org.openmuc.j60870.internal.ExtendedDataInputStream;
-import org.openmuc.j60870.internal.StartBytesSimpleReader;
 
 class APdu {
 
     private static final int CONTROL_FIELDS_LENGTH = 4;
 
     /** Since the length of the control field is control field is 4 octets. */
-    private static final int MIN_APDU_LENGTH = CONTROL_FIELDS_LENGTH;
+    static final int MIN_APDU_LENGTH = CONTROL_FIELDS_LENGTH;
 
     /**
      * The maximum length of APDU for both directions is 253. APDU max = 255 minus start and length
      * octet.
      */
-    private static final int MAX_APDU_LENGTH = 253;
+    static final int MAX_APDU_LENGTH = 253;
+
+    /** Length of the start flag, the length octet and the control fields in front of the ASDU. */
+    static final int HEADER_LENGTH = CONTROL_FIELDS_LENGTH + 2;
 
     /** START flag of an APDU. */
-    private static final byte START_FLAG = 0x68;
+    static final byte START_FLAG = 0x68;
 
     private final int sendSeqNum;
     private final int receiveSeqNum;
     private final ApciType apciType;
     private final byte[] asduBuffer;
 
+    // the ASDU of a decoded APDU is not copied but refers to the receive buffer
+    private final ByteBuffer frameBuffer;
+    private final int asduOffset;
+    private final int asduLength;
+
     public APdu(int sendSeqNum, int receiveSeqNum, ApciType apciType) {
         this(sendSeqNum, receiveSeqNum, apciType, null);
     }
@@ -57,37 +64,85 @@ class APdu {
         this.receiveSeqNum = receiveSeqNum;
         this.apciType = apciType;
         this.asduBuffer = asduBuffer;
+        this.frameBuffer = null;
+        this.asduOffset = 0;
+        this.asduLength = asduBuffer == null ? 0 : asduBuffer.length;
+    }
+
+    private APdu(
+            int sendSeqNum,
+            int receiveSeqNum,
+            ApciType apciType,
+            ByteBuffer frameBuffer,
+            int asduOffset,
+            int asduLength) {
+        this.sendSeqNum = sendSeqNum;
+        this.receiveSeqNum = receiveSeqNum;
+        this.apciType = apciType;
+        this.asduBuffer = null;
+        this.frameBuffer = frameBuffer;
+        this.asduOffset = asduOffset;
+        this.asduLength = asduLength;
     }
 
-    @SuppressWarnings("resource")
-    public static APdu decode(Socket socket, ConnectionSettings settings, ExtendedDataInputStream socketInputStream)
+    /**
+     * Reads the next APDU from the socket input stream into the given reusable buffer. Bytes in front
+     * of the start flag are discarded. The returned APDU refers to the ASDU inside the buffer and is
+     * therefore only valid until the buffer is reused.
+     *
+     * @param socket the socket to read from
+     * @param settings the connection settings
+     * @param socketInputStream the input stream of the socket
+     * @param buffer a buffer backed by an array of at least {@link #MAX_APDU_LENGTH} bytes
+     * @return the decoded APDU
+     * @throws IOException if reading fails or the received APDU is invalid
+     */
+    static APdu decode(Socket socket, ConnectionSettings settings, DataInputStream socketInputStream, ByteBuffer buffer)
             throws IOException {
         socket.setSoTimeout(0);
 
-        StartBytesSimpleReader startBytesSimpleReader =
-                new StartBytesSimpleReader(new byte[] {START_FLAG}, socketInputStream);
-        startBytesSimpleReader.readStartBytes();
+        while (socketInputStream.readByte() != START_FLAG) {
+            // discard everything in front of the start flag
+        }
 
         socket.setSoTimeout(settings.getMessageFragmentTimeout());
 
         int length = readApduLength(socketInputStream);
+        socketInputStream.readFully(buffer.array(), buffer.arrayOffset(), length);
 
-        byte[] aPduControlFields = readControlFields(socketInputStream);
+        return decode(buffer, 0, length);
+    }
 
-        ApciType apciType = ApciType.apciTypeFor(aPduControlFields[0]);
+    /**
+     * Decodes an APDU from the given buffer without copying it. The buffer may be a direct buffer,
+     * its position and limit are not changed. The returned APDU refers to the ASDU inside the buffer
+     * and is therefore only valid until the buffer is reused.
+     *
+     * @param buffer the buffer containing the APDU
+     * @param offset the index of the first control field
+     * @param length the APDU length as read from the length octet
+     * @return the decoded APDU
+     * @throws IOException if the length is invalid
+     */
+    static APdu decode(ByteBuffer buffer, int offset, int length) throws IOException {
+        checkApduLength(length);
+
+        byte controlField1 = buffer.get(offset);
+        ApciType apciType = ApciType.apciTypeFor(controlField1);
         switch (apciType) {
             case I_FORMAT:
-                int sendSeqNum = seqNumFrom(aPduControlFields[0], aPduControlFields[1]);
-                int receiveSeqNum = seqNumFrom(aPduControlFields[2], aPduControlFields[3]);
-
-                int aSduLength = length - CONTROL_FIELDS_LENGTH;
-
-                byte[] asduBuffer = new byte[aSduLength];
-                socketInputStream.readFully(asduBuffer);
-
-                return new APdu(sendSeqNum, receiveSeqNum, apciType, asduBuffer);
+                int sendSeqNum = seqNumFrom(controlField1, buffer.get(offset + 1));
+                int receiveSeqNum = seqNumFrom(buffer.get(offset + 2), buffer.get(offset + 3));
+
+                return new APdu(
+                        sendSeqNum,
+                        receiveSeqNum,
+                        apciType,
+                        buffer,
+                        offset + CONTROL_FIELDS_LENGTH,
+                        length - CONTROL_FIELDS_LENGTH);
             case S_FORMAT:
-                return new APdu(0, seqNumFrom(aPduControlFields[2], aPduControlFields[3]), apciType);
+                return new APdu(0, seqNumFrom(buffer.get(offset + 2), buffer.get(offset + 3)), apciType);
 
             default:
                 return new APdu(0, 0, apciType);
@@ -100,19 +155,16 @@ class APdu {
 
     private static int readApduLength(DataInputStream is) throws IOException {
         int length = is.readUnsignedByte();
+        checkApduLength(length);
+        return length;
+    }
 
+    static void checkApduLength(int length) throws IOException {
         if (length < MIN_APDU_LENGTH || length > MAX_APDU_LENGTH) {
             String msg = MessageFormat.format(
                     "APDU has an invalid length must be between 4 and 253.\nReceived length was: {0}.", length);
             throw new IOException(msg);
         }
-        return length;
-    }
-
-    private static byte[] readControlFields(DataInputStream is) throws IOException {
-        byte[] aPduControlFields = new byte[CONTROL_FIELDS_LENGTH];
-        is.readFully(aPduControlFields);
-        return aPduControlFields;
     }
 
     private static void setV3To5zero(byte[] buffer) {
@@ -128,12 +180,8 @@ class APdu {
         int length = CONTROL_FIELDS_LENGTH;
 
         if (apciType == ApciType.I_FORMAT) {
-            buffer[2] = (byte) (sendSeqNum << 1);
-            buffer[3] = (byte) (sendSeqNum >> 7);
-            writeReceiveSeqNumTo(buffer);
-
-            System.arraycopy(asduBuffer, 0, buffer, 6, asduBuffer.length);
-            length += asduBuffer.length;
+            System.arraycopy(asduBuffer, 0, buffer, HEADER_LENGTH, asduBuffer.length);
+            return encodeIFormatHeader(buffer, asduBuffer.length, sendSeqNum, receiveSeqNum);
         } else if (apciType == ApciType.STARTDT_ACT) {
             buffer[2] = 0x07;
             setV3To5zero(buffer);
@@ -146,6 +194,12 @@ class APdu {
         } else if (apciType == ApciType.STOPDT_CON) {
             buffer[2] = 0x23;
             setV3To5zero(buffer);
+        } else if (apciType == ApciType.TESTFR_ACT) {
+            buffer[2] = 0x43;
+            setV3To5zero(buffer);
+        } else if (apciType == ApciType.TESTFR_CON) {
+            buffer[2] = (byte) 0x83;
+            setV3To5zero(buffer);
         } else if (apciType == ApciType.S_FORMAT) {
             buffer[2] = 0x01;
             buffer[3] = 0x00;
@@ -157,6 +211,23 @@ class APdu {
         return length + 2;
     }
 
+    /**
+     * Writes the start flag, the length and the control fields of an I format APDU in front of an
+     * ASDU that has already been encoded at offset {@link #HEADER_LENGTH} of the buffer, so that the
+     * frame is assembled without copying the ASDU.
+     *
+     * @return the length of the frame including the start flag and the length octet
+     */
+    static int encodeIFormatHeader(byte[] buffer, int aSduLength, int sendSeqNum, int receiveSeqNum) {
+        buffer[0] = START_FLAG;
+        buffer[1] = (byte) (CONTROL_FIELDS_LENGTH + aSduLength);
+        buffer[2] = (byte) (sendSeqNum << 1);
+        buffer[3] = (byte) (sendSeqNum >> 7);
+        buffer[4] = (byte) (receiveSeqNum << 1);
+        buffer[5] = (byte) (receiveSeqNum >> 7);
+        return HEADER_LENGTH + aSduLength;
+    }
+
     private void writeReceiveSeqNumTo(byte[] buffer) {
         buffer[4] = (byte) (receiveSeqNum << 1);
         buffer[5] = (byte) (receiveSeqNum >> 7);
@@ -174,8 +245,37 @@ class APdu {
         return receiveSeqNum;
     }
 
+    /**
+     * Returns the ASDU bytes. For a decoded APDU the bytes are copied out of the receive buffer.
+     *
+     * @return the ASDU bytes
+     */
     public byte[] getASduBuffer() {
-        return asduBuffer;
+        if (asduBuffer != null || frameBuffer == null) {
+            return asduBuffer;
+        }
+        byte[] copy = new byte[asduLength];
+        for (int i = 0; i < asduLength; i++) {
+            copy[i] = frameBuffer.get(asduOffset + i);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the buffer holding the ASDU of a decoded APDU.
+     *
+     * @return the receive buffer or null if this APDU has not been decoded
+     */
+    ByteBuffer getFrameBuffer() {
+        return frameBuffer;
+    }
+
+    int getASduOffset() {
+        return asduOffset;
+    }
+
+    int getASduLength() {
+        return asduLength;
     }
 
     public enum ApciType {
@@ -22,6 +22,7 @@ package org.openmuc.j60870;
 
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.Arrays;
 import org.openmuc.j60870.ie.InformationObject;
 import org.openmuc.j60870.internal.ExtendedDataInputStream;
 import org.openmuc.j60870.internal.HexUtils;
@@ -276,6 +277,15 @@ public class ASdu {
         return privateInformation;
     }
 
+    /**
+     * Encodes this ASDU into a new array of its exact length, which can be shared by all connections
+     * with the same field lengths.
+     */
+    byte[] encode(ConnectionSettings settings) {
+        byte[] buffer = new byte[APdu.MAX_APDU_LENGTH];
+        return Arrays.copyOf(buffer, encode(buffer, 0, settings));
+    }
+
     int encode(byte[] buffer, int i, ConnectionSettings settings) {
 
         int origi = i;
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.openmuc.j60870.ie.InformationElement;
+import org.openmuc.j60870.ie.InformationObject;
+
+/**
+ * Packs information element sets of one ASDU type into the fewest ASDUs that fit into an APDU of
+ * maximum length. Runs of contiguous information object addresses are encoded as a sequence of
+ * elements (SQ=1) with a single information object address if that packs more element sets into an
+ * ASDU than a sequence of information objects. Sequences of elements are only used for the monitor
+ * types without time tag, as the companion standard defines all other types with SQ=0 only.
+ *
+ * <p>The order of the element sets is kept. All element sets must have the same encoded length, as
+ * is the case for all standard ASDU types.
+ */
+public class ASduPacker {
+
+    private static final int MAX_ASDU_LENGTH = APdu.MAX_APDU_LENGTH - 4;
+    private static final int MAX_SEQUENCE_LENGTH = 127;
+
+    private final ASduType type;
+    private final CauseOfTransmission causeOfTransmission;
+    private final int commonAddress;
+    private final int cotFieldLength;
+    private final int commonAddressFieldLength;
+    private final int ioaFieldLength;
+
+    private final List<InformationElement[]> elementSets = new ArrayList<>();
+    private int[] informationObjectAddresses = new int[16];
+    private int originatorAddress;
+    private int elementSetLength = -1;
+
+    /**
+     * Creates a packer for ASDUs that are encoded using the given field lengths.
+     *
+     * @param type the type of the ASDUs
+     * @param causeOfTransmission the cause of transmission of the ASDUs
+     * @param commonAddress the common address of the ASDUs
+     * @param cotFieldLength the length of the Cause Of Transmission field, 1 or 2
+     * @param commonAddressFieldLength the length of the Common Address field, 1 or 2
+     * @param ioaFieldLength the length of the Information Object Address field, 1, 2 or 3
+     */
+    public ASduPacker(
+            ASduType type,
+            CauseOfTransmission causeOfTransmission,
+            int commonAddress,
+            int cotFieldLength,
+            int commonAddressFieldLength,
+            int ioaFieldLength) {
+        this.type = type;
+        this.causeOfTransmission = causeOfTransmission;
+        this.commonAddress = commonAddress;
+        this.cotFieldLength = cotFieldLength;
+        this.commonAddressFieldLength = commonAddressFieldLength;
+        this.ioaFieldLength = ioaFieldLength;
+    }
+
+    ASduPacker(ASduType type, CauseOfTransmission causeOfTransmission, int commonAddress, ConnectionSettings settings) {
+        this(
+                type,
+                causeOfTransmission,
+                commonAddress,
+                settings.getCotFieldLength(),
+                settings.getCommonAddressFieldLength(),
+                settings.getIoaFieldLength());
+    }
+
+    /**
+     * Sets the originator address of the ASDUs. Default is 0.
+     *
+     * @param originatorAddress the originator address
+     */
+    public void setOriginatorAddress(int originatorAddress) {
+        this.originatorAddress = originatorAddress;
+    }
+
+    /**
+     * Adds an information element set.
+     *
+     * @param informationObjectAddress the information object address
+     * @param informationElements the information elements, e.g. the value, its quality and time tag
+     */
+    public void add(int informationObjectAddress, InformationElement... informationElements) {
+        if (elementSetLength < 0) {
+            byte[] buffer = new byte[MAX_ASDU_LENGTH];
+            elementSetLength =
+                    new InformationObject(0, informationElements).encode(buffer, 0, ioaFieldLength) - ioaFieldLength;
+        }
+
+        int size = elementSets.size();
+        if (size == informationObjectAddresses.length) {
+            informationObjectAddresses = Arrays.copyOf(informationObjectAddresses, size * 2);
+        }
+        informationObjectAddresses[size] = informationObjectAddress;
+        elementSets.add(informationElements);
+    }
+
+    /**
+     * Returns the number of element sets that have been added since the last call to {@link
+     * #pack()}.
+     *
+     * @return the number of element sets
+     */
+    public int size() {
+        return elementSets.size();
+    }
+
+    /**
+     * Packs the added element sets into ASDUs and removes them from this packer.
+     *
+     * @return the ASDUs in the order of the element sets
+     */
+    public List<ASdu> pack() {
+        List<ASdu> aSdus = new ArrayList<>();
+        int size = elementSets.size();
+        if (size == 0) {
+            return aSdus;
+        }
+
+        int headerLength = 2 + cotFieldLength + commonAddressFieldLength;
+        int maxInformationObjects =
+                Math.min(MAX_SEQUENCE_LENGTH, (MAX_ASDU_LENGTH - headerLength) / (ioaFieldLength + elementSetLength));
+        int maxSequenceOfElements = elementSetLength == 0 || !allowsSequence(type)
+                ? 1
+                : Math.min(MAX_SEQUENCE_LENGTH, (MAX_ASDU_LENGTH - headerLength - ioaFieldLength) / elementSetLength);
+
+        int i = 0;
+        while (i < size) {
+            // taking as many element sets as possible is optimal, because fewer element sets never
+            // need more ASDUs
+            int numInformationObjects = Math.min(size - i, maxInformationObjects);
+            int numSequenceOfElements = 1;
+            while (numSequenceOfElements < maxSequenceOfElements
+                    && i + numSequenceOfElements < size
+                    && informationObjectAddresses[i + numSequenceOfElements]
+                            == informationObjectAddresses[i] + numSequenceOfElements) {
+                numSequenceOfElements++;
+            }
+
+            if (numSequenceOfElements > 1 && numSequenceOfElements >= numInformationObjects) {
+                InformationElement[][] sequence = new InformationElement[numSequenceOfElements][];
+                for (int j = 0; j < numSequenceOfElements; j++) {
+                    sequence[j] = elementSets.get(i + j);
+                }
+                aSdus.add(newASdu(true, new InformationObject(informationObjectAddresses[i], sequence)));
+                i += numSequenceOfElements;
+            } else {
+                InformationObject[] informationObjects = new InformationObject[numInformationObjects];
+                for (int j = 0; j < numInformationObjects; j++) {
+                    informationObjects[j] =
+                            new InformationObject(informationObjectAddresses[i + j], elementSets.get(i + j));
+                }
+                aSdus.add(newASdu(false, informationObjects));
+                i += numInformationObjects;
+            }
+        }
+
+        elementSets.clear();
+        return aSdus;
+    }
+
+    /** Returns true if ASDUs of the given type may be encoded as a sequence of elements (SQ=1). */
+    static boolean allowsSequence(ASduType type) {
+        switch (type) {
+            case M_SP_NA_1:
+            case M_DP_NA_1:
+            case M_ST_NA_1:
+            case M_BO_NA_1:
+            case M_ME_NA_1:
+            case M_ME_NB_1:
+            case M_ME_NC_1:
+            case M_IT_NA_1:
+            case M_PS_NA_1:
+            case M_ME_ND_1:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private ASdu newASdu(boolean isSequenceOfElements, InformationObject... informationObjects) {
+        return new ASdu(
+                type,
+                isSequenceOfElements,
+                causeOfTransmission,
+                false,
+                false,
+                originatorAddress,
+                commonAddress,
+                informationObjects);
+    }
+}
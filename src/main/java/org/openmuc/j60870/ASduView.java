@@ -0,0 +1,672 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TimeZone;
+import org.openmuc.j60870.ie.CP56Time2a;
+
+/**
+ * A read-only view of an ASDU that is backed by the raw bytes of the received frame. In contrast to
+ * {@link ASdu} no {@link org.openmuc.j60870.ie.InformationObject}s or information elements are
+ * created. Instead the values of the information element sets are read on demand through typed
+ * accessors that take the index of the information element set. The index ranges from 0 to {@link
+ * #size()} - 1, independent of whether the ASDU contains a sequence of information objects or a
+ * single information object with a sequence of elements.
+ *
+ * <p>A view is a flyweight: a single instance is pointed to every new ASDU using {@link
+ * #wrap(ByteBuffer, int, int)}. It is therefore only valid until it is wrapped around the next ASDU.
+ * Values that shall be kept have to be copied.
+ *
+ * <p>The typed accessors support all ASDU types with information element sets of fixed length, that
+ * is all standard types except file transfer (TypeIDs 120-127). Accessing a value that is not part
+ * of the ASDU type throws an {@link UnsupportedOperationException}.
+ */
+public final class ASduView {
+
+    static final int NONE = 0;
+
+    // value kinds
+    static final int SIQ = 1;
+    static final int DIQ = 2;
+    static final int VTI = 3;
+    static final int BITSTRING = 4;
+    static final int NVA = 5;
+    static final int SVA = 6;
+    static final int R32 = 7;
+    static final int BCR = 8;
+    static final int SEP = 9;
+    static final int SCO = 10;
+    static final int DCO = 11;
+    static final int UNSIGNED_BYTE = 12;
+    static final int UNSIGNED_SHORT = 13;
+
+    // quality kinds
+    static final int QDS = 1;
+    static final int EMBEDDED = 2;
+
+    // time tag kinds
+    static final int CP24 = 1;
+    static final int CP56 = 2;
+
+    private static final int[] ELEMENT_LENGTH = new int[256];
+    private static final int[] VALUE_KIND = new int[256];
+    private static final int[] QUALITY_KIND = new int[256];
+    private static final int[] QUALITY_OFFSET = new int[256];
+    private static final int[] TIME_KIND = new int[256];
+    private static final int[] TIME_OFFSET = new int[256];
+
+    static {
+        Arrays.fill(ELEMENT_LENGTH, -1);
+
+        layout(ASduType.M_SP_NA_1, SIQ, 1, EMBEDDED, 0, NONE);
+        layout(ASduType.M_SP_TA_1, SIQ, 1, EMBEDDED, 0, CP24);
+        layout(ASduType.M_DP_NA_1, DIQ, 1, EMBEDDED, 0, NONE);
+        layout(ASduType.M_DP_TA_1, DIQ, 1, EMBEDDED, 0, CP24);
+        layout(ASduType.M_ST_NA_1, VTI, 1, QDS, 0, NONE);
+        layout(ASduType.M_ST_TA_1, VTI, 1, QDS, 0, CP24);
+        layout(ASduType.M_BO_NA_1, BITSTRING, 4, QDS, 0, NONE);
+        layout(ASduType.M_BO_TA_1, BITSTRING, 4, QDS, 0, CP24);
+        layout(ASduType.M_ME_NA_1, NVA, 2, QDS, 0, NONE);
+        layout(ASduType.M_ME_TA_1, NVA, 2, QDS, 0, CP24);
+        layout(ASduType.M_ME_NB_1, SVA, 2, QDS, 0, NONE);
+        layout(ASduType.M_ME_TB_1, SVA, 2, QDS, 0, CP24);
+        layout(ASduType.M_ME_NC_1, R32, 4, QDS, 0, NONE);
+        layout(ASduType.M_ME_TC_1, R32, 4, QDS, 0, CP24);
+        layout(ASduType.M_IT_NA_1, BCR, 5, EMBEDDED, 0, NONE);
+        layout(ASduType.M_IT_TA_1, BCR, 5, EMBEDDED, 0, CP24);
+        // protection events carry the elapsed time (CP16Time2a) in front of the time tag
+        layout(ASduType.M_EP_TA_1, SEP, 1, EMBEDDED, 2, CP24);
+        layout(ASduType.M_EP_TB_1, UNSIGNED_BYTE, 1, QDS, 2, CP24);
+        layout(ASduType.M_EP_TC_1, UNSIGNED_BYTE, 1, QDS, 2, CP24);
+        layout(ASduType.M_PS_NA_1, BITSTRING, 4, QDS, 0, NONE);
+        layout(ASduType.M_ME_ND_1, NVA, 2, NONE, 0, NONE);
+        layout(ASduType.M_SP_TB_1, SIQ, 1, EMBEDDED, 0, CP56);
+        layout(ASduType.M_DP_TB_1, DIQ, 1, EMBEDDED, 0, CP56);
+        layout(ASduType.M_ST_TB_1, VTI, 1, QDS, 0, CP56);
+        layout(ASduType.M_BO_TB_1, BITSTRING, 4, QDS, 0, CP56);
+        layout(ASduType.M_ME_TD_1, NVA, 2, QDS, 0, CP56);
+        layout(ASduType.M_ME_TE_1, SVA, 2, QDS, 0, CP56);
+        layout(ASduType.M_ME_TF_1, R32, 4, QDS, 0, CP56);
+        layout(ASduType.M_IT_TB_1, BCR, 5, EMBEDDED, 0, CP56);
+        layout(ASduType.M_EP_TD_1, SEP, 1, EMBEDDED, 2, CP56);
+        layout(ASduType.M_EP_TE_1, UNSIGNED_BYTE, 1, QDS, 2, CP56);
+        layout(ASduType.M_EP_TF_1, UNSIGNED_BYTE, 1, QDS, 2, CP56);
+
+        // the qualifier of set-point commands (QOS) is not a quality and skipped like additional data
+        layout(ASduType.C_SC_NA_1, SCO, 1, NONE, 0, NONE);
+        layout(ASduType.C_DC_NA_1, DCO, 1, NONE, 0, NONE);
+        layout(ASduType.C_RC_NA_1, DCO, 1, NONE, 0, NONE);
+        layout(ASduType.C_SE_NA_1, NVA, 2, NONE, 1, NONE);
+        layout(ASduType.C_SE_NB_1, SVA, 2, NONE, 1, NONE);
+        layout(ASduType.C_SE_NC_1, R32, 4, NONE, 1, NONE);
+        layout(ASduType.C_BO_NA_1, BITSTRING, 4, NONE, 0, NONE);
+        layout(ASduType.C_SC_TA_1, SCO, 1, NONE, 0, CP56);
+        layout(ASduType.C_DC_TA_1, DCO, 1, NONE, 0, CP56);
+        layout(ASduType.C_RC_TA_1, DCO, 1, NONE, 0, CP56);
+        layout(ASduType.C_SE_TA_1, NVA, 2, NONE, 1, CP56);
+        layout(ASduType.C_SE_TB_1, SVA, 2, NONE, 1, CP56);
+        layout(ASduType.C_SE_TC_1, R32, 4, NONE, 1, CP56);
+        layout(ASduType.C_BO_TA_1, BITSTRING, 4, NONE, 0, CP56);
+
+        layout(ASduType.M_EI_NA_1, UNSIGNED_BYTE, 1, NONE, 0, NONE);
+        layout(ASduType.C_IC_NA_1, UNSIGNED_BYTE, 1, NONE, 0, NONE);
+        layout(ASduType.C_CI_NA_1, UNSIGNED_BYTE, 1, NONE, 0, NONE);
+        layout(ASduType.C_RD_NA_1, NONE, 0, NONE, 0, NONE);
+        layout(ASduType.C_CS_NA_1, NONE, 0, NONE, 0, CP56);
+        layout(ASduType.C_TS_NA_1, UNSIGNED_SHORT, 2, NONE, 0, NONE);
+        layout(ASduType.C_RP_NA_1, UNSIGNED_BYTE, 1, NONE, 0, NONE);
+        layout(ASduType.C_CD_NA_1, UNSIGNED_SHORT, 2, NONE, 0, NONE);
+        layout(ASduType.C_TS_TA_1, UNSIGNED_SHORT, 2, NONE, 0, CP56);
+        layout(ASduType.P_ME_NA_1, NVA, 2, NONE, 1, NONE);
+        layout(ASduType.P_ME_NB_1, SVA, 2, NONE, 1, NONE);
+        layout(ASduType.P_ME_NC_1, R32, 4, NONE, 1, NONE);
+        layout(ASduType.P_AC_NA_1, UNSIGNED_BYTE, 1, NONE, 0, NONE);
+    }
+
+    private final int cotFieldLength;
+    private final int commonAddressFieldLength;
+    private final int ioaFieldLength;
+    private final Set<ASduType> allowedTypes;
+
+    private TimeZone timeZone = TimeZone.getDefault();
+    private int startOfCentury = 1970;
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+    private ASduType aSduType;
+    private int typeId;
+    private boolean isSequenceOfElements;
+    private int sequenceLength;
+    private int informationObjectsOffset;
+
+    /**
+     * Creates a view for ASDUs that were encoded using the given field lengths.
+     *
+     * @param cotFieldLength the length of the Cause Of Transmission field, 1 or 2
+     * @param commonAddressFieldLength the length of the Common Address field, 1 or 2
+     * @param ioaFieldLength the length of the Information Object Address field, 1, 2 or 3
+     */
+    public ASduView(int cotFieldLength, int commonAddressFieldLength, int ioaFieldLength) {
+        this.cotFieldLength = cotFieldLength;
+        this.commonAddressFieldLength = commonAddressFieldLength;
+        this.ioaFieldLength = ioaFieldLength;
+        this.allowedTypes = null;
+    }
+
+    ASduView(ConnectionSettings settings) {
+        this.cotFieldLength = settings.getCotFieldLength();
+        this.commonAddressFieldLength = settings.getCommonAddressFieldLength();
+        this.ioaFieldLength = settings.getIoaFieldLength();
+        this.allowedTypes = settings.getAllowedTypes();
+    }
+
+    private static void layout(
+            ASduType type, int valueKind, int valueLength, int qualityKind, int additionalLength, int timeKind) {
+        int id = type.getId();
+        int elementLength = valueLength;
+
+        VALUE_KIND[id] = valueKind;
+
+        QUALITY_KIND[id] = qualityKind;
+        if (qualityKind == QDS) {
+            QUALITY_OFFSET[id] = elementLength++;
+        }
+
+        elementLength += additionalLength;
+
+        TIME_KIND[id] = timeKind;
+        TIME_OFFSET[id] = elementLength;
+        if (timeKind == CP24) {
+            elementLength += 3;
+        } else if (timeKind == CP56) {
+            elementLength += 7;
+        }
+
+        ELEMENT_LENGTH[id] = elementLength;
+    }
+
+    /**
+     * Points this view to the ASDU in the given buffer. The buffer may be a direct buffer, its
+     * position and limit are not changed.
+     *
+     * @param buffer the buffer containing the ASDU
+     * @param offset the index of the type identification field
+     * @param length the length of the ASDU
+     * @return this view
+     * @throws IOException if the type identification is unknown or not allowed or the ASDU is too short
+     */
+    public ASduView wrap(ByteBuffer buffer, int offset, int length) throws IOException {
+        int headerLength = 2 + cotFieldLength + commonAddressFieldLength;
+        if (length < headerLength) {
+            throw new IOException("ASDU is too short: " + length);
+        }
+
+        int typeId = buffer.get(offset) & 0xff;
+        ASduType aSduType = ASduType.typeFor(typeId);
+        if (aSduType == null || (allowedTypes != null && !allowedTypes.contains(aSduType))) {
+            throw new UnknownAsduTypeException(MessageFormat.format("Unknown Type Identification: {0}", typeId));
+        }
+
+        int variableStructureQualifier = buffer.get(offset + 1) & 0xff;
+        boolean isSequenceOfElements = (variableStructureQualifier & 0x80) == 0x80;
+        int sequenceLength = variableStructureQualifier & 0x7f;
+
+        int elementLength = ELEMENT_LENGTH[typeId];
+        if (elementLength >= 0) {
+            int requiredLength;
+            if (isSequenceOfElements) {
+                requiredLength = ioaFieldLength + sequenceLength * elementLength;
+            } else {
+                requiredLength = sequenceLength * (ioaFieldLength + elementLength);
+            }
+            if (length < headerLength + requiredLength) {
+                throw new IOException(MessageFormat.format(
+                        "ASDU of type {0} with {1} information element sets is too short: {2}",
+                        aSduType, sequenceLength, length));
+            }
+        }
+
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.aSduType = aSduType;
+        this.typeId = typeId;
+        this.isSequenceOfElements = isSequenceOfElements;
+        this.sequenceLength = sequenceLength;
+        this.informationObjectsOffset = offset + headerLength;
+        return this;
+    }
+
+    /**
+     * Sets the time zone used to calculate the timestamps of CP56Time2a time tags. Default is the
+     * default time zone of the JVM.
+     *
+     * @param timeZone the time zone
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * Sets the earliest year of CP56Time2a time tags, see {@link
+     * org.openmuc.j60870.ie.IeTime56#getTimestamp(int)}. Default is 1970.
+     *
+     * @param startOfCentury the earliest possible year
+     */
+    public void setStartOfCentury(int startOfCentury) {
+        this.startOfCentury = startOfCentury;
+    }
+
+    public ASduType getTypeIdentification() {
+        return aSduType;
+    }
+
+    public boolean isSequenceOfElements() {
+        return isSequenceOfElements;
+    }
+
+    public int getSequenceLength() {
+        return sequenceLength;
+    }
+
+    public CauseOfTransmission getCauseOfTransmission() {
+        return CauseOfTransmission.causeFor(buffer.get(offset + 2) & 0x3f);
+    }
+
+    public boolean isTestFrame() {
+        return (buffer.get(offset + 2) & 0x80) == 0x80;
+    }
+
+    public boolean isNegativeConfirm() {
+        return (buffer.get(offset + 2) & 0x40) == 0x40;
+    }
+
+    /**
+     * Returns the originator address or -1 if the length of the COT field is 1.
+     *
+     * @return the originator address
+     */
+    public int getOriginatorAddress() {
+        return cotFieldLength == 2 ? buffer.get(offset + 3) & 0xff : -1;
+    }
+
+    public int getCommonAddress() {
+        int i = offset + 2 + cotFieldLength;
+        if (commonAddressFieldLength == 1) {
+            return buffer.get(i) & 0xff;
+        }
+        return (buffer.get(i) & 0xff) | ((buffer.get(i + 1) & 0xff) << 8);
+    }
+
+    /**
+     * Returns the number of information element sets of this ASDU. This is the number of information
+     * objects or the number of elements if the ASDU contains a sequence of elements.
+     *
+     * @return the number of information element sets
+     */
+    public int size() {
+        return sequenceLength;
+    }
+
+    /**
+     * Returns the Information Object Address of the information element set with the given index.
+     * For a sequence of elements it is the address of the information object plus the index.
+     *
+     * @param i the index of the information element set
+     * @return the Information Object Address
+     */
+    public int ioa(int i) {
+        checkIndex(i);
+        if (isSequenceOfElements) {
+            return readIoa(informationObjectsOffset) + i;
+        }
+        if (i > 0) {
+            checkLayout();
+        }
+        return readIoa(informationObjectsOffset + i * (ioaFieldLength + ELEMENT_LENGTH[typeId]));
+    }
+
+    /**
+     * Returns the index of the first byte of the information element set with the given index in
+     * the underlying buffer. It can be used to read information elements that have no typed accessor.
+     *
+     * @param i the index of the information element set
+     * @return the index of the first byte of the information element set
+     */
+    public int elementOffset(int i) {
+        checkIndex(i);
+        checkLayout();
+        if (isSequenceOfElements) {
+            return informationObjectsOffset + ioaFieldLength + i * ELEMENT_LENGTH[typeId];
+        }
+        return informationObjectsOffset + i * (ioaFieldLength + ELEMENT_LENGTH[typeId]) + ioaFieldLength;
+    }
+
+    /**
+     * Returns the buffer this view is backed by.
+     *
+     * @return the buffer
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the integer value of the information element set with the given index. Depending on
+     * the ASDU type this is:
+     *
+     * <ul>
+     *   <li>the state of single points and single commands (0 or 1)
+     *   <li>the state of double points, double commands and regulating step commands (0 to 3)
+     *   <li>the signed value of step positions (-64 to 63)
+     *   <li>the 32 bits of bitstrings and packed single points with status change detection
+     *   <li>the signed 16 bit value of normalized and scaled values
+     *   <li>the truncated value of short floating point numbers
+     *   <li>the counter reading of integrated totals
+     *   <li>the event state of protection events (0 to 3)
+     *   <li>the unsigned value of all other single octet and two octet information elements
+     * </ul>
+     *
+     * @param i the index of the information element set
+     * @return the integer value
+     */
+    public int intValue(int i) {
+        int position = elementOffset(i);
+        switch (VALUE_KIND[typeId]) {
+            case SIQ:
+            case SCO:
+                return buffer.get(position) & 0x01;
+            case DIQ:
+            case DCO:
+            case SEP:
+                return buffer.get(position) & 0x03;
+            case VTI:
+                return (buffer.get(position) << 25) >> 25;
+            case BITSTRING:
+            case BCR:
+                return readInt(position);
+            case NVA:
+            case SVA:
+                return readShort(position);
+            case R32:
+                return (int) Float.intBitsToFloat(readInt(position));
+            case UNSIGNED_BYTE:
+                return buffer.get(position) & 0xff;
+            case UNSIGNED_SHORT:
+                return readShort(position) & 0xffff;
+            default:
+                throw unsupported("a value");
+        }
+    }
+
+    /**
+     * Returns the value of a measured value, set-point command or parameter as float. Normalized
+     * values are converted to the range from -1 to (1-1/(2^15)).
+     *
+     * @param i the index of the information element set
+     * @return the value
+     */
+    public float floatValue(int i) {
+        int position = elementOffset(i);
+        switch (VALUE_KIND[typeId]) {
+            case R32:
+                return Float.intBitsToFloat(readInt(position));
+            case SVA:
+                return readShort(position);
+            case NVA:
+                return readShort(position) / 32768f;
+            default:
+                throw unsupported("a floating point value");
+        }
+    }
+
+    /**
+     * Returns the quality descriptor of the information element set with the given index. The bits
+     * are returned as encoded by IEC 60870-5-101: 0x01 overflow, 0x08 elapsed time invalid (protection
+     * events), 0x10 blocked, 0x20 substituted, 0x40 not topical and 0x80 invalid. For integrated
+     * totals the bits 0x20 carry, 0x40 counter adjusted and 0x80 invalid are returned.
+     *
+     * @param i the index of the information element set
+     * @return the quality bits
+     */
+    public int quality(int i) {
+        int position = elementOffset(i);
+        switch (QUALITY_KIND[typeId]) {
+            case QDS:
+                return buffer.get(position + QUALITY_OFFSET[typeId]) & 0xff;
+            case EMBEDDED:
+                switch (VALUE_KIND[typeId]) {
+                    case BCR:
+                        return buffer.get(position + 4) & 0xe0;
+                    case SEP:
+                        return buffer.get(position) & 0xf8;
+                    default:
+                        return buffer.get(position) & 0xf0;
+                }
+            default:
+                throw unsupported("a quality descriptor");
+        }
+    }
+
+    /**
+     * Returns true if the information element sets of this ASDU contain a CP24Time2a or CP56Time2a
+     * time tag.
+     *
+     * @return true if the ASDU type has a time tag
+     */
+    public boolean hasTimeTag() {
+        return TIME_KIND[typeId] != NONE;
+    }
+
+    /**
+     * Returns true if the CP56Time2a time tag of the information element set with the given index is
+     * marked invalid.
+     *
+     * @param i the index of the information element set
+     * @return true if the time tag is invalid
+     */
+    public boolean isTimeTagInvalid(int i) {
+        return (buffer.get(timeTagOffset(i) + 2) & 0x80) == 0x80;
+    }
+
+    /**
+     * Returns the timestamp in ms of the CP56Time2a time tag of the information element set with the
+     * given index. The configured time zone and start of century are used to calculate it.
+     *
+     * @param i the index of the information element set
+     * @return the timestamp in ms since epoch
+     */
+    public long timestampMillis(int i) {
+        int position = timeTagOffset(i);
+        if (TIME_KIND[typeId] != CP56) {
+            throw unsupported("a CP56Time2a time tag");
+        }
+
+        return CP56Time2a.decodeEpochMillis(buffer, position, startOfCentury, timeZone);
+    }
+
+    /**
+     * Copies the values of all information element sets into new primitive arrays, see {@link
+     * MeasurementArrays#set(ASduView)}.
+     *
+     * @return the arrays
+     */
+    public MeasurementArrays toMeasurementArrays() {
+        return new MeasurementArrays().set(this);
+    }
+
+    int valueKind() {
+        return VALUE_KIND[typeId];
+    }
+
+    int qualityKind() {
+        return QUALITY_KIND[typeId];
+    }
+
+    int timeKind() {
+        return TIME_KIND[typeId];
+    }
+
+    private int timeTagOffset(int i) {
+        int position = elementOffset(i);
+        if (TIME_KIND[typeId] == NONE) {
+            throw unsupported("a time tag");
+        }
+        return position + TIME_OFFSET[typeId];
+    }
+
+    /**
+     * Copies the raw bytes of this ASDU to the given array using the given field lengths, without
+     * decoding its information elements. The common address is replaced by the given one and each
+     * information object address is looked up in the given table combined with the given key prefix,
+     * addresses without entry are kept. For a sequence of elements only the address of the
+     * information object is mapped. The originator address is kept if both COT fields have two
+     * octets and is 0 otherwise.
+     *
+     * @param target the array the ASDU is copied to
+     * @param cotFieldLength the length of the COT field of the copy
+     * @param commonAddressFieldLength the length of the common address field of the copy
+     * @param ioaFieldLength the length of the information object address field of the copy
+     * @param commonAddress the common address of the copy
+     * @param ioaTable the table mapping the information object addresses, null to keep them
+     * @param ioaKeyPrefix the prefix combined with an address to look it up in the table
+     * @return the length of the copy
+     * @throws IOException if the copy does not fit into the array, an address does not fit into its
+     *     field or the ASDU contains several information objects of a type without fixed length
+     */
+    int copyTo(
+            byte[] target,
+            int cotFieldLength,
+            int commonAddressFieldLength,
+            int ioaFieldLength,
+            int commonAddress,
+            AddressTable ioaTable,
+            long ioaKeyPrefix)
+            throws IOException {
+        int numObjects = isSequenceOfElements ? Math.min(1, sequenceLength) : sequenceLength;
+        int elementLength = ELEMENT_LENGTH[typeId];
+        if (numObjects > 1 && elementLength < 0 && (ioaTable != null || ioaFieldLength != this.ioaFieldLength)) {
+            throw new IOException("Information objects of ASDU type " + aSduType + " cannot be copied.");
+        }
+
+        target[0] = (byte) typeId;
+        target[1] = buffer.get(offset + 1);
+        target[2] = buffer.get(offset + 2);
+        int i = 3;
+        if (cotFieldLength == 2) {
+            target[i++] = this.cotFieldLength == 2 ? buffer.get(offset + 3) : 0;
+        }
+        i = writeAddress(target, i, commonAddressFieldLength, commonAddress);
+
+        int end = offset + length;
+        int position = informationObjectsOffset;
+        for (int j = 0; j < numObjects && position < end; j++) {
+            int ioa = readIoa(position);
+            if (ioaTable != null) {
+                ioa = ioaTable.get(ioaKeyPrefix | ioa, ioa);
+            }
+            i = writeAddress(target, i, ioaFieldLength, ioa);
+            position += this.ioaFieldLength;
+
+            // the last information object takes the remaining bytes, e.g. of a sequence of elements
+            int elementsEnd = j == numObjects - 1 || elementLength < 0 ? end : position + elementLength;
+            if (i + elementsEnd - position > target.length) {
+                throw new IOException("ASDU does not fit into " + target.length + " bytes.");
+            }
+            while (position < elementsEnd) {
+                target[i++] = buffer.get(position++);
+            }
+        }
+        return i;
+    }
+
+    private static int writeAddress(byte[] target, int i, int fieldLength, int address) throws IOException {
+        if (address < 0 || (address >>> (8 * fieldLength)) != 0) {
+            throw new IOException("Address " + address + " does not fit into " + fieldLength + " octets.");
+        }
+        if (i + fieldLength > target.length) {
+            throw new IOException("ASDU does not fit into " + target.length + " bytes.");
+        }
+        for (int j = 0; j < fieldLength; j++) {
+            target[i++] = (byte) (address >> (8 * j));
+        }
+        return i;
+    }
+
+    int getCotFieldLength() {
+        return cotFieldLength;
+    }
+
+    int getCommonAddressFieldLength() {
+        return commonAddressFieldLength;
+    }
+
+    int getIoaFieldLength() {
+        return ioaFieldLength;
+    }
+
+    private int readIoa(int position) {
+        int ioa = 0;
+        for (int i = 0; i < ioaFieldLength; i++) {
+            ioa |= (buffer.get(position + i) & 0xff) << (8 * i);
+        }
+        return ioa;
+    }
+
+    private short readShort(int position) {
+        return (short) ((buffer.get(position) & 0xff) | (buffer.get(position + 1) << 8));
+    }
+
+    private int readInt(int position) {
+        return (buffer.get(position) & 0xff)
+                | ((buffer.get(position + 1) & 0xff) << 8)
+                | ((buffer.get(position + 2) & 0xff) << 16)
+                | ((buffer.get(position + 3) & 0xff) << 24);
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= sequenceLength) {
+            throw new IndexOutOfBoundsException("index: " + i + ", size: " + sequenceLength);
+        }
+    }
+
+    private void checkLayout() {
+        if (ELEMENT_LENGTH[typeId] < 0) {
+            throw unsupported("information element sets of fixed length");
+        }
+    }
+
+    private UnsupportedOperationException unsupported(String what) {
+        return new UnsupportedOperationException("ASDU type " + aSduType + " does not contain " + what + ".");
+    }
+
+    @Override
+    public String toString() {
+        return "ASDU view, type: " + aSduType + ", cause of transmission: " + getCauseOfTransmission()
+                + ", common address: " + getCommonAddress() + ", size: " + sequenceLength + ", length: " + length;
+    }
+}
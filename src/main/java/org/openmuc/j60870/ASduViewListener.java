@@ -0,0 +1,49 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+/**
+ * A {@link ConnectionEventListener} that consumes incoming ASDUs as {@link ASduView}s instead of
+ * decoded {@link ASdu} objects. If the listener of a connection implements this interface, incoming
+ * ASDUs are not decoded into information objects and {@link #newASdu(Connection, ASdu)} is not
+ * invoked.
+ *
+ * <p>In contrast to {@link #newASdu(Connection, ASdu)}, {@link #newASduView(Connection, ASduView)}
+ * is invoked directly by the thread that reads from the connection, because the view is backed by
+ * its receive buffer. The implementation must therefore return quickly and must not block, in
+ * particular it must not wait for commands sent over the same connection. With the selector
+ * transport it is invoked by the event loop, so blocking would also stall the other connections of
+ * the event loop.
+ */
+public interface ASduViewListener extends ConnectionEventListener {
+
+    /**
+     * Invoked when a new ASDU arrives. The view is only valid until this method returns.
+     *
+     * @param connection the connection the ASDU was received on
+     * @param aSduView the view of the ASDU that arrived
+     */
+    void newASduView(Connection connection, ASduView aSduView);
+
+    /** Not invoked for listeners consuming ASDU views. */
+    @Override
+    default void newASdu(Connection connection, ASdu aSdu) {}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Maps non-negative long keys, e.g. a common address combined with an information object address,
+ * to int values. Lookups are lock free and do not allocate. Entries are added in place, the value is
+ * written before its key is published, and the table is only copied when it has to grow, so that
+ * adding n entries takes O(n) time.
+ */
+final class AddressTable {
+
+    private static final long EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private volatile Entries entries = new Entries(INITIAL_CAPACITY);
+    private int size;
+
+    /**
+     * Returns the value of the given key.
+     *
+     * @param key the key
+     * @param defaultValue the value returned if there is no entry for the key
+     * @return the value of the key or the default value
+     */
+    int get(long key, int defaultValue) {
+        Entries entries = this.entries;
+        int i = entries.indexOf(key);
+        return i < 0 ? defaultValue : entries.values[i];
+    }
+
+    synchronized void put(long key, int value) {
+        put(key, value, true);
+    }
+
+    /**
+     * Adds the entry if there is no entry for the key yet.
+     *
+     * @return true if the entry has been added
+     */
+    synchronized boolean putIfAbsent(long key, int value) {
+        return put(key, value, false);
+    }
+
+    private boolean put(long key, int value, boolean replace) {
+        Entries entries = this.entries;
+        if (!replace && entries.indexOf(key) >= 0) {
+            return false;
+        }
+
+        int capacity = entries.keys.length();
+        if ((size + 1) * 2 > capacity) {
+            // readers keep using the old entries until the grown copy is published
+            Entries copy = new Entries(capacity * 2);
+            for (int i = 0; i < capacity; i++) {
+                long existingKey = entries.keys.get(i);
+                if (existingKey != EMPTY) {
+                    copy.insert(existingKey, entries.values[i]);
+                }
+            }
+            entries = copy;
+        }
+
+        if (!entries.insert(key, value)) {
+            size++;
+        }
+        // publishes the entries again, so that readers see a replaced value
+        this.entries = entries;
+        return true;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static class Entries {
+
+        // a key is set after its value, so a reader that finds the key also sees the value
+        private final AtomicLongArray keys;
+        private final int[] values;
+
+        Entries(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            values = new int[capacity];
+            for (int i = 0; i < capacity; i++) {
+                keys.lazySet(i, EMPTY);
+            }
+        }
+
+        int indexOf(long key) {
+            int mask = keys.length() - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                long existingKey = keys.get(i);
+                if (existingKey == key) {
+                    return i;
+                }
+                if (existingKey == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        /** Returns true if an existing entry has been replaced. */
+        boolean insert(long key, int value) {
+            int mask = keys.length() - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                long existingKey = keys.get(i);
+                if (existingKey == EMPTY || existingKey == key) {
+                    values[i] = value;
+                    if (existingKey == EMPTY) {
+                        keys.set(i, key);
+                        return false;
+                    }
+                    return true;
+                }
+            }
+        }
+    }
+}
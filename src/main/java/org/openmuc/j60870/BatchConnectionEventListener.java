@@ -0,0 +1,51 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.util.List;
+
+/**
+ * A {@link ConnectionEventListener} that receives incoming ASDUs in batches instead of one by one.
+ * If the listener of a connection implements this interface, {@link #newASdus(Connection, List)} is
+ * invoked with the ASDUs that have been queued for the listener, and {@link #newASdu(Connection,
+ * ASdu)} is not invoked.
+ *
+ * <p>A batch contains at most the number of ASDUs configured with {@link
+ * CommonBuilder#setMaxBatchSize(int)}. If fewer ASDUs are queued, the delivery is delayed by at most
+ * the linger time configured with {@link CommonBuilder#setMaxBatchLinger(int)} to wait for more.
+ * Like {@link #newASdu(Connection, ASdu)} the method is never called simultaneously for the same
+ * connection and the ASDUs are passed in the order they were received.
+ */
+public interface BatchConnectionEventListener extends ConnectionEventListener {
+
+    /**
+     * Invoked when new ASDUs arrive. The list is not used by the connection after this method
+     * returns, so it may be kept.
+     *
+     * @param connection the connection the ASDUs were received on
+     * @param aSdus the ASDUs that arrived, never empty
+     */
+    void newASdus(Connection connection, List<ASdu> aSdus);
+
+    /** Not invoked for listeners receiving batches. */
+    @Override
+    default void newASdu(Connection connection, ASdu aSdu) {}
+}
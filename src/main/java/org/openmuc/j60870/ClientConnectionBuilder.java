@@ -25,6 +25,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.channels.SocketChannel;
 import javax.net.SocketFactory;
 import javax.net.ssl.SSLSocketFactory;
 
@@ -71,7 +72,8 @@ public class ClientConnectionBuilder extends CommonBuilder<ClientConnectionBuild
 
     /**
      * Set the socket factory to used to create the socket for the connection. The default is {@link
-     * SocketFactory#getDefault()}. You could pass an {@link SSLSocketFactory} to enable SSL.
+     * SocketFactory#getDefault()}. You could pass an {@link SSLSocketFactory} to enable SSL, which is
+     * not supported by the selector transport.
      *
      * @param socketFactory the socket factory
      * @return this builder
@@ -156,15 +158,34 @@ public class ClientConnectionBuilder extends CommonBuilder<ClientConnectionBuild
      */
     @Override
     public Connection build() throws IOException {
-        Socket socket = socketFactory.createSocket();
+        return build(settings.getConnectionEventListener());
+    }
+
+    /**
+     * Connects to the server like {@link #build()} but passes the received ASDUs to the given
+     * listener instead of the configured one.
+     */
+    Connection build(ConnectionEventListener listener) throws IOException {
+        Socket socket;
+        if (settings.useSelectorTransport()) {
+            if (socketFactory instanceof SSLSocketFactory) {
+                throw new IllegalArgumentException("SSL is not supported by the selector transport");
+            }
+            socket = SocketChannel.open().socket();
+        } else {
+            socket = socketFactory.createSocket();
+        }
         socket.setSoTimeout(settings.getMessageFragmentTimeout());
+        if (settings.isTcpNoDelay()) {
+            socket.setTcpNoDelay(true);
+        }
 
         if (localAddr != null) {
             socket.bind(new InetSocketAddress(localAddr, localPort));
         }
         socket.connect(new InetSocketAddress(address, port), settings.getConnectionTimeout());
         Connection connection = new Connection(socket, null, new ConnectionSettings(settings));
-        connection.start(settings.getConnectionEventListener());
+        connection.start(listener);
         return connection;
     }
 }
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.openmuc.j60870.ie.IeDoubleCommand;
+import org.openmuc.j60870.ie.IeQualifierOfSetPointCommand;
+import org.openmuc.j60870.ie.IeRegulatingStepCommand;
+import org.openmuc.j60870.ie.IeSingleCommand;
+import org.openmuc.j60870.ie.InformationElement;
+import org.openmuc.j60870.ie.InformationObject;
+
+/**
+ * Correlates the confirmations and terminations received on a connection with the commands sent
+ * on it. Commands are identified by their type, common address, the address of their first
+ * information object and whether they activate or deactivate. The correlator is thread safe, so
+ * commands can be registered by application threads while the responses are handled by the
+ * connection reader. The futures are completed by the given executor.
+ *
+ * <p>Only process commands that execute and station or counter interrogations are terminated by the
+ * peer. All other commands, e.g. the select of a select-before-operate sequence or a clock
+ * synchronization, are finished with their confirmation, so that the same command can be sent again
+ * right away.
+ */
+class CommandCorrelator {
+
+    private static final int ACTIVATION = 0;
+    private static final int DEACTIVATION = 1;
+
+    private final Map<Long, PendingCommand> pendingCommands = new HashMap<>();
+    private final Object lock = new Object();
+    private final TimeoutManager timeoutManager;
+    private final Executor executor;
+
+    CommandCorrelator(TimeoutManager timeoutManager, Executor executor) {
+        this.timeoutManager = timeoutManager;
+        this.executor = executor;
+    }
+
+    boolean isEmpty() {
+        synchronized (lock) {
+            return pendingCommands.isEmpty();
+        }
+    }
+
+    /**
+     * Registers the command before it is sent.
+     *
+     * @param command the command
+     * @param timeout the time in ms to wait for the termination of the command
+     * @return the futures of the responses
+     * @throws IllegalArgumentException if the command has no activation or deactivation cause or the
+     *     same command is already pending
+     */
+    CommandFuture register(ASdu command, long timeout) {
+        synchronized (lock) {
+            int phase;
+            if (command.getCauseOfTransmission() == CauseOfTransmission.ACTIVATION) {
+                phase = ACTIVATION;
+            } else if (command.getCauseOfTransmission() == CauseOfTransmission.DEACTIVATION) {
+                phase = DEACTIVATION;
+            } else {
+                throw new IllegalArgumentException(
+                        "Commands must have cause of transmission ACTIVATION or DEACTIVATION, but have: "
+                                + command.getCauseOfTransmission());
+            }
+
+            long key = key(command, phase);
+            if (pendingCommands.containsKey(key)) {
+                throw new IllegalArgumentException("The same command is already pending: "
+                        + command.getTypeIdentification() + ", common address: " + command.getCommonAddress());
+            }
+
+            PendingCommand pendingCommand = new PendingCommand(
+                    key, new CommandFuture(command), phase == ACTIVATION && isTerminated(command), timeout);
+            pendingCommands.put(key, pendingCommand);
+            timeoutManager.addTimerTask(pendingCommand);
+            return pendingCommand.commandFuture;
+        }
+    }
+
+    /**
+     * Fails the command, e.g. because it could not be sent.
+     *
+     * @param commandFuture the futures of the command
+     * @param cause the cause
+     */
+    void fail(CommandFuture commandFuture, Throwable cause) {
+        synchronized (lock) {
+            for (int phase = ACTIVATION; phase <= DEACTIVATION; phase++) {
+                PendingCommand pendingCommand = pendingCommands.get(key(commandFuture.getCommand(), phase));
+                if (pendingCommand != null && pendingCommand.commandFuture == commandFuture) {
+                    complete(pendingCommand, cause);
+                }
+            }
+        }
+    }
+
+    /**
+     * Completes the futures of the command the given response belongs to.
+     *
+     * @param aSdu a received ASDU
+     */
+    void handleResponse(ASdu aSdu) {
+        synchronized (lock) {
+            if (pendingCommands.isEmpty()) {
+                return;
+            }
+
+            PendingCommand pendingCommand;
+            switch (aSdu.getCauseOfTransmission()) {
+                case ACTIVATION_CON:
+                    pendingCommand = pendingCommands.get(key(aSdu, ACTIVATION));
+                    if (pendingCommand != null) {
+                        completeConfirmation(pendingCommand, aSdu);
+                    }
+                    break;
+                case DEACTIVATION_CON:
+                    pendingCommand = pendingCommands.get(key(aSdu, DEACTIVATION));
+                    if (pendingCommand != null) {
+                        completeConfirmation(pendingCommand, aSdu);
+                    }
+                    break;
+                case ACTIVATION_TERMINATION:
+                    pendingCommand = pendingCommands.get(key(aSdu, ACTIVATION));
+                    if (pendingCommand != null) {
+                        complete(pendingCommand, aSdu);
+                    }
+                    break;
+                case UNKNOWN_TYPE_ID:
+                case UNKNOWN_CAUSE_OF_TRANSMISSION:
+                case UNKNOWN_COMMON_ADDRESS_OF_ASDU:
+                case UNKNOWN_INFORMATION_OBJECT_ADDRESS:
+                    for (int phase = ACTIVATION; phase <= DEACTIVATION; phase++) {
+                        pendingCommand = pendingCommands.get(key(aSdu, phase));
+                        if (pendingCommand != null) {
+                            complete(pendingCommand, aSdu);
+                            break;
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Fails all pending commands.
+     *
+     * @param cause the cause why the connection was closed
+     */
+    void close(IOException cause) {
+        synchronized (lock) {
+            // completed directly, because the executor may be shut down with the connection
+            List<PendingCommand> commands = new ArrayList<>(pendingCommands.values());
+            for (PendingCommand pendingCommand : commands) {
+                finish(pendingCommand);
+                pendingCommand.commandFuture.getConfirmation().completeExceptionally(cause);
+                pendingCommand.commandFuture.getTermination().completeExceptionally(cause);
+            }
+        }
+    }
+
+    private void completeConfirmation(PendingCommand pendingCommand, ASdu aSdu) {
+        if (aSdu.isNegativeConfirm()
+                || aSdu.getCauseOfTransmission() == CauseOfTransmission.DEACTIVATION_CON
+                || !pendingCommand.terminated) {
+            // no termination follows
+            complete(pendingCommand, aSdu);
+        } else if (!pendingCommand.confirmed) {
+            pendingCommand.confirmed = true;
+            completeAsync(pendingCommand.commandFuture.getConfirmation(), aSdu, null);
+        }
+    }
+
+    private void complete(PendingCommand pendingCommand, ASdu aSdu) {
+        finish(pendingCommand);
+        if (!pendingCommand.confirmed) {
+            completeAsync(pendingCommand.commandFuture.getConfirmation(), aSdu, null);
+        }
+        completeAsync(pendingCommand.commandFuture.getTermination(), aSdu, null);
+    }
+
+    private void complete(PendingCommand pendingCommand, Throwable cause) {
+        finish(pendingCommand);
+        if (!pendingCommand.confirmed) {
+            completeAsync(pendingCommand.commandFuture.getConfirmation(), null, cause);
+        }
+        completeAsync(pendingCommand.commandFuture.getTermination(), null, cause);
+    }
+
+    private void finish(PendingCommand pendingCommand) {
+        pendingCommands.remove(pendingCommand.key);
+        pendingCommand.cancel();
+    }
+
+    private void completeAsync(final CompletableFuture<ASdu> future, final ASdu aSdu, final Throwable cause) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (cause != null) {
+                    future.completeExceptionally(cause);
+                } else {
+                    future.complete(aSdu);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns true if the peer terminates the activation of the command once it has been executed.
+     */
+    private static boolean isTerminated(ASdu command) {
+        switch (command.getTypeIdentification()) {
+            case C_SC_NA_1:
+            case C_SC_TA_1:
+            case C_DC_NA_1:
+            case C_DC_TA_1:
+            case C_RC_NA_1:
+            case C_RC_TA_1:
+            case C_SE_NA_1:
+            case C_SE_TA_1:
+            case C_SE_NB_1:
+            case C_SE_TB_1:
+            case C_SE_NC_1:
+            case C_SE_TC_1:
+                // a select is only confirmed, the following execute is terminated
+                return !isSelect(command);
+            case C_BO_NA_1:
+            case C_BO_TA_1:
+            case C_IC_NA_1:
+            case C_CI_NA_1:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isSelect(ASdu command) {
+        InformationObject[] informationObjects = command.getInformationObjects();
+        if (informationObjects == null || informationObjects.length == 0) {
+            return false;
+        }
+        for (InformationElement[] informationElements : informationObjects[0].getInformationElements()) {
+            for (InformationElement informationElement : informationElements) {
+                if (informationElement instanceof IeSingleCommand) {
+                    return ((IeSingleCommand) informationElement).isSelect();
+                } else if (informationElement instanceof IeDoubleCommand) {
+                    return ((IeDoubleCommand) informationElement).isSelect();
+                } else if (informationElement instanceof IeRegulatingStepCommand) {
+                    return ((IeRegulatingStepCommand) informationElement).isSelect();
+                } else if (informationElement instanceof IeQualifierOfSetPointCommand) {
+                    return ((IeQualifierOfSetPointCommand) informationElement).isSelect();
+                }
+            }
+        }
+        return false;
+    }
+
+    private static long key(ASdu aSdu, int phase) {
+        InformationObject[] informationObjects = aSdu.getInformationObjects();
+        long informationObjectAddress = informationObjects != null && informationObjects.length > 0
+                ? informationObjects[0].getInformationObjectAddress()
+                : 0;
+        return ((long) aSdu.getTypeIdentification().getId() << 41)
+                | ((long) (aSdu.getCommonAddress() & 0xffff) << 25)
+                | ((informationObjectAddress & 0xffffff) << 1)
+                | phase;
+    }
+
+    private class PendingCommand extends TimeoutTask {
+
+        private final long key;
+        private final CommandFuture commandFuture;
+        /** True if an activation termination follows the confirmation. */
+        private final boolean terminated;
+
+        private boolean confirmed;
+
+        PendingCommand(long key, CommandFuture commandFuture, boolean terminated, long timeout) {
+            super(timeout);
+            this.key = key;
+            this.commandFuture = commandFuture;
+            this.terminated = terminated;
+        }
+
+        @Override
+        protected void execute() {
+            synchronized (lock) {
+                if (pendingCommands.get(key) == this) {
+                    complete(this, new InterruptedIOException("Request timed out."));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The pending responses to a command sent with {@link Connection#sendCommand(ASdu, long)}. The
+ * confirmation future completes with the activation or deactivation confirmation of the command,
+ * the termination future with its activation termination. Both complete with a negative
+ * confirmation or with a response that has a cause of transmission of unknown type, cause, common
+ * address or information object address, if the command was rejected by the peer. The futures
+ * complete exceptionally with an {@link java.io.InterruptedIOException} if no response arrived
+ * within the timeout of the command and with an {@link java.io.IOException} if the connection was
+ * closed.
+ *
+ * <p>Not every command is terminated by the peer, e.g. the select of a select-before-operate
+ * sequence and clock synchronization commands are only confirmed. The termination future of such
+ * commands completes with the confirmation.
+ */
+public class CommandFuture {
+
+    private final ASdu command;
+    private final CompletableFuture<ASdu> confirmation = new CompletableFuture<>();
+    private final CompletableFuture<ASdu> termination = new CompletableFuture<>();
+
+    CommandFuture(ASdu command) {
+        this.command = command;
+    }
+
+    /**
+     * Returns the command that was sent.
+     *
+     * @return the command
+     */
+    public ASdu getCommand() {
+        return command;
+    }
+
+    /**
+     * Returns the future that completes with the activation or deactivation confirmation.
+     *
+     * @return the confirmation future
+     */
+    public CompletableFuture<ASdu> getConfirmation() {
+        return confirmation;
+    }
+
+    /**
+     * Returns the future that completes with the activation termination.
+     *
+     * @return the termination future
+     */
+    public CompletableFuture<ASdu> getTermination() {
+        return termination;
+    }
+}
@@ -21,7 +21,9 @@
 package org.openmuc.j60870;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.util.List;
+import java.util.concurrent.ThreadFactory;
 
 abstract class CommonBuilder<T extends CommonBuilder<T, C>, C> {
 
@@ -180,6 +182,137 @@ abstract class CommonBuilder<T extends CommonBuilder<T, C>, C> {
         return self();
     }
 
+    /**
+     * Sets the maximum number of ASDUs that {@link Connection#sendAsync(ASdu)} queues while k I format
+     * APDUs are outstanding. If the queue is full, the {@link
+     * #setOutboundOverflowPolicy(OutboundOverflowPolicy) overflow policy} is applied.<br>
+     * Default is 1000, minimum is 0.
+     *
+     * @param maxSize the maximum number of queued ASDUs
+     * @return this builder
+     */
+    public T setMaxOutboundQueueSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("invalid maxSize: " + maxSize + ", must be a value of at least 0");
+        }
+        settings.setMaxOutboundQueueSize(maxSize);
+        return self();
+    }
+
+    /**
+     * Sets what {@link Connection#sendAsync(ASdu)} does if the maximum number of ASDUs is queued,
+     * see {@link #setMaxOutboundQueueSize(int)}. None of the policies blocks the calling thread, so a
+     * slow peer never stalls the producer.<br>
+     * Default is {@link OutboundOverflowPolicy#REJECT}.
+     *
+     * @param overflowPolicy the overflow policy
+     * @return this builder
+     */
+    public T setOutboundOverflowPolicy(OutboundOverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("overflowPolicy must not be null");
+        }
+        settings.setOutboundOverflowPolicy(overflowPolicy);
+        return self();
+    }
+
+    /**
+     * Sets the journal that records every APDU sent and received by the connections, see {@link
+     * TrafficJournal}. The same journal may be shared by several clients and servers, recording
+     * does not block the connections.
+     *
+     * @param trafficJournal the journal, {@code null} to disable recording (default)
+     * @return this builder
+     */
+    public T setTrafficJournal(TrafficJournal trafficJournal) {
+        settings.setTrafficJournal(trafficJournal);
+        return self();
+    }
+
+    /**
+     * Sets the capture that writes every APDU sent and received by the connections to pcapng files,
+     * e.g. to analyze the traffic with Wireshark where no packet capture can be run, see {@link
+     * PcapngCapture}. The same capture may be shared by several clients and servers, capturing does
+     * not block the connections.
+     *
+     * @param pcapngCapture the capture, {@code null} to disable capturing (default)
+     * @return this builder
+     */
+    public T setPcapngCapture(PcapngCapture pcapngCapture) {
+        settings.setPcapngCapture(pcapngCapture);
+        return self();
+    }
+
+    /**
+     * Sets the maximum number of received ASDUs that are queued for the {@link
+     * ConnectionEventListener} of a connection. If the listener does not keep up, the {@link
+     * #setListenerOverflowPolicy(OverflowPolicy) overflow policy} is applied. The size is rounded up to
+     * the next power of two.<br>
+     * Default is 1024, minimum is 1, maximum is 1048576.
+     *
+     * @param maxSize the maximum number of queued ASDUs
+     * @return this builder
+     */
+    public T setMaxListenerQueueSize(int maxSize) {
+        if (maxSize < 1 || maxSize > 1 << 20) {
+            throw new IllegalArgumentException(
+                    "invalid maxSize: " + maxSize + ", must be a value between 1 and " + (1 << 20));
+        }
+        settings.setMaxListenerQueueSize(maxSize);
+        return self();
+    }
+
+    /**
+     * Sets what happens if a listener does not keep up with the received ASDUs and the maximum number
+     * of ASDUs is queued for it, see {@link #setMaxListenerQueueSize(int)}. With {@link
+     * OverflowPolicy#BLOCK} no more APDUs are read until the listener has taken an ASDU.<br>
+     * Default is {@link OverflowPolicy#BLOCK}.
+     *
+     * @param overflowPolicy the overflow policy
+     * @return this builder
+     */
+    public T setListenerOverflowPolicy(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("overflowPolicy must not be null");
+        }
+        settings.setListenerOverflowPolicy(overflowPolicy);
+        return self();
+    }
+
+    /**
+     * Sets the maximum number of ASDUs passed to a {@link BatchConnectionEventListener} at once.<br>
+     * Default is 256, minimum is 1.
+     *
+     * @param maxBatchSize the maximum number of ASDUs per batch
+     * @return this builder
+     */
+    public T setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException(
+                    "invalid maxBatchSize: " + maxBatchSize + ", must be a value of at least 1");
+        }
+        settings.setMaxBatchSize(maxBatchSize);
+        return self();
+    }
+
+    /**
+     * Sets the maximum time a {@link BatchConnectionEventListener} is not invoked although ASDUs are
+     * queued for it, waiting for more ASDUs to fill the batch. The time is measured from the dequeue
+     * of the first ASDU of the batch.<br>
+     * Default is 0, a batch contains the ASDUs that are queued when it is delivered.
+     *
+     * @param maxBatchLinger the maximum linger time in milliseconds, between 0ms and 1000ms
+     * @return this builder
+     */
+    public T setMaxBatchLinger(int maxBatchLinger) {
+        if (maxBatchLinger < 0 || maxBatchLinger > 1000) {
+            throw new IllegalArgumentException(
+                    "invalid maxBatchLinger: " + maxBatchLinger + ", must be between 0ms and 1000ms");
+        }
+        settings.setMaxBatchLinger(maxBatchLinger);
+        return self();
+    }
+
     /**
      * Sets the number of unacknowledged I format APDUs received before the connection will
      * automatically send an S format APDU to confirm them. This parameter is called w by the
@@ -211,11 +344,140 @@ abstract class CommonBuilder<T extends CommonBuilder<T, C>, C> {
         return self();
     }
 
+    /**
+     * Sets TCP_NODELAY on the sockets of the connections, so that an APDU is sent at once instead of
+     * waiting for the acknowledgement of the previous segment (Nagle's algorithm). This lowers the
+     * latency of small APDUs sent in short succession, e.g. by {@link Connection#sendAsync(ASdu)}, at
+     * the cost of more TCP segments. Enable it together with {@link #setMaxWriteDelay(int)} to
+     * control the coalescing of APDUs in the library instead of in the TCP stack.<br>
+     * Default is false, the socket default.
+     *
+     * @param tcpNoDelay true to disable Nagle's algorithm
+     * @return this builder
+     */
+    public T setTcpNoDelay(boolean tcpNoDelay) {
+        settings.setTcpNoDelay(tcpNoDelay);
+        return self();
+    }
+
     public T useSharedThreadPool() {
         settings.setUseSharedThreadPool(true);
         return self();
     }
 
+    /**
+     * Sets the factory that creates the reader thread of every connection and the threads that
+     * dispatch the received ASDUs to the listeners. A server also creates the threads that accept
+     * and set up new connections with it. The shared thread pool of {@link #useSharedThreadPool()}
+     * is not affected, neither are the shared timer and selector event loop threads. These do not
+     * wait for the network, but they are not wait-free: they take the locks of a connection for
+     * short sections, and an event loop runs the callbacks of an {@link ASduViewListener}, which
+     * therefore must not block.<br>
+     * Default is null, i.e. platform threads are created as by {@link Thread#Thread(Runnable)}.
+     *
+     * @param threadFactory the thread factory, or null to use the default
+     * @return this builder
+     * @see #useVirtualThreads()
+     */
+    public T setThreadFactory(ThreadFactory threadFactory) {
+        settings.setThreadFactory(threadFactory);
+        return self();
+    }
+
+    /**
+     * Runs the connection reader and the listener dispatch on virtual threads, so that blocking
+     * listeners do not tie up a platform thread per connection. This is the same as calling {@link
+     * #setThreadFactory(ThreadFactory)} with {@code Thread.ofVirtual().factory()}. Threads that wait
+     * in {@link Connection#send(ASdu)} for the send window do not pin their carrier thread, the
+     * monitors of a connection are only held for short sections.
+     *
+     * @return this builder
+     * @throws UnsupportedOperationException if the Java runtime does not support virtual threads
+     *     (Java 21 or newer is required)
+     */
+    public T useVirtualThreads() {
+        settings.setThreadFactory(virtualThreadFactory());
+        return self();
+    }
+
+    private static ThreadFactory virtualThreadFactory() {
+        // looked up reflectively because the library is compiled for Java 8
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this Java runtime.", e);
+        }
+    }
+
+    /**
+     * Multiplexes the connections over a small, fixed set of {@link java.nio.channels.Selector}
+     * event loop threads instead of starting a dedicated reader thread for every connection. The
+     * event loops are shared by all servers and client connections that use this transport. They
+     * are created with the given number of threads by the first connection and are stopped once the
+     * last connection has been closed. While they are running, all connections must be configured
+     * with the same number of threads: building a client connection with a different number fails
+     * with an IOException and a server closes such connections when they are accepted.<br>
+     * The event loops decode the incoming APDUs but do not wait for the network or for listeners:
+     * the listener callbacks are run by the thread pool of the connection, and reading is stopped
+     * while the listener queue is full or the peer does not read. An {@link ASduViewListener} is the
+     * exception, it is invoked by the event loop and stalls all its connections if it blocks. The
+     * event loops may also wait briefly for the locks of a connection held by a sending thread.
+     * Configured socket factories are not used by this transport, building a connection or server
+     * with an SSL socket factory fails with an IllegalArgumentException.<br>
+     * Default is the blocking socket transport.
+     *
+     * @param numSelectorThreads the number of event loop threads, minimum is 1.
+     * @return this builder
+     */
+    public T useSelectorTransport(int numSelectorThreads) {
+        if (numSelectorThreads < 1) {
+            throw new IllegalArgumentException(
+                    "invalid numSelectorThreads: " + numSelectorThreads + ", must be greater than 0");
+        }
+        settings.setSelectorThreads(numSelectorThreads);
+        return self();
+    }
+
+    /**
+     * Sets the tick duration of the timer that runs the protocol timeouts t1, t2 and t3 of all
+     * connections. The timeouts are run with a precision of one tick. The timer is shared by all
+     * connections with the same tick duration.<br>
+     * Default is 10ms.
+     *
+     * @param tickDuration the tick duration in milliseconds, between 1ms and 1000ms
+     * @return this builder
+     */
+    public T setTimerTickDuration(int tickDuration) {
+        if (tickDuration < 1 || tickDuration > 1000) {
+            throw new IllegalArgumentException(
+                    "invalid tickDuration: " + tickDuration + ", must be between 1ms and 1000ms");
+        }
+        settings.setTimerTickDuration(tickDuration);
+        return self();
+    }
+
+    /**
+     * Enables write coalescing. APDUs are not flushed to the socket one by one but collected for at
+     * most the given delay and sent together. They are flushed earlier if no more I-frames may be
+     * sent before an acknowledgement is received (k). S-frames that acknowledge received I-frames (w)
+     * are delayed as well and dropped if an I-frame carrying the acknowledgement is sent before the
+     * flush. The delay is measured with the precision of the timer tick duration.<br>
+     * Default is 0, every APDU is flushed immediately.
+     *
+     * @param maxWriteDelay the maximum write delay in milliseconds, between 0ms and 1000ms
+     * @return this builder
+     */
+    public T setMaxWriteDelay(int maxWriteDelay) {
+        if (maxWriteDelay < 0 || maxWriteDelay > 1000) {
+            throw new IllegalArgumentException(
+                    "invalid maxWriteDelay: " + maxWriteDelay + ", must be between 0ms and 1000ms");
+        }
+        settings.setMaxWriteDelay(maxWriteDelay);
+        return self();
+    }
+
     public T setAllowedASduTypes(List<ASduType> allowedTypes) {
         settings.setAllowedTypes(allowedTypes);
         return self();
@@ -24,16 +24,30 @@ import java.io.*;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
 import org.openmuc.j60870.APdu.ApciType;
 import org.openmuc.j60870.ie.*;
+import org.openmuc.j60870.internal.ByteBufferInputStream;
 import org.openmuc.j60870.internal.ExtendedDataInputStream;
-import org.openmuc.j60870.internal.SerialExecutor;
 
 /**
  * Represents an open connection to a specific 60870 server. It is created either through an
@@ -45,6 +59,12 @@ import org.openmuc.j60870.internal.SerialExecutor;
  * ConnectionEventListener#newASdu(Connection connection, ASdu)} is never called simultaneously for
  * the same connection.
  *
+ * <p>The connection is thread safe. Received I-frames and acknowledgements are handled without
+ * waiting for the write lock: acknowledgements only take the lock of the send window, and an S-frame
+ * is left to the next flush of a sender that holds the write lock. The confirmations of TESTFR,
+ * STARTDT and STOPDT are written by the reader itself while holding the write lock, so they wait for
+ * a sender that is writing at the same time.
+ *
  * <p>Connection offers a method for every possible command defined by IEC 60870 (e.g.
  * singleCommand). Every command function may throw an IOException indicating a fatal connection
  * error. In this case the connection will be automatically closed and a new connection will have to
@@ -65,43 +85,128 @@ public class Connection implements AutoCloseable {
     private final DataOutputStream os;
     private final ConnectionSettings settings;
     private final byte[] buffer = new byte[255];
-    private final byte[] asduBuffer = new byte[255];
+    /** I-frames are assembled here, the ASDU is encoded behind the space reserved for the APCI. */
+    private final byte[] frameBuffer = new byte[APdu.MAX_APDU_LENGTH + 2];
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(APdu.MAX_APDU_LENGTH);
+    private final ByteBufferInputStream asduInputStream = new ByteBufferInputStream();
+    private final ExtendedDataInputStream asduDataInputStream = new ExtendedDataInputStream(asduInputStream);
+    private final ASduView aSduView;
     private final TimeoutManager timeoutManager;
     private final TimeoutTask maxTimeNoTestConReceived;
     private final TimeoutTask maxTimeNoAckReceived;
     private final TimeoutTask maxIdleTimeTimer;
     private final TimeoutTask maxTimeNoAckSentTimer;
+    private final TimeoutTask maxWriteDelayTimer;
+    private final AcknowledgementHoldTimer acknowledgementHoldTimer;
     private final ExecutorService executor;
-    private final SerialExecutor serialExecutor;
+    private final ListenerDispatcher dispatcher;
+    /** Sends the queued ASDUs, separate from the listener so that a slow listener does not delay it. */
+    private final SerialExecutor queueExecutor;
+    /** Completes the futures of sent ASDUs and commands in the order of the responses. */
+    private final SerialExecutor completionExecutor;
+    /** Answers station interrogations one after the other, their blocking sends may wait for the peer. */
+    private final SerialExecutor interrogationExecutor;
+    /** Runs the listener callbacks of the selector transport, which must not be run by the event loop. */
+    private final SerialExecutor callbackExecutor;
+
+    private final CommandCorrelator commandCorrelator;
+    private final SelectorChannelHandler channelHandler;
+    private final RedundancyGroup redundancyGroup;
+    /** The journal and the capture the frames are recorded by, null if none is attached. */
+    private final TrafficRecorder[] trafficRecorders;
+    /** The ID of this connection for each of the traffic recorders. */
+    private final int[] recorderConnectionIds;
+    /** Received control frames are encoded again for the recorders, only used by the reader. */
+    private final byte[] recordBuffer = new byte[APdu.HEADER_LENGTH];
+
     int STREAM_BUFFER_SIZE = 16 * 1024;
+    /*
+     * Lock order: this (data transfer state and listeners) before writeLock before windowLock. The
+     * reader thread only takes this for STARTDT/STOPDT and windowLock for received acknowledgements.
+     */
+
+    /** Serializes the writes to the output stream and the assignment of send sequence numbers. */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /** Guards the send window, the outbound queue and the unconfirmed ASDUs, never held during I/O. */
+    private final Object windowLock = new Object();
+
+    /**
+     * Blocking senders wait on this condition for the send window, taken while holding the window
+     * lock. A monitor wait would pin virtual threads to their carriers on Java 21 to 23.
+     */
+    private final ReentrantLock windowWaitLock = new ReentrantLock();
+
+    private final Condition windowChanged = windowWaitLock.newCondition();
+
     private volatile boolean closed;
     private volatile boolean stopped = true;
     private boolean pendingStopDtCon = false;
     private boolean connectionReaderStarted = false;
-    private ConnectionEventListener aSduListener;
+    private volatile boolean pendingSFormatPdu = false;
+    private final Queue<PendingASdu> outboundQueue = new ArrayDeque<>();
+    private final Queue<PendingASdu> unconfirmedASdus = new ArrayDeque<>();
+    /** The queued ASDUs that may be replaced by a newer value, by their coalesce key. */
+    private final Map<Long, PendingASdu> coalescableASdus = new HashMap<>();
+    // guarded by the window lock
+    private long numDroppedOutboundASdus;
+    private long numCoalescedASdus;
+    private int peakNumQueuedASdus;
+    private volatile ConnectionEventListener aSduListener;
     private ConnectionEventListener aSduListenerBack;
     private int sendSequenceNumber;
-    private int receiveSequenceNumber;
-    private int acknowledgedReceiveSequenceNumber;
+    // only written by the thread that handles the received APDUs
+    private volatile int receiveSequenceNumber;
+    // only written while holding the write lock
+    private volatile int acknowledgedReceiveSequenceNumber;
+    // the receive sequence number acknowledged while the acknowledgements are held, -1 otherwise
+    private volatile int heldReceiveSequenceNumber = -1;
     private int acknowledgedSendSequenceNumber;
     private int originatorAddress;
-    private IOException closedIOException;
+    private volatile IOException closedIOException;
     private CountDownLatch startDtActSignal;
     private CountDownLatch startDtConSignal;
     private CountDownLatch stopDtConSignal;
 
     Connection(Socket socket, ServerThread serverThread, ConnectionSettings settings) throws IOException {
+        this(socket, serverThread, settings, null);
+    }
+
+    Connection(Socket socket, ServerThread serverThread, ConnectionSettings settings, RedundancyGroup redundancyGroup)
+            throws IOException {
         try {
-            os = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (settings.useSelectorTransport()) {
+                channelHandler = new SelectorChannelHandler(this, socket.getChannel(), settings);
+                os = new DataOutputStream(channelHandler.getOutputStream());
+            } else {
+                channelHandler = null;
+                os = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            }
         } catch (IOException e) {
             socket.close();
             throw e;
         }
 
         this.socket = socket;
-        is = new ExtendedDataInputStream(new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER_SIZE));
+        if (channelHandler != null) {
+            is = null;
+        } else {
+            is = new ExtendedDataInputStream(new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER_SIZE));
+        }
         this.settings = settings;
+        this.aSduView = new ASduView(settings);
         this.serverThread = serverThread;
+        this.redundancyGroup = redundancyGroup;
+        this.trafficRecorders = trafficRecorders(settings);
+        if (trafficRecorders != null) {
+            this.recorderConnectionIds = new int[trafficRecorders.length];
+            for (int i = 0; i < trafficRecorders.length; i++) {
+                recorderConnectionIds[i] = trafficRecorders[i].register(this);
+            }
+        } else {
+            this.recorderConnectionIds = null;
+        }
         if (this.serverThread != null) {
             startDtActSignal = new CountDownLatch(1);
         }
@@ -110,17 +215,27 @@ public class Connection implements AutoCloseable {
         this.maxTimeNoAckReceived = new MaxTimeNoAckReceivedTimer();
         this.maxIdleTimeTimer = new MaxIdleTimeTimer();
         this.maxTimeNoAckSentTimer = new MaxTimeNoAckSentTimer();
+        this.maxWriteDelayTimer = new MaxWriteDelayTimer();
+        this.acknowledgementHoldTimer = new AcknowledgementHoldTimer();
 
         if (settings.useSharedThreadPool()) {
             this.executor = ConnectionSettings.getThreadPool();
         } else {
-            this.executor = Executors.newCachedThreadPool();
+            this.executor = settings.newThreadPool();
         }
-        serialExecutor = new SerialExecutor(executor);
+        dispatcher = new ListenerDispatcher(this, executor, settings);
+        queueExecutor = new SerialExecutor(executor);
+        completionExecutor = new SerialExecutor(executor);
+        interrogationExecutor = new SerialExecutor(executor);
+        callbackExecutor = new SerialExecutor(executor);
         ConnectionSettings.incremntConnectionsCounter();
 
-        this.timeoutManager = new TimeoutManager();
-        this.executor.execute(this.timeoutManager);
+        this.timeoutManager = TimeoutManager.acquire(settings.getTimerTickDuration());
+        this.commandCorrelator = new CommandCorrelator(timeoutManager, completionExecutor);
+
+        if (serverThread != null && settings.getProcessImage() != null) {
+            settings.getProcessImage().attach(this);
+        }
     }
 
     private static int sequenceNumberDiff(int number, int ackNumber) {
@@ -128,9 +243,17 @@ public class Connection implements AutoCloseable {
         return ackNumber > number ? ((1 << 15) - ackNumber) + number : number - ackNumber;
     }
 
-    private void sendTestFrameCon() throws IOException {
-        os.write(TESTFR_CON_BUFFER);
-        os.flush();
+    private void writeControlFrame(byte[] frame) throws IOException {
+        writeLock.lock();
+        try {
+            os.write(frame);
+            if (trafficRecorders != null) {
+                recordSent(frame, frame.length);
+            }
+            flush();
+        } finally {
+            unlockWrite();
+        }
     }
 
     private void closeIfStopped(ApciType apciType) throws IOException {
@@ -147,45 +270,73 @@ public class Connection implements AutoCloseable {
         }
     }
 
+    private void releaseTimeoutManager() {
+        maxTimeNoTestConReceived.cancel();
+        maxTimeNoAckReceived.cancel();
+        maxIdleTimeTimer.cancel();
+        maxTimeNoAckSentTimer.cancel();
+        maxWriteDelayTimer.cancel();
+        acknowledgementHoldTimer.cancel();
+        TimeoutManager.release(timeoutManager);
+    }
+
     private void handleStopDtAct() throws IOException {
 
-        // sets data transfer state in ASduListener to stopped
-        setStopped(true);
-        if (aSduListener != null) {
-            aSduListenerBack = aSduListener;
-            aSduListener = null;
+        synchronized (this) {
+            // sets data transfer state in ASduListener to stopped
+            setStopped(true);
+            if (aSduListener != null) {
+                aSduListenerBack = aSduListener;
+                aSduListener = null;
+            }
         }
 
-        if (maxTimeNoAckSentTimer.isPlanned()) {
-            maxTimeNoAckSentTimer.cancel();
+        if (redundancyGroup != null) {
+            redundancyGroup.stopped(this);
         }
 
+        cancelMaxTimeNoAckSentTimer();
+
+        // all received I-frames are acknowledged before the data transfer is stopped
+        heldReceiveSequenceNumber = -1;
         sendSFormatIfUnconfirmedAPdu();
 
-        if (sequenceNumberDiff(sendSequenceNumber, acknowledgedSendSequenceNumber) > 0
-                && maxTimeNoAckReceived.isPlanned()) {
+        if (getNumUnconfirmedAPdusSent() > 0 && maxTimeNoAckReceived.isPlanned()) {
             pendingStopDtCon = true;
         } else {
-            sendStopDtCon();
+            writeControlFrame(STOPDT_CON_BUFFER);
         }
     }
 
-    private void sendStopDtCon() throws IOException {
-        os.write(STOPDT_CON_BUFFER);
-        os.flush();
-    }
-
     private void handleStartDtAct() throws IOException {
 
+        if (redundancyGroup != null) {
+            // queues the pending ASDUs of the group, they are sent once the data transfer is started
+            Connection previous = redundancyGroup.activate(this);
+            if (previous != null) {
+                previous.closeDeactivated();
+            }
+        }
+
         synchronized (this) {
-            os.write(STARTDT_CON_BUFFER, 0, STARTDT_CON_BUFFER.length);
+            writeLock.lock();
+            try {
+                os.write(STARTDT_CON_BUFFER);
+                if (trafficRecorders != null) {
+                    recordSent(STARTDT_CON_BUFFER, STARTDT_CON_BUFFER.length);
+                }
 
-            if (aSduListener == null) {
-                aSduListener = aSduListenerBack;
+                if (aSduListener == null) {
+                    aSduListener = aSduListenerBack;
+                }
+                setStopped(false);
+
+                // flushed after the state change, so the peer can send I-frames once it receives the CON
+                flush();
+            } finally {
+                unlockWrite();
             }
-            setStopped(false);
         }
-        os.flush();
 
         resetMaxIdleTimeTimer();
     }
@@ -196,29 +347,82 @@ public class Connection implements AutoCloseable {
 
         handleReceiveSequenceNumber(aPdu.getReceiveSeqNumber());
 
-        if (aSduListener != null) {
-            serialExecutor.execute(new Runnable() {
-                @Override
-                public void run() {
-                    Thread.currentThread().setName("aSduListener");
-                    aSduListener.newASdu(Connection.this, aSdu);
-                }
-            });
+        if (aSdu != null
+                && serverThread != null
+                && settings.getProcessImage() != null
+                && ProcessImage.isStationInterrogation(aSdu)) {
+            answerStationInterrogation(aSdu);
+        } else if (aSduListener instanceof ASduViewListener) {
+            // the view is backed by the receive buffer and therefore consumed before the next read
+            ((ASduViewListener) aSduListener).newASduView(Connection.this, aSduView);
+        } else if (aSduListener != null && !dispatcher.dispatch(aSdu)) {
+            throw new IOException("The listener did not keep up, the maximum number of queued ASDUs is exceeded.");
+        }
+
+        if (aSdu != null) {
+            commandCorrelator.handleResponse(aSdu);
+        }
+
+        if (heldReceiveSequenceNumber >= 0) {
+            // acknowledged once the hold is released
+            return;
         }
 
         int numUnconfirmedIPdusReceived = sequenceNumberDiff(receiveSequenceNumber, acknowledgedReceiveSequenceNumber);
 
         if (numUnconfirmedIPdusReceived >= settings.getMaxUnconfirmedIPdusReceived()) {
-            sendSFormatPdu();
-            if (maxTimeNoAckSentTimer.isPlanned()) {
-                maxTimeNoAckSentTimer.cancel();
+            // the acknowledgement is dropped if an I-frame is sent before the next flush
+            pendingSFormatPdu = true;
+            if (settings.getMaxWriteDelay() > 0) {
+                if (!maxWriteDelayTimer.isPlanned()) {
+                    timeoutManager.addTimerTask(maxWriteDelayTimer);
+                }
+            } else {
+                sendPendingSFormatPdu();
             }
+            cancelMaxTimeNoAckSentTimer();
         } else if (!maxTimeNoAckSentTimer.isPlanned()
                 || (maxTimeNoAckSentTimer.isPlanned() && numUnconfirmedIPdusReceived == 1)) {
             timeoutManager.addTimerTask(maxTimeNoAckSentTimer);
         }
     }
 
+    /**
+     * Returns the listener the queued ASDUs are passed to by the {@link ListenerDispatcher}.
+     *
+     * @return the current listener, null if the data transfer has been stopped
+     */
+    ConnectionEventListener getASduListener() {
+        return aSduListener;
+    }
+
+    /**
+     * Answers a station interrogation on the interrogation executor. The responses are sent with
+     * blocking sends, which wait for the ASDUs queued by sendAsync and for acknowledgements, so they
+     * must not be sent by the reader or the listener dispatch.
+     */
+    private void answerStationInterrogation(final ASdu interrogation) {
+        interrogationExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    settings.getProcessImage().interrogate(Connection.this, interrogation, settings);
+                } catch (IOException e) {
+                    close();
+                } catch (IllegalArgumentException e) {
+                    // data transfer has been stopped during the interrogation
+                }
+            }
+        });
+    }
+
+    private static boolean isCommandResponse(CauseOfTransmission cot) {
+        return cot == CauseOfTransmission.ACTIVATION_CON
+                || cot == CauseOfTransmission.DEACTIVATION_CON
+                || cot == CauseOfTransmission.ACTIVATION_TERMINATION
+                || (cot != null && cot.getId() >= CauseOfTransmission.UNKNOWN_TYPE_ID.getId());
+    }
+
     private void mirrorUnknownAsduType(APdu aPdu) throws IOException {
         int sendSeqNumber = aPdu.getSendSeqNumber();
         verifySeqNumber(sendSeqNumber);
@@ -228,7 +432,8 @@ public class Connection implements AutoCloseable {
         int test = asduBytes[2] & 0x80;
         int negativConfirm = 0x40;
         asduBytes[2] = (byte) (test | negativConfirm | CauseOfTransmission.UNKNOWN_TYPE_ID.getId());
-        sendBuffer(asduBytes);
+        // queued instead of waiting for the send window, the reader must not block
+        sendAsync(asduBytes, PendingASdu.NO_COALESCE_KEY);
     }
 
     private void updateReceiveSeqNum(int sendSeqNumber) throws IOException {
@@ -238,7 +443,8 @@ public class Connection implements AutoCloseable {
 
         // check for receiveSequenceNumber overflow
         if (sendSeqNumber > receiveSequenceNumber) {
-            sendSFormatPdu();
+            pendingSFormatPdu = true;
+            sendPendingSFormatPdu();
         }
     }
 
@@ -251,32 +457,38 @@ public class Connection implements AutoCloseable {
     }
 
     private void handleReceiveSequenceNumber(int receiveSeqNumber) throws IOException {
-        if (acknowledgedSendSequenceNumber == receiveSeqNumber) {
-            return;
-        }
+        synchronized (windowLock) {
+            if (acknowledgedSendSequenceNumber == receiveSeqNumber) {
+                return;
+            }
 
-        int diff = sequenceNumberDiff(receiveSeqNumber, acknowledgedSendSequenceNumber);
-        if (diff > getNumUnconfirmedAPdusSent()) {
-            String msg = MessageFormat.format(
-                    "Got unexpected receive sequence number: {0}, expected a number between: {1} and {2}.",
-                    receiveSeqNumber, acknowledgedSendSequenceNumber, sendSequenceNumber);
-            throw new IOException(msg);
-        }
+            int diff = sequenceNumberDiff(receiveSeqNumber, acknowledgedSendSequenceNumber);
+            if (diff > getNumUnconfirmedAPdusSent()) {
+                String msg = MessageFormat.format(
+                        "Got unexpected receive sequence number: {0}, expected a number between: {1} and {2}.",
+                        receiveSeqNumber, acknowledgedSendSequenceNumber, sendSequenceNumber);
+                throw new IOException(msg);
+            }
 
-        if (maxTimeNoAckReceived.isPlanned()) {
-            maxTimeNoAckReceived.cancel();
-        }
+            if (maxTimeNoAckReceived.isPlanned()) {
+                maxTimeNoAckReceived.cancel();
+            }
 
-        acknowledgedSendSequenceNumber = receiveSeqNumber;
+            completeConfirmedASdus(acknowledgedSendSequenceNumber, diff);
+            acknowledgedSendSequenceNumber = receiveSeqNumber;
 
-        if (sendSequenceNumber != acknowledgedSendSequenceNumber) {
-            if (getNumUnconfirmedAPdusSent() > settings.getMaxNumOfOutstandingIPdus()) {
-                throw new IOException("Max number of outstanding IPdus is exceeded.");
-            } else {
-                timeoutManager.addTimerTask(maxTimeNoAckReceived);
+            if (sendSequenceNumber != acknowledgedSendSequenceNumber) {
+                if (getNumUnconfirmedAPdusSent() > settings.getMaxNumOfOutstandingIPdus()) {
+                    throw new IOException("Max number of outstanding IPdus is exceeded.");
+                } else {
+                    timeoutManager.addTimerTask(maxTimeNoAckReceived);
+                }
+            }
+            if (!outboundQueue.isEmpty()) {
+                scheduleQueuedASdus();
             }
+            signalWindowChanged();
         }
-        Connection.this.notifyAll();
     }
 
     protected void start(ConnectionEventListener connectionEventListener) {
@@ -287,7 +499,11 @@ public class Connection implements AutoCloseable {
             connectionReaderStarted = true;
 
             this.aSduListener = connectionEventListener;
-            new ConnectionReader().start();
+            if (channelHandler != null) {
+                channelHandler.register();
+            } else {
+                settings.newThread(new ConnectionReader()).start();
+            }
 
             // set maxIdleTimeTimer after connection is started
             this.timeoutManager.addTimerTask(maxIdleTimeTimer);
@@ -308,17 +524,15 @@ public class Connection implements AutoCloseable {
             aSduListener = null;
         }
 
+        heldReceiveSequenceNumber = -1;
         sendSFormatIfUnconfirmedAPdu();
 
-        if (maxTimeNoAckSentTimer.isPlanned()) {
-            maxTimeNoAckSentTimer.cancel();
-        }
+        cancelMaxTimeNoAckSentTimer();
 
         synchronized (this) {
             stopDtConSignal = new CountDownLatch(1);
-            os.write(STOPDT_ACT_BUFFER);
         }
-        os.flush();
+        writeControlFrame(STOPDT_ACT_BUFFER);
 
         boolean success;
         try {
@@ -334,15 +548,24 @@ public class Connection implements AutoCloseable {
     }
 
     private void sendSFormatIfUnconfirmedAPdu() throws IOException {
-        int diff;
-        synchronized (this) {
-            diff = sequenceNumberDiff(receiveSequenceNumber, acknowledgedReceiveSequenceNumber);
-        }
+        int diff = sequenceNumberDiff(receiveSequenceNumber, acknowledgedReceiveSequenceNumber);
         if (diff > 0) {
             sendSFormatPdu();
-            if (maxTimeNoAckSentTimer.isPlanned()) {
-                maxTimeNoAckSentTimer.cancel();
-            }
+            cancelMaxTimeNoAckSentTimer();
+        }
+    }
+
+    /**
+     * Cancels t2 after the received I-frames have been acknowledged. The reader may accept another
+     * I-frame and schedule t2 for it after the acknowledged receive sequence number has been read,
+     * so t2 is scheduled again if an I-frame is still unacknowledged after the cancel.
+     */
+    void cancelMaxTimeNoAckSentTimer() {
+        if (maxTimeNoAckSentTimer.isPlanned()) {
+            maxTimeNoAckSentTimer.cancel();
+        }
+        if (acknowledgedReceiveSequenceNumber != receiveSequenceNumber && heldReceiveSequenceNumber < 0 && !closed) {
+            timeoutManager.addTimerTask(maxTimeNoAckSentTimer);
         }
     }
 
@@ -356,9 +579,8 @@ public class Connection implements AutoCloseable {
 
         synchronized (this) {
             startDtConSignal = new CountDownLatch(1);
-            os.write(STARTDT_ACT_BUFFER);
         }
-        os.flush();
+        writeControlFrame(STARTDT_ACT_BUFFER);
 
         boolean success;
         try {
@@ -378,143 +600,965 @@ public class Connection implements AutoCloseable {
     }
 
     private void sendSFormatPdu() throws IOException {
+        writeLock.lock();
+        try {
+            pendingSFormatPdu = false;
+            writeSFormatPdu();
+            flush();
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * Sends the pending S-frame unless another thread holds the write lock. That thread sends the
+     * S-frame with its next flush, so that the reader is not blocked by a slow write.
+     */
+    private void sendPendingSFormatPdu() throws IOException {
+        while (pendingSFormatPdu && writeLock.tryLock()) {
+            try {
+                flush();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /** Releases the write lock and sends an S-frame that was requested while the lock was held. */
+    private void unlockWrite() {
+        writeLock.unlock();
+        if (pendingSFormatPdu && settings.getMaxWriteDelay() == 0) {
+            try {
+                sendPendingSFormatPdu();
+            } catch (IOException e) {
+                // the connection is closed by the reader once the socket fails
+            }
+        }
+    }
+
+    private void writeSFormatPdu() throws IOException {
+        int receiveSequenceNumber = acknowledgeableReceiveSequenceNumber();
 
         int length = new APdu(0, receiveSequenceNumber, ApciType.S_FORMAT).encode(buffer, settings);
 
-        os.write(buffer, 0, length);
-        os.flush();
+        os.write(buffer, 0, length);
+        if (trafficRecorders != null) {
+            recordSent(buffer, length);
+        }
+
+        acknowledgedReceiveSequenceNumber = receiveSequenceNumber;
+
+        resetMaxIdleTimeTimer();
+    }
+
+    /**
+     * Get the configured Originator Address.
+     *
+     * @return the Originator Address
+     */
+    public int getOriginatorAddress() {
+        return originatorAddress;
+    }
+
+    /**
+     * Set the Originator Address. It is the address of controlling station (client) so that responses
+     * can be routed back to it. Originator addresses from 1 to 255 are used to address a particular
+     * controlling station. Address 0 is the default and is used if responses are to be routed to all
+     * controlling stations in the system. Note that the same Originator Address is sent in a command
+     * and its confirmation.
+     *
+     * @param originatorAddress the Originator Address. Valid values are 0...255.
+     */
+    public void setOriginatorAddress(int originatorAddress) {
+        if (originatorAddress < 0 || originatorAddress > 255) {
+            throw new IllegalArgumentException("Originator Address must be between 0 and 255.");
+        }
+        this.originatorAddress = originatorAddress;
+    }
+
+    public int getNumUnconfirmedAPdusSent() {
+        synchronized (windowLock) {
+            return sequenceNumberDiff(sendSequenceNumber, acknowledgedSendSequenceNumber);
+        }
+    }
+
+    /** Will close the TCP connection if it's still open and free any resources of this connection. */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        synchronized (windowLock) {
+            acknowledgedSendSequenceNumber = sendSequenceNumber;
+            signalWindowChanged();
+        }
+
+        // a thread blocked in a write is released by closing the socket
+        if (maxWriteDelayTimer.isPlanned() && writeLock.tryLock()) {
+            try {
+                // send the coalesced APDUs that have not been flushed yet
+                flush();
+            } catch (IOException ignored) {
+                // the connection is closed anyway
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        try {
+            // close the socket, which also closes the streams
+            socket.close();
+        } catch (Exception e) {
+            // ignore this here
+        } finally {
+            closed = true;
+        }
+
+        dispatcher.close();
+
+        if (channelHandler != null) {
+            channelHandler.close();
+        }
+
+        if (trafficRecorders != null) {
+            for (int i = 0; i < trafficRecorders.length; i++) {
+                trafficRecorders[i].unregister(recorderConnectionIds[i]);
+            }
+        }
+
+        if (serverThread != null) {
+            serverThread.connectionClosedSignal(this);
+        }
+    }
+
+    /**
+     * Returns true if connection is closed else false.
+     *
+     * @return true if closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns true if data transfer is stopped.
+     *
+     * @return true if stopped
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    private void setStopped(boolean stopped) {
+        synchronized (windowLock) {
+            this.stopped = stopped;
+            // wakes up the threads in send, which do not wait for a stopped data transfer
+            signalWindowChanged();
+        }
+        if (aSduListener != null) {
+            notifyDataTransferStateChanged(aSduListener, stopped);
+        }
+        if (!stopped) {
+            scheduleQueuedASdus();
+        }
+    }
+
+    void sendBuffer(byte[] aSdu) throws IOException, IllegalArgumentException {
+        sendIFrame(null, aSdu);
+    }
+
+    /**
+     * Sends either the given ASDU, which is encoded directly into the frame buffer, or the given
+     * encoded ASDU. If the send window is closed or ASDUs queued by sendAsync are waiting, the ASDU
+     * is added to the end of the outbound queue and this method waits until it has been written, so
+     * that blocking senders are served in order with the queued ASDUs and are not starved by them.
+     */
+    private void sendIFrame(ASdu aSdu, byte[] encodedASdu) throws IOException {
+        PendingASdu pendingASdu;
+        writeLock.lock();
+        try {
+            if (closed) {
+                throw new IOException("connection closed");
+            }
+            if (stopped) {
+                throw new IllegalArgumentException("May not send ASdu, data transfer is stopped.");
+            }
+            synchronized (windowLock) {
+                if (!isSendWindowBlocked()) {
+                    pendingASdu = null;
+                } else if (aSdu != null) {
+                    int asduLength = aSdu.encode(frameBuffer, APdu.HEADER_LENGTH, settings);
+                    pendingASdu = new PendingASdu(
+                            Arrays.copyOfRange(frameBuffer, APdu.HEADER_LENGTH, APdu.HEADER_LENGTH + asduLength),
+                            new CompletableFuture<Void>());
+                } else {
+                    pendingASdu = new PendingASdu(encodedASdu, new CompletableFuture<Void>());
+                }
+                if (pendingASdu != null) {
+                    // not subject to the overflow policy, there is at most one per blocked thread
+                    pendingASdu.blocking = true;
+                    outboundQueue.add(pendingASdu);
+                }
+            }
+            if (pendingASdu == null) {
+                if (aSdu != null) {
+                    writeIFrame(null, aSdu.encode(frameBuffer, APdu.HEADER_LENGTH, settings), null);
+                } else {
+                    writeIFrame(encodedASdu, encodedASdu.length, null);
+                }
+                return;
+            }
+            if (maxWriteDelayTimer.isPlanned()) {
+                // the peer acknowledges the outstanding I-frames only after they have been flushed
+                flush();
+            }
+        } finally {
+            unlockWrite();
+        }
+        awaitWritten(pendingASdu);
+    }
+
+    /**
+     * Waits until the given ASDU has been written from the outbound queue. Once the send window is
+     * open, the waiting thread drains the queue itself, as the drain scheduled by the acknowledgement
+     * may be run by the thread that called send, e.g. a listener. The write lock must not be held, so
+     * that acknowledgements can still be sent.
+     */
+    private void awaitWritten(PendingASdu pendingASdu) throws IOException {
+        while (true) {
+            boolean windowFull;
+            synchronized (windowLock) {
+                if (pendingASdu.written || pendingASdu.future.isDone()) {
+                    break;
+                }
+                if (closed || stopped) {
+                    outboundQueue.remove(pendingASdu);
+                    if (closed) {
+                        throw new IOException("connection closed");
+                    }
+                    throw new IllegalArgumentException("May not send ASdu, data transfer is stopped.");
+                }
+                windowFull = getNumUnconfirmedAPdusSent() >= settings.getMaxNumOfOutstandingIPdus();
+                if (windowFull) {
+                    // taken before the window lock is released, so that no signal is missed
+                    windowWaitLock.lock();
+                }
+            }
+            if (!windowFull) {
+                sendQueuedASdus();
+                continue;
+            }
+            // waits outside of the monitor, which would pin a virtual thread to its carrier
+            InterruptedException interrupted = null;
+            try {
+                windowChanged.await();
+            } catch (InterruptedException e) {
+                interrupted = e;
+            } finally {
+                windowWaitLock.unlock();
+            }
+            if (interrupted != null) {
+                synchronized (windowLock) {
+                    outboundQueue.remove(pendingASdu);
+                }
+                throw new IOException(interrupted);
+            }
+        }
+        if (pendingASdu.written) {
+            return;
+        }
+        try {
+            pendingASdu.future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private boolean isSendWindowBlocked() {
+        synchronized (windowLock) {
+            return getNumUnconfirmedAPdusSent() >= settings.getMaxNumOfOutstandingIPdus() || !outboundQueue.isEmpty();
+        }
+    }
+
+    /**
+     * Writes an I-frame, must be called while holding the write lock. The pending ASDU, if any, is
+     * added to the unconfirmed ASDUs before the frame is written, as the acknowledgement may be
+     * received before this method returns. If the ASDU is null, it has been encoded into the frame
+     * buffer behind the APCI, which is filled in once the sequence numbers are assigned.
+     */
+    private int writeIFrame(byte[] aSdu, int aSduLength, PendingASdu pendingASdu) throws IOException {
+        int oldSendSequenceNumber;
+        int sendSequenceNumber;
+        synchronized (windowLock) {
+            oldSendSequenceNumber = this.sendSequenceNumber;
+            sendSequenceNumber = (oldSendSequenceNumber + 1) % (1 << 15); // 32768 = 2^15
+            this.sendSequenceNumber = sendSequenceNumber;
+            if (pendingASdu != null) {
+                pendingASdu.sendSequenceNumber = oldSendSequenceNumber;
+                unconfirmedASdus.add(pendingASdu);
+            }
+        }
+
+        int receiveSequenceNumber = acknowledgeableReceiveSequenceNumber();
+        acknowledgedReceiveSequenceNumber = receiveSequenceNumber;
+
+        // check for sendSequenceNumber overflow
+        if (oldSendSequenceNumber > sendSequenceNumber) {
+            sendSFormatPdu();
+        }
+
+        cancelMaxTimeNoAckSentTimer();
+
+        if (!this.maxTimeNoAckReceived.isPlanned()) {
+            this.timeoutManager.addTimerTask(this.maxTimeNoAckReceived);
+        }
+
+        int length = APdu.encodeIFormatHeader(frameBuffer, aSduLength, oldSendSequenceNumber, receiveSequenceNumber);
+        if (aSdu == null) {
+            os.write(frameBuffer, 0, length);
+            if (trafficRecorders != null) {
+                recordSent(frameBuffer, length);
+            }
+        } else {
+            // the encoded ASDU may be shared with other connections, so only the APCI is written here
+            os.write(frameBuffer, 0, APdu.HEADER_LENGTH);
+            os.write(aSdu, 0, aSduLength);
+            if (trafficRecorders != null) {
+                for (int i = 0; i < trafficRecorders.length; i++) {
+                    trafficRecorders[i].record(recorderConnectionIds[i], frameBuffer, aSdu, aSduLength);
+                }
+            }
+        }
+        flushWithDelay();
+        resetMaxIdleTimeTimer();
+        return oldSendSequenceNumber;
+    }
+
+    /**
+     * Flushes the written APDUs immediately if write coalescing is disabled or no more I-frames may
+     * be sent before an acknowledgement is received. Otherwise the flush is delayed by at most the
+     * maximum write delay, so that APDUs written in the meantime are sent together.
+     */
+    private void flushWithDelay() throws IOException {
+        if (settings.getMaxWriteDelay() == 0
+                || getNumUnconfirmedAPdusSent() >= settings.getMaxNumOfOutstandingIPdus()) {
+            flush();
+        } else if (!maxWriteDelayTimer.isPlanned()) {
+            timeoutManager.addTimerTask(maxWriteDelayTimer);
+        }
+    }
+
+    /** Writes a pending S-frame and flushes the output stream, must be called while holding the write lock. */
+    private void flush() throws IOException {
+        if (maxWriteDelayTimer.isPlanned()) {
+            maxWriteDelayTimer.cancel();
+        }
+        if (pendingSFormatPdu) {
+            pendingSFormatPdu = false;
+            if (acknowledgedReceiveSequenceNumber != acknowledgeableReceiveSequenceNumber()) {
+                writeSFormatPdu();
+            }
+        }
+        os.flush();
+    }
+
+    /**
+     * Sends the given ASDU and waits until it has been written. If the send window is full or ASDUs
+     * queued by {@link #sendAsync(ASdu)} are waiting, the ASDU is written after them.
+     *
+     * @param aSdu the ASDU to send
+     * @throws IOException if the connection has been closed
+     * @throws IllegalArgumentException if the data transfer is stopped
+     */
+    public void send(ASdu aSdu) throws IOException, IllegalArgumentException {
+        sendIFrame(aSdu, null);
+    }
+
+    /**
+     * Sends the given ASDU without blocking. If k I-frames are outstanding (see {@link
+     * CommonBuilder#setMaxNumOfOutstandingIPdus(int)}) the ASDU is added to the outbound queue and sent
+     * as soon as the peer acknowledges enough I-frames. If another thread is writing to the
+     * connection, e.g. to a socket the peer does not read, the ASDU is queued as well and written by
+     * an internal thread of the connection. ASDUs are sent in the order they are passed to this
+     * method and {@link #send(ASdu)}.
+     *
+     * <p>The returned future completes when the peer has confirmed the reception of the I-frame with
+     * its receive sequence number. It completes exceptionally with:
+     *
+     * <ul>
+     *   <li>a {@link RejectedExecutionException} if the outbound queue is full (see {@link
+     *       CommonBuilder#setMaxOutboundQueueSize(int)}) and the ASDU is rejected or discarded
+     *       according to the {@link CommonBuilder#setOutboundOverflowPolicy(OutboundOverflowPolicy)
+     *       overflow policy}, the ASDU is not sent in this case
+     *   <li>an {@link IllegalArgumentException} if the data transfer is stopped and the connection does
+     *       not queue ASDUs while stopped, see {@link Server.Builder#setQueueWhileStopped(boolean)}
+     *   <li>an {@link IOException} if the connection was closed before the I-frame was confirmed
+     * </ul>
+     *
+     * The future is completed by an internal thread of the connection, so dependent actions should
+     * not block.
+     *
+     * @param aSdu the ASDU to send
+     * @return a future that completes when the I-frame has been confirmed by the peer
+     */
+    public CompletableFuture<Void> sendAsync(ASdu aSdu) {
+        return sendAsync(aSdu, null, PendingASdu.NO_COALESCE_KEY);
+    }
+
+    /**
+     * Sends an ASDU that has been encoded once for several connections, see {@link
+     * Server#broadcast(ASdu)}. The array is not copied and must not be modified afterwards.
+     */
+    CompletableFuture<Void> sendAsync(byte[] encodedASdu, long coalesceKey) {
+        return sendAsync(null, encodedASdu, coalesceKey);
+    }
+
+    private CompletableFuture<Void> sendAsync(ASdu aSdu, byte[] encodedASdu, long coalesceKey) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        if (!writeLock.tryLock()) {
+            // the holder of the write lock may wait for the socket, the queue executor writes the ASDU
+            if (aSdu != null) {
+                byte[] buffer = new byte[APdu.MAX_APDU_LENGTH];
+                encodedASdu = Arrays.copyOf(buffer, aSdu.encode(buffer, 0, settings));
+                coalesceKey = coalesceKey(aSdu);
+            }
+            queueAsync(new PendingASdu(encodedASdu, future), coalesceKey);
+            return future;
+        }
+        try {
+            if (closed) {
+                future.completeExceptionally(new IOException("connection closed"));
+                return future;
+            }
+            if (stopped && !settings.isQueueWhileStopped()) {
+                future.completeExceptionally(
+                        new IllegalArgumentException("May not send ASdu, data transfer is stopped."));
+                return future;
+            }
+
+            PendingASdu pendingASdu;
+            if (aSdu != null) {
+                // the copy is kept until the ASDU is confirmed, the frame buffer is only valid until the
+                // write lock is released
+                int asduLength = aSdu.encode(frameBuffer, APdu.HEADER_LENGTH, settings);
+                pendingASdu = new PendingASdu(
+                        Arrays.copyOfRange(frameBuffer, APdu.HEADER_LENGTH, APdu.HEADER_LENGTH + asduLength), future);
+            } else {
+                pendingASdu = new PendingASdu(encodedASdu, future);
+            }
+
+            PendingASdu discarded;
+            synchronized (windowLock) {
+                // decided and queued atomically, so that the queue is drained by the next acknowledgement
+                // or by the start of the data transfer
+                if (!stopped && !isSendWindowBlocked()) {
+                    discarded = null;
+                } else {
+                    discarded = queueASdu(aSdu != null ? coalesceKey(aSdu) : coalesceKey, pendingASdu);
+                    pendingASdu = null;
+                }
+            }
+            if (discarded != null) {
+                discarded.future.completeExceptionally(new RejectedExecutionException("Outbound queue is full."));
+            }
+            if (pendingASdu == null) {
+                return future;
+            }
+
+            try {
+                if (aSdu != null) {
+                    writeIFrame(null, pendingASdu.aSdu.length, pendingASdu);
+                } else {
+                    writeIFrame(encodedASdu, encodedASdu.length, pendingASdu);
+                }
+            } catch (IOException e) {
+                future.completeExceptionally(e);
+                return future;
+            }
+        } finally {
+            unlockWrite();
+        }
+        return future;
+    }
+
+    /** Queues an ASDU passed to sendAsync while another thread holds the write lock. */
+    private void queueAsync(PendingASdu pendingASdu, long coalesceKey) {
+        PendingASdu discarded;
+        synchronized (windowLock) {
+            if (closed) {
+                pendingASdu.future.completeExceptionally(new IOException("connection closed"));
+                return;
+            }
+            if (stopped && !settings.isQueueWhileStopped()) {
+                pendingASdu.future.completeExceptionally(
+                        new IllegalArgumentException("May not send ASdu, data transfer is stopped."));
+                return;
+            }
+            discarded = queueASdu(coalesceKey, pendingASdu);
+        }
+        if (discarded != null) {
+            discarded.future.completeExceptionally(new RejectedExecutionException("Outbound queue is full."));
+        }
+        if (!stopped) {
+            // the window may be open, so the queue is not necessarily drained by an acknowledgement
+            scheduleQueuedASdus();
+        }
+    }
+
+    /**
+     * Adds an ASDU to the outbound queue according to the outbound overflow policy. Called while
+     * holding the window lock.
+     *
+     * @return the ASDU that was discarded because the queue is full, null if none
+     */
+    private PendingASdu queueASdu(long coalesceKey, final PendingASdu pendingASdu) {
+        OutboundOverflowPolicy overflowPolicy = settings.getOutboundOverflowPolicy();
+
+        if (overflowPolicy == OutboundOverflowPolicy.COALESCE && coalesceKey != PendingASdu.NO_COALESCE_KEY) {
+            PendingASdu queued = coalescableASdus.get(coalesceKey);
+            if (queued != null) {
+                queued.aSdu = pendingASdu.aSdu;
+                queued.future.whenComplete(new BiConsumer<Void, Throwable>() {
+                    @Override
+                    public void accept(Void result, Throwable cause) {
+                        if (cause != null) {
+                            pendingASdu.future.completeExceptionally(cause);
+                        } else {
+                            pendingASdu.future.complete(null);
+                        }
+                    }
+                });
+                numCoalescedASdus++;
+                return null;
+            }
+            pendingASdu.coalesceKey = coalesceKey;
+        }
+
+        PendingASdu discarded = null;
+        if (outboundQueue.size() >= settings.getMaxOutboundQueueSize()) {
+            if (overflowPolicy == OutboundOverflowPolicy.REJECT || outboundQueue.isEmpty()) {
+                numDroppedOutboundASdus++;
+                return pendingASdu;
+            }
+            discarded = pollOldestDiscardable();
+            if (discarded == null) {
+                numDroppedOutboundASdus++;
+                return pendingASdu;
+            }
+            forgetCoalescable(discarded);
+            numDroppedOutboundASdus++;
+        }
+
+        outboundQueue.add(pendingASdu);
+        if (pendingASdu.coalesceKey != PendingASdu.NO_COALESCE_KEY) {
+            coalescableASdus.put(pendingASdu.coalesceKey, pendingASdu);
+        }
+        peakNumQueuedASdus = Math.max(peakNumQueuedASdus, outboundQueue.size());
+        return discarded;
+    }
+
+    /** Removes the oldest queued ASDU that is not waited for by a blocked sender, returns null if none. */
+    private PendingASdu pollOldestDiscardable() {
+        Iterator<PendingASdu> it = outboundQueue.iterator();
+        while (it.hasNext()) {
+            PendingASdu pendingASdu = it.next();
+            if (!pendingASdu.blocking) {
+                it.remove();
+                return pendingASdu;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the key of ASDUs that may replace each other in the outbound queue. Only ASDUs in
+     * monitoring direction with a single information object are coalesced.
+     */
+    static long coalesceKey(ASdu aSdu) {
+        InformationObject[] informationObjects = aSdu.getInformationObjects();
+        if (informationObjects == null || informationObjects.length != 1) {
+            return PendingASdu.NO_COALESCE_KEY;
+        }
+        return coalesceKey(
+                aSdu.getTypeIdentification().getId(),
+                aSdu.isSequenceOfElements(),
+                1,
+                aSdu.getCauseOfTransmission().getId(),
+                aSdu.getCommonAddress(),
+                informationObjects[0].getInformationObjectAddress());
+    }
+
+    static long coalesceKey(
+            int typeId,
+            boolean isSequenceOfElements,
+            int numInformationObjects,
+            int causeOfTransmission,
+            int commonAddress,
+            int informationObjectAddress) {
+        if (typeId >= ASduType.C_SC_NA_1.getId() || isSequenceOfElements || numInformationObjects != 1) {
+            return PendingASdu.NO_COALESCE_KEY;
+        }
+        return (long) typeId << 48
+                | (long) causeOfTransmission << 40
+                | (long) (commonAddress & 0xffff) << 24
+                | (informationObjectAddress & 0xffffff);
+    }
+
+    private void forgetCoalescable(PendingASdu pendingASdu) {
+        if (pendingASdu.coalesceKey != PendingASdu.NO_COALESCE_KEY) {
+            coalescableASdus.remove(pendingASdu.coalesceKey);
+        }
+    }
+
+    /**
+     * Sends the given command without blocking and returns the futures of its confirmation and
+     * termination. The responses of the peer are still passed to the {@link
+     * ConnectionEventListener}. Only one command with the same type, common address, information
+     * object address and cause of transmission may be pending at a time.
+     *
+     * @param command the command, its cause of transmission has to be ACTIVATION or DEACTIVATION
+     * @param timeout the time in ms to wait for the termination of the command (or its confirmation
+     *     if it is not terminated) before its futures complete with an {@link InterruptedIOException}
+     * @return the futures of the responses to the command
+     * @throws IllegalArgumentException if the cause of transmission is invalid, the timeout is not
+     *     positive or the same command is already pending
+     */
+    public CommandFuture sendCommand(ASdu command, long timeout) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("invalid timeout: " + timeout + ", must be greater than 0");
+        }
+        final CommandFuture commandFuture = commandCorrelator.register(command, timeout);
+        sendAsync(command).whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void result, Throwable cause) {
+                if (cause != null) {
+                    commandCorrelator.fail(commandFuture, cause);
+                }
+            }
+        });
+        return commandFuture;
+    }
+
+    /**
+     * Returns the number of received ASDUs that were not passed to the listener because it did not
+     * keep up and the overflow policy is {@link OverflowPolicy#DROP_OLDEST}.
+     *
+     * @return the number of discarded ASDUs
+     * @see CommonBuilder#setListenerOverflowPolicy(OverflowPolicy)
+     */
+    public long getNumDroppedASdus() {
+        return dispatcher.getNumDropped();
+    }
 
-        acknowledgedReceiveSequenceNumber = receiveSequenceNumber;
+    /**
+     * Returns the number of ASDUs passed to {@link #sendAsync(ASdu)} that wait for the peer to
+     * acknowledge outstanding I-frames or to start the data transfer.
+     *
+     * @return the number of queued ASDUs
+     * @see CommonBuilder#setMaxOutboundQueueSize(int)
+     */
+    public int getNumQueuedASdus() {
+        synchronized (windowLock) {
+            return outboundQueue.size();
+        }
+    }
 
-        resetMaxIdleTimeTimer();
+    /**
+     * Returns the largest number of ASDUs that were queued by {@link #sendAsync(ASdu)} at the same
+     * time since the connection was opened.
+     *
+     * @return the peak number of queued ASDUs
+     */
+    public int getPeakNumQueuedASdus() {
+        synchronized (windowLock) {
+            return peakNumQueuedASdus;
+        }
     }
 
     /**
-     * Get the configured Originator Address.
+     * Returns the number of ASDUs passed to {@link #sendAsync(ASdu)} that were rejected or discarded
+     * because the outbound queue was full.
      *
-     * @return the Originator Address
+     * @return the number of rejected or discarded ASDUs
+     * @see CommonBuilder#setOutboundOverflowPolicy(OutboundOverflowPolicy)
      */
-    public int getOriginatorAddress() {
-        return originatorAddress;
+    public long getNumDroppedOutboundASdus() {
+        synchronized (windowLock) {
+            return numDroppedOutboundASdus;
+        }
     }
 
     /**
-     * Set the Originator Address. It is the address of controlling station (client) so that responses
-     * can be routed back to it. Originator addresses from 1 to 255 are used to address a particular
-     * controlling station. Address 0 is the default and is used if responses are to be routed to all
-     * controlling stations in the system. Note that the same Originator Address is sent in a command
-     * and its confirmation.
+     * Returns the number of ASDUs passed to {@link #sendAsync(ASdu)} that replaced a queued ASDU of
+     * the same data point because the overflow policy is {@link OutboundOverflowPolicy#COALESCE}.
      *
-     * @param originatorAddress the Originator Address. Valid values are 0...255.
+     * @return the number of coalesced ASDUs
      */
-    public void setOriginatorAddress(int originatorAddress) {
-        if (originatorAddress < 0 || originatorAddress > 255) {
-            throw new IllegalArgumentException("Originator Address must be between 0 and 255.");
+    public long getNumCoalescedASdus() {
+        synchronized (windowLock) {
+            return numCoalescedASdus;
         }
-        this.originatorAddress = originatorAddress;
     }
 
-    public int getNumUnconfirmedAPdusSent() {
-        synchronized (this) {
-            return sequenceNumberDiff(sendSequenceNumber, acknowledgedSendSequenceNumber);
+    /**
+     * Returns true if {@link #sendAsync(ASdu)} would accept another ASDU without discarding a queued
+     * one, i.e. the outbound queue is not full and the connection is open and started (or queues
+     * ASDUs while stopped).
+     *
+     * @return true if another ASDU can be sent
+     */
+    public boolean isWritable() {
+        synchronized (windowLock) {
+            if (closed || (stopped && !settings.isQueueWhileStopped())) {
+                return false;
+            }
+            return outboundQueue.size() < settings.getMaxOutboundQueueSize()
+                    || (!stopped && getNumUnconfirmedAPdusSent() < settings.getMaxNumOfOutstandingIPdus());
         }
     }
 
-    /** Will close the TCP connection if it's still open and free any resources of this connection. */
-    @Override
-    public synchronized void close() {
+    /** Sends the queued ASDUs from the queue executor, so that the reader is not blocked by writes. */
+    void scheduleQueuedASdus() {
         if (closed) {
             return;
         }
+        queueExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                sendQueuedASdus();
+            }
+        });
+    }
 
-        acknowledgedSendSequenceNumber = sendSequenceNumber;
-        notifyAll();
-
+    private void sendQueuedASdus() {
+        writeLock.lock();
         try {
-            // close the socket, which also closes the streams
-            socket.close();
-        } catch (Exception e) {
-            // ignore this here
+            while (!closed && !stopped) {
+                PendingASdu pendingASdu;
+                synchronized (windowLock) {
+                    if (outboundQueue.isEmpty()
+                            || getNumUnconfirmedAPdusSent() >= settings.getMaxNumOfOutstandingIPdus()) {
+                        // wakes up the threads in send that wait for their ASDU to be written
+                        signalWindowChanged();
+                        break;
+                    }
+                    pendingASdu = outboundQueue.poll();
+                    forgetCoalescable(pendingASdu);
+                }
+                try {
+                    if (pendingASdu.blocking) {
+                        writeIFrame(pendingASdu.aSdu, pendingASdu.aSdu.length, null);
+                        synchronized (windowLock) {
+                            pendingASdu.written = true;
+                            signalWindowChanged();
+                        }
+                    } else {
+                        writeIFrame(pendingASdu.aSdu, pendingASdu.aSdu.length, pendingASdu);
+                    }
+                } catch (IOException e) {
+                    pendingASdu.future.completeExceptionally(e);
+                }
+            }
         } finally {
-            closed = true;
+            unlockWrite();
         }
+    }
 
-        if (serverThread != null) {
-            serverThread.connectionClosedSignal();
+    private void completeConfirmedASdus(int previousAcknowledgedSendSequenceNumber, int numConfirmed) {
+        while (!unconfirmedASdus.isEmpty()
+                && sequenceNumberDiff(
+                                unconfirmedASdus.peek().sendSequenceNumber, previousAcknowledgedSendSequenceNumber)
+                        < numConfirmed) {
+            final CompletableFuture<Void> future = unconfirmedASdus.poll().future;
+            completionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    future.complete(null);
+                }
+            });
         }
     }
 
     /**
-     * Returns true if connection is closed else false.
-     *
-     * @return true if closed
+     * Removes the ASDUs that wait in the outbound queue and optionally those that have not been
+     * confirmed yet, in the order they were passed to the connection.
      */
-    public boolean isClosed() {
-        return closed;
+    List<PendingASdu> drainPendingASdus(boolean includeUnconfirmed) {
+        synchronized (windowLock) {
+            List<PendingASdu> pending = new ArrayList<>(unconfirmedASdus.size() + outboundQueue.size());
+            if (includeUnconfirmed) {
+                pending.addAll(unconfirmedASdus);
+                unconfirmedASdus.clear();
+            }
+            for (PendingASdu pendingASdu : outboundQueue) {
+                // the ASDUs of blocked senders are not passed on, their threads fail once woken up
+                if (!pendingASdu.blocking) {
+                    pending.add(pendingASdu);
+                }
+            }
+            outboundQueue.clear();
+            coalescableASdus.clear();
+            signalWindowChanged();
+            return pending;
+        }
     }
 
     /**
-     * Returns true if data transfer is stopped.
-     *
-     * @return true if stopped
+     * Adds ASDUs taken over from another connection of the redundancy group or buffered by the group
+     * to the outbound queue. They are subject to the outbound overflow policy like the ASDUs queued
+     * by sendAsync, the futures of discarded ASDUs are completed with a RejectedExecutionException.
      */
-    public boolean isStopped() {
-        return stopped;
+    void queuePendingASdus(List<PendingASdu> pending) {
+        List<PendingASdu> discarded = new ArrayList<>();
+        synchronized (windowLock) {
+            for (PendingASdu pendingASdu : pending) {
+                long coalesceKey = pendingASdu.coalesceKey;
+                pendingASdu.coalesceKey = PendingASdu.NO_COALESCE_KEY;
+                PendingASdu discardedASdu = queueASdu(coalesceKey, pendingASdu);
+                if (discardedASdu != null) {
+                    discarded.add(discardedASdu);
+                }
+            }
+        }
+        for (PendingASdu discardedASdu : discarded) {
+            discardedASdu.future.completeExceptionally(new RejectedExecutionException("Outbound queue is full."));
+        }
     }
 
-    private void setStopped(boolean stopped) {
-        this.stopped = stopped;
-        if (aSduListener != null) {
-            this.aSduListener.dataTransferStateChanged(Connection.this, stopped);
+    /**
+     * Stops sending because another connection of the redundancy group has been started, the
+     * connection is closed afterwards by {@link #closeDeactivated()}. Called while holding the lock
+     * of the group, so the monitor of this connection is not taken.
+     *
+     * @return the ASDUs that have not been confirmed or not been sent
+     */
+    List<PendingASdu> deactivate() {
+        synchronized (windowLock) {
+            stopped = true;
+            return drainPendingASdus(true);
         }
     }
 
-    synchronized void sendBuffer(byte[] aSdu) throws IOException, IllegalArgumentException {
-
-        while (getNumUnconfirmedAPdusSent() >= settings.getMaxNumOfOutstandingIPdus()) {
-            try {
-                this.wait();
-            } catch (InterruptedException e) {
-                throw new IOException(e);
+    /**
+     * Closes this connection because another connection of the redundancy group has been started.
+     * Only the controlling station may stop the data transfer, so the peer still considers this
+     * connection started, and its next I- or S-frame would close it in the stopped state anyway.
+     */
+    private void closeDeactivated() {
+        synchronized (this) {
+            if (closedIOException == null) {
+                closedIOException = new IOException("Another connection of the redundancy group has been started.");
             }
         }
+        close();
+    }
 
-        if (closed) {
-            throw new IOException("connection closed");
-        }
-        if (stopped) {
-            throw new IllegalArgumentException("May not send ASdu, data transfer is stopped.");
+    /**
+     * Calls the listener directly or, with the selector transport, on the callback executor, as the
+     * state may be changed by the event loop, which must not wait for a listener.
+     */
+    private void notifyDataTransferStateChanged(final ConnectionEventListener listener, final boolean stopped) {
+        if (channelHandler == null) {
+            listener.dataTransferStateChanged(this, stopped);
+            return;
         }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.dataTransferStateChanged(Connection.this, stopped);
+            }
+        });
+    }
 
-        acknowledgedReceiveSequenceNumber = receiveSequenceNumber;
-        APdu requestAPdu = new APdu(sendSequenceNumber, receiveSequenceNumber, ApciType.I_FORMAT, aSdu);
+    /**
+     * Returns true if a received ASDU cannot be passed to the listener without waiting, see {@link
+     * ListenerDispatcher#isFull()}.
+     */
+    boolean isListenerQueueFull() {
+        return aSduListener != null && !(aSduListener instanceof ASduViewListener) && dispatcher.isFull();
+    }
 
-        int oldSendSequenceNumber = sendSequenceNumber;
-        sendSequenceNumber = (sendSequenceNumber + 1) % (1 << 15); // 32768 = 2^15
+    /** Runs the given task once the listener has taken a queued ASDU, see {@link ListenerDispatcher#whenNotFull}. */
+    void whenListenerQueueNotFull(Runnable task) {
+        dispatcher.whenNotFull(task);
+    }
 
-        // check for sendSequenceNumber overflow
-        if (oldSendSequenceNumber > sendSequenceNumber) {
-            sendSFormatPdu();
+    /**
+     * Stops acknowledging the I-frames received after the current one until the given condition holds
+     * or the given delay has elapsed. The peer stops sending once k I-frames are unacknowledged, so
+     * its send window is coupled to the condition without blocking the thread that reads from this
+     * connection. The delay has to be shorter than t1 of the peer. Does nothing if the
+     * acknowledgements are held already, must be called by the thread that handles the received
+     * APDUs.
+     *
+     * @param releaseCondition checked by the executor of this connection every timer tick, must not block
+     * @param maxDelay the maximum time in ms the acknowledgements are held
+     */
+    void holdAcknowledgements(BooleanSupplier releaseCondition, int maxDelay) {
+        if (heldReceiveSequenceNumber >= 0 || closed) {
+            return;
         }
+        acknowledgementHoldTimer.releaseCondition = releaseCondition;
+        acknowledgementHoldTimer.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelay);
+        heldReceiveSequenceNumber = receiveSequenceNumber;
+        timeoutManager.addTimerTask(acknowledgementHoldTimer);
+    }
 
-        if (this.maxTimeNoAckSentTimer.isPlanned()) {
-            this.maxTimeNoAckSentTimer.cancel();
-        }
+    /** Returns the receive sequence number that may be acknowledged, see {@link #holdAcknowledgements}. */
+    private int acknowledgeableReceiveSequenceNumber() {
+        int heldReceiveSequenceNumber = this.heldReceiveSequenceNumber;
+        return heldReceiveSequenceNumber < 0 ? receiveSequenceNumber : heldReceiveSequenceNumber;
+    }
 
-        if (!this.maxTimeNoAckReceived.isPlanned()) {
-            this.timeoutManager.addTimerTask(this.maxTimeNoAckReceived);
+    /** Returns true if the outbound queue is full, so that further ASDUs would be rejected or discard others. */
+    boolean isOutboundQueueFull() {
+        synchronized (windowLock) {
+            return outboundQueue.size() >= settings.getMaxOutboundQueueSize();
         }
+    }
 
-        int length = requestAPdu.encode(buffer, settings);
-        os.write(buffer, 0, length);
-        os.flush();
-        resetMaxIdleTimeTimer();
+    ConnectionSettings getSettings() {
+        return settings;
+    }
+
+    boolean isQueueWhileStopped() {
+        return settings.isQueueWhileStopped();
+    }
+
+    RedundancyGroup getRedundancyGroup() {
+        return redundancyGroup;
+    }
+
+    /** Wakes up the blocking senders waiting for the send window, called while holding the window lock. */
+    private void signalWindowChanged() {
+        windowWaitLock.lock();
+        try {
+            windowChanged.signalAll();
+        } finally {
+            windowWaitLock.unlock();
+        }
     }
 
-    public synchronized void send(ASdu aSdu) throws IOException, IllegalArgumentException {
-        int asduLength = aSdu.encode(asduBuffer, 0, settings);
-        byte[] asduBufferCut = Arrays.copyOf(asduBuffer, asduLength);
-        sendBuffer(asduBufferCut);
+    private void failPendingASdus(IOException cause) {
+        synchronized (windowLock) {
+            for (PendingASdu pendingASdu : unconfirmedASdus) {
+                pendingASdu.future.completeExceptionally(cause);
+            }
+            unconfirmedASdus.clear();
+            for (PendingASdu pendingASdu : outboundQueue) {
+                pendingASdu.future.completeExceptionally(cause);
+            }
+            outboundQueue.clear();
+            coalescableASdus.clear();
+            signalWindowChanged();
+        }
     }
 
     private void resetMaxIdleTimeTimer() {
@@ -1570,18 +2614,60 @@ public class Connection implements AutoCloseable {
         return closedIOException;
     }
 
+    /**
+     * A timeout of this connection. The shared timer thread only passes the expired timeout on to the
+     * executor of this connection, which writes to the socket or notifies the listener, so that a
+     * stuck peer or a slow listener does not delay the timeouts of other connections.
+     */
+    private abstract class ConnectionTimeoutTask extends TimeoutTask {
+
+        ConnectionTimeoutTask(long timeout) {
+            super(timeout);
+        }
+
+        @Override
+        protected final void execute() {
+            final long generation = getGeneration();
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isObsolete(generation)) {
+                            expired();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the executor is shut down once the connection is closed
+            }
+        }
+
+        /**
+         * Returns true if the expired timeout does not have to be handled anymore.
+         *
+         * @param generation the generation of the task when it expired
+         * @return true if the timeout has been rescheduled or canceled in the meantime
+         */
+        boolean isObsolete(long generation) {
+            return getGeneration() != generation;
+        }
+
+        /** Handles the expired timeout, called by the executor of the connection. */
+        abstract void expired();
+    }
+
     /** Time-out of send or test APDUs (t1: default 15 s) */
-    private class MaxTimeNoAckReceivedTimer extends TimeoutTask {
+    private class MaxTimeNoAckReceivedTimer extends ConnectionTimeoutTask {
 
         public MaxTimeNoAckReceivedTimer() {
             super(Connection.this.settings.getMaxTimeNoAckReceived());
         }
 
         @Override
-        public void execute() {
+        void expired() {
 
             synchronized (Connection.this) {
-                if (Thread.interrupted()) {
+                if (closed) {
                     return;
                 }
                 close();
@@ -1598,136 +2684,325 @@ public class Connection implements AutoCloseable {
     }
 
     /** Time-out for acknowledges in case of no data messages t2 < t1 (t2: default 10 s) */
-    private class MaxTimeNoAckSentTimer extends TimeoutTask {
+    private class MaxTimeNoAckSentTimer extends ConnectionTimeoutTask {
 
         public MaxTimeNoAckSentTimer() {
             super(settings.getMaxTimeNoAckSent());
         }
 
         @Override
-        public void execute() {
+        void expired() {
+            if (closed) {
+                return;
+            }
+            try {
+                // the I-frames may have been acknowledged by a sent I-frame in the meantime
+                sendSFormatIfUnconfirmedAPdu();
+            } catch (IOException ignored) {
+            }
+        }
+    }
 
-            synchronized (Connection.this) {
-                if (Thread.interrupted()) {
-                    return;
-                }
-                try {
-                    sendSFormatPdu();
-                } catch (IOException ignored) {
-                }
+    /**
+     * Releases the acknowledgements held by {@link #holdAcknowledgements} once the release condition
+     * holds or the deadline has passed, otherwise checks again after the next tick.
+     */
+    private class AcknowledgementHoldTimer extends ConnectionTimeoutTask {
+
+        volatile BooleanSupplier releaseCondition;
+        volatile long deadline;
+
+        AcknowledgementHoldTimer() {
+            super(settings.getTimerTickDuration());
+        }
+
+        @Override
+        void expired() {
+            if (closed || heldReceiveSequenceNumber < 0) {
+                return;
+            }
+            if (!releaseCondition.getAsBoolean() && System.nanoTime() - deadline < 0) {
+                timeoutManager.addTimerTask(this);
+                return;
+            }
+            heldReceiveSequenceNumber = -1;
+            try {
+                sendSFormatIfUnconfirmedAPdu();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /** Flushes coalesced APDUs once the maximum write delay has elapsed. */
+    private class MaxWriteDelayTimer extends ConnectionTimeoutTask {
+
+        public MaxWriteDelayTimer() {
+            super(settings.getMaxWriteDelay());
+        }
+
+        @Override
+        boolean isObsolete(long generation) {
+            // an APDU written in the meantime rescheduled the timer, but the earlier ones are due
+            return false;
+        }
+
+        @Override
+        void expired() {
+            if (closed) {
+                return;
+            }
+            writeLock.lock();
+            try {
+                flush();
+            } catch (IOException ignored) {
+            } finally {
+                unlockWrite();
             }
         }
     }
 
     /** Time-out for sending test frames in case of a long idle state (t3: default 20 s) */
-    private class MaxIdleTimeTimer extends TimeoutTask {
+    private class MaxIdleTimeTimer extends ConnectionTimeoutTask {
         public MaxIdleTimeTimer() {
             super(Connection.this.settings.getMaxIdleTime());
         }
 
         @Override
-        public void execute() {
+        void expired() {
 
-            synchronized (Connection.this) {
-                if (Thread.interrupted()) {
-                    return;
+            if (closed) {
+                return;
+            }
+            try {
+                writeControlFrame(TESTFR_ACT_BUFFER);
+            } catch (IOException ignore) {
+            }
+            timeoutManager.addTimerTask(maxTimeNoTestConReceived);
+        }
+    }
+
+    /**
+     * Handles a received APDU. Called by the {@link ConnectionReader} or the {@link
+     * SelectorChannelHandler} of this connection.
+     *
+     * @param aPdu the received APDU
+     * @throws IOException if the APDU violates the protocol or a response could not be sent
+     */
+    void handleAPdu(APdu aPdu) throws IOException {
+        if (trafficRecorders != null) {
+            recordReceived(aPdu);
+        }
+        switch (aPdu.getApciType()) {
+            case I_FORMAT:
+                closeIfStopped(aPdu.getApciType());
+
+                if (aSduListener instanceof ASduViewListener) {
+                    try {
+                        aSduView.wrap(aPdu.getFrameBuffer(), aPdu.getASduOffset(), aPdu.getASduLength());
+                    } catch (UnknownAsduTypeException e) {
+                        mirrorUnknownAsduType(aPdu);
+                        return;
+                    }
+                    ASdu response = null;
+                    if ((!commandCorrelator.isEmpty() && isCommandResponse(aSduView.getCauseOfTransmission()))
+                            || (aSduView.getTypeIdentification() == ASduType.C_IC_NA_1
+                                    && serverThread != null
+                                    && settings.getProcessImage() != null)) {
+                        // pending commands and interrogations answered by the process image need the
+                        // decoded ASDU
+                        asduInputStream.setBuffer(aPdu.getFrameBuffer(), aPdu.getASduOffset(), aPdu.getASduLength());
+                        response = ASdu.decode(asduDataInputStream, settings, aPdu.getASduLength());
+                    }
+                    handleIFrame(aPdu, response);
+                    break;
                 }
+
+                // the ASDU is decoded directly from the receive buffer
+                asduInputStream.setBuffer(aPdu.getFrameBuffer(), aPdu.getASduOffset(), aPdu.getASduLength());
+                ASdu asdu;
                 try {
-                    os.write(TESTFR_ACT_BUFFER, 0, TESTFR_ACT_BUFFER.length);
-                    os.flush();
-                } catch (IOException ignore) {
+                    asdu = ASdu.decode(asduDataInputStream, settings, aPdu.getASduLength());
+                } catch (UnknownAsduTypeException e) {
+                    mirrorUnknownAsduType(aPdu);
+                    return;
+                }
+                handleIFrame(aPdu, asdu);
+                break;
+            case S_FORMAT:
+                closeIfStopped(aPdu.getApciType());
+                handleReceiveSequenceNumber(aPdu.getReceiveSeqNumber());
+                if (pendingStopDtCon && !maxTimeNoAckReceived.isPlanned()) {
+                    pendingStopDtCon = false;
+                    writeControlFrame(STOPDT_CON_BUFFER);
+                }
+                break;
+            case STARTDT_CON:
+                if (startDtConSignal != null) {
+                    startDtConSignal.countDown();
+                }
+                break;
+            case STARTDT_ACT:
+                handleStartDtAct();
+                if (startDtActSignal != null) {
+                    startDtActSignal.countDown();
+                }
+                break;
+            case TESTFR_ACT:
+                writeControlFrame(TESTFR_CON_BUFFER);
+                break;
+            case TESTFR_CON:
+                maxTimeNoTestConReceived.cancel();
+                break;
+            case STOPDT_CON:
+                if (stopDtConSignal != null) {
+                    stopDtConSignal.countDown();
                 }
-                timeoutManager.addTimerTask(maxTimeNoTestConReceived);
+                break;
+            case STOPDT_ACT:
+                handleStopDtAct();
+                break;
+            default:
+                // should not occur.
+                throw new IOException("Got unexpected message with APCI Type: " + aPdu.getApciType());
+        }
+        resetMaxIdleTimeTimer();
+    }
+
+    private static TrafficRecorder[] trafficRecorders(ConnectionSettings settings) {
+        TrafficJournal trafficJournal = settings.getTrafficJournal();
+        PcapngCapture pcapngCapture = settings.getPcapngCapture();
+        if (trafficJournal != null && pcapngCapture != null) {
+            return new TrafficRecorder[] {trafficJournal, pcapngCapture};
+        } else if (trafficJournal != null) {
+            return new TrafficRecorder[] {trafficJournal};
+        } else if (pcapngCapture != null) {
+            return new TrafficRecorder[] {pcapngCapture};
+        }
+        return null;
+    }
+
+    private void recordSent(byte[] frame, int length) {
+        for (int i = 0; i < trafficRecorders.length; i++) {
+            trafficRecorders[i].record(recorderConnectionIds[i], true, frame, 0, length);
+        }
+    }
+
+    private void recordReceived(APdu aPdu) {
+        if (aPdu.getApciType() == ApciType.I_FORMAT) {
+            // the control fields precede the ASDU in the receive buffer
+            for (int i = 0; i < trafficRecorders.length; i++) {
+                trafficRecorders[i].recordReceived(
+                        recorderConnectionIds[i],
+                        aPdu.getFrameBuffer(),
+                        aPdu.getASduOffset() - 4,
+                        aPdu.getASduLength() + 4);
+            }
+        } else {
+            int length = aPdu.encode(recordBuffer, settings);
+            for (int i = 0; i < trafficRecorders.length; i++) {
+                trafficRecorders[i].record(recorderConnectionIds[i], false, recordBuffer, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Called by the event loop of the selector transport once the channel has been closed. The
+     * connection is closed on the callback executor, so that the listeners are not called by the
+     * event loop and are notified after the callbacks queued before.
+     *
+     * @param cause the exception that closed the channel
+     */
+    void handleChannelClosed(final Exception cause) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                handleTransportClosed(cause);
+            }
+        });
+    }
+
+    /**
+     * Called once the transport stopped receiving APDUs. Closes the connection and notifies the
+     * listeners.
+     *
+     * @param cause the exception that stopped the transport
+     */
+    void handleTransportClosed(Exception cause) {
+        if (closedIOException != null) {
+            // the connection has been closed deliberately, e.g. by closeDeactivated
+        } else if (cause instanceof EOFException) {
+            closedIOException = new EOFException("Connection was closed by remote.");
+        } else if (cause instanceof IOException) {
+            closedIOException = (IOException) cause;
+        } else if (cause != null) {
+            closedIOException = new IOException("Unexpected Exception.", cause);
+        }
+
+        synchronized (this) {
+            if (!closed) {
+                close();
+            }
+            if (aSduListener != null) {
+                aSduListener.connectionClosed(Connection.this, closedIOException);
+            }
+            if (stopped && aSduListenerBack != null) {
+                aSduListenerBack.connectionClosed(Connection.this, closedIOException);
             }
+            IOException closeCause =
+                    closedIOException != null ? closedIOException : new IOException("Connection closed.");
+            if (serverThread != null && settings.getProcessImage() != null) {
+                settings.getProcessImage().detach(this);
+            }
+            if (redundancyGroup != null) {
+                // the other connections of the group send the pending ASDUs instead
+                redundancyGroup.closed(this);
+            }
+            failPendingASdus(closeCause);
+            commandCorrelator.close(closeCause);
+            closeThreadPool();
+            releaseTimeoutManager();
         }
     }
 
-    private class ConnectionReader extends Thread {
+    private class ConnectionReader implements Runnable {
 
         @Override
         public void run() {
             Thread.currentThread().setName("ConnectionReader");
 
+            Exception cause = null;
             try {
                 while (true) {
-                    APdu aPdu = APdu.decode(socket, settings, is);
-
-                    synchronized (Connection.this) {
-                        switch (aPdu.getApciType()) {
-                            case I_FORMAT:
-                                closeIfStopped(aPdu.getApciType());
-
-                                ExtendedDataInputStream is =
-                                        new ExtendedDataInputStream(new ByteArrayInputStream(aPdu.getASduBuffer()));
-                                ASdu asdu;
-                                try {
-                                    asdu = ASdu.decode(is, settings, aPdu.getASduBuffer().length);
-                                } catch (UnknownAsduTypeException e) {
-                                    mirrorUnknownAsduType(aPdu);
-                                    continue;
-                                }
-                                handleIFrame(aPdu, asdu);
-                                break;
-                            case S_FORMAT:
-                                closeIfStopped(aPdu.getApciType());
-                                handleReceiveSequenceNumber(aPdu.getReceiveSeqNumber());
-                                if (pendingStopDtCon && !maxTimeNoAckReceived.isPlanned()) {
-                                    pendingStopDtCon = false;
-                                    sendStopDtCon();
-                                }
-                                break;
-                            case STARTDT_CON:
-                                if (startDtConSignal != null) {
-                                    startDtConSignal.countDown();
-                                }
-                                break;
-                            case STARTDT_ACT:
-                                handleStartDtAct();
-                                if (startDtActSignal != null) {
-                                    startDtActSignal.countDown();
-                                }
-                                break;
-                            case TESTFR_ACT:
-                                sendTestFrameCon();
-                                break;
-                            case TESTFR_CON:
-                                maxTimeNoTestConReceived.cancel();
-                                break;
-                            case STOPDT_CON:
-                                if (stopDtConSignal != null) {
-                                    stopDtConSignal.countDown();
-                                }
-                                break;
-                            case STOPDT_ACT:
-                                handleStopDtAct();
-                                break;
-                            default:
-                                // should not occur.
-                                throw new IOException("Got unexpected message with APCI Type: " + aPdu.getApciType());
-                        }
-                        resetMaxIdleTimeTimer();
-                    }
+                    handleAPdu(APdu.decode(socket, settings, is, readBuffer));
                 }
-            } catch (EOFException e) {
-                closedIOException = new EOFException("Connection was closed by remote.");
-            } catch (IOException e) {
-                closedIOException = e;
             } catch (Exception e) {
-                closedIOException = new IOException("Unexpected Exception.", e);
+                cause = e;
             } finally {
-                synchronized (Connection.this) {
-                    if (!closed) {
-                        close();
-                    }
-                    if (aSduListener != null) {
-                        aSduListener.connectionClosed(Connection.this, closedIOException);
-                    }
-                    if (stopped && aSduListenerBack != null) {
-                        aSduListenerBack.connectionClosed(Connection.this, closedIOException);
-                    }
-                    closeThreadPool();
-                }
+                handleTransportClosed(cause);
             }
         }
     }
+
+    static class PendingASdu {
+        static final long NO_COALESCE_KEY = -1;
+
+        // replaced by a newer value while the ASDU is queued, see OutboundOverflowPolicy.COALESCE
+        byte[] aSdu;
+        final CompletableFuture<Void> future;
+        private int sendSequenceNumber;
+        private long coalesceKey = NO_COALESCE_KEY;
+        // queued by a thread that waits in send until the ASDU has been written, guarded by the window lock
+        private boolean blocking;
+        private boolean written;
+
+        PendingASdu(byte[] aSdu, CompletableFuture<Void> future) {
+            this.aSdu = aSdu;
+            this.future = future;
+        }
+
+        PendingASdu(byte[] aSdu, CompletableFuture<Void> future, long coalesceKey) {
+            this(aSdu, future);
+            this.coalesceKey = coalesceKey;
+        }
+    }
 }
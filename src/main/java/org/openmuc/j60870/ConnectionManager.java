@@ -0,0 +1,630 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.openmuc.j60870.ie.IeQualifierOfInterrogation;
+
+/**
+ * Maintains the client connections to many IEC 60870-5-104 servers. Every link added to the manager
+ * is connected and started in the background and reconnected whenever its connection is lost.
+ *
+ * <p>At most {@link #setMaxConcurrentConnects(int)} links are connected at the same time, the other
+ * links wait for a free connect slot. After a failure a link waits for an exponentially increasing,
+ * randomly jittered delay before it connects again, so that the links of a network segment that
+ * recovers from an outage do not all reconnect at the same moment. Once connected, the data
+ * transfer is started with STARTDT and optionally a general interrogation is sent.
+ *
+ * <p>Together with the selector transport ({@link CommonBuilder#useSelectorTransport(int)})
+ * established links do not need a thread each, so the number of threads stays bounded by the
+ * number of selector threads and concurrent connects.
+ */
+public class ConnectionManager implements AutoCloseable {
+
+    private static final int DEFAULT_MAX_CONCURRENT_CONNECTS = 16;
+    private static final int DEFAULT_MIN_RECONNECT_DELAY = 1000;
+    private static final int DEFAULT_MAX_RECONNECT_DELAY = 60_000;
+
+    private final List<Link> links = new CopyOnWriteArrayList<>();
+    private final ThreadPoolExecutor connectExecutor;
+    private final TimeoutManager timeoutManager;
+
+    private volatile int minReconnectDelay = DEFAULT_MIN_RECONNECT_DELAY;
+    private volatile int maxReconnectDelay = DEFAULT_MAX_RECONNECT_DELAY;
+    private volatile boolean generalInterrogation;
+    private volatile boolean closed;
+
+    /** Creates a connection manager without links. */
+    public ConnectionManager() {
+        connectExecutor = new ThreadPoolExecutor(
+                DEFAULT_MAX_CONCURRENT_CONNECTS,
+                DEFAULT_MAX_CONCURRENT_CONNECTS,
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                Executors.defaultThreadFactory());
+        connectExecutor.allowCoreThreadTimeOut(true);
+        timeoutManager = TimeoutManager.acquire(TimeoutManager.DEFAULT_TICK_DURATION);
+    }
+
+    /**
+     * Sets the maximum number of links that are connected and started at the same time. Default is
+     * 16.
+     *
+     * @param maxConcurrentConnects the maximum number of concurrent connects, at least 1
+     * @return this manager
+     */
+    public ConnectionManager setMaxConcurrentConnects(int maxConcurrentConnects) {
+        if (maxConcurrentConnects < 1) {
+            throw new IllegalArgumentException(
+                    "invalid maximum number of concurrent connects: " + maxConcurrentConnects);
+        }
+        if (maxConcurrentConnects > connectExecutor.getMaximumPoolSize()) {
+            connectExecutor.setMaximumPoolSize(maxConcurrentConnects);
+            connectExecutor.setCorePoolSize(maxConcurrentConnects);
+        } else {
+            connectExecutor.setCorePoolSize(maxConcurrentConnects);
+            connectExecutor.setMaximumPoolSize(maxConcurrentConnects);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the range of the delay before a link is reconnected. The delay starts at the minimum and
+     * is doubled with every failed attempt until it reaches the maximum. A random jitter of up to half
+     * of the delay is subtracted. Default is 1 s to 60 s.
+     *
+     * @param minReconnectDelay the delay in ms after the first failure
+     * @param maxReconnectDelay the maximum delay in ms
+     * @return this manager
+     */
+    public ConnectionManager setReconnectDelay(int minReconnectDelay, int maxReconnectDelay) {
+        if (minReconnectDelay < 1 || maxReconnectDelay < minReconnectDelay) {
+            throw new IllegalArgumentException(
+                    "invalid reconnect delay: " + minReconnectDelay + "ms to " + maxReconnectDelay + "ms");
+        }
+        this.minReconnectDelay = minReconnectDelay;
+        this.maxReconnectDelay = maxReconnectDelay;
+        return this;
+    }
+
+    /**
+     * Enables sending a general interrogation to the global common address after the data transfer of
+     * a link has been started. Default is false.
+     *
+     * @param generalInterrogation true to interrogate after every (re)connect
+     * @return this manager
+     */
+    public ConnectionManager setGeneralInterrogation(boolean generalInterrogation) {
+        this.generalInterrogation = generalInterrogation;
+        return this;
+    }
+
+    /**
+     * Adds a link that is connected using the given builder. The received ASDUs and the connection
+     * events of every connection of the link are passed to the listener configured in the builder.
+     * The builder must not be changed afterwards, because it is used again for every reconnect.
+     *
+     * @param builder the builder used to connect the link
+     * @return the link
+     */
+    public Link addLink(ClientConnectionBuilder builder) {
+        if (closed) {
+            throw new IllegalStateException("The connection manager is closed.");
+        }
+        Link link = new Link(builder, null);
+        links.add(link);
+        link.connectLater();
+        return link;
+    }
+
+    /**
+     * Adds a redundancy group of links to the same controlled station, e.g. to its redundant front-end
+     * nodes. All links of the group are connected, but the data transfer is only started on one of
+     * them, the others are kept on standby. When the active link fails, the data transfer is started
+     * on a standby link. The controlled station then sends the events that were not confirmed on the
+     * failed link again, so no general interrogation is sent on such a switchover.
+     *
+     * @param builders the builders used to connect the links of the group
+     * @return the group
+     */
+    public LinkGroup addRedundancyGroup(ClientConnectionBuilder... builders) {
+        if (closed) {
+            throw new IllegalStateException("The connection manager is closed.");
+        }
+        LinkGroup group = new LinkGroup();
+        for (ClientConnectionBuilder builder : builders) {
+            group.links.add(new Link(builder, group));
+        }
+        links.addAll(group.links);
+        for (Link link : group.links) {
+            link.connectLater();
+        }
+        return group;
+    }
+
+    /**
+     * Removes the link and closes its connection.
+     *
+     * @param link the link to remove
+     */
+    public void removeLink(Link link) {
+        if (links.remove(link)) {
+            link.close();
+        }
+    }
+
+    /**
+     * Returns the links of this manager.
+     *
+     * @return a snapshot of the links
+     */
+    public List<Link> getLinks() {
+        return new ArrayList<>(links);
+    }
+
+    /**
+     * Returns the number of links that are in the given state.
+     *
+     * @param state the state
+     * @return the number of links
+     */
+    public int getNumLinks(LinkState state) {
+        int count = 0;
+        for (Link link : links) {
+            if (link.getState() == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Closes all links and releases the connect threads. */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Link link : links) {
+            link.close();
+        }
+        links.clear();
+        connectExecutor.shutdownNow();
+        TimeoutManager.release(timeoutManager);
+    }
+
+    private void execute(Runnable task) {
+        try {
+            connectExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // the manager has been closed in the meantime
+        }
+    }
+
+    private long reconnectDelay(int numFailures) {
+        long delay = (long) minReconnectDelay << Math.min(numFailures - 1, 20);
+        delay = Math.min(delay, maxReconnectDelay);
+        return delay - ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /** The state of a link. */
+    public enum LinkState {
+        /** The link waits for a connect slot or is connecting and starting the data transfer. */
+        CONNECTING,
+        /** The data transfer of the connection has been started. */
+        CONNECTED,
+        /** The link of a redundancy group is connected, but its data transfer is not started. */
+        STANDBY,
+        /** The last connect failed or the connection was lost, the link waits to reconnect. */
+        WAITING,
+        /** The link has been removed or the manager has been closed. */
+        CLOSED;
+    }
+
+    /** A link to a single server that is reconnected by its {@link ConnectionManager}. */
+    public class Link {
+
+        private final ClientConnectionBuilder builder;
+        private final ConnectionEventListener listener;
+        private final LinkGroup group;
+
+        // guarded by this
+        private LinkState state = LinkState.CONNECTING;
+        private Connection connection;
+        private IOException lastError;
+        private int numFailures;
+        private int numConnects;
+        private long lastStateChange = System.currentTimeMillis();
+        private TimeoutTask reconnectTask;
+
+        Link(ClientConnectionBuilder builder, LinkGroup group) {
+            this.builder = builder;
+            this.group = group;
+            this.listener = LinkListener.wrap(this, builder.settings.getConnectionEventListener());
+        }
+
+        /**
+         * Returns the current state of the link.
+         *
+         * @return the state
+         */
+        public synchronized LinkState getState() {
+            return state;
+        }
+
+        /**
+         * Returns the connection of the link if its data transfer has been started.
+         *
+         * @return the connection or null if the link is not connected
+         */
+        public synchronized Connection getConnection() {
+            return state == LinkState.CONNECTED ? connection : null;
+        }
+
+        /**
+         * Returns the cause of the last failed connect or of the last lost connection.
+         *
+         * @return the last error or null if the link is connected or has not failed yet
+         */
+        public synchronized IOException getLastError() {
+            return lastError;
+        }
+
+        /**
+         * Returns the redundancy group of the link.
+         *
+         * @return the group or null if the link is not part of a group
+         */
+        public LinkGroup getGroup() {
+            return group;
+        }
+
+        /**
+         * Returns the number of failed connects since the link was last connected.
+         *
+         * @return the number of consecutive failures
+         */
+        public synchronized int getNumFailures() {
+            return numFailures;
+        }
+
+        /**
+         * Returns how often the connection of the link has been established.
+         *
+         * @return the number of successful connects
+         */
+        public synchronized int getNumConnects() {
+            return numConnects;
+        }
+
+        /**
+         * Returns the time of the last state change.
+         *
+         * @return the time in ms since epoch
+         */
+        public synchronized long getLastStateChange() {
+            return lastStateChange;
+        }
+
+        private void connectLater() {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    connect();
+                }
+            });
+        }
+
+        private void connect() {
+            synchronized (this) {
+                if (state == LinkState.CLOSED) {
+                    return;
+                }
+                setState(LinkState.CONNECTING);
+            }
+
+            Connection newConnection = null;
+            try {
+                newConnection = builder.build(listener);
+                boolean linkClosed;
+                synchronized (this) {
+                    linkClosed = state == LinkState.CLOSED;
+                    if (!linkClosed) {
+                        connection = newConnection;
+                        numFailures = 0;
+                        numConnects++;
+                        lastError = null;
+                    }
+                }
+                if (linkClosed) {
+                    // the connection notifies its listener while holding its monitor, so it is never
+                    // closed while holding the monitor of the link
+                    newConnection.close();
+                    return;
+                }
+
+                if (group != null && !group.claim(this)) {
+                    synchronized (this) {
+                        if (connection == newConnection && state == LinkState.CONNECTING) {
+                            setState(LinkState.STANDBY);
+                        }
+                    }
+                    return;
+                }
+
+                start(newConnection, generalInterrogation);
+            } catch (IOException e) {
+                failed(newConnection, e);
+            } catch (RuntimeException e) {
+                failed(newConnection, new IOException("Unexpected Exception.", e));
+            }
+        }
+
+        /** Starts the data transfer of a standby link after the active link of its group failed. */
+        private void promote() {
+            Connection standbyConnection = null;
+            synchronized (this) {
+                if (state == LinkState.STANDBY) {
+                    standbyConnection = connection;
+                    setState(LinkState.CONNECTING);
+                }
+            }
+            if (standbyConnection == null) {
+                group.released(this);
+                return;
+            }
+
+            try {
+                start(standbyConnection, false);
+            } catch (IOException e) {
+                failed(standbyConnection, e);
+            } catch (RuntimeException e) {
+                failed(standbyConnection, new IOException("Unexpected Exception.", e));
+            }
+        }
+
+        private void start(Connection startConnection, boolean interrogate) throws IOException {
+            startConnection.startDataTransfer();
+            if (interrogate) {
+                int commonAddress = builder.settings.getCommonAddressFieldLength() == 1 ? 0xff : 0xffff;
+                startConnection.interrogation(
+                        commonAddress, CauseOfTransmission.ACTIVATION, IeQualifierOfInterrogation.of((byte) 20));
+            }
+
+            synchronized (this) {
+                if (connection == startConnection && state == LinkState.CONNECTING) {
+                    setState(LinkState.CONNECTED);
+                }
+            }
+        }
+
+        private void failed(Connection failedConnection, IOException cause) {
+            if (failedConnection != null) {
+                failedConnection.close();
+            }
+            reconnectLater(failedConnection, cause);
+        }
+
+        /** Schedules a reconnect unless the failure of the given connection has been handled already. */
+        void reconnectLater(Connection failedConnection, IOException cause) {
+            synchronized (this) {
+                if (state == LinkState.CLOSED || failedConnection != connection) {
+                    return;
+                }
+                connection = null;
+                lastError = cause;
+                numFailures++;
+                setState(LinkState.WAITING);
+
+                reconnectTask = new TimeoutTask(reconnectDelay(numFailures)) {
+                    @Override
+                    protected void execute() {
+                        if (!closed) {
+                            connectLater();
+                        }
+                    }
+                };
+                timeoutManager.addTimerTask(reconnectTask);
+            }
+            if (group != null) {
+                group.released(this);
+            }
+        }
+
+        private void promoteLater() {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    promote();
+                }
+            });
+        }
+
+        private void close() {
+            Connection toClose;
+            synchronized (this) {
+                if (state == LinkState.CLOSED) {
+                    return;
+                }
+                setState(LinkState.CLOSED);
+                if (reconnectTask != null) {
+                    reconnectTask.cancel();
+                }
+                toClose = connection;
+                connection = null;
+            }
+            if (toClose != null) {
+                toClose.close();
+            }
+            if (group != null) {
+                group.released(this);
+            }
+        }
+
+        private void setState(LinkState state) {
+            this.state = state;
+            this.lastStateChange = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * A redundancy group of links to the same controlled station, see {@link
+     * ConnectionManager#addRedundancyGroup(ClientConnectionBuilder...)}.
+     */
+    public class LinkGroup {
+
+        private final List<Link> links = new CopyOnWriteArrayList<>();
+
+        // guarded by this
+        private Link active;
+
+        LinkGroup() {}
+
+        public List<Link> getLinks() {
+            return new ArrayList<>(links);
+        }
+
+        /**
+         * Returns the link whose data transfer is started or being started.
+         *
+         * @return the active link or null if no link of the group is connected
+         */
+        public synchronized Link getActiveLink() {
+            return active;
+        }
+
+        /** Returns true if the given link may start its data transfer. */
+        synchronized boolean claim(Link link) {
+            if (active == null) {
+                active = link;
+            }
+            return active == link;
+        }
+
+        /** Starts the data transfer on a standby link if the given link was the active one. */
+        void released(Link link) {
+            Link next = null;
+            synchronized (this) {
+                if (active != link) {
+                    return;
+                }
+                active = null;
+                for (Link candidate : links) {
+                    if (candidate != link && candidate.getState() == LinkState.STANDBY) {
+                        next = candidate;
+                        active = next;
+                        break;
+                    }
+                }
+            }
+            if (next != null && !closed) {
+                next.promoteLater();
+            }
+        }
+    }
+
+    /**
+     * Passes the events of the connections of a link to the listener of the application and
+     * reconnects the link when a connection is closed. The listener types that change how ASDUs are
+     * delivered are preserved.
+     */
+    private static class LinkListener implements ConnectionEventListener {
+
+        private final Link link;
+        private final ConnectionEventListener delegate;
+
+        LinkListener(Link link, ConnectionEventListener delegate) {
+            this.link = link;
+            this.delegate = delegate;
+        }
+
+        static ConnectionEventListener wrap(Link link, ConnectionEventListener delegate) {
+            if (delegate instanceof ASduViewListener) {
+                return new ViewLinkListener(link, (ASduViewListener) delegate);
+            } else if (delegate instanceof BatchConnectionEventListener) {
+                return new BatchLinkListener(link, (BatchConnectionEventListener) delegate);
+            }
+            return new LinkListener(link, delegate);
+        }
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {
+            if (delegate != null) {
+                delegate.newASdu(connection, aSdu);
+            }
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {
+            link.reconnectLater(connection, cause != null ? cause : new IOException("Connection closed."));
+            if (delegate != null) {
+                delegate.connectionClosed(connection, cause);
+            }
+        }
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {
+            if (delegate != null) {
+                delegate.dataTransferStateChanged(connection, stopped);
+            }
+        }
+    }
+
+    private static class ViewLinkListener extends LinkListener implements ASduViewListener {
+
+        private final ASduViewListener delegate;
+
+        ViewLinkListener(Link link, ASduViewListener delegate) {
+            super(link, delegate);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void newASduView(Connection connection, ASduView aSduView) {
+            delegate.newASduView(connection, aSduView);
+        }
+    }
+
+    private static class BatchLinkListener extends LinkListener implements BatchConnectionEventListener {
+
+        private final BatchConnectionEventListener delegate;
+
+        BatchLinkListener(Link link, BatchConnectionEventListener delegate) {
+            super(link, delegate);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void newASdus(Connection connection, List<ASdu> aSdus) {
+            delegate.newASdus(connection, aSdus);
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 class ConnectionSettings {
     private static final ExecutorService threadPool;
@@ -36,6 +37,7 @@ class ConnectionSettings {
     }
 
     private int messageFragmentTimeout;
+    private boolean tcpNoDelay;
 
     private int cotFieldLength;
     private int commonAddressFieldLength;
@@ -50,12 +52,27 @@ class ConnectionSettings {
     private int maxNumOfOutstandingIPdus;
 
     private boolean useSharedThreadPool;
+    private ThreadFactory threadFactory;
+    private int selectorThreads;
+    private int timerTickDuration;
+    private int maxWriteDelay;
+    private int maxOutboundQueueSize;
+    private OutboundOverflowPolicy outboundOverflowPolicy;
+    private boolean queueWhileStopped;
+    private int maxListenerQueueSize;
+    private OverflowPolicy listenerOverflowPolicy;
+    private int maxBatchSize;
+    private int maxBatchLinger;
+    private ProcessImage processImage;
+    private TrafficJournal trafficJournal;
+    private PcapngCapture pcapngCapture;
     private Set<ASduType> allowedTypes;
     private ReservedASduTypeDecoder reservedASduTypeDecoder;
     private ConnectionEventListener connectionEventListener;
 
     public ConnectionSettings() {
         this.messageFragmentTimeout = 5_000;
+        this.tcpNoDelay = false;
 
         this.cotFieldLength = 2;
         this.commonAddressFieldLength = 2;
@@ -69,6 +86,20 @@ class ConnectionSettings {
         this.maxNumOfOutstandingIPdus = 12;
 
         this.useSharedThreadPool = false;
+        this.threadFactory = null;
+        this.selectorThreads = 0;
+        this.timerTickDuration = TimeoutManager.DEFAULT_TICK_DURATION;
+        this.maxWriteDelay = 0;
+        this.maxOutboundQueueSize = 1000;
+        this.outboundOverflowPolicy = OutboundOverflowPolicy.REJECT;
+        this.queueWhileStopped = false;
+        this.maxListenerQueueSize = 1024;
+        this.listenerOverflowPolicy = OverflowPolicy.BLOCK;
+        this.maxBatchSize = 256;
+        this.maxBatchLinger = 0;
+        this.processImage = null;
+        this.trafficJournal = null;
+        this.pcapngCapture = null;
         this.connectionEventListener = null;
         this.allowedTypes = null;
     }
@@ -76,6 +107,7 @@ class ConnectionSettings {
     public ConnectionSettings(ConnectionSettings connectionSettings) {
 
         messageFragmentTimeout = connectionSettings.messageFragmentTimeout;
+        tcpNoDelay = connectionSettings.tcpNoDelay;
 
         cotFieldLength = connectionSettings.cotFieldLength;
         commonAddressFieldLength = connectionSettings.commonAddressFieldLength;
@@ -91,6 +123,20 @@ class ConnectionSettings {
         reservedASduTypeDecoder = connectionSettings.reservedASduTypeDecoder;
 
         this.useSharedThreadPool = connectionSettings.useSharedThreadPool;
+        this.threadFactory = connectionSettings.threadFactory;
+        this.selectorThreads = connectionSettings.selectorThreads;
+        this.timerTickDuration = connectionSettings.timerTickDuration;
+        this.maxWriteDelay = connectionSettings.maxWriteDelay;
+        this.maxOutboundQueueSize = connectionSettings.maxOutboundQueueSize;
+        this.outboundOverflowPolicy = connectionSettings.outboundOverflowPolicy;
+        this.queueWhileStopped = connectionSettings.queueWhileStopped;
+        this.maxListenerQueueSize = connectionSettings.maxListenerQueueSize;
+        this.listenerOverflowPolicy = connectionSettings.listenerOverflowPolicy;
+        this.maxBatchSize = connectionSettings.maxBatchSize;
+        this.maxBatchLinger = connectionSettings.maxBatchLinger;
+        this.processImage = connectionSettings.processImage;
+        this.trafficJournal = connectionSettings.trafficJournal;
+        this.pcapngCapture = connectionSettings.pcapngCapture;
         this.connectionEventListener = connectionSettings.connectionEventListener;
         this.allowedTypes = connectionSettings.allowedTypes;
     }
@@ -121,6 +167,155 @@ class ConnectionSettings {
         return useSharedThreadPool;
     }
 
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Creates a thread pool for the threads of a single connection or server that is not shared.
+     *
+     * @return a new cached thread pool, using the configured thread factory if there is one
+     */
+    ExecutorService newThreadPool() {
+        if (threadFactory == null) {
+            return Executors.newCachedThreadPool();
+        }
+        return Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * Creates an unstarted thread running the given task.
+     *
+     * @param task the task
+     * @return a new thread, created by the configured thread factory if there is one
+     */
+    Thread newThread(Runnable task) {
+        if (threadFactory == null) {
+            return new Thread(task);
+        }
+        return threadFactory.newThread(task);
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public boolean useSelectorTransport() {
+        return selectorThreads > 0;
+    }
+
+    public int getSelectorThreads() {
+        return selectorThreads;
+    }
+
+    public void setSelectorThreads(int selectorThreads) {
+        this.selectorThreads = selectorThreads;
+    }
+
+    public int getTimerTickDuration() {
+        return timerTickDuration;
+    }
+
+    public void setTimerTickDuration(int timerTickDuration) {
+        this.timerTickDuration = timerTickDuration;
+    }
+
+    public int getMaxWriteDelay() {
+        return maxWriteDelay;
+    }
+
+    public void setMaxWriteDelay(int maxWriteDelay) {
+        this.maxWriteDelay = maxWriteDelay;
+    }
+
+    public int getMaxOutboundQueueSize() {
+        return maxOutboundQueueSize;
+    }
+
+    public void setMaxOutboundQueueSize(int maxOutboundQueueSize) {
+        this.maxOutboundQueueSize = maxOutboundQueueSize;
+    }
+
+    public OutboundOverflowPolicy getOutboundOverflowPolicy() {
+        return outboundOverflowPolicy;
+    }
+
+    public void setOutboundOverflowPolicy(OutboundOverflowPolicy outboundOverflowPolicy) {
+        this.outboundOverflowPolicy = outboundOverflowPolicy;
+    }
+
+    public boolean isQueueWhileStopped() {
+        return queueWhileStopped;
+    }
+
+    public void setQueueWhileStopped(boolean queueWhileStopped) {
+        this.queueWhileStopped = queueWhileStopped;
+    }
+
+    public int getMaxListenerQueueSize() {
+        return maxListenerQueueSize;
+    }
+
+    public void setMaxListenerQueueSize(int maxListenerQueueSize) {
+        this.maxListenerQueueSize = maxListenerQueueSize;
+    }
+
+    public OverflowPolicy getListenerOverflowPolicy() {
+        return listenerOverflowPolicy;
+    }
+
+    public void setListenerOverflowPolicy(OverflowPolicy listenerOverflowPolicy) {
+        this.listenerOverflowPolicy = listenerOverflowPolicy;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getMaxBatchLinger() {
+        return maxBatchLinger;
+    }
+
+    public void setMaxBatchLinger(int maxBatchLinger) {
+        this.maxBatchLinger = maxBatchLinger;
+    }
+
+    public ProcessImage getProcessImage() {
+        return processImage;
+    }
+
+    public void setProcessImage(ProcessImage processImage) {
+        this.processImage = processImage;
+    }
+
+    public TrafficJournal getTrafficJournal() {
+        return trafficJournal;
+    }
+
+    public void setTrafficJournal(TrafficJournal trafficJournal) {
+        this.trafficJournal = trafficJournal;
+    }
+
+    public PcapngCapture getPcapngCapture() {
+        return pcapngCapture;
+    }
+
+    public void setPcapngCapture(PcapngCapture pcapngCapture) {
+        this.pcapngCapture = pcapngCapture;
+    }
+
     public int getMessageFragmentTimeout() {
         return messageFragmentTimeout;
     }
@@ -0,0 +1,537 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import org.openmuc.j60870.Connection.PendingASdu;
+
+/**
+ * Forwards ASDUs between upstream client connections, e.g. to RTUs, and the downstream connections
+ * of a {@link Server}, e.g. from masters, without decoding them into {@link ASdu} objects. The raw
+ * bytes are received as {@link ASduView}s and copied using the field lengths of the receiving
+ * connection, the common address and the information object addresses are rewritten on the way
+ * according to the tables configured with {@link #mapCommonAddress(Connection, int, int)} and
+ * {@link #mapInformationObjectAddress(int, int, int)}.
+ *
+ * <p>ASDUs received from an upstream connection are sent to all started downstream connections,
+ * like {@link Server#broadcast(ASdu)}. Responses to commands and interrogations (e.g. activation
+ * confirmations and interrogated data) are only sent to the downstream connection that sent the
+ * latest command to the common address. Commands received from a downstream connection are sent to
+ * the upstream connection the common address is mapped to, or to all upstream connections if they
+ * are addressed to the global common address. If no upstream connection is known for the common
+ * address, the command is answered with a negative confirmation and the cause {@link
+ * CauseOfTransmission#UNKNOWN_COMMON_ADDRESS_OF_ASDU}. Common addresses that are not mapped are forwarded
+ * unchanged, commands are routed to the upstream connection that reported the address last.
+ *
+ * <p>The upstream and downstream windows are coupled: if a started downstream connection has a full
+ * outbound queue after an ASDU has been forwarded, the upstream connection stops acknowledging the
+ * received I-frames until the queue has room again, at most for {@link #setMaxForwardingDelay(int)}.
+ * The upstream station is thereby slowed down by its send window. The thread reading from the
+ * upstream connection, which may be an event loop shared with other connections, does not wait for
+ * a slow downstream connection: the ASDUs are passed on with {@link Connection#sendAsync(ASdu)},
+ * which queues them while another thread is writing to that connection. Only the locks guarding
+ * the outbound queues are taken for short sections.
+ *
+ * <p>The gateway is the {@link ServerEventListener} of the downstream server, e.g. {@code
+ * server.start(gateway)}. Upstream connections are opened with {@link
+ * #addUpstream(ClientConnectionBuilder)}.
+ */
+public class Gateway implements ServerEventListener, AutoCloseable {
+
+    private static final int DEFAULT_MAX_FORWARDING_DELAY = 1000;
+    private static final int MAX_ASDU_LENGTH = APdu.MAX_APDU_LENGTH - 4;
+
+    private final List<Upstream> upstreams = new CopyOnWriteArrayList<>();
+    private final List<Connection> downstreams = new CopyOnWriteArrayList<>();
+
+    /** Maps the upstream index and the upstream common address to the downstream common address. */
+    private final AddressTable downstreamCommonAddresses = new AddressTable();
+    /** Maps the downstream common address to the upstream index and the upstream common address. */
+    private final AddressTable routes = new AddressTable();
+    /** Maps the downstream common address and the upstream IOA to the downstream IOA. */
+    private final AddressTable downstreamIoas = new AddressTable();
+    /** Maps the downstream common address and the downstream IOA to the upstream IOA. */
+    private final AddressTable upstreamIoas = new AddressTable();
+
+    /** The downstream connection that sent the latest command, by downstream common address. */
+    private final ConcurrentHashMap<Integer, Connection> requesters = new ConcurrentHashMap<>();
+
+    private final AtomicLong numForwardedASdus = new AtomicLong();
+    private final AtomicLong numDroppedASdus = new AtomicLong();
+
+    private volatile int maxForwardingDelay = DEFAULT_MAX_FORWARDING_DELAY;
+
+    /**
+     * Sets how long an upstream connection holds back its acknowledgements at most while a started
+     * downstream connection has a full outbound queue. Up to k further ASDUs are forwarded meanwhile,
+     * to which the outbound overflow policy of the downstream connection applies. Must be shorter
+     * than t1 of the upstream stations. 0 disables the coupling of the windows. Default is 1000 ms.
+     *
+     * @param maxForwardingDelay the maximum delay in ms
+     * @return this gateway
+     */
+    public Gateway setMaxForwardingDelay(int maxForwardingDelay) {
+        if (maxForwardingDelay < 0) {
+            throw new IllegalArgumentException("invalid maximum forwarding delay: " + maxForwardingDelay);
+        }
+        this.maxForwardingDelay = maxForwardingDelay;
+        return this;
+    }
+
+    /**
+     * Connects to an upstream server, starts the data transfer and forwards its ASDUs to the
+     * downstream connections. The connection event listener of the builder is not used.
+     *
+     * @param builder the builder of the upstream connection
+     * @return the upstream connection
+     * @throws IOException if the connection could not be established or started
+     */
+    public synchronized Connection addUpstream(ClientConnectionBuilder builder) throws IOException {
+        Upstream upstream = new Upstream(upstreams.size());
+        upstream.connection = builder.build(upstream);
+        upstreams.add(upstream);
+        try {
+            upstream.connection.startDataTransfer();
+        } catch (IOException e) {
+            upstream.connection.close();
+            throw e;
+        }
+        return upstream.connection;
+    }
+
+    /**
+     * Maps a common address of an upstream connection to the common address used by the downstream
+     * connections. Commands sent to the downstream common address are routed to the upstream
+     * connection.
+     *
+     * @param upstreamConnection the upstream connection returned by {@link
+     *     #addUpstream(ClientConnectionBuilder)}
+     * @param upstreamCommonAddress the common address used by the upstream connection
+     * @param downstreamCommonAddress the common address used by the downstream connections
+     * @return this gateway
+     */
+    public Gateway mapCommonAddress(
+            Connection upstreamConnection, int upstreamCommonAddress, int downstreamCommonAddress) {
+        checkCommonAddress(upstreamCommonAddress);
+        checkCommonAddress(downstreamCommonAddress);
+        Upstream upstream = upstreamFor(upstreamConnection);
+        downstreamCommonAddresses.put(commonAddressKey(upstream.index, upstreamCommonAddress), downstreamCommonAddress);
+        routes.put(downstreamCommonAddress, (upstream.index << 16) | upstreamCommonAddress);
+        return this;
+    }
+
+    /**
+     * Maps an information object address of an upstream connection to the address used by the
+     * downstream connections. For a sequence of elements only the address of the information object
+     * is mapped, the addresses of the following elements keep their distance.
+     *
+     * @param downstreamCommonAddress the common address used by the downstream connections
+     * @param upstreamIoa the information object address used by the upstream connection
+     * @param downstreamIoa the information object address used by the downstream connections
+     * @return this gateway
+     */
+    public Gateway mapInformationObjectAddress(int downstreamCommonAddress, int upstreamIoa, int downstreamIoa) {
+        checkCommonAddress(downstreamCommonAddress);
+        checkIoa(upstreamIoa);
+        checkIoa(downstreamIoa);
+        downstreamIoas.put(ioaKeyPrefix(downstreamCommonAddress) | upstreamIoa, downstreamIoa);
+        upstreamIoas.put(ioaKeyPrefix(downstreamCommonAddress) | downstreamIoa, upstreamIoa);
+        return this;
+    }
+
+    /**
+     * Returns the open downstream connections.
+     *
+     * @return an unmodifiable snapshot of the downstream connections
+     */
+    public List<Connection> getDownstreamConnections() {
+        return Collections.unmodifiableList(new ArrayList<>(downstreams));
+    }
+
+    /**
+     * Returns the number of ASDUs passed on to a connection.
+     *
+     * @return the number of forwarded ASDUs
+     */
+    public long getNumForwardedASdus() {
+        return numForwardedASdus.get();
+    }
+
+    /**
+     * Returns the number of received ASDUs that could not be forwarded, e.g. because an address does
+     * not fit into the field of the receiving connection.
+     *
+     * @return the number of dropped ASDUs
+     */
+    public long getNumDroppedASdus() {
+        return numDroppedASdus.get();
+    }
+
+    /** Closes the upstream connections. The downstream server is not touched. */
+    @Override
+    public void close() {
+        for (Upstream upstream : upstreams) {
+            upstream.connection.close();
+        }
+    }
+
+    @Override
+    public ConnectionEventListener connectionIndication(Connection connection) {
+        downstreams.add(connection);
+        return new Downstream();
+    }
+
+    @Override
+    public void serverStoppedListeningIndication(IOException e) {
+        // the downstream connections stay open
+    }
+
+    @Override
+    public void connectionAttemptFailed(IOException e) {
+        // nothing to forward
+    }
+
+    private void forwardToDownstreams(Upstream upstream, ASduView aSduView) {
+        int upstreamCommonAddress = aSduView.getCommonAddress();
+        int commonAddress = downstreamCommonAddresses.get(
+                commonAddressKey(upstream.index, upstreamCommonAddress), upstreamCommonAddress);
+        if (commonAddress == upstreamCommonAddress && routes.get(commonAddress, -1) < 0) {
+            // commands to addresses that are not mapped are routed to the station that reports them
+            routes.putIfAbsent(commonAddress, (upstream.index << 16) | upstreamCommonAddress);
+        }
+
+        List<Connection> targets = downstreams;
+        if (isResponse(aSduView)) {
+            Connection requester = requesters.get(commonAddress);
+            if (requester == null) {
+                requester = requesters.get(globalCommonAddress(aSduView.getCommonAddressFieldLength()));
+            }
+            if (requester != null && !requester.isClosed()) {
+                targets = Collections.singletonList(requester);
+            }
+        }
+
+        long ioaKeyPrefix = ioaKeyPrefix(commonAddress);
+        long coalesceKey = PendingASdu.NO_COALESCE_KEY;
+        if (!aSduView.isSequenceOfElements() && aSduView.size() == 1) {
+            int ioa = aSduView.ioa(0);
+            coalesceKey = Connection.coalesceKey(
+                    aSduView.getTypeIdentification().getId(),
+                    false,
+                    1,
+                    causeOfTransmissionId(aSduView),
+                    commonAddress,
+                    downstreamIoas.get(ioaKeyPrefix | ioa, ioa));
+        }
+
+        // the connections of a server share its settings, so the ASDU is copied once per server
+        ConnectionSettings encodedSettings = null;
+        byte[] encodedASdu = null;
+        List<RedundancyGroup> redundancyGroups = null;
+        for (Connection connection : targets) {
+            RedundancyGroup redundancyGroup = connection.getRedundancyGroup();
+            if (redundancyGroup == null
+                    && (connection.isClosed() || (connection.isStopped() && !connection.isQueueWhileStopped()))) {
+                continue;
+            }
+            if (connection.getSettings() != encodedSettings) {
+                encodedSettings = connection.getSettings();
+                encodedASdu = copy(
+                        aSduView,
+                        encodedSettings,
+                        globalOr(aSduView, commonAddress, encodedSettings),
+                        downstreamIoas,
+                        ioaKeyPrefix);
+            }
+            if (encodedASdu == null) {
+                continue;
+            }
+
+            if (redundancyGroup == null) {
+                // queued if another thread is writing to the connection, so a stalled master does not
+                // delay the upstream reader
+                connection.sendAsync(encodedASdu, coalesceKey);
+                numForwardedASdus.incrementAndGet();
+            } else {
+                // the group sends it on its active connection or buffers it
+                if (redundancyGroups == null) {
+                    redundancyGroups = new ArrayList<>(1);
+                }
+                if (!redundancyGroups.contains(redundancyGroup)) {
+                    redundancyGroups.add(redundancyGroup);
+                    redundancyGroup.sendAsync(encodedASdu, coalesceKey);
+                    numForwardedASdus.incrementAndGet();
+                }
+            }
+        }
+
+        holdUpstreamIfFull(upstream, targets);
+    }
+
+    private void forwardToUpstream(final Connection downstream, ASduView aSduView) {
+        int commonAddress = aSduView.getCommonAddress();
+        requesters.put(commonAddress, downstream);
+
+        if (commonAddress == globalCommonAddress(aSduView.getCommonAddressFieldLength())) {
+            for (Upstream upstream : upstreams) {
+                ConnectionSettings settings = upstream.connection.getSettings();
+                sendToUpstream(
+                        upstream,
+                        copy(aSduView, settings, globalCommonAddress(settings.getCommonAddressFieldLength()), null, 0),
+                        null,
+                        null);
+            }
+            return;
+        }
+
+        int route = routes.get(commonAddress, -1);
+        if (route < 0) {
+            reply(downstream, aSduView, CauseOfTransmission.UNKNOWN_COMMON_ADDRESS_OF_ASDU);
+            return;
+        }
+
+        Upstream upstream = upstreams.get(route >>> 16);
+        byte[] encodedASdu = copy(
+                aSduView, upstream.connection.getSettings(), route & 0xffff, upstreamIoas, ioaKeyPrefix(commonAddress));
+        if (encodedASdu != null) {
+            sendToUpstream(upstream, encodedASdu, downstream, negativeConfirmation(aSduView));
+        }
+    }
+
+    private void sendToUpstream(
+            Upstream upstream, byte[] encodedASdu, final Connection downstream, final byte[] negativeConfirmation) {
+        if (encodedASdu == null) {
+            return;
+        }
+        CompletableFuture<Void> future = upstream.connection.sendAsync(encodedASdu, PendingASdu.NO_COALESCE_KEY);
+        numForwardedASdus.incrementAndGet();
+        if (downstream == null || negativeConfirmation == null) {
+            return;
+        }
+        future.whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void result, Throwable cause) {
+                if (cause instanceof IOException || cause instanceof IllegalArgumentException) {
+                    // the upstream connection is closed or stopped
+                    downstream.sendAsync(negativeConfirmation, PendingASdu.NO_COALESCE_KEY);
+                }
+            }
+        });
+    }
+
+    /** Holds the acknowledgements of the upstream connection while a started target has a full outbound queue. */
+    private void holdUpstreamIfFull(Upstream upstream, final List<Connection> targets) {
+        int maxForwardingDelay = this.maxForwardingDelay;
+        if (maxForwardingDelay == 0 || !isAnyOutboundQueueFull(targets)) {
+            return;
+        }
+        upstream.connection.holdAcknowledgements(
+                new BooleanSupplier() {
+                    @Override
+                    public boolean getAsBoolean() {
+                        return !isAnyOutboundQueueFull(targets);
+                    }
+                },
+                maxForwardingDelay);
+    }
+
+    private static boolean isAnyOutboundQueueFull(List<Connection> targets) {
+        for (Connection connection : targets) {
+            if (!connection.isStopped() && !connection.isClosed() && connection.isOutboundQueueFull()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reply(Connection downstream, ASduView aSduView, CauseOfTransmission cause) {
+        byte[] reply = copy(aSduView, downstream.getSettings(), aSduView.getCommonAddress(), null, 0);
+        if (reply != null) {
+            reply[2] = (byte) ((reply[2] & 0x80) | 0x40 | cause.getId());
+            downstream.sendAsync(reply, PendingASdu.NO_COALESCE_KEY);
+        }
+    }
+
+    /**
+     * Returns the negative confirmation sent to the downstream connection if the command cannot be
+     * forwarded, null if the ASDU is not confirmed.
+     */
+    private byte[] negativeConfirmation(ASduView aSduView) {
+        CauseOfTransmission cause = aSduView.getCauseOfTransmission();
+        CauseOfTransmission confirmation;
+        if (cause == CauseOfTransmission.ACTIVATION) {
+            confirmation = CauseOfTransmission.ACTIVATION_CON;
+        } else if (cause == CauseOfTransmission.DEACTIVATION) {
+            confirmation = CauseOfTransmission.DEACTIVATION_CON;
+        } else {
+            return null;
+        }
+        byte[] reply = new byte[MAX_ASDU_LENGTH];
+        int length;
+        try {
+            length = aSduView.copyTo(
+                    reply,
+                    aSduView.getCotFieldLength(),
+                    aSduView.getCommonAddressFieldLength(),
+                    aSduView.getIoaFieldLength(),
+                    aSduView.getCommonAddress(),
+                    null,
+                    0);
+        } catch (IOException e) {
+            return null;
+        }
+        reply[2] = (byte) ((reply[2] & 0x80) | 0x40 | confirmation.getId());
+        return Arrays.copyOf(reply, length);
+    }
+
+    /** Copies the ASDU for connections with the given settings, returns null if it does not fit. */
+    private byte[] copy(
+            ASduView aSduView,
+            ConnectionSettings settings,
+            int commonAddress,
+            AddressTable ioaTable,
+            long ioaKeyPrefix) {
+        byte[] buffer = new byte[MAX_ASDU_LENGTH];
+        try {
+            int length = aSduView.copyTo(
+                    buffer,
+                    settings.getCotFieldLength(),
+                    settings.getCommonAddressFieldLength(),
+                    settings.getIoaFieldLength(),
+                    commonAddress,
+                    ioaTable,
+                    ioaKeyPrefix);
+            return Arrays.copyOf(buffer, length);
+        } catch (IOException e) {
+            numDroppedASdus.incrementAndGet();
+            return null;
+        }
+    }
+
+    /** Translates the global common address between field lengths, other addresses are kept. */
+    private static int globalOr(ASduView aSduView, int commonAddress, ConnectionSettings settings) {
+        if (commonAddress == globalCommonAddress(aSduView.getCommonAddressFieldLength())) {
+            return globalCommonAddress(settings.getCommonAddressFieldLength());
+        }
+        return commonAddress;
+    }
+
+    private static int globalCommonAddress(int commonAddressFieldLength) {
+        return commonAddressFieldLength == 1 ? 0xff : 0xffff;
+    }
+
+    private static int causeOfTransmissionId(ASduView aSduView) {
+        CauseOfTransmission cause = aSduView.getCauseOfTransmission();
+        return cause == null ? 0 : cause.getId();
+    }
+
+    private static boolean isResponse(ASduView aSduView) {
+        int cause = causeOfTransmissionId(aSduView);
+        return cause == CauseOfTransmission.REQUEST.getId()
+                || cause == CauseOfTransmission.ACTIVATION_CON.getId()
+                || cause == CauseOfTransmission.DEACTIVATION_CON.getId()
+                || cause == CauseOfTransmission.ACTIVATION_TERMINATION.getId()
+                || (cause >= CauseOfTransmission.INTERROGATED_BY_STATION.getId()
+                        && cause <= CauseOfTransmission.REQUESTED_BY_GROUP_4_COUNTER.getId())
+                || cause >= CauseOfTransmission.UNKNOWN_TYPE_ID.getId();
+    }
+
+    private Upstream upstreamFor(Connection connection) {
+        for (Upstream upstream : upstreams) {
+            if (upstream.connection == connection) {
+                return upstream;
+            }
+        }
+        throw new IllegalArgumentException("Not an upstream connection of this gateway: " + connection);
+    }
+
+    private static long commonAddressKey(int upstreamIndex, int commonAddress) {
+        return ((long) upstreamIndex << 16) | commonAddress;
+    }
+
+    private static long ioaKeyPrefix(int downstreamCommonAddress) {
+        return (long) downstreamCommonAddress << 24;
+    }
+
+    private static void checkCommonAddress(int commonAddress) {
+        if (commonAddress < 0 || commonAddress > 0xffff) {
+            throw new IllegalArgumentException("invalid common address: " + commonAddress);
+        }
+    }
+
+    private static void checkIoa(int ioa) {
+        if (ioa < 0 || ioa > 0xffffff) {
+            throw new IllegalArgumentException("invalid information object address: " + ioa);
+        }
+    }
+
+    /** Receives the ASDUs of an upstream connection on the thread reading from it. */
+    private class Upstream implements ASduViewListener {
+
+        private final int index;
+        private volatile Connection connection;
+
+        Upstream(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void newASduView(Connection connection, ASduView aSduView) {
+            forwardToDownstreams(this, aSduView);
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {
+            // commands routed to the closed connection are answered with a negative confirmation
+        }
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+
+    /** Receives the ASDUs of a downstream connection on the thread reading from it. */
+    private class Downstream implements ASduViewListener {
+
+        @Override
+        public void newASduView(Connection connection, ASduView aSduView) {
+            forwardToUpstream(connection, aSduView);
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {
+            downstreams.remove(connection);
+            requesters.values().remove(connection);
+        }
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
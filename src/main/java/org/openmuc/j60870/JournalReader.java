@@ -0,0 +1,196 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the records of a {@link TrafficJournal} file in the order they were appended. The reader
+ * is a cursor, {@link #next()} moves it to the next record and the getters return the fields of
+ * the current record.
+ *
+ * <p>A journal that was not closed, e.g. because the process was killed, may be read as well. It
+ * ends with the last record that was completely appended.
+ */
+public class JournalReader implements AutoCloseable {
+
+    private static final long MAP_SIZE = 16L << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private long size;
+
+    private MappedByteBuffer mappedBuffer;
+    private long mappedPosition;
+    private long position;
+
+    private int frameLength;
+    private int frameOffset;
+    private boolean sent;
+    private int connectionId;
+    private long timestamp;
+
+    /**
+     * Opens a journal file for reading.
+     *
+     * @param journalFile the journal file
+     * @throws IOException if the file could not be read or is not a journal
+     */
+    public JournalReader(File journalFile) throws IOException {
+        file = new RandomAccessFile(journalFile, "r");
+        channel = file.getChannel();
+        try {
+            size = channel.size();
+            if (size < TrafficJournal.FILE_HEADER_LENGTH) {
+                throw new IOException("Not a traffic journal, the file is too short.");
+            }
+            map(0);
+            if (mappedBuffer.getInt() != TrafficJournal.MAGIC) {
+                throw new IOException("Not a traffic journal, invalid magic number.");
+            }
+            int version = mappedBuffer.getInt();
+            if (version != TrafficJournal.VERSION) {
+                throw new IOException("Unsupported traffic journal version: " + version);
+            }
+            // the remainder behind the length of a closed journal may not have been truncated
+            long length = mappedBuffer.getLong(TrafficJournal.LENGTH_OFFSET);
+            if (length > 0) {
+                size = Math.min(length, size);
+            }
+            position = TrafficJournal.FILE_HEADER_LENGTH;
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return false if there are no more records
+     * @throws IOException if the file could not be read
+     */
+    public boolean next() throws IOException {
+        if (position + TrafficJournal.RECORD_HEADER_LENGTH > size) {
+            return false;
+        }
+        if (position + TrafficJournal.RECORD_HEADER_LENGTH + APdu.MAX_APDU_LENGTH + 2
+                > mappedPosition + mappedBuffer.limit()) {
+            map(position);
+        }
+        int offset = (int) (position - mappedPosition);
+        int length = mappedBuffer.getShort(offset) & 0xffff;
+        if (length == 0 || position + TrafficJournal.RECORD_HEADER_LENGTH + length > size) {
+            // the remainder of a journal that was not closed is filled with zeros
+            return false;
+        }
+        frameLength = length;
+        sent = (mappedBuffer.get(offset + 2) & TrafficJournal.FLAG_SENT) != 0;
+        connectionId = mappedBuffer.getInt(offset + 4);
+        timestamp = mappedBuffer.getLong(offset + 8);
+        frameOffset = offset + TrafficJournal.RECORD_HEADER_LENGTH;
+        position += TrafficJournal.RECORD_HEADER_LENGTH + length;
+        return true;
+    }
+
+    /**
+     * Returns the time the frame was sent or received.
+     *
+     * @return the time in nanoseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the ID of the connection that sent or received the frame.
+     *
+     * @return the connection ID, starting at 1 for every journal
+     */
+    public int getConnectionId() {
+        return connectionId;
+    }
+
+    /**
+     * Returns true if the frame was sent by the connection, false if it was received.
+     *
+     * @return true if the frame was sent
+     */
+    public boolean isSent() {
+        return sent;
+    }
+
+    /**
+     * Returns true if the frame is an I-frame, i.e. contains an ASDU.
+     *
+     * @return true if the frame is an I-frame
+     */
+    public boolean isIFrame() {
+        return frameLength > APdu.HEADER_LENGTH && (mappedBuffer.get(frameOffset + 2) & 0x01) == 0;
+    }
+
+    /**
+     * Returns the length of the frame, including the start byte and the length.
+     *
+     * @return the frame length
+     */
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /**
+     * Returns a copy of the frame, starting with the start byte.
+     *
+     * @return the frame
+     */
+    public byte[] getFrame() {
+        byte[] frame = new byte[frameLength];
+        copyFrame(0, frame, frameLength);
+        return frame;
+    }
+
+    /**
+     * Copies a part of the frame.
+     *
+     * @param offset the offset in the frame
+     * @param target the array the bytes are copied to, starting at index 0
+     * @param length the number of bytes
+     */
+    void copyFrame(int offset, byte[] target, int length) {
+        for (int i = 0; i < length; i++) {
+            target[i] = mappedBuffer.get(frameOffset + offset + i);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private void map(long mapPosition) throws IOException {
+        mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, mapPosition, Math.min(MAP_SIZE, size - mapPosition));
+        mappedPosition = mapPosition;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.openmuc.j60870.Connection.PendingASdu;
+
+/**
+ * Sends the ASDUs recorded in a {@link TrafficJournal} again, e.g. to reproduce a burst of
+ * substation traffic on a development system. The ASDUs are replayed with their original timing, a
+ * multiple of it or as fast as the receiving connections acknowledge them.
+ *
+ * <p>Only the ASDUs of recorded I-frames are replayed, the APCI, i.e. the sequence numbers and the
+ * control frames, is generated by the connection that sends them. The ASDUs are sent without being
+ * decoded, so the connection has to use the same field lengths as the recorded connection.
+ *
+ * <pre>
+ * new JournalReplay(journalFile).setSpeed(10).replay(server);
+ * </pre>
+ */
+public class JournalReplay {
+
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final File journalFile;
+    private double speed = 1;
+    private int connectionId = 0;
+    private boolean replayReceived = false;
+
+    /**
+     * Creates a replay of the given journal file.
+     *
+     * @param journalFile the journal file
+     */
+    public JournalReplay(File journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Sets the speed of the replay relative to the recorded timing, e.g. 10 to replay ten times as
+     * fast. A speed of 0 replays the ASDUs as fast as possible.<br>
+     * Default is 1.
+     *
+     * @param speed the speed
+     * @return this replay
+     */
+    public JournalReplay setSpeed(double speed) {
+        if (!(speed >= 0) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("invalid speed: " + speed + ", must be a finite value of at least 0");
+        }
+        this.speed = speed;
+        return this;
+    }
+
+    /**
+     * Only replays the traffic of the recorded connection with the given ID, see {@link
+     * JournalReader#getConnectionId()}.<br>
+     * Default is 0, which replays the traffic of all recorded connections.
+     *
+     * @param connectionId the connection ID
+     * @return this replay
+     */
+    public JournalReplay setConnectionId(int connectionId) {
+        if (connectionId < 0) {
+            throw new IllegalArgumentException("invalid connectionId: " + connectionId);
+        }
+        this.connectionId = connectionId;
+        return this;
+    }
+
+    /**
+     * Selects the direction that is replayed. By default the ASDUs sent by the recorded connections
+     * are replayed, e.g. those a recorded server sent to its masters. If set to true the received
+     * ASDUs are replayed instead, e.g. to reproduce the traffic a recorded client received from a
+     * substation with a local server.<br>
+     * Default is false.
+     *
+     * @param replayReceived true to replay the received ASDUs
+     * @return this replay
+     */
+    public JournalReplay setReplayReceived(boolean replayReceived) {
+        this.replayReceived = replayReceived;
+        return this;
+    }
+
+    /**
+     * Replays the journal on the given connection. Blocks until all ASDUs have been sent, an ASDU is
+     * only sent once the send window of the connection is open.
+     *
+     * @param connection the connection whose data transfer has been started
+     * @return the number of replayed ASDUs
+     * @throws IOException if the journal could not be read or the connection was closed
+     * @throws InterruptedIOException if the thread was interrupted
+     * @throws IllegalArgumentException if the data transfer of the connection is stopped
+     */
+    public long replay(final Connection connection) throws IOException {
+        return replay(new Target() {
+            @Override
+            public void send(byte[] aSdu) throws IOException {
+                connection.sendBuffer(aSdu);
+            }
+        });
+    }
+
+    /**
+     * Replays the journal on all connections of the given server, see {@link Server#broadcast(ASdu)}.
+     * Blocks until all ASDUs have been passed to the connections, an ASDU is only passed on once the
+     * outbound queues of the started connections are no longer full.
+     *
+     * @param server the server
+     * @return the number of replayed ASDUs
+     * @throws IOException if the journal could not be read
+     * @throws InterruptedIOException if the thread was interrupted
+     */
+    public long replay(final Server server) throws IOException {
+        return replay(new Target() {
+            @Override
+            public void send(byte[] aSdu) throws IOException {
+                for (Connection connection : server.getConnections()) {
+                    while (!connection.isStopped() && !connection.isClosed() && connection.isOutboundQueueFull()) {
+                        park(PARK_NANOS);
+                    }
+                }
+                server.broadcast(aSdu, PendingASdu.NO_COALESCE_KEY);
+            }
+        });
+    }
+
+    private long replay(Target target) throws IOException {
+        long numReplayed = 0;
+        long firstTimestamp = 0;
+        long start = 0;
+
+        try (JournalReader reader = new JournalReader(journalFile)) {
+            while (reader.next()) {
+                if (reader.isSent() == replayReceived
+                        || !reader.isIFrame()
+                        || (connectionId != 0 && reader.getConnectionId() != connectionId)) {
+                    continue;
+                }
+
+                if (numReplayed == 0) {
+                    firstTimestamp = reader.getTimestamp();
+                    start = System.nanoTime();
+                } else if (speed != 0) {
+                    long due = start + (long) ((reader.getTimestamp() - firstTimestamp) / speed);
+                    long delay;
+                    while ((delay = due - System.nanoTime()) > 0) {
+                        park(delay);
+                    }
+                }
+
+                int aSduLength = reader.getFrameLength() - APdu.HEADER_LENGTH;
+                byte[] aSdu = new byte[aSduLength];
+                reader.copyFrame(APdu.HEADER_LENGTH, aSdu, aSduLength);
+                target.send(aSdu);
+                numReplayed++;
+            }
+        }
+        return numReplayed;
+    }
+
+    private static void park(long nanos) throws InterruptedIOException {
+        LockSupport.parkNanos(nanos);
+        if (Thread.interrupted()) {
+            throw new InterruptedIOException("Replay was interrupted.");
+        }
+    }
+
+    private interface Target {
+        void send(byte[] aSdu) throws IOException;
+    }
+}
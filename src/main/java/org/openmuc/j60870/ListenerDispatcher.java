@@ -0,0 +1,317 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Passes the received ASDUs of a connection to its listener, one at a time and in the order they
+ * were received. The ASDUs are stored in a bounded ring buffer without any wrapper object. They are
+ * only added by the thread that handles the received APDUs. A single consumer is started on the
+ * underlying executor when there is work. It delivers the ASDUs in batches and only returns once the
+ * ring buffer is empty, so it is not submitted again for every ASDU. A {@link
+ * BatchConnectionEventListener} receives the drained batches as lists.
+ *
+ * <p>Only listener callbacks are run by the consumer. The internal work of the connection, e.g.
+ * sending queued ASDUs and completing futures, is run by its own executors, so that a slow listener
+ * does not delay it.
+ */
+class ListenerDispatcher {
+
+    private static final int BATCH_SIZE = 64;
+
+    private final Connection connection;
+    private final Executor executor;
+    private final OverflowPolicy overflowPolicy;
+    private final int maxBatchSize;
+    private final long maxBatchLinger;
+
+    private final AtomicReferenceArray<ASdu> ring;
+    private final int mask;
+
+    // the consumer and, for DROP_OLDEST, the producer take ASDUs by advancing the head
+    private final AtomicLong head = new AtomicLong();
+    // only written by the producer, after the slot has been written
+    private final AtomicLong tail = new AtomicLong();
+    // the consumer while it waits for more ASDUs of a batch, unparked by the producer
+    private volatile Thread lingeringConsumer;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong numDropped = new AtomicLong();
+    // run by the consumer once a slot has been freed, see whenNotFull
+    private final AtomicReference<Runnable> spaceWaiter = new AtomicReference<>();
+    private final Runnable consumer = new Consumer();
+
+    private volatile boolean closed;
+
+    /**
+     * @param connection the connection whose listener is notified
+     * @param executor runs the consumer
+     * @param settings the settings with the maximum number of queued ASDUs, which is rounded up to
+     *     the next power of two, the overflow policy and the batch limits
+     */
+    ListenerDispatcher(Connection connection, Executor executor, ConnectionSettings settings) {
+        int size = Integer.highestOneBit(Math.max(settings.getMaxListenerQueueSize(), 1) - 1) << 1;
+        if (size <= 0) {
+            size = 1;
+        }
+        this.connection = connection;
+        this.executor = executor;
+        this.overflowPolicy = settings.getListenerOverflowPolicy();
+        this.maxBatchSize = settings.getMaxBatchSize();
+        this.maxBatchLinger = TimeUnit.MILLISECONDS.toNanos(settings.getMaxBatchLinger());
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Queues a received ASDU for the listener. Must only be called by the thread that handles the
+     * received APDUs of the connection.
+     *
+     * @param aSdu the ASDU
+     * @return false if the ASDU could not be queued and the connection has to be closed according to
+     *     {@link OverflowPolicy#CLOSE_CONNECTION}
+     */
+    boolean dispatch(ASdu aSdu) {
+        long t = tail.get();
+        while (t - head.get() > mask) {
+            if (closed) {
+                return true;
+            }
+            switch (overflowPolicy) {
+                case DROP_OLDEST:
+                    long h = head.get();
+                    if (t - h > mask && head.compareAndSet(h, h + 1)) {
+                        numDropped.incrementAndGet();
+                    }
+                    break;
+                case CLOSE_CONNECTION:
+                    return false;
+                default:
+                    schedule();
+                    // woken by the consumer once it has taken an ASDU, or by close
+                    whenNotFull(new Unparker(Thread.currentThread()));
+                    LockSupport.park(this);
+                    break;
+            }
+        }
+        ring.set((int) t & mask, aSdu);
+        // a full write, so that a consumer that starts lingering afterwards sees the ASDU
+        tail.set(t + 1);
+        Thread lingering = lingeringConsumer;
+        if (lingering != null) {
+            LockSupport.unpark(lingering);
+        }
+        schedule();
+        return true;
+    }
+
+    /**
+     * Returns true if the ring buffer is full and {@link #dispatch(ASdu)} would wait for the consumer
+     * according to {@link OverflowPolicy#BLOCK}. Must only be called by the thread that handles the
+     * received APDUs, so the result remains valid until it adds the next ASDU.
+     *
+     * @return true if the next ASDU cannot be queued without waiting
+     */
+    boolean isFull() {
+        return overflowPolicy == OverflowPolicy.BLOCK && tail.get() - head.get() > mask;
+    }
+
+    /**
+     * Runs the given task once the consumer has taken an ASDU from the full ring buffer, or at once
+     * if there is space already. Used by a producer waiting in {@link #dispatch(ASdu)} and by the
+     * selector transport, which stops reading instead of waiting. The task is run by the consumer or
+     * by {@link #close()} and must not block.
+     *
+     * @param task the task to run
+     */
+    void whenNotFull(Runnable task) {
+        spaceWaiter.set(task);
+        // the consumer may have taken the ASDUs before the task was set
+        if (!isFull()) {
+            releaseSpaceWaiter();
+        }
+    }
+
+    private void releaseSpaceWaiter() {
+        Runnable task = spaceWaiter.getAndSet(null);
+        if (task != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Returns the number of ASDUs that were discarded according to {@link OverflowPolicy#DROP_OLDEST}.
+     *
+     * @return the number of discarded ASDUs
+     */
+    long getNumDropped() {
+        return numDropped.get();
+    }
+
+    /** Stops the delivery of queued ASDUs and releases a producer waiting for space. */
+    void close() {
+        closed = true;
+        releaseSpaceWaiter();
+        Thread lingering = lingeringConsumer;
+        if (lingering != null) {
+            LockSupport.unpark(lingering);
+        }
+    }
+
+    private void schedule() {
+        if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+            executor.execute(consumer);
+        }
+    }
+
+    private ASdu poll() {
+        while (true) {
+            long h = head.get();
+            if (h == tail.get()) {
+                return null;
+            }
+            // the slot is read before it is claimed, it is only overwritten after the head moved on
+            ASdu aSdu = ring.get((int) h & mask);
+            if (head.compareAndSet(h, h + 1)) {
+                // the ASDU is not kept reachable by the ring until the slot is reused
+                ring.compareAndSet((int) h & mask, aSdu, null);
+                if (spaceWaiter.get() != null) {
+                    releaseSpaceWaiter();
+                }
+                return aSdu;
+            }
+        }
+    }
+
+    private boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    private static class Unparker implements Runnable {
+
+        private final Thread thread;
+
+        Unparker(Thread thread) {
+            this.thread = thread;
+        }
+
+        @Override
+        public void run() {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private class Consumer implements Runnable {
+
+        @Override
+        public void run() {
+            boolean completed = false;
+            try {
+                do {
+                    drain();
+                    scheduled.set(false);
+                    // ASDUs added after the last drain but before the flag was reset have to be delivered as well
+                } while (!isEmpty() && scheduled.compareAndSet(false, true));
+                completed = true;
+            } finally {
+                if (!completed) {
+                    // a listener threw an exception, the remaining ASDUs are delivered by a new consumer
+                    scheduled.set(false);
+                    if (!isEmpty()) {
+                        schedule();
+                    }
+                }
+            }
+        }
+
+        private void drain() {
+            boolean drained;
+            do {
+                ConnectionEventListener listener = connection.getASduListener();
+                if (listener instanceof BatchConnectionEventListener) {
+                    drained = deliverBatch((BatchConnectionEventListener) listener);
+                } else {
+                    drained = deliver(listener);
+                }
+            } while (!drained);
+        }
+
+        /** Returns true if no ASDU was queued. */
+        private boolean deliver(ConnectionEventListener listener) {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                ASdu aSdu = poll();
+                if (aSdu == null) {
+                    return i == 0;
+                }
+                if (listener != null && !closed) {
+                    listener.newASdu(connection, aSdu);
+                }
+            }
+            return false;
+        }
+
+        /** Returns true if no ASDU was queued. */
+        private boolean deliverBatch(BatchConnectionEventListener listener) {
+            ASdu aSdu = poll();
+            if (aSdu == null) {
+                return true;
+            }
+
+            List<ASdu> batch = new ArrayList<>(Math.min(maxBatchSize, BATCH_SIZE));
+            batch.add(aSdu);
+            long deadline = System.nanoTime() + maxBatchLinger;
+            while (batch.size() < maxBatchSize) {
+                aSdu = poll();
+                if (aSdu != null) {
+                    batch.add(aSdu);
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (maxBatchLinger == 0 || closed || remaining <= 0) {
+                    break;
+                }
+                // waits until the producer has added an ASDU or the linger time has passed
+                lingeringConsumer = Thread.currentThread();
+                try {
+                    if (isEmpty()) {
+                        LockSupport.parkNanos(this, remaining);
+                    }
+                } finally {
+                    lingeringConsumer = null;
+                }
+            }
+
+            if (!closed) {
+                listener.newASdus(connection, batch);
+            }
+            return false;
+        }
+    }
+}
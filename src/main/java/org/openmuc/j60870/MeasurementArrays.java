@@ -0,0 +1,233 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+/**
+ * The values of an ASDU packed into primitive arrays, one entry per information element set. For
+ * an ASDU with a sequence of 127 short floating point values this means a float array and a byte
+ * array instead of 127 information objects with two information elements each.
+ *
+ * <p>Depending on the ASDU type the values are stored in exactly one of the value arrays:
+ *
+ * <ul>
+ *   <li>{@link #getFloatValues()} for short floating point numbers
+ *   <li>{@link #getShortValues()} for normalized and scaled values, as raw signed 16 bit values
+ *   <li>{@link #getIntValues()} for all other values, as returned by {@link ASduView#intValue(int)}
+ * </ul>
+ *
+ * The quality descriptors are stored if the type has one, the timestamps if the type has a
+ * CP56Time2a time tag. The arrays may be longer than {@link #size()}, because an instance is meant
+ * to be reused for many ASDUs: {@link #set(ASduView)} only allocates arrays if the current ones are
+ * too short.
+ */
+public final class MeasurementArrays {
+
+    private ASduType typeIdentification;
+    private CauseOfTransmission causeOfTransmission;
+    private int commonAddress;
+    private boolean sequenceOfElements;
+    private int size;
+    private int valueKind;
+    private boolean hasQualities;
+    private boolean hasTimestamps;
+
+    private int[] ioas = new int[0];
+    private float[] floatValues;
+    private short[] shortValues;
+    private int[] intValues;
+    private byte[] qualities;
+    private long[] timestamps;
+
+    /**
+     * Copies the values of the ASDU the view currently points to. The timestamps are calculated with
+     * the time zone and start of century of the view.
+     *
+     * @param view the view
+     * @return this instance
+     * @throws UnsupportedOperationException if the information element sets of the ASDU type are not
+     *     of fixed length or have no value
+     */
+    public MeasurementArrays set(ASduView view) {
+        valueKind = view.valueKind();
+        if (valueKind == ASduView.NONE) {
+            throw new UnsupportedOperationException(
+                    "ASDU type " + view.getTypeIdentification() + " does not contain values.");
+        }
+
+        int size = view.size();
+        typeIdentification = view.getTypeIdentification();
+        causeOfTransmission = view.getCauseOfTransmission();
+        commonAddress = view.getCommonAddress();
+        sequenceOfElements = view.isSequenceOfElements();
+        this.size = size;
+
+        if (ioas.length < size) {
+            ioas = new int[size];
+        }
+        if (sequenceOfElements) {
+            // the addresses of a sequence are implicit, only the first one has to be read
+            if (size > 0) {
+                ioas[0] = view.ioa(0);
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                ioas[i] = view.ioa(i);
+            }
+        }
+
+        switch (valueKind) {
+            case ASduView.R32:
+                if (floatValues == null || floatValues.length < size) {
+                    floatValues = new float[size];
+                }
+                for (int i = 0; i < size; i++) {
+                    floatValues[i] = view.floatValue(i);
+                }
+                break;
+            case ASduView.NVA:
+            case ASduView.SVA:
+                if (shortValues == null || shortValues.length < size) {
+                    shortValues = new short[size];
+                }
+                for (int i = 0; i < size; i++) {
+                    shortValues[i] = (short) view.intValue(i);
+                }
+                break;
+            default:
+                if (intValues == null || intValues.length < size) {
+                    intValues = new int[size];
+                }
+                for (int i = 0; i < size; i++) {
+                    intValues[i] = view.intValue(i);
+                }
+                break;
+        }
+
+        hasQualities = view.qualityKind() != ASduView.NONE;
+        if (hasQualities) {
+            if (qualities == null || qualities.length < size) {
+                qualities = new byte[size];
+            }
+            for (int i = 0; i < size; i++) {
+                qualities[i] = (byte) view.quality(i);
+            }
+        }
+
+        hasTimestamps = view.timeKind() == ASduView.CP56;
+        if (hasTimestamps) {
+            if (timestamps == null || timestamps.length < size) {
+                timestamps = new long[size];
+            }
+            for (int i = 0; i < size; i++) {
+                timestamps[i] = view.timestampMillis(i);
+            }
+        }
+        return this;
+    }
+
+    public ASduType getTypeIdentification() {
+        return typeIdentification;
+    }
+
+    public CauseOfTransmission getCauseOfTransmission() {
+        return causeOfTransmission;
+    }
+
+    public int getCommonAddress() {
+        return commonAddress;
+    }
+
+    public boolean isSequenceOfElements() {
+        return sequenceOfElements;
+    }
+
+    /**
+     * Returns the number of information element sets, i.e. the number of valid entries of the
+     * arrays.
+     *
+     * @return the number of information element sets
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the Information Object Address of the information element set with the given index.
+     *
+     * @param i the index of the information element set
+     * @return the Information Object Address
+     */
+    public int ioa(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index: " + i + ", size: " + size);
+        }
+        return sequenceOfElements ? ioas[0] + i : ioas[i];
+    }
+
+    /**
+     * Returns the values of short floating point numbers, null for other types.
+     *
+     * @return the values
+     */
+    public float[] getFloatValues() {
+        return valueKind == ASduView.R32 ? floatValues : null;
+    }
+
+    /**
+     * Returns the raw values of normalized and scaled values, null for other types. Normalized values
+     * have to be divided by 32768 to get the range from -1 to (1-1/(2^15)).
+     *
+     * @return the values
+     */
+    public short[] getShortValues() {
+        return valueKind == ASduView.NVA || valueKind == ASduView.SVA ? shortValues : null;
+    }
+
+    /**
+     * Returns the integer values of all types that are neither short floating point numbers nor
+     * normalized or scaled values, null for these types.
+     *
+     * @return the values
+     */
+    public int[] getIntValues() {
+        return valueKind != ASduView.NONE && getFloatValues() == null && getShortValues() == null ? intValues : null;
+    }
+
+    /**
+     * Returns the quality descriptors as returned by {@link ASduView#quality(int)}, null if the type
+     * has no quality descriptor.
+     *
+     * @return the quality descriptors
+     */
+    public byte[] getQualities() {
+        return hasQualities ? qualities : null;
+    }
+
+    /**
+     * Returns the timestamps in ms since epoch of the CP56Time2a time tags, null if the type has no
+     * CP56Time2a time tag.
+     *
+     * @return the timestamps
+     */
+    public long[] getTimestamps() {
+        return hasTimestamps ? timestamps : null;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+/**
+ * Determines what {@link Connection#sendAsync(ASdu)} does if the outbound queue of a connection is
+ * full because the peer does not acknowledge the sent I format APDUs fast enough or has stopped the
+ * data transfer. The producer is never blocked by any of the policies.
+ *
+ * @see CommonBuilder#setOutboundOverflowPolicy(OutboundOverflowPolicy)
+ */
+public enum OutboundOverflowPolicy {
+    /** The new ASDU is rejected, its future completes with a RejectedExecutionException. */
+    REJECT,
+    /**
+     * The oldest queued ASDU is discarded to make room for the new one, the future of the discarded
+     * ASDU completes with a RejectedExecutionException.
+     */
+    DROP_OLDEST,
+    /**
+     * A queued ASDU with a single information object is replaced by a newer one of the same type,
+     * cause of transmission, common address and information object address, so that only the latest
+     * value of a data point waits to be sent. The replaced ASDU keeps its position in the queue and
+     * both futures complete once the latest value is confirmed. Other ASDUs are queued like with
+     * {@link #DROP_OLDEST}. Only ASDUs in monitoring direction are coalesced, never commands.
+     */
+    COALESCE
+}
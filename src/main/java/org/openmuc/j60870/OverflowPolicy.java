@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+/**
+ * Determines what happens if a bounded queue of a connection is full, e.g. because a listener does
+ * not keep up with the received ASDUs.
+ */
+public enum OverflowPolicy {
+    /**
+     * The thread that adds to the queue waits until there is space again. For received ASDUs this
+     * stops reading from the socket, so the peer is slowed down by its send window. With the selector
+     * transport the event loop does not wait, it only stops reading from the channel of the
+     * connection until there is space again.
+     */
+    BLOCK,
+    /** The oldest entry of the queue is discarded to make room for the new one. */
+    DROP_OLDEST,
+    /** The connection is closed with an {@link java.io.IOException}. */
+    CLOSE_CONNECTION
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes every APDU sent and received by the connections it is attached to into pcapng files that
+ * can be opened with Wireshark. A capture is attached with {@link
+ * CommonBuilder#setPcapngCapture(PcapngCapture)} and may be shared by any number of connections.
+ *
+ * <p>Each APDU is written as a single TCP segment with the exact bytes exchanged. The Ethernet, IP
+ * and TCP headers are synthesized from the local and remote socket addresses of the connection, the
+ * TCP sequence numbers count the captured bytes of each direction and the MAC addresses are the
+ * locally administered addresses 02:00:00:00:00:01 for the local and 02:00:00:00:00:02 for the
+ * remote side.
+ *
+ * <p>As with the {@link TrafficJournal}, the connections only copy the APDUs into a bounded queue
+ * and a writer thread writes them to a buffered file. If the writer does not keep up, e.g. because
+ * the disk is slow, the APDUs are dropped and counted, see {@link #getNumDroppedRecords()}.
+ *
+ * <p>If a maximum file size is set, a new file is started once the current one exceeds it. The
+ * following files are named after the given file with an index inserted in front of the extension,
+ * e.g. {@code iec104-1.pcapng}, {@code iec104-2.pcapng} and so on.
+ */
+public class PcapngCapture extends TrafficRecorder {
+
+    private static final int SECTION_HEADER_BLOCK = 0x0a0d0d0a;
+    private static final int INTERFACE_DESCRIPTION_BLOCK = 0x00000001;
+    private static final int ENHANCED_PACKET_BLOCK = 0x00000006;
+    private static final int BYTE_ORDER_MAGIC = 0x1a2b3c4d;
+    private static final int LINKTYPE_ETHERNET = 1;
+    private static final int OPTION_END_OF_OPT = 0;
+    private static final int OPTION_EPB_FLAGS = 2;
+    private static final int OPTION_IF_TSRESOL = 9;
+    private static final int EPB_FLAGS_INBOUND = 0x01;
+    private static final int EPB_FLAGS_OUTBOUND = 0x02;
+
+    private static final int ETHERNET_HEADER_LENGTH = 14;
+    private static final int IPV4_HEADER_LENGTH = 20;
+    private static final int IPV6_HEADER_LENGTH = 40;
+    private static final int TCP_HEADER_LENGTH = 20;
+    private static final int MAX_PACKET_LENGTH =
+            ETHERNET_HEADER_LENGTH + IPV6_HEADER_LENGTH + TCP_HEADER_LENGTH + APdu.MAX_APDU_LENGTH + 2;
+    /** Block header (8), interface ID and timestamp (12), lengths (8), flags (8), end (4) and trailer (4). */
+    private static final int PACKET_BLOCK_OVERHEAD = 44;
+
+    private static final byte[] LOCAL_MAC = new byte[] {0x02, 0x00, 0x00, 0x00, 0x00, 0x01};
+    private static final byte[] REMOTE_MAC = new byte[] {0x02, 0x00, 0x00, 0x00, 0x00, 0x02};
+
+    private static final int DEFAULT_QUEUE_SIZE = 4096;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final Map<Integer, Endpoints> endpoints = new ConcurrentHashMap<>();
+
+    // only accessed by the writer thread, and by closeOutput() once the writer has terminated
+    private final byte[] packet = new byte[MAX_PACKET_LENGTH];
+    private final ByteBuffer block =
+            ByteBuffer.allocate(MAX_PACKET_LENGTH + 3 + PACKET_BLOCK_OVERHEAD).order(ByteOrder.LITTLE_ENDIAN);
+    private OutputStream os;
+    private long fileSize;
+    private int fileIndex;
+
+    private PcapngCapture(File file, int queueSize, long maxFileSize, int maxFiles) throws IOException {
+        super(queueSize, "j60870-pcapng-writer");
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+        openFile();
+        startWriter();
+    }
+
+    /**
+     * Creates a capture file without a size limit, an existing file is overwritten. The queue holds
+     * 4096 APDUs.
+     *
+     * @param file the file
+     * @return the capture
+     * @throws IOException if the file could not be created
+     */
+    public static PcapngCapture open(File file) throws IOException {
+        return new PcapngCapture(file, DEFAULT_QUEUE_SIZE, 0, 0);
+    }
+
+    /**
+     * Creates a capture that is rotated by size, existing files are overwritten.
+     *
+     * @param file the first file
+     * @param queueSize the number of APDUs that may be waiting for the writer, rounded up to the next
+     *     power of two
+     * @param maxFileSize the size in bytes after which the next file is started, 0 for no limit
+     * @param maxFiles the number of files that are kept, the oldest file is deleted when another one
+     *     is started. 0 keeps all files.
+     * @return the capture
+     * @throws IOException if the file could not be created
+     */
+    public static PcapngCapture open(File file, int queueSize, long maxFileSize, int maxFiles) throws IOException {
+        if (queueSize < 1 || queueSize > (1 << 20)) {
+            throw new IllegalArgumentException("invalid queueSize: " + queueSize + ", must be between 1 and 1048576");
+        }
+        if (maxFileSize < 0) {
+            throw new IllegalArgumentException("invalid maxFileSize: " + maxFileSize + ", must be at least 0");
+        }
+        if (maxFiles < 0) {
+            throw new IllegalArgumentException("invalid maxFiles: " + maxFiles + ", must be at least 0");
+        }
+        return new PcapngCapture(file, queueSize, maxFileSize, maxFiles);
+    }
+
+    /**
+     * Returns the file with the given index, the first file has index 0.
+     *
+     * @param file the first file
+     * @param index the index
+     * @return the file
+     */
+    static File rotatedFile(File file, int index) {
+        if (index == 0) {
+            return file;
+        }
+        String name = file.getName();
+        int extension = name.lastIndexOf('.');
+        if (extension <= 0) {
+            return new File(file.getParentFile(), name + "-" + index);
+        }
+        return new File(file.getParentFile(), name.substring(0, extension) + "-" + index + name.substring(extension));
+    }
+
+    @Override
+    int register(Connection connection) {
+        int connectionId = super.register(connection);
+        endpoints.put(
+                connectionId, new Endpoints(connection.getLocalSocketAddress(), connection.getRemoteSocketAddress()));
+        return connectionId;
+    }
+
+    /** Returns the number of connections whose endpoints are kept, i.e. that have not been closed. */
+    int getNumConnections() {
+        return endpoints.size();
+    }
+
+    @Override
+    void unregistered(int connectionId) {
+        endpoints.remove(connectionId);
+    }
+
+    @Override
+    void append(int connectionId, boolean isSent, long timestamp, byte[] frame, int offset, int length)
+            throws IOException {
+        Endpoints connectionEndpoints = endpoints.get(connectionId);
+        if (connectionEndpoints == null) {
+            // recorded by a thread that was still writing while the connection was closed
+            return;
+        }
+        int packetLength = encodePacket(connectionEndpoints, isSent, frame, offset, length);
+        int paddedLength = (packetLength + 3) & ~3;
+        int blockLength = paddedLength + PACKET_BLOCK_OVERHEAD;
+
+        block.clear();
+        block.putInt(ENHANCED_PACKET_BLOCK);
+        block.putInt(blockLength);
+        block.putInt(0);
+        block.putInt((int) (timestamp >>> 32));
+        block.putInt((int) timestamp);
+        block.putInt(packetLength);
+        block.putInt(packetLength);
+        block.put(packet, 0, packetLength);
+        for (int i = packetLength; i < paddedLength; i++) {
+            block.put((byte) 0);
+        }
+        block.putShort((short) OPTION_EPB_FLAGS);
+        block.putShort((short) 4);
+        block.putInt(isSent ? EPB_FLAGS_OUTBOUND : EPB_FLAGS_INBOUND);
+        block.putInt(OPTION_END_OF_OPT);
+        block.putInt(blockLength);
+        write(blockLength);
+
+        if (maxFileSize > 0 && fileSize >= maxFileSize) {
+            os.close();
+            fileIndex++;
+            openFile();
+        }
+    }
+
+    @Override
+    void appended() throws IOException {
+        os.flush();
+    }
+
+    @Override
+    void closeOutput(boolean failed) throws IOException {
+        os.close();
+    }
+
+    private void openFile() throws IOException {
+        if (maxFiles > 0 && fileIndex >= maxFiles) {
+            File oldest = rotatedFile(file, fileIndex - maxFiles);
+            if (oldest.exists() && !oldest.delete()) {
+                throw new IOException("Unable to delete capture file " + oldest);
+            }
+        }
+        os = new BufferedOutputStream(new FileOutputStream(rotatedFile(file, fileIndex)), WRITE_BUFFER_SIZE);
+        fileSize = 0;
+
+        block.clear();
+        block.putInt(SECTION_HEADER_BLOCK);
+        block.putInt(28);
+        block.putInt(BYTE_ORDER_MAGIC);
+        block.putShort((short) 1);
+        block.putShort((short) 0);
+        // the section length is not known in advance
+        block.putLong(-1);
+        block.putInt(28);
+
+        block.putInt(INTERFACE_DESCRIPTION_BLOCK);
+        block.putInt(32);
+        block.putShort((short) LINKTYPE_ETHERNET);
+        block.putShort((short) 0);
+        block.putInt(0);
+        // timestamps are given in nanoseconds
+        block.putShort((short) OPTION_IF_TSRESOL);
+        block.putShort((short) 1);
+        block.putInt(9);
+        block.putInt(OPTION_END_OF_OPT);
+        block.putInt(32);
+        write(60);
+    }
+
+    private void write(int length) throws IOException {
+        os.write(block.array(), 0, length);
+        fileSize += length;
+    }
+
+    private int encodePacket(Endpoints connectionEndpoints, boolean isSent, byte[] frame, int offset, int length) {
+        byte[] source = isSent ? connectionEndpoints.localAddress : connectionEndpoints.remoteAddress;
+        byte[] destination = isSent ? connectionEndpoints.remoteAddress : connectionEndpoints.localAddress;
+        boolean ipv6 = source.length == 16;
+        int tcpLength = TCP_HEADER_LENGTH + length;
+
+        System.arraycopy(isSent ? REMOTE_MAC : LOCAL_MAC, 0, packet, 0, 6);
+        System.arraycopy(isSent ? LOCAL_MAC : REMOTE_MAC, 0, packet, 6, 6);
+        putShort(12, ipv6 ? 0x86dd : 0x0800);
+
+        int tcpOffset;
+        if (ipv6) {
+            int ipOffset = ETHERNET_HEADER_LENGTH;
+            putInt(ipOffset, 0x60000000);
+            putShort(ipOffset + 4, tcpLength);
+            packet[ipOffset + 6] = 6;
+            packet[ipOffset + 7] = 64;
+            System.arraycopy(source, 0, packet, ipOffset + 8, 16);
+            System.arraycopy(destination, 0, packet, ipOffset + 24, 16);
+            tcpOffset = ipOffset + IPV6_HEADER_LENGTH;
+        } else {
+            int ipOffset = ETHERNET_HEADER_LENGTH;
+            packet[ipOffset] = 0x45;
+            packet[ipOffset + 1] = 0;
+            putShort(ipOffset + 2, IPV4_HEADER_LENGTH + tcpLength);
+            putShort(ipOffset + 4, connectionEndpoints.ipIdentification++);
+            // don't fragment
+            putShort(ipOffset + 6, 0x4000);
+            packet[ipOffset + 8] = 64;
+            packet[ipOffset + 9] = 6;
+            putShort(ipOffset + 10, 0);
+            System.arraycopy(source, 0, packet, ipOffset + 12, 4);
+            System.arraycopy(destination, 0, packet, ipOffset + 16, 4);
+            putShort(ipOffset + 10, checksum(ipOffset, IPV4_HEADER_LENGTH, 0));
+            tcpOffset = ipOffset + IPV4_HEADER_LENGTH;
+        }
+
+        putShort(tcpOffset, isSent ? connectionEndpoints.localPort : connectionEndpoints.remotePort);
+        putShort(tcpOffset + 2, isSent ? connectionEndpoints.remotePort : connectionEndpoints.localPort);
+        putInt(
+                tcpOffset + 4,
+                isSent ? connectionEndpoints.localSequenceNumber : connectionEndpoints.remoteSequenceNumber);
+        putInt(
+                tcpOffset + 8,
+                isSent ? connectionEndpoints.remoteSequenceNumber : connectionEndpoints.localSequenceNumber);
+        packet[tcpOffset + 12] = 0x50;
+        // PSH and ACK
+        packet[tcpOffset + 13] = 0x18;
+        putShort(tcpOffset + 14, 0xffff);
+        putShort(tcpOffset + 16, 0);
+        putShort(tcpOffset + 18, 0);
+        System.arraycopy(frame, offset, packet, tcpOffset + TCP_HEADER_LENGTH, length);
+
+        // the checksum covers a pseudo header of the addresses, the protocol and the TCP length
+        long pseudoHeaderSum = sum(source) + sum(destination) + 6 + tcpLength;
+        putShort(tcpOffset + 16, checksum(tcpOffset, tcpLength, pseudoHeaderSum));
+
+        if (isSent) {
+            connectionEndpoints.localSequenceNumber += length;
+        } else {
+            connectionEndpoints.remoteSequenceNumber += length;
+        }
+        return tcpOffset + tcpLength;
+    }
+
+    private void putShort(int index, int value) {
+        packet[index] = (byte) (value >> 8);
+        packet[index + 1] = (byte) value;
+    }
+
+    private void putInt(int index, int value) {
+        putShort(index, value >>> 16);
+        putShort(index + 2, value);
+    }
+
+    private int checksum(int offset, int length, long initialSum) {
+        long sum = initialSum;
+        for (int i = 0; i < length - 1; i += 2) {
+            sum += ((packet[offset + i] & 0xff) << 8) | (packet[offset + i + 1] & 0xff);
+        }
+        if ((length & 1) != 0) {
+            sum += (packet[offset + length - 1] & 0xff) << 8;
+        }
+        while ((sum >> 16) != 0) {
+            sum = (sum & 0xffff) + (sum >> 16);
+        }
+        return (int) ~sum & 0xffff;
+    }
+
+    private static long sum(byte[] address) {
+        long sum = 0;
+        for (int i = 0; i < address.length; i += 2) {
+            sum += ((address[i] & 0xff) << 8) | (address[i + 1] & 0xff);
+        }
+        return sum;
+    }
+
+    /** The addresses of a captured connection and the TCP sequence numbers of both directions. */
+    private static class Endpoints {
+
+        private final byte[] localAddress;
+        private final byte[] remoteAddress;
+        private final int localPort;
+        private final int remotePort;
+
+        // only accessed by the writer thread
+        private int localSequenceNumber = 1;
+        private int remoteSequenceNumber = 1;
+        private int ipIdentification;
+
+        Endpoints(SocketAddress local, SocketAddress remote) {
+            byte[] localBytes = address(local);
+            byte[] remoteBytes = address(remote);
+            if (localBytes.length != remoteBytes.length) {
+                // an IPv4 address is written as IPv4-mapped IPv6 address if the other one is IPv6
+                localBytes = ipv6(localBytes);
+                remoteBytes = ipv6(remoteBytes);
+            }
+            this.localAddress = localBytes;
+            this.remoteAddress = remoteBytes;
+            this.localPort = port(local);
+            this.remotePort = port(remote);
+        }
+
+        private static byte[] address(SocketAddress socketAddress) {
+            if (socketAddress instanceof InetSocketAddress) {
+                InetAddress address = ((InetSocketAddress) socketAddress).getAddress();
+                if (address != null) {
+                    return address.getAddress();
+                }
+            }
+            return new byte[4];
+        }
+
+        private static int port(SocketAddress socketAddress) {
+            if (socketAddress instanceof InetSocketAddress) {
+                return ((InetSocketAddress) socketAddress).getPort();
+            }
+            return 0;
+        }
+
+        private static byte[] ipv6(byte[] address) {
+            if (address.length == 16) {
+                return address;
+            }
+            byte[] mapped = new byte[16];
+            mapped[10] = (byte) 0xff;
+            mapped[11] = (byte) 0xff;
+            System.arraycopy(address, 0, mapped, 12, 4);
+            return mapped;
+        }
+    }
+}
@@ -0,0 +1,631 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import org.openmuc.j60870.ie.IeBinaryCounterReading;
+import org.openmuc.j60870.ie.IeBinaryStateInformation;
+import org.openmuc.j60870.ie.IeDoublePointWithQuality;
+import org.openmuc.j60870.ie.IeNormalizedValue;
+import org.openmuc.j60870.ie.IeQualifierOfInterrogation;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeScaledValue;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.IeSinglePointWithQuality;
+import org.openmuc.j60870.ie.IeTime56;
+import org.openmuc.j60870.ie.IeValueWithTransientState;
+import org.openmuc.j60870.ie.InformationElement;
+import org.openmuc.j60870.ie.InformationObject;
+
+/**
+ * An in-memory process image of the data points of an outstation. A server that is configured with
+ * a process image (see {@link Server.Builder#setProcessImage(ProcessImage)}) reports every update of
+ * a data point spontaneously to all of its started connections and answers station interrogations
+ * (C_IC_NA_1 with qualifier 20) from the process image without notifying the {@link
+ * ConnectionEventListener}. Connections of a {@link RedundancyGroup} receive each report once per
+ * group, through its active connection.
+ *
+ * <p>Data points are identified by their common address and information object address and have
+ * one of the types M_SP_NA_1, M_DP_NA_1, M_ST_NA_1, M_BO_NA_1, M_ME_NA_1, M_ME_NB_1, M_ME_NC_1 or
+ * M_IT_NA_1. Values are stored as primitives:
+ *
+ * <ul>
+ *   <li>single points: 0 or 1
+ *   <li>double points: 0 to 3 as encoded in the DIQ
+ *   <li>step positions: -64 to 63
+ *   <li>bitstrings: the 32 bits
+ *   <li>normalized values: the raw value from -32768 to 32767
+ *   <li>scaled values: -32768 to 32767
+ *   <li>short floating point values: the float value
+ *   <li>integrated totals: the counter reading
+ * </ul>
+ *
+ * The quality is the quality descriptor as encoded by IEC 60870-5-101 (e.g. 0x80 invalid, 0x40 not
+ * topical, 0x20 substituted and 0x10 blocked). For integrated totals it is the last octet of the
+ * BCR, i.e. the sequence number and the carry, counter adjusted and invalid flags.
+ *
+ * <p>Reads never block. Updates are serialized and each value, quality and timestamp triple is read
+ * consistently, so an interrogation sees every data point in a state it actually had, while updates
+ * during the interrogation are reported spontaneously as well.
+ */
+public class ProcessImage {
+
+    private static final int BROADCAST_ADDRESS = 0xffff;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_DATA_POINTS = 0xffffff;
+    private static final int QUALITY_INVALID = 0x80;
+
+    private final Object writeLock = new Object();
+    /** Taken before the write lock is released, so the reports are sent in the order of the updates. */
+    private final ReentrantLock reportLock = new ReentrantLock();
+
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<RedundancyGroup> redundancyGroups = new CopyOnWriteArrayList<>();
+
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+    private volatile int size;
+
+    private boolean spontaneousWithTimeTag = true;
+
+    /**
+     * Sets whether spontaneous reports carry a CP56Time2a time tag (e.g. M_SP_TB_1 instead of
+     * M_SP_NA_1). Default is true.
+     *
+     * @param spontaneousWithTimeTag true if spontaneous reports carry a time tag
+     */
+    public void setSpontaneousWithTimeTag(boolean spontaneousWithTimeTag) {
+        synchronized (writeLock) {
+            this.spontaneousWithTimeTag = spontaneousWithTimeTag;
+        }
+    }
+
+    /**
+     * Adds a data point. Its value is 0, its quality is invalid (0x80) until it is updated.
+     *
+     * @param commonAddress the common address of the data point
+     * @param informationObjectAddress the information object address of the data point
+     * @param type the type of the data point
+     * @throws IllegalArgumentException if the type is not supported, an address is out of range or
+     *     the data point already exists
+     */
+    public void addDataPoint(int commonAddress, int informationObjectAddress, ASduType type) {
+        if (elementLength(type) == 0) {
+            throw new IllegalArgumentException("Unsupported data point type: " + type);
+        }
+        if (commonAddress < 0 || commonAddress > 0xffff) {
+            throw new IllegalArgumentException("invalid common address: " + commonAddress);
+        }
+        if (informationObjectAddress < 0 || informationObjectAddress > 0xffffff) {
+            throw new IllegalArgumentException("invalid information object address: " + informationObjectAddress);
+        }
+
+        long key = key(commonAddress, informationObjectAddress);
+        synchronized (writeLock) {
+            Table table = this.table;
+            if (table.find(key) >= 0) {
+                throw new IllegalArgumentException(
+                        "Data point already exists: " + commonAddress + "/" + informationObjectAddress);
+            }
+
+            int slot = size;
+            if (slot == MAX_DATA_POINTS) {
+                throw new IllegalArgumentException("Maximum number of data points reached: " + MAX_DATA_POINTS);
+            }
+            if (slot == table.capacity) {
+                table = table.grow();
+                this.table = table;
+            }
+
+            table.commonAddresses[slot] = commonAddress;
+            table.informationObjectAddresses[slot] = informationObjectAddress;
+            table.types[slot] = (byte) type.getId();
+            table.qualities.set(slot, QUALITY_INVALID);
+            table.insert(key, slot);
+            size = slot + 1;
+        }
+    }
+
+    /**
+     * Returns the number of data points.
+     *
+     * @return the number of data points
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int commonAddress, int informationObjectAddress) {
+        return table.find(key(commonAddress, informationObjectAddress)) >= 0;
+    }
+
+    /**
+     * Updates a data point that is not of type M_ME_NC_1 using the current time as timestamp.
+     *
+     * @param commonAddress the common address of the data point
+     * @param informationObjectAddress the information object address of the data point
+     * @param value the new value
+     * @param quality the new quality
+     */
+    public void update(int commonAddress, int informationObjectAddress, int value, int quality) {
+        update(commonAddress, informationObjectAddress, value, quality, System.currentTimeMillis());
+    }
+
+    /**
+     * Updates a data point that is not of type M_ME_NC_1 and reports the change spontaneously.
+     *
+     * @param commonAddress the common address of the data point
+     * @param informationObjectAddress the information object address of the data point
+     * @param value the new value
+     * @param quality the new quality
+     * @param timestamp the time of the change in ms since epoch
+     * @throws IllegalArgumentException if the data point does not exist or is of type M_ME_NC_1
+     */
+    public void update(int commonAddress, int informationObjectAddress, int value, int quality, long timestamp) {
+        write(commonAddress, informationObjectAddress, false, value, quality, timestamp);
+    }
+
+    /**
+     * Updates a data point of type M_ME_NC_1 using the current time as timestamp.
+     *
+     * @param commonAddress the common address of the data point
+     * @param informationObjectAddress the information object address of the data point
+     * @param value the new value
+     * @param quality the new quality
+     */
+    public void update(int commonAddress, int informationObjectAddress, float value, int quality) {
+        update(commonAddress, informationObjectAddress, value, quality, System.currentTimeMillis());
+    }
+
+    /**
+     * Updates a data point of type M_ME_NC_1 and reports the change spontaneously.
+     *
+     * @param commonAddress the common address of the data point
+     * @param informationObjectAddress the information object address of the data point
+     * @param value the new value
+     * @param quality the new quality
+     * @param timestamp the time of the change in ms since epoch
+     * @throws IllegalArgumentException if the data point does not exist or is not of type M_ME_NC_1
+     */
+    public void update(int commonAddress, int informationObjectAddress, float value, int quality, long timestamp) {
+        write(commonAddress, informationObjectAddress, true, Float.floatToRawIntBits(value), quality, timestamp);
+    }
+
+    public ASduType getType(int commonAddress, int informationObjectAddress) {
+        Table table = this.table;
+        return ASduType.typeFor(table.types[slot(table, commonAddress, informationObjectAddress)]);
+    }
+
+    public int getIntValue(int commonAddress, int informationObjectAddress) {
+        Table table = this.table;
+        return table.values.get(slot(table, commonAddress, informationObjectAddress));
+    }
+
+    public float getFloatValue(int commonAddress, int informationObjectAddress) {
+        Table table = this.table;
+        return Float.intBitsToFloat(table.values.get(slot(table, commonAddress, informationObjectAddress)));
+    }
+
+    public int getQuality(int commonAddress, int informationObjectAddress) {
+        Table table = this.table;
+        return table.qualities.get(slot(table, commonAddress, informationObjectAddress));
+    }
+
+    public long getTimestamp(int commonAddress, int informationObjectAddress) {
+        Table table = this.table;
+        return table.timestamps.get(slot(table, commonAddress, informationObjectAddress));
+    }
+
+    void attach(Connection connection) {
+        // a redundancy group reports to its active connection or buffers the reports
+        if (connection.getRedundancyGroup() != null) {
+            redundancyGroups.addIfAbsent(connection.getRedundancyGroup());
+        } else {
+            connections.add(connection);
+        }
+    }
+
+    void detach(Connection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * Returns true if the given ASDU is a station interrogation that is answered by the process
+     * image.
+     */
+    static boolean isStationInterrogation(ASdu aSdu) {
+        if (aSdu.getTypeIdentification() != ASduType.C_IC_NA_1
+                || aSdu.getCauseOfTransmission() != CauseOfTransmission.ACTIVATION) {
+            return false;
+        }
+        InformationObject[] informationObjects = aSdu.getInformationObjects();
+        return informationObjects != null
+                && informationObjects.length == 1
+                && informationObjects[0].getInformationElements()[0][0] instanceof IeQualifierOfInterrogation
+                && ((IeQualifierOfInterrogation) informationObjects[0].getInformationElements()[0][0]).getValue() == 20;
+    }
+
+    /**
+     * Answers a station interrogation with the data points of the requested common address. Blocks
+     * until all responses have been sent.
+     */
+    void interrogate(Connection connection, ASdu interrogation, ConnectionSettings settings) throws IOException {
+        int commonAddress = interrogation.getCommonAddress();
+        boolean broadcast = settings.getCommonAddressFieldLength() == 2 && commonAddress == BROADCAST_ADDRESS;
+
+        int size = this.size;
+        Table table = this.table;
+
+        boolean known = broadcast;
+        for (int slot = 0; slot < size && !known; slot++) {
+            known = table.commonAddresses[slot] == commonAddress;
+        }
+        if (!known) {
+            connection.sendConfirmation(
+                    interrogation, commonAddress, true, CauseOfTransmission.UNKNOWN_COMMON_ADDRESS_OF_ASDU);
+            return;
+        }
+
+        connection.sendConfirmation(interrogation);
+
+        ASduPacker packer = null;
+        int currentCommonAddress = -1;
+        ASduType currentType = null;
+        PointState state = new PointState();
+
+        for (int slot = 0; slot < size; slot++) {
+            int pointCommonAddress = table.commonAddresses[slot];
+            if (!broadcast && pointCommonAddress != commonAddress) {
+                continue;
+            }
+            ASduType type = ASduType.typeFor(table.types[slot] & 0xff);
+
+            if (pointCommonAddress != currentCommonAddress || type != currentType) {
+                send(connection, packer);
+                currentCommonAddress = pointCommonAddress;
+                currentType = type;
+                packer =
+                        new ASduPacker(type, CauseOfTransmission.INTERROGATED_BY_STATION, pointCommonAddress, settings);
+            }
+
+            table.read(slot, state);
+            packer.add(table.informationObjectAddresses[slot], elements(type, state.value, state.quality, null));
+        }
+        send(connection, packer);
+
+        connection.sendActivationTermination(interrogation);
+    }
+
+    private static void send(Connection connection, ASduPacker packer) throws IOException {
+        if (packer == null) {
+            return;
+        }
+        for (ASdu aSdu : packer.pack()) {
+            connection.send(aSdu);
+        }
+    }
+
+    private void write(
+            int commonAddress, int informationObjectAddress, boolean isFloat, int value, int quality, long timestamp) {
+        ASdu report = null;
+        synchronized (writeLock) {
+            Table table = this.table;
+            int slot = slot(table, commonAddress, informationObjectAddress);
+            ASduType type = ASduType.typeFor(table.types[slot] & 0xff);
+            if (isFloat != (type == ASduType.M_ME_NC_1)) {
+                throw new IllegalArgumentException("Data point " + commonAddress + "/" + informationObjectAddress
+                        + " is of type " + type + " and cannot be updated with a "
+                        + (isFloat ? "float" : "int") + " value");
+            }
+            // create the information elements first, they validate the value
+            InformationElement[] elements = connections.isEmpty() && redundancyGroups.isEmpty()
+                    ? null
+                    : elements(type, value, quality, timeTag(timestamp));
+
+            table.write(slot, value, quality, timestamp);
+
+            if (elements != null) {
+                report = spontaneousReport(type, commonAddress, informationObjectAddress, elements);
+                reportLock.lock();
+            }
+        }
+
+        if (report != null) {
+            // sent without the write lock, so that a connection cannot delay updates of the image
+            try {
+                reportSpontaneously(report);
+            } finally {
+                reportLock.unlock();
+            }
+        }
+    }
+
+    private IeTime56 timeTag(long timestamp) {
+        return spontaneousWithTimeTag ? new IeTime56(timestamp) : null;
+    }
+
+    private ASdu spontaneousReport(
+            ASduType type, int commonAddress, int informationObjectAddress, InformationElement[] elements) {
+        return new ASdu(
+                spontaneousWithTimeTag ? timeTaggedType(type) : type,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                0,
+                commonAddress,
+                new InformationObject(informationObjectAddress, elements));
+    }
+
+    private void reportSpontaneously(ASdu aSdu) {
+        long coalesceKey = Connection.coalesceKey(aSdu);
+
+        // the connections of a server share its settings, so the report is encoded once per server
+        ConnectionSettings encodedSettings = null;
+        byte[] encodedASdu = null;
+        for (Connection connection : connections) {
+            if (!connection.isClosed() && (!connection.isStopped() || connection.isQueueWhileStopped())) {
+                if (connection.getSettings() != encodedSettings) {
+                    encodedSettings = connection.getSettings();
+                    encodedASdu = aSdu.encode(encodedSettings);
+                }
+                // queued while another thread writes to the connection, the outbound overflow policy of
+                // the connection applies if its queue is full
+                connection.sendAsync(encodedASdu, coalesceKey);
+            }
+        }
+        for (RedundancyGroup redundancyGroup : redundancyGroups) {
+            if (redundancyGroup.getSettings() != encodedSettings) {
+                encodedSettings = redundancyGroup.getSettings();
+                encodedASdu = aSdu.encode(encodedSettings);
+            }
+            redundancyGroup.sendAsync(encodedASdu, coalesceKey);
+        }
+    }
+
+    private static InformationElement[] elements(ASduType type, int value, int quality, IeTime56 timeTag) {
+        InformationElement element;
+        InformationElement qualityElement = null;
+        switch (type) {
+            case M_SP_NA_1:
+                element = IeSinglePointWithQuality.of((byte) ((quality & 0xf0) | (value != 0 ? 0x01 : 0x00)));
+                break;
+            case M_DP_NA_1:
+                element = IeDoublePointWithQuality.of((byte) ((quality & 0xf0) | (value & 0x03)));
+                break;
+            case M_ST_NA_1:
+                element = new IeValueWithTransientState(value, false);
+                qualityElement = quality(quality);
+                break;
+            case M_BO_NA_1:
+                element = new IeBinaryStateInformation(value);
+                qualityElement = quality(quality);
+                break;
+            case M_ME_NA_1:
+                element = new IeNormalizedValue(value);
+                qualityElement = quality(quality);
+                break;
+            case M_ME_NB_1:
+                element = new IeScaledValue(value);
+                qualityElement = quality(quality);
+                break;
+            case M_ME_NC_1:
+                element = new IeShortFloat(Float.intBitsToFloat(value));
+                qualityElement = quality(quality);
+                break;
+            case M_IT_NA_1:
+                element = new IeBinaryCounterReading(value, quality & 0x1f, counterFlags(quality));
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported data point type: " + type);
+        }
+
+        int length = 1 + (qualityElement != null ? 1 : 0) + (timeTag != null ? 1 : 0);
+        InformationElement[] elements = new InformationElement[length];
+        int i = 0;
+        elements[i++] = element;
+        if (qualityElement != null) {
+            elements[i++] = qualityElement;
+        }
+        if (timeTag != null) {
+            elements[i] = timeTag;
+        }
+        return elements;
+    }
+
+    private static IeQuality quality(int quality) {
+        return IeQuality.of((byte) (quality & 0xf1));
+    }
+
+    private static Set<IeBinaryCounterReading.Flag> counterFlags(int quality) {
+        Set<IeBinaryCounterReading.Flag> flags = EnumSet.noneOf(IeBinaryCounterReading.Flag.class);
+        if ((quality & 0x20) != 0) {
+            flags.add(IeBinaryCounterReading.Flag.CARRY);
+        }
+        if ((quality & 0x40) != 0) {
+            flags.add(IeBinaryCounterReading.Flag.COUNTER_ADJUSTED);
+        }
+        if ((quality & 0x80) != 0) {
+            flags.add(IeBinaryCounterReading.Flag.INVALID);
+        }
+        return flags;
+    }
+
+    private static ASduType timeTaggedType(ASduType type) {
+        switch (type) {
+            case M_SP_NA_1:
+                return ASduType.M_SP_TB_1;
+            case M_DP_NA_1:
+                return ASduType.M_DP_TB_1;
+            case M_ST_NA_1:
+                return ASduType.M_ST_TB_1;
+            case M_BO_NA_1:
+                return ASduType.M_BO_TB_1;
+            case M_ME_NA_1:
+                return ASduType.M_ME_TD_1;
+            case M_ME_NB_1:
+                return ASduType.M_ME_TE_1;
+            case M_ME_NC_1:
+                return ASduType.M_ME_TF_1;
+            case M_IT_NA_1:
+                return ASduType.M_IT_TB_1;
+            default:
+                throw new IllegalArgumentException("Unsupported data point type: " + type);
+        }
+    }
+
+    private static int elementLength(ASduType type) {
+        switch (type) {
+            case M_SP_NA_1:
+            case M_DP_NA_1:
+                return 1;
+            case M_ST_NA_1:
+                return 2;
+            case M_ME_NA_1:
+            case M_ME_NB_1:
+                return 3;
+            case M_BO_NA_1:
+            case M_ME_NC_1:
+            case M_IT_NA_1:
+                return 5;
+            default:
+                return 0;
+        }
+    }
+
+    private static long key(int commonAddress, int informationObjectAddress) {
+        return ((long) (commonAddress & 0xffff) << 24) | (informationObjectAddress & 0xffffff);
+    }
+
+    private static int slot(Table table, int commonAddress, int informationObjectAddress) {
+        int slot = table.find(key(commonAddress, informationObjectAddress));
+        if (slot < 0) {
+            throw new IllegalArgumentException("Unknown data point: " + commonAddress + "/" + informationObjectAddress);
+        }
+        return slot;
+    }
+
+    /** A consistent copy of the state of a data point. */
+    private static class PointState {
+        private int value;
+        private int quality;
+        private long timestamp;
+    }
+
+    /**
+     * The data points stored in parallel arrays. The index is an open addressing hash table whose
+     * entries hold the key of a data point in the upper 40 bits and its slot + 1 in the lower 24
+     * bits, so that a reader never sees a key without its slot.
+     */
+    private static class Table {
+
+        private final int capacity;
+        private final AtomicLongArray index;
+        private final int indexMask;
+
+        private final int[] commonAddresses;
+        private final int[] informationObjectAddresses;
+        private final byte[] types;
+
+        // odd while the data point is written
+        private final AtomicIntegerArray versions;
+        private final AtomicIntegerArray values;
+        private final AtomicIntegerArray qualities;
+        private final AtomicLongArray timestamps;
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            this.index = new AtomicLongArray(capacity * 2);
+            this.indexMask = capacity * 2 - 1;
+            this.commonAddresses = new int[capacity];
+            this.informationObjectAddresses = new int[capacity];
+            this.types = new byte[capacity];
+            this.versions = new AtomicIntegerArray(capacity);
+            this.values = new AtomicIntegerArray(capacity);
+            this.qualities = new AtomicIntegerArray(capacity);
+            this.timestamps = new AtomicLongArray(capacity);
+        }
+
+        Table grow() {
+            Table table = new Table(capacity * 2);
+            System.arraycopy(commonAddresses, 0, table.commonAddresses, 0, capacity);
+            System.arraycopy(informationObjectAddresses, 0, table.informationObjectAddresses, 0, capacity);
+            System.arraycopy(types, 0, table.types, 0, capacity);
+            for (int slot = 0; slot < capacity; slot++) {
+                table.values.set(slot, values.get(slot));
+                table.qualities.set(slot, qualities.get(slot));
+                table.timestamps.set(slot, timestamps.get(slot));
+                table.insert(key(commonAddresses[slot], informationObjectAddresses[slot]), slot);
+            }
+            return table;
+        }
+
+        int find(long key) {
+            int i = hash(key);
+            long entry;
+            while ((entry = index.get(i)) != 0) {
+                if ((entry >>> 24) == key) {
+                    return (int) (entry & 0xffffff) - 1;
+                }
+                i = (i + 1) & indexMask;
+            }
+            return -1;
+        }
+
+        void insert(long key, int slot) {
+            int i = hash(key);
+            while (index.get(i) != 0) {
+                i = (i + 1) & indexMask;
+            }
+            index.set(i, (key << 24) | (slot + 1));
+        }
+
+        void write(int slot, int value, int quality, long timestamp) {
+            int version = versions.get(slot);
+            versions.set(slot, version + 1);
+            values.set(slot, value);
+            qualities.set(slot, quality);
+            timestamps.set(slot, timestamp);
+            versions.set(slot, version + 2);
+        }
+
+        void read(int slot, PointState state) {
+            int version;
+            do {
+                version = versions.get(slot);
+                state.value = values.get(slot);
+                state.quality = qualities.get(slot);
+                state.timestamp = timestamps.get(slot);
+            } while ((version & 1) != 0 || version != versions.get(slot));
+        }
+
+        private int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & indexMask;
+        }
+    }
+}
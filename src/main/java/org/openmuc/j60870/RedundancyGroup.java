@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import org.openmuc.j60870.Connection.PendingASdu;
+
+/**
+ * A redundancy group of a controlled station as defined by IEC 60870-5-104. A group contains all
+ * server connections from a given set of client addresses, but only one of them is started at a
+ * time. When the data transfer of another connection of the group is started (STARTDT), that
+ * connection becomes the active one and the previously active connection is closed. It cannot be
+ * stopped, as only the controlling station sends STOPDT, and its peer would keep sending I- and
+ * S-frames. A controlling station that wants to keep the previous link as a standby connection
+ * therefore stops its data transfer before it starts another connection of the group.
+ *
+ * <p>Spontaneous ASDUs sent through {@link #sendAsync(ASdu)} and the I-frames of the active
+ * connection that have not been confirmed are not lost on a switchover. They are sent again on the
+ * connection that becomes active next, before any new ASDUs. While no connection is active, the
+ * ASDUs are buffered by the group. When they are queued on the connection, the outbound overflow
+ * policy of the server applies to them as to any other queued ASDU.
+ *
+ * <p>A group is added to a server by {@link Server.Builder#addRedundancyGroup(RedundancyGroup)} and
+ * can only be used by one server.
+ */
+public class RedundancyGroup {
+
+    private static final int DEFAULT_MAX_BUFFERED_ASDUS = 1000;
+
+    private final String name;
+    private final List<String> clientIps;
+
+    // guarded by this
+    private final Queue<PendingASdu> buffered = new ArrayDeque<>();
+    private Connection active;
+    private ConnectionSettings settings;
+    private int maxBufferedASdus = DEFAULT_MAX_BUFFERED_ASDUS;
+    private long numDroppedASdus;
+
+    /**
+     * Creates a redundancy group for the connections from the given client addresses.
+     *
+     * @param name the name of the group
+     * @param clientIps the IPs of the clients of the group, {@code null} or empty for all clients
+     *     that are not part of another group
+     */
+    public RedundancyGroup(String name, List<String> clientIps) {
+        this.name = name;
+        this.clientIps = clientIps == null ? Collections.<String>emptyList() : new ArrayList<>(clientIps);
+    }
+
+    /**
+     * Sets the maximum number of ASDUs buffered while no connection of the group is active. If the
+     * buffer is full, the oldest ASDU is discarded and its future completes exceptionally with a
+     * {@link RejectedExecutionException}. Default is 1000.
+     *
+     * @param maxBufferedASdus the maximum number of buffered ASDUs, at least 1
+     * @return this group
+     */
+    public synchronized RedundancyGroup setMaxBufferedASdus(int maxBufferedASdus) {
+        if (maxBufferedASdus < 1) {
+            throw new IllegalArgumentException("invalid maximum number of buffered ASDUs: " + maxBufferedASdus);
+        }
+        this.maxBufferedASdus = maxBufferedASdus;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the connection of the group whose data transfer is started.
+     *
+     * @return the active connection or null if no connection is started
+     */
+    public synchronized Connection getActiveConnection() {
+        return active;
+    }
+
+    /**
+     * Returns the number of ASDUs buffered until a connection of the group becomes active.
+     *
+     * @return the number of buffered ASDUs
+     */
+    public synchronized int getNumBufferedASdus() {
+        return buffered.size();
+    }
+
+    /**
+     * Returns the number of ASDUs discarded because the buffer was full.
+     *
+     * @return the number of discarded ASDUs
+     */
+    public synchronized long getNumDroppedASdus() {
+        return numDroppedASdus;
+    }
+
+    /**
+     * Sends the given ASDU on the active connection, see {@link Connection#sendAsync(ASdu)}. If no
+     * connection is active, the ASDU is buffered and sent as soon as a connection of the group is
+     * started.
+     *
+     * @param aSdu the ASDU to send
+     * @return a future that completes when the I-frame has been confirmed by the peer
+     */
+    public synchronized CompletableFuture<Void> sendAsync(ASdu aSdu) {
+        if (settings == null) {
+            throw new IllegalStateException("The redundancy group has not been added to a server.");
+        }
+        if (active != null && !active.isStopped() && !active.isClosed()) {
+            return active.sendAsync(aSdu);
+        }
+
+        return sendAsync(aSdu.encode(settings), Connection.coalesceKey(aSdu));
+    }
+
+    /**
+     * Sends an ASDU that has been encoded once for several connections, like {@link
+     * #sendAsync(ASdu)}. The array is shared and must not be modified.
+     */
+    synchronized CompletableFuture<Void> sendAsync(byte[] encodedASdu, long coalesceKey) {
+        if (active != null && !active.isStopped() && !active.isClosed()) {
+            return active.sendAsync(encodedASdu, coalesceKey);
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        List<PendingASdu> pending = new ArrayList<>(1);
+        // the key is kept, so that the ASDU can be coalesced once it is queued on a connection
+        pending.add(new PendingASdu(encodedASdu, future, coalesceKey));
+        buffer(pending);
+        return future;
+    }
+
+    synchronized void bind(ConnectionSettings settings) {
+        if (this.settings != null) {
+            throw new IllegalStateException("The redundancy group " + name + " is already used by a server.");
+        }
+        this.settings = settings;
+    }
+
+    synchronized ConnectionSettings getSettings() {
+        return settings;
+    }
+
+    boolean contains(String clientIp) {
+        return clientIps.contains(clientIp);
+    }
+
+    boolean isDefault() {
+        return clientIps.isEmpty();
+    }
+
+    /**
+     * Makes the given connection the active one. The ASDUs not confirmed or not sent by the
+     * previously active connection and the buffered ASDUs are queued on the connection, which must
+     * still be stopped.
+     *
+     * @return the previously active connection, null if no connection was active
+     */
+    synchronized Connection activate(Connection connection) {
+        Connection previous = active;
+        active = connection;
+        if (previous != null && previous != connection) {
+            buffer(previous.deactivate());
+        }
+        connection.queuePendingASdus(new ArrayList<>(buffered));
+        buffered.clear();
+        return previous == connection ? null : previous;
+    }
+
+    /** Called once the data transfer of the connection has been stopped by its peer. */
+    synchronized void stopped(Connection connection) {
+        if (active == connection) {
+            active = null;
+            buffer(connection.drainPendingASdus(false));
+        }
+    }
+
+    /** Called once the connection has been closed, its pending ASDUs are passed on. */
+    synchronized void closed(Connection connection) {
+        List<PendingASdu> pending = connection.drainPendingASdus(true);
+        if (active == connection) {
+            active = null;
+        }
+        if (active != null) {
+            active.queuePendingASdus(pending);
+            active.scheduleQueuedASdus();
+        } else {
+            buffer(pending);
+        }
+    }
+
+    private void buffer(List<PendingASdu> pending) {
+        for (PendingASdu pendingASdu : pending) {
+            if (buffered.size() >= maxBufferedASdus) {
+                numDroppedASdus++;
+                buffered.poll()
+                        .future
+                        .completeExceptionally(new RejectedExecutionException("Redundancy group buffer is full."));
+            }
+            buffered.add(pendingASdu);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Redundancy group " + name + ", clients: " + (clientIps.isEmpty() ? "all" : clientIps);
+    }
+}
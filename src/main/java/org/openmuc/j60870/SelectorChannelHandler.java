@@ -0,0 +1,360 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects the socket channel of a single {@link Connection} to a {@link SelectorEventLoop}.
+ * Incoming bytes are read into the receive buffer of the event loop, framed into APDUs and passed
+ * to the connection without being copied. Outgoing bytes are collected by {@link
+ * #getOutputStream()} and written without blocking, a remainder that could not be written
+ * immediately is written by the event loop once the channel becomes writable again.
+ *
+ * <p>The event loop does not wait for the network or the listener queue, but it runs the callbacks
+ * of an {@link ASduViewListener} and takes the locks of the connection for short sections. If the
+ * peer does not read the written bytes, the handler stops reading from the channel once the write
+ * buffer exceeds a threshold, as most writes respond to received APDUs, and only the I-frames of
+ * the send window are added until it has been drained. If the listener queue is full and its overflow policy is {@link OverflowPolicy#BLOCK},
+ * the received bytes that have not been decoded are kept and reading is stopped until the listener
+ * has taken an ASDU.
+ */
+class SelectorChannelHandler {
+
+    private static final int INITIAL_WRITE_BUFFER_SIZE = 1024;
+    /** Reading is stopped while more bytes than this wait to be written. */
+    private static final int PAUSE_READ_THRESHOLD = 64 * 1024;
+    // the frames written in response to the peer and by the timers while reading is stopped
+    private static final int MAX_CONTROL_FRAMES = 16;
+
+    private final Connection connection;
+    private final SocketChannel channel;
+    private final SelectorEventLoop eventLoop;
+    private final long messageFragmentTimeout;
+    private final int maxWriteBufferSize;
+
+    /** Bytes of an incomplete APDU that are kept until the next read. */
+    private final byte[] fragment = new byte[APdu.MAX_APDU_LENGTH + 2];
+
+    private int fragmentLength;
+    private final OutputStream outputStream = new ChannelOutputStream();
+    private final Object writeLock = new Object();
+
+    /** Bytes not yet written to the channel, the buffer is always in fill mode. */
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(INITIAL_WRITE_BUFFER_SIZE);
+
+    private boolean writeInterest;
+    private boolean readPausedByWrites;
+
+    // only accessed by the event loop thread
+    private SelectionKey key;
+    private long fragmentDeadline;
+    private boolean closed;
+    private boolean readPausedByListener;
+    /** Received bytes that have not been decoded because the listener queue was full. */
+    private ByteBuffer backlog;
+
+    SelectorChannelHandler(Connection connection, SocketChannel channel, ConnectionSettings settings)
+            throws IOException {
+        if (channel == null) {
+            throw new IOException("The selector transport requires a socket created from a socket channel.");
+        }
+        channel.configureBlocking(false);
+
+        this.connection = connection;
+        this.channel = channel;
+        this.messageFragmentTimeout = TimeUnit.MILLISECONDS.toNanos(settings.getMessageFragmentTimeout());
+        // once reading is stopped, at most the send window and a few control frames are added
+        this.maxWriteBufferSize = PAUSE_READ_THRESHOLD
+                + (settings.getMaxNumOfOutstandingIPdus() + MAX_CONTROL_FRAMES) * (APdu.MAX_APDU_LENGTH + 2);
+        this.eventLoop =
+                SelectorEventLoopGroup.acquire(settings.getSelectorThreads()).next();
+    }
+
+    OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /** Starts reading from the channel. */
+    void register() {
+        eventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (closed) {
+                    return;
+                }
+                try {
+                    key = channel.register(eventLoop.selector(), interestOps(), SelectorChannelHandler.this);
+                } catch (ClosedChannelException e) {
+                    close(new SocketException("Socket closed"));
+                }
+            }
+        });
+    }
+
+    /** Stops serving the channel after it has been closed by the connection. */
+    void close() {
+        eventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                close(new SocketException("Socket closed"));
+            }
+        });
+    }
+
+    void handleSelectedKey(SelectionKey selectedKey) {
+        try {
+            if (selectedKey.isReadable()) {
+                read();
+            }
+            if (selectedKey.isValid() && selectedKey.isWritable()) {
+                writePending();
+            }
+        } catch (Exception e) {
+            close(e);
+        }
+    }
+
+    void checkMessageFragmentTimeout(long now) {
+        if (fragmentDeadline != 0 && now - fragmentDeadline >= 0) {
+            close(new SocketTimeoutException("Message fragment timeout exceeded."));
+        }
+    }
+
+    private void read() throws IOException {
+        // the receive buffer is shared by all channels of the event loop, so an incomplete APDU is
+        // copied in front of the new bytes
+        ByteBuffer readBuffer = eventLoop.readBuffer();
+        readBuffer.clear();
+        readBuffer.put(fragment, 0, fragmentLength);
+
+        if (channel.read(readBuffer) == -1) {
+            throw new EOFException();
+        }
+
+        readBuffer.flip();
+        consume(readBuffer);
+    }
+
+    /** Decodes the APDUs of the given bytes and keeps the bytes that could not be decoded yet. */
+    private void consume(ByteBuffer buffer) throws IOException {
+        if (!decodeAPdus(buffer)) {
+            // the remaining bytes do not fit into the fragment buffer and are only valid until the next read
+            backlog = ByteBuffer.allocate(buffer.remaining());
+            backlog.put(buffer);
+            backlog.flip();
+            fragmentLength = 0;
+            fragmentDeadline = 0;
+            readPausedByListener = true;
+            key.interestOps(interestOps());
+            connection.whenListenerQueueNotFull(new Runnable() {
+                @Override
+                public void run() {
+                    eventLoop.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            resumeReading();
+                        }
+                    });
+                }
+            });
+            return;
+        }
+
+        fragmentLength = buffer.remaining();
+        buffer.get(fragment, 0, fragmentLength);
+
+        if (fragmentLength > 0) {
+            fragmentDeadline = System.nanoTime() + messageFragmentTimeout;
+        } else {
+            fragmentDeadline = 0;
+        }
+    }
+
+    private void resumeReading() {
+        if (closed) {
+            return;
+        }
+        readPausedByListener = false;
+        ByteBuffer buffer = backlog;
+        backlog = null;
+        try {
+            consume(buffer);
+            if (key.isValid()) {
+                key.interestOps(interestOps());
+            }
+        } catch (Exception e) {
+            close(e);
+        }
+    }
+
+    /** Returns false if decoding was stopped because the listener queue is full. */
+    private boolean decodeAPdus(ByteBuffer readBuffer) throws IOException {
+        while (!closed) {
+            int position = readBuffer.position();
+
+            // bytes in front of the start flag are discarded
+            while (position < readBuffer.limit() && readBuffer.get(position) != APdu.START_FLAG) {
+                position++;
+            }
+            readBuffer.position(position);
+
+            if (readBuffer.remaining() < 2) {
+                return true;
+            }
+            int length = readBuffer.get(position + 1) & 0xff;
+            APdu.checkApduLength(length);
+            if (readBuffer.remaining() < length + 2) {
+                return true;
+            }
+            if (connection.isListenerQueueFull()) {
+                return false;
+            }
+
+            readBuffer.position(position + 2 + length);
+            connection.handleAPdu(APdu.decode(readBuffer, position + 2, length));
+        }
+        return true;
+    }
+
+    private void writePending() throws IOException {
+        synchronized (writeLock) {
+            writeToChannel();
+            if (writeBuffer.position() == 0) {
+                writeInterest = false;
+                readPausedByWrites = false;
+                key.interestOps(interestOps());
+            }
+        }
+    }
+
+    private void writeToChannel() throws IOException {
+        writeBuffer.flip();
+        try {
+            channel.write(writeBuffer);
+        } finally {
+            writeBuffer.compact();
+        }
+    }
+
+    private int interestOps() {
+        synchronized (writeLock) {
+            int ops = readPausedByWrites || readPausedByListener ? 0 : SelectionKey.OP_READ;
+            return writeInterest ? ops | SelectionKey.OP_WRITE : ops;
+        }
+    }
+
+    private void close(Exception cause) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        fragmentDeadline = 0;
+
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // nothing to be done if closing causes error
+        }
+
+        try {
+            // notifies the listeners, which must not be called by the event loop
+            connection.handleChannelClosed(cause);
+        } finally {
+            SelectorEventLoopGroup.release();
+        }
+    }
+
+    private class ChannelOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            synchronized (writeLock) {
+                ensureWriteCapacity(1);
+                writeBuffer.put((byte) b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (writeLock) {
+                ensureWriteCapacity(len);
+                writeBuffer.put(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (writeLock) {
+                boolean interestChanged = false;
+                // otherwise the event loop writes the remaining bytes as soon as possible
+                if (!writeInterest && writeBuffer.position() > 0) {
+                    writeToChannel();
+                    if (writeBuffer.position() > 0) {
+                        writeInterest = true;
+                        interestChanged = true;
+                    }
+                }
+                if (writeInterest && !readPausedByWrites && writeBuffer.position() > PAUSE_READ_THRESHOLD) {
+                    // the peer does not keep up with reading, so it is not read from until it has caught up
+                    readPausedByWrites = true;
+                    interestChanged = true;
+                }
+                if (interestChanged) {
+                    eventLoop.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (key != null && key.isValid()) {
+                                key.interestOps(interestOps());
+                            }
+                        }
+                    });
+                }
+            }
+        }
+
+        private void ensureWriteCapacity(int len) throws IOException {
+            if (writeBuffer.remaining() >= len) {
+                return;
+            }
+            if (writeBuffer.position() + len > maxWriteBufferSize) {
+                throw new IOException("Write buffer overflow, the peer does not read the sent APDUs.");
+            }
+            ByteBuffer newBuffer = ByteBuffer.allocate(
+                    Math.min(Math.max(writeBuffer.capacity() * 2, writeBuffer.position() + len), maxWriteBufferSize));
+            writeBuffer.flip();
+            newBuffer.put(writeBuffer);
+            writeBuffer = newBuffer;
+        }
+    }
+}
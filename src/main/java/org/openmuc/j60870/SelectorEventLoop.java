@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event loop that serves the channels of many connections with a single {@link Selector}. All
+ * channel registrations and interest changes are executed on the event loop thread, other threads
+ * hand them over through {@link #execute(Runnable)}.
+ */
+class SelectorEventLoop implements Runnable {
+
+    /** Upper bound for a select call, also the resolution of the message fragment timeout check. */
+    private static final long SELECT_TIMEOUT = 100;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Selector selector;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean stopped;
+
+    SelectorEventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void shutdown() {
+        stopped = true;
+        selector.wakeup();
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * Returns the receive buffer shared by all channels of this event loop. It may only be used by
+     * the event loop thread.
+     *
+     * @return the receive buffer
+     */
+    ByteBuffer readBuffer() {
+        return readBuffer;
+    }
+
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Executes the given task on the event loop thread.
+     *
+     * @param task the task to execute
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        long nextTimeoutCheck = System.nanoTime();
+        while (!stopped) {
+            try {
+                selector.select(SELECT_TIMEOUT);
+            } catch (IOException e) {
+                break;
+            }
+
+            runTasks();
+
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                ((SelectorChannelHandler) key.attachment()).handleSelectedKey(key);
+            }
+
+            long now = System.nanoTime();
+            if (now - nextTimeoutCheck >= 0) {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.isValid()) {
+                        ((SelectorChannelHandler) key.attachment()).checkMessageFragmentTimeout(now);
+                    }
+                }
+                nextTimeoutCheck = now + TimeUnit.MILLISECONDS.toNanos(SELECT_TIMEOUT);
+            }
+        }
+
+        runTasks();
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // nothing to be done if closing causes error
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of {@link SelectorEventLoop}s that is shared by all connections using the selector
+ * transport. Connections are assigned to the event loops in a round-robin fashion. The group is
+ * created by the first connection that acquires it and shut down when the last one releases it.
+ * While it exists, connections configured with a different number of threads are rejected.
+ */
+class SelectorEventLoopGroup {
+
+    private static SelectorEventLoopGroup sharedGroup;
+    private static int numUsers;
+
+    private final SelectorEventLoop[] eventLoops;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    private SelectorEventLoopGroup(int numThreads) throws IOException {
+        eventLoops = new SelectorEventLoop[numThreads];
+        try {
+            for (int i = 0; i < numThreads; i++) {
+                eventLoops[i] = new SelectorEventLoop("SelectorEventLoop-" + i);
+            }
+        } catch (IOException e) {
+            shutdown();
+            throw e;
+        }
+        for (SelectorEventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+    }
+
+    static synchronized SelectorEventLoopGroup acquire(int numThreads) throws IOException {
+        if (sharedGroup == null) {
+            sharedGroup = new SelectorEventLoopGroup(numThreads);
+        } else if (sharedGroup.eventLoops.length != numThreads) {
+            throw new IOException("The selector event loops are already running with " + sharedGroup.eventLoops.length
+                    + " threads, " + numThreads + " threads were configured.");
+        }
+        numUsers++;
+        return sharedGroup;
+    }
+
+    static synchronized void release() {
+        if (--numUsers == 0) {
+            sharedGroup.shutdown();
+            sharedGroup = null;
+        }
+    }
+
+    SelectorEventLoop next() {
+        return eventLoops[(nextIndex.getAndIncrement() & Integer.MAX_VALUE) % eventLoops.length];
+    }
+
+    private void shutdown() {
+        for (SelectorEventLoop eventLoop : eventLoops) {
+            if (eventLoop != null) {
+                eventLoop.shutdown();
+            }
+        }
+    }
+}
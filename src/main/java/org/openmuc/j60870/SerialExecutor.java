@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks one at a time and in the order they were added on an underlying executor. A single
+ * consumer is started when there is work and only returns once no task is left, so it is not
+ * submitted again for every task. Tasks added after the underlying executor has been shut down are
+ * dropped.
+ */
+class SerialExecutor implements Executor {
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable consumer = new Consumer();
+
+    SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(consumer);
+            } catch (RejectedExecutionException e) {
+                // the executor is shut down once the connection is closed
+                tasks.clear();
+                scheduled.set(false);
+            }
+        }
+    }
+
+    private class Consumer implements Runnable {
+
+        @Override
+        public void run() {
+            boolean completed = false;
+            try {
+                do {
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    scheduled.set(false);
+                    // tasks added after the last poll but before the flag was reset have to be run as well
+                } while (!tasks.isEmpty() && scheduled.compareAndSet(false, true));
+                completed = true;
+            } finally {
+                if (!completed) {
+                    // a task threw an exception, the remaining tasks are run by a new consumer
+                    scheduled.set(false);
+                    if (!tasks.isEmpty()) {
+                        schedule();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -22,10 +22,17 @@ package org.openmuc.j60870;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import javax.net.ServerSocketFactory;
+import javax.net.ssl.SSLServerSocketFactory;
 
 /** The server is used to start listening for IEC 60870-5-104 client connections. */
 public class Server {
@@ -36,6 +43,8 @@ public class Server {
     private final ServerSocketFactory serverSocketFactory;
     private final int maxConnections;
     private final List<String> allowedClientIps;
+    private final List<RedundancyGroup> redundancyGroups;
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
     private final ConnectionSettings settings;
     private ServerThread serverThread;
     private ExecutorService exec;
@@ -48,6 +57,10 @@ public class Server {
         maxConnections = builder.maxConnections;
         allowedClientIps = builder.allowedClientIps;
         settings = new ConnectionSettings(builder.settings);
+        redundancyGroups = new ArrayList<>(builder.redundancyGroups);
+        for (RedundancyGroup redundancyGroup : redundancyGroups) {
+            redundancyGroup.bind(settings);
+        }
     }
 
     public static Builder builder() {
@@ -70,18 +83,85 @@ public class Server {
         if (this.settings.useSharedThreadPool()) {
             this.exec = ConnectionSettings.getThreadPool();
         } else {
-            this.exec = Executors.newCachedThreadPool();
+            this.exec = settings.newThreadPool();
         }
         serverThread = new ServerThread(
-                serverSocketFactory.createServerSocket(port, backlog, bindAddr),
+                createServerSocket(),
                 settings,
                 maxConnections,
                 listener,
                 exec,
-                allowedClientIps);
+                allowedClientIps,
+                redundancyGroups,
+                connections);
         this.exec.execute(this.serverThread);
     }
 
+    private ServerSocket createServerSocket() throws IOException {
+        if (!settings.useSelectorTransport()) {
+            return serverSocketFactory.createServerSocket(port, backlog, bindAddr);
+        }
+
+        // sockets accepted through a channel can be handed over to the selector event loops
+        ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+        try {
+            serverSocketChannel.bind(new InetSocketAddress(bindAddr, port), backlog);
+        } catch (IOException e) {
+            serverSocketChannel.close();
+            throw e;
+        }
+        return serverSocketChannel.socket();
+    }
+
+    /**
+     * Returns the open connections of this server, including those accepted before the server was
+     * stopped.
+     *
+     * @return an unmodifiable snapshot of the connections
+     */
+    public List<Connection> getConnections() {
+        return Collections.unmodifiableList(new ArrayList<>(connections));
+    }
+
+    /**
+     * Sends the given ASDU to all connections of this server without blocking, e.g. to pass a
+     * spontaneous change on to all masters of a gateway. The ASDU is encoded only once, the encoding
+     * is shared by the connections and each connection only adds its APCI when it writes the I-frame.
+     * A connection that is being written to by another thread, e.g. to a master that does not read,
+     * gets the ASDU queued, so one stuck master does not delay the others.
+     *
+     * <p>Connections of a {@link RedundancyGroup} are reached through the group, so only its active
+     * connection sends the ASDU or the group buffers it. Other connections whose data transfer is
+     * stopped are skipped unless they queue ASDUs while stopped, see {@link
+     * Builder#setQueueWhileStopped(boolean)}.
+     *
+     * @param aSdu the ASDU to send
+     * @return a future per connection and redundancy group the ASDU was passed to, see {@link
+     *     Connection#sendAsync(ASdu)}
+     */
+    public List<CompletableFuture<Void>> broadcast(ASdu aSdu) {
+        return broadcast(aSdu.encode(settings), Connection.coalesceKey(aSdu));
+    }
+
+    /**
+     * Sends the given encoded ASDU to all connections of this server, see {@link #broadcast(ASdu)}.
+     * The array is shared by the connections and must not be modified afterwards.
+     */
+    List<CompletableFuture<Void>> broadcast(byte[] encodedASdu, long coalesceKey) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(connections.size() + redundancyGroups.size());
+        for (Connection connection : connections) {
+            if (connection.getRedundancyGroup() == null
+                    && !connection.isClosed()
+                    && (!connection.isStopped() || connection.isQueueWhileStopped())) {
+                futures.add(connection.sendAsync(encodedASdu, coalesceKey));
+            }
+        }
+        for (RedundancyGroup redundancyGroup : redundancyGroups) {
+            futures.add(redundancyGroup.sendAsync(encodedASdu, coalesceKey));
+        }
+        return futures;
+    }
+
     /** Stop listening for new connections. Existing connections are not touched. */
     public void stop() {
         if (serverThread == null) {
@@ -111,6 +191,7 @@ public class Server {
         private int backlog = 0;
         private ServerSocketFactory serverSocketFactory = ServerSocketFactory.getDefault();
         private List<String> allowedClientIps = null;
+        private final List<RedundancyGroup> redundancyGroups = new ArrayList<>();
 
         private int maxConnections = 100;
 
@@ -197,12 +278,58 @@ public class Server {
             return this;
         }
 
+        /**
+         * Sets whether ASDUs passed to {@link Connection#sendAsync(ASdu)} while the client has stopped
+         * the data transfer are queued instead of being rejected. The queue is bounded by {@link
+         * #setMaxOutboundQueueSize(int)} and handled according to {@link
+         * #setOutboundOverflowPolicy(OutboundOverflowPolicy)}, it is sent once the client starts the
+         * data transfer. By default such ASDUs are rejected. {@link Connection#send(ASdu)} is not
+         * affected, it throws an IllegalArgumentException while the data transfer is stopped instead
+         * of waiting for it to be started.
+         *
+         * @param queueWhileStopped true to queue ASDUs while the data transfer is stopped
+         * @return this builder
+         */
+        public Builder setQueueWhileStopped(boolean queueWhileStopped) {
+            this.settings.setQueueWhileStopped(queueWhileStopped);
+            return this;
+        }
+
+        /**
+         * Adds a redundancy group. Connections from the clients of a group are only started one at a
+         * time, see {@link RedundancyGroup}. Connections from clients that are not part of a group
+         * are independent of each other.
+         *
+         * @param redundancyGroup the redundancy group
+         * @return this builder
+         */
+        public Builder addRedundancyGroup(RedundancyGroup redundancyGroup) {
+            this.redundancyGroups.add(redundancyGroup);
+            return this;
+        }
+
+        /**
+         * Sets the process image whose data points are reported spontaneously to all started
+         * connections of this server and used to answer station interrogations. The same process
+         * image may be shared by several servers.
+         *
+         * @param processImage the process image, {@code null} to disable it (default)
+         * @return this builder
+         */
+        public Builder setProcessImage(ProcessImage processImage) {
+            this.settings.setProcessImage(processImage);
+            return this;
+        }
+
         /**
          * To start/activate the server call {@link Server#start(ServerEventListener)} on the returned
          * server.
          */
         @Override
         public Server build() {
+            if (settings.useSelectorTransport() && serverSocketFactory instanceof SSLServerSocketFactory) {
+                throw new IllegalArgumentException("SSL is not supported by the selector transport");
+            }
             return new Server(this);
         }
     }
@@ -33,6 +33,8 @@ class ServerThread implements Runnable {
     private final int maxConnections;
     private final ServerEventListener serverSapListener;
     private final List<String> allowedClientIps;
+    private final List<RedundancyGroup> redundancyGroups;
+    private final List<Connection> connections;
     private final ExecutorService executor;
     private volatile boolean stopServer = false;
     private int numConnections = 0;
@@ -43,13 +45,17 @@ class ServerThread implements Runnable {
             int maxConnections,
             ServerEventListener serverSapListener,
             ExecutorService exec,
-            List<String> allowedClientIps) {
+            List<String> allowedClientIps,
+            List<RedundancyGroup> redundancyGroups,
+            List<Connection> connections) {
         this.serverSocket = serverSocket;
         this.settings = settings;
         this.maxConnections = maxConnections;
         this.serverSapListener = serverSapListener;
         this.executor = exec;
         this.allowedClientIps = allowedClientIps;
+        this.redundancyGroups = redundancyGroups;
+        this.connections = connections;
     }
 
     @Override
@@ -100,12 +106,30 @@ class ServerThread implements Runnable {
         }
     }
 
-    void connectionClosedSignal() {
+    void connectionClosedSignal(Connection connection) {
+        connections.remove(connection);
         synchronized (this) {
             numConnections--;
         }
     }
 
+    /**
+     * Returns the redundancy group of the given client, a group listing the client is preferred over
+     * a group for all clients.
+     */
+    private RedundancyGroup redundancyGroupFor(String clientIp) {
+        RedundancyGroup defaultGroup = null;
+        for (RedundancyGroup group : redundancyGroups) {
+            if (group.contains(clientIp)) {
+                return group;
+            }
+            if (group.isDefault() && defaultGroup == null) {
+                defaultGroup = group;
+            }
+        }
+        return defaultGroup;
+    }
+
     /** Stops listening for new connections. Existing connections are not touched. */
     void stopServer() {
         stopServer = true;
@@ -133,7 +157,14 @@ class ServerThread implements Runnable {
             Thread.currentThread().setName("ConnectionHandler");
             Connection serverConnection;
             try {
-                serverConnection = new Connection(socket, serverThread, settings);
+                if (settings.isTcpNoDelay()) {
+                    socket.setTcpNoDelay(true);
+                }
+                serverConnection = new Connection(
+                        socket,
+                        serverThread,
+                        settings,
+                        redundancyGroupFor(socket.getInetAddress().getHostAddress()));
             } catch (IOException e) {
                 synchronized (ServerThread.this) {
                     numConnections--;
@@ -141,6 +172,8 @@ class ServerThread implements Runnable {
                 serverSapListener.connectionAttemptFailed(e);
                 return;
             }
+            // added before the connection can be closed, which removes it again
+            connections.add(serverConnection);
             ConnectionEventListener listener = serverSapListener.connectionIndication(serverConnection);
             serverConnection.start(listener);
         }
@@ -20,67 +20,186 @@
  */
 package org.openmuc.j60870;
 
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * A hashed timing wheel that runs the {@link TimeoutTask}s of all connections. Adding, rescheduling
+ * and cancelling a task takes constant time. Expired tasks are run by the thread executing {@link
+ * #run()} with a precision of one tick. They must not block, tasks that write to a socket or call
+ * listeners only pass the work on to an executor.
+ *
+ * <p>Connections share one instance per tick duration, which is created by the first connection
+ * with that tick duration and stopped once the last connection has released it.
+ */
 class TimeoutManager implements Runnable {
 
-    private static final int INITIAL_QUE_CAPACITY = 4;
-    private final PriorityBlockingQueue<TimeoutTask> queue;
-    private final Object guardedLock;
-    boolean canceled;
+    static final int DEFAULT_TICK_DURATION = 10;
+
+    private static final int WHEEL_SIZE = 512;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private static final Map<Integer, TimeoutManager> sharedInstances = new HashMap<>();
+
+    /** Sentinels of the doubly linked task lists of the buckets. */
+    private final TimeoutTask[] wheel = new TimeoutTask[WHEEL_SIZE];
+
+    private final long tickDuration;
+    private final long startTime;
+    private final List<TimeoutTask> expiredTasks = new ArrayList<>();
+    private final Object lock = new Object();
+
+    // guarded by the class
+    private int tickDurationMillis;
+    private int numUsers;
+
+    private long tick;
+    private volatile boolean canceled;
+    private volatile Thread thread;
 
     public TimeoutManager() {
-        this.queue = new PriorityBlockingQueue<>(INITIAL_QUE_CAPACITY);
-        this.guardedLock = new Object();
+        this(DEFAULT_TICK_DURATION);
     }
 
-    public void addTimerTask(TimeoutTask task) {
-        task.updateDueTime();
-        removeDuplicates(task);
-        this.queue.add(task);
-        notifyLock();
+    TimeoutManager(int tickDurationMillis) {
+        this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDurationMillis);
+        this.startTime = System.nanoTime();
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            TimeoutTask sentinel = new Sentinel();
+            sentinel.next = sentinel;
+            sentinel.previous = sentinel;
+            wheel[i] = sentinel;
+        }
     }
 
-    private void notifyLock() {
-        synchronized (this.guardedLock) {
-            this.guardedLock.notifyAll();
+    /**
+     * Returns the shared instance with the given tick duration, which is started if it is not used
+     * yet. Every instance that was acquired has to be {@link #release(TimeoutManager) released}.
+     *
+     * @param tickDurationMillis the tick duration in milliseconds
+     * @return the shared instance
+     */
+    static synchronized TimeoutManager acquire(int tickDurationMillis) {
+        TimeoutManager sharedInstance = sharedInstances.get(tickDurationMillis);
+        if (sharedInstance == null) {
+            sharedInstance = new TimeoutManager(tickDurationMillis);
+            sharedInstance.tickDurationMillis = tickDurationMillis;
+            sharedInstances.put(tickDurationMillis, sharedInstance);
+            Thread thread = new Thread(sharedInstance, "TimeoutManager");
+            thread.setDaemon(true);
+            thread.start();
         }
+        sharedInstance.numUsers++;
+        return sharedInstance;
     }
 
-    private void removeDuplicates(TimeoutTask task) {
-        while (queue.remove(task)) {
-            // continue removing until there are no duplicates
+    static synchronized void release(TimeoutManager sharedInstance) {
+        if (--sharedInstance.numUsers == 0) {
+            sharedInstance.cancel();
+            sharedInstances.remove(sharedInstance.tickDurationMillis);
+        }
+    }
+
+    /**
+     * Schedules the task to be run once its timeout has elapsed. If the task is already scheduled it
+     * is rescheduled.
+     *
+     * @param task the task
+     */
+    public void addTimerTask(TimeoutTask task) {
+        task.updateDueTime();
+
+        synchronized (lock) {
+            unlink(task);
+
+            long ticks = (task.dueTime - startTime + tickDuration - 1) / tickDuration;
+            task.remainingRounds = (ticks - tick) / WHEEL_SIZE;
+            TimeoutTask sentinel = wheel[(int) (Math.max(ticks, tick) & MASK)];
+
+            task.previous = sentinel.previous;
+            task.next = sentinel;
+            sentinel.previous.next = task;
+            sentinel.previous = task;
         }
     }
 
     public void cancel() {
         this.canceled = true;
+        LockSupport.unpark(thread);
     }
 
     @Override
     public void run() {
-        Thread.currentThread().setName("TimeoutManager");
-        TimeoutTask currentTask;
+        thread = Thread.currentThread();
+        thread.setName("TimeoutManager");
         while (!canceled) {
-            try {
-                long sleepMillis;
-                currentTask = queue.take();
+            long sleepTime;
+            while ((sleepTime = startTime + (tick + 1) * tickDuration - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, sleepTime);
+                if (canceled || thread.isInterrupted()) {
+                    return;
+                }
+            }
 
-                while ((sleepMillis = currentTask.sleepTimeFromDueTime()) > 0) {
-                    queue.put(currentTask);
+            synchronized (lock) {
+                expireBucket(wheel[(int) (tick & MASK)]);
+                tick++;
+            }
 
-                    synchronized (this.guardedLock) {
-                        this.guardedLock.wait(sleepMillis);
-                    }
-                    currentTask = queue.take();
+            for (int i = 0; i < expiredTasks.size(); i++) {
+                TimeoutTask task = expiredTasks.get(i);
+                if (!isScheduled(task)) {
+                    task.executeManually();
                 }
+            }
+            expiredTasks.clear();
+        }
+    }
 
-                currentTask.executeManually();
-            } catch (InterruptedException e) {
-                // Restore interrupted state...
-                Thread.currentThread().interrupt();
-                return;
+    private void expireBucket(TimeoutTask sentinel) {
+        TimeoutTask task = sentinel.next;
+        while (task != sentinel) {
+            TimeoutTask next = task.next;
+            if (task.remainingRounds <= 0) {
+                unlink(task);
+                expiredTasks.add(task);
+            } else {
+                task.remainingRounds--;
             }
+            task = next;
+        }
+    }
+
+    /** Returns true if the task has been rescheduled after it had expired. */
+    private boolean isScheduled(TimeoutTask task) {
+        synchronized (lock) {
+            return task.next != null;
+        }
+    }
+
+    private static void unlink(TimeoutTask task) {
+        if (task.next == null) {
+            return;
+        }
+        task.previous.next = task.next;
+        task.next.previous = task.previous;
+        task.next = null;
+        task.previous = null;
+    }
+
+    private static class Sentinel extends TimeoutTask {
+
+        Sentinel() {
+            super(0);
+        }
+
+        @Override
+        protected void execute() {
+            // never executed
         }
     }
 }
@@ -20,47 +20,68 @@
  */
 package org.openmuc.j60870;
 
-abstract class TimeoutTask implements Comparable<TimeoutTask> {
+import java.util.concurrent.TimeUnit;
+
+abstract class TimeoutTask {
     private final long timeout;
 
-    private long dueTime;
+    /** Due time in nanoseconds of {@link System#nanoTime()}. */
+    long dueTime;
+
+    private volatile boolean planned;
+    private volatile boolean canceled;
+    private volatile boolean done;
+    /** Incremented whenever the task is scheduled or canceled, guarded by this task. */
+    private long generation;
 
-    private boolean canceled;
-    private boolean done;
+    // bucket list and remaining wheel rounds, guarded by the TimeoutManager
+    TimeoutTask next;
+    TimeoutTask previous;
+    long remainingRounds;
 
     public TimeoutTask(long timeout) {
 
         this.timeout = timeout;
         this.done = false;
         this.canceled = false;
-        this.dueTime = 0;
+        this.planned = false;
     }
 
     void executeManually() {
-
-        if (canceled) {
-            return;
+        long executedGeneration;
+        synchronized (this) {
+            if (canceled) {
+                return;
+            }
+            executedGeneration = generation;
         }
 
         try {
             execute();
         } finally {
-            this.done = true;
+            synchronized (this) {
+                // a task that was rescheduled while it was executed is still planned
+                if (generation == executedGeneration) {
+                    this.done = true;
+                }
+            }
         }
     }
 
-    void updateDueTime() {
+    synchronized void updateDueTime() {
 
-        this.dueTime = System.currentTimeMillis() + timeout;
+        this.dueTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
         this.canceled = false;
         this.done = false;
+        this.planned = true;
+        generation++;
     }
 
     protected abstract void execute();
 
     public boolean isPlanned() {
 
-        return !this.canceled && !this.done && dueTime != 0;
+        return !this.canceled && !this.done && planned;
     }
 
     public boolean isDone() {
@@ -68,41 +89,24 @@ abstract class TimeoutTask implements Comparable<TimeoutTask> {
         return done;
     }
 
-    public void cancel() {
+    public synchronized void cancel() {
 
         this.canceled = true;
+        generation++;
     }
 
-    public long sleepTimeFromDueTime() {
-
-        return dueTime - System.currentTimeMillis();
-    }
-
-    @Override
-    public int compareTo(TimeoutTask o) {
-
-        return Long.compare(this.dueTime, o.dueTime);
+    /**
+     * Returns the current generation of this task, which changes whenever the task is scheduled or
+     * canceled.
+     *
+     * @return the generation
+     */
+    synchronized long getGeneration() {
+        return generation;
     }
 
-    @Override
-    public boolean equals(Object obj) {
-
-        if (!(obj instanceof TimeoutTask)) {
-            return false;
-        }
-
-        TimeoutTask o = (TimeoutTask) obj;
-        return this.dueTime == o.dueTime
-                && this.canceled == o.canceled
-                && this.done == o.done
-                && this.timeout == o.timeout;
-    }
-
-    @Override
-    public int hashCode() {
+    public long sleepTimeFromDueTime() {
 
-        return Long.hashCode(this.timeout)
-                ^ ((Boolean.valueOf(canceled).hashCode()) << 2)
-                ^ Boolean.valueOf(done).hashCode();
+        return TimeUnit.NANOSECONDS.toMillis(dueTime - System.nanoTime());
     }
 }
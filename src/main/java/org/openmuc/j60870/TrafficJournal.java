@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records every APDU sent and received by the connections it is attached to in an append-only,
+ * memory-mapped journal file. A journal is attached with {@link
+ * CommonBuilder#setTrafficJournal(TrafficJournal)} and may be shared by any number of connections,
+ * each of which is identified by its own connection ID in the journal.
+ *
+ * <p>The connections copy the complete frame, including the start byte and the length, together
+ * with a nanosecond timestamp and the direction into a bounded ring buffer without taking a lock or
+ * allocating. A single writer thread appends the records to the file. If the writer does not keep
+ * up the records are dropped and counted instead of stalling the connections, see {@link
+ * #getNumDroppedRecords()}.
+ *
+ * <p>The journal is read with {@link JournalReader} and replayed with {@link JournalReplay}.
+ */
+public class TrafficJournal extends TrafficRecorder {
+
+    static final int MAGIC = 0x4a363837;
+    static final int VERSION = 1;
+    static final int FILE_HEADER_LENGTH = 16;
+    /** Offset of the length of the journal in the file header, 0 if the journal was not closed. */
+    static final int LENGTH_OFFSET = 8;
+    /** Frame length (2), flags (1), reserved (1), connection ID (4) and timestamp (8). */
+    static final int RECORD_HEADER_LENGTH = 16;
+
+    static final int FLAG_SENT = 0x01;
+
+    private static final int DEFAULT_RING_SIZE = 4096;
+    private static final long MAP_SIZE = 16L << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+
+    // only accessed by the writer thread, and by closeOutput() once the writer has terminated
+    private MappedByteBuffer mappedBuffer;
+    private long mappedPosition;
+    private long position;
+
+    private TrafficJournal(File journalFile, int ringSize) throws IOException {
+        super(ringSize, "j60870-journal-writer");
+
+        this.file = new RandomAccessFile(journalFile, "rw");
+        this.channel = file.getChannel();
+        try {
+            channel.truncate(0);
+            map(0, FILE_HEADER_LENGTH);
+            mappedBuffer.putInt(MAGIC);
+            mappedBuffer.putInt(VERSION);
+            // the length is written when the journal is closed
+            mappedBuffer.putLong(0);
+            position = FILE_HEADER_LENGTH;
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+
+        startWriter();
+    }
+
+    /**
+     * Creates a journal file, an existing file is overwritten. The ring buffer holds 4096 records.
+     *
+     * @param journalFile the file
+     * @return the journal
+     * @throws IOException if the file could not be created
+     */
+    public static TrafficJournal open(File journalFile) throws IOException {
+        return new TrafficJournal(journalFile, DEFAULT_RING_SIZE);
+    }
+
+    /**
+     * Creates a journal file, an existing file is overwritten.
+     *
+     * @param journalFile the file
+     * @param ringSize the number of records that may be waiting for the writer, rounded up to the next
+     *     power of two
+     * @return the journal
+     * @throws IOException if the file could not be created
+     */
+    public static TrafficJournal open(File journalFile, int ringSize) throws IOException {
+        if (ringSize < 1 || ringSize > (1 << 20)) {
+            throw new IllegalArgumentException("invalid ringSize: " + ringSize + ", must be between 1 and 1048576");
+        }
+        return new TrafficJournal(journalFile, ringSize);
+    }
+
+    @Override
+    void append(int connectionId, boolean isSent, long timestamp, byte[] frame, int offset, int length)
+            throws IOException {
+        int recordLength = RECORD_HEADER_LENGTH + length;
+        if (position + recordLength > mappedPosition + mappedBuffer.limit()) {
+            map(position, MAP_SIZE);
+        }
+        mappedBuffer.putShort((short) length);
+        mappedBuffer.put((byte) (isSent ? FLAG_SENT : 0));
+        mappedBuffer.put((byte) 0);
+        mappedBuffer.putInt(connectionId);
+        mappedBuffer.putLong(timestamp);
+        mappedBuffer.put(frame, offset, length);
+        position += recordLength;
+    }
+
+    @Override
+    void closeOutput(boolean failed) throws IOException {
+        try {
+            if (!failed) {
+                mappedBuffer.force();
+                mappedBuffer = null;
+                ByteBuffer length = ByteBuffer.allocate(8);
+                length.putLong(0, position);
+                while (length.hasRemaining()) {
+                    channel.write(length, LENGTH_OFFSET + length.position());
+                }
+                try {
+                    channel.truncate(position);
+                } catch (IOException e) {
+                    // a file cannot be truncated on Windows until its mapping has been garbage collected,
+                    // readers then stop at the length in the header
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private void map(long mapPosition, long size) throws IOException {
+        mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, mapPosition, size);
+        mappedPosition = mapPosition;
+    }
+}
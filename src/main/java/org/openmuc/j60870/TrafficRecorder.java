@@ -0,0 +1,404 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base of the recorders that write the frames sent and received by connections to a file, see
+ * {@link TrafficJournal} and {@link PcapngCapture}.
+ *
+ * <p>The connections copy the complete frame, including the start byte and the length, together
+ * with a nanosecond timestamp and the direction into a bounded ring buffer without taking a lock or
+ * allocating. A single writer thread passes the records to {@link #append}. If the writer does not
+ * keep up the records are dropped and counted instead of stalling the connections.
+ */
+abstract class TrafficRecorder implements AutoCloseable {
+
+    /** Large enough for the longest possible frame including start byte and length. */
+    private static final int SLOT_SIZE = APdu.MAX_APDU_LENGTH + 2;
+
+    private final long epochOffset;
+
+    private final byte[] frames;
+    private final int[] frameLengths;
+    private final int[] connectionIds;
+    private final long[] timestamps;
+    private final boolean[] sent;
+    /** The sequence of every slot, a producer claims a slot whose sequence equals the tail. */
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicInteger lastConnectionId = new AtomicInteger();
+    private final AtomicLong numRecords = new AtomicLong();
+    private final AtomicLong numDroppedRecords = new AtomicLong();
+    private final Queue<Unregistration> unregistrations = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+
+    private volatile boolean closed;
+    // set by the writer before it parks, the producers only unpark it while it is set
+    private volatile boolean writerIdle;
+
+    // only accessed by the writer thread, and by close() once the writer has terminated
+    private long head;
+    private IOException writeException;
+
+    /**
+     * @param ringSize the number of records that may be waiting for the writer, rounded up to the next
+     *     power of two
+     * @param writerName the name of the writer thread
+     */
+    TrafficRecorder(int ringSize, String writerName) {
+        int size = Integer.highestOneBit(Math.max(ringSize, 1) - 1) << 1;
+        if (size <= 0) {
+            size = 1;
+        }
+        this.frames = new byte[size * SLOT_SIZE];
+        this.frameLengths = new int[size];
+        this.connectionIds = new int[size];
+        this.timestamps = new long[size];
+        this.sent = new boolean[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+
+        this.epochOffset = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+
+        this.writer = new Thread(new Writer(), writerName);
+        writer.setDaemon(true);
+    }
+
+    /** Starts the writer, must be called once the output has been opened. */
+    void startWriter() {
+        writer.start();
+    }
+
+    /**
+     * Appends a record to the output, only called by the writer thread.
+     *
+     * @param connectionId the connection ID
+     * @param isSent true if the frame was sent, false if it was received
+     * @param timestamp the time in nanoseconds since the epoch
+     * @param frame the buffer holding the frame
+     * @param offset the offset of the start byte
+     * @param length the length of the frame
+     * @throws IOException if the output could not be written, all further records are dropped
+     */
+    abstract void append(int connectionId, boolean isSent, long timestamp, byte[] frame, int offset, int length)
+            throws IOException;
+
+    /**
+     * Called by the writer thread once all published records have been appended.
+     *
+     * @throws IOException if the output could not be written, all further records are dropped
+     */
+    void appended() throws IOException {}
+
+    /**
+     * Closes the output once the writer has terminated.
+     *
+     * @param failed true if the output could not be written before
+     * @throws IOException if the output could not be closed
+     */
+    abstract void closeOutput(boolean failed) throws IOException;
+
+    /**
+     * Assigns a new connection ID, connection IDs start at 1.
+     *
+     * @param connection the connection whose frames are recorded
+     * @return the connection ID
+     */
+    int register(Connection connection) {
+        return lastConnectionId.incrementAndGet();
+    }
+
+    /**
+     * Releases the connection ID of a closed connection. Its records that have already been claimed
+     * are still appended, after that {@link #unregistered(int)} is called by the writer thread.
+     *
+     * @param connectionId the connection ID
+     */
+    final void unregister(int connectionId) {
+        unregistrations.add(new Unregistration(connectionId, tail.get()));
+        wakeUpWriter();
+    }
+
+    /**
+     * Called by the writer thread once all records of an unregistered connection have been appended.
+     *
+     * @param connectionId the connection ID
+     */
+    void unregistered(int connectionId) {}
+
+    /**
+     * Records a complete frame.
+     *
+     * @param connectionId the connection ID
+     * @param isSent true if the frame was sent, false if it was received
+     * @param frame the frame starting with the start byte
+     * @param offset the offset of the start byte
+     * @param length the length of the frame
+     */
+    final void record(int connectionId, boolean isSent, byte[] frame, int offset, int length) {
+        long t = claim();
+        if (t < 0) {
+            return;
+        }
+        int index = (int) t & mask;
+        System.arraycopy(frame, offset, frames, index * SLOT_SIZE, length);
+        publish(t, index, connectionId, isSent, length);
+    }
+
+    /**
+     * Records a sent I-frame whose APCI and ASDU were written separately.
+     *
+     * @param connectionId the connection ID
+     * @param header the frame buffer starting with the APCI
+     * @param aSdu the encoded ASDU
+     * @param aSduLength the length of the ASDU
+     */
+    final void record(int connectionId, byte[] header, byte[] aSdu, int aSduLength) {
+        long t = claim();
+        if (t < 0) {
+            return;
+        }
+        int index = (int) t & mask;
+        int slotOffset = index * SLOT_SIZE;
+        System.arraycopy(header, 0, frames, slotOffset, APdu.HEADER_LENGTH);
+        System.arraycopy(aSdu, 0, frames, slotOffset + APdu.HEADER_LENGTH, aSduLength);
+        publish(t, index, connectionId, true, APdu.HEADER_LENGTH + aSduLength);
+    }
+
+    /**
+     * Records a received frame whose control fields start at the given offset, the start byte and
+     * the length are added.
+     *
+     * @param connectionId the connection ID
+     * @param buffer the receive buffer
+     * @param offset the offset of the first control field
+     * @param apduLength the APDU length, i.e. the length of the control fields and the ASDU
+     */
+    final void recordReceived(int connectionId, ByteBuffer buffer, int offset, int apduLength) {
+        long t = claim();
+        if (t < 0) {
+            return;
+        }
+        int index = (int) t & mask;
+        int slotOffset = index * SLOT_SIZE;
+        frames[slotOffset] = APdu.START_FLAG;
+        frames[slotOffset + 1] = (byte) apduLength;
+        for (int i = 0; i < apduLength; i++) {
+            frames[slotOffset + 2 + i] = buffer.get(offset + i);
+        }
+        publish(t, index, connectionId, false, apduLength + 2);
+    }
+
+    /**
+     * Returns the number of records that were written.
+     *
+     * @return the number of records
+     */
+    public long getNumRecords() {
+        return numRecords.get();
+    }
+
+    /**
+     * Returns the number of records that were dropped because the writer did not keep up or the
+     * file could not be written.
+     *
+     * @return the number of dropped records
+     */
+    public long getNumDroppedRecords() {
+        return numDroppedRecords.get();
+    }
+
+    /**
+     * Writes the pending records, stops the writer and closes the file. Records of connections that
+     * are still open are dropped from now on.
+     *
+     * @throws IOException if the file could not be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        try {
+            closeOutput(writeException != null);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (writeException != null) {
+            throw writeException;
+        }
+    }
+
+    /**
+     * Claims the next slot of the ring buffer.
+     *
+     * @return the claimed position or -1 if the record is dropped
+     */
+    private long claim() {
+        while (!closed) {
+            long t = tail.get();
+            long difference = sequences.get((int) t & mask) - t;
+            if (difference == 0) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    return t;
+                }
+            } else if (difference < 0) {
+                // the slot has not been appended by the writer yet, the ring buffer is full
+                numDroppedRecords.incrementAndGet();
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private void publish(long t, int index, int connectionId, boolean isSent, int length) {
+        frameLengths[index] = length;
+        connectionIds[index] = connectionId;
+        sent[index] = isSent;
+        timestamps[index] = epochOffset + System.nanoTime();
+        // makes the slot visible to the writer
+        sequences.set(index, t + 1);
+        wakeUpWriter();
+    }
+
+    private void wakeUpWriter() {
+        if (writerIdle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Appends the published records.
+     *
+     * @return the number of appended records
+     */
+    private int drain() {
+        int count = 0;
+        while (isPublished(head)) {
+            int index = (int) head & mask;
+            if (writeException == null) {
+                try {
+                    append(
+                            connectionIds[index],
+                            sent[index],
+                            timestamps[index],
+                            frames,
+                            index * SLOT_SIZE,
+                            frameLengths[index]);
+                    numRecords.incrementAndGet();
+                } catch (IOException e) {
+                    writeException = e;
+                }
+            }
+            if (writeException != null) {
+                numDroppedRecords.incrementAndGet();
+            }
+            // releases the slot for the lap after the next
+            sequences.set(index, head + mask + 1);
+            head++;
+            count++;
+        }
+        if (count > 0 && writeException == null) {
+            try {
+                appended();
+            } catch (IOException e) {
+                writeException = e;
+            }
+        }
+        while (isUnregistrationDue()) {
+            unregistered(unregistrations.poll().connectionId);
+        }
+        return count;
+    }
+
+    private static class Unregistration {
+
+        private final int connectionId;
+        // the tail when the connection was unregistered, its records have been claimed before
+        private final long position;
+
+        Unregistration(int connectionId, long position) {
+            this.connectionId = connectionId;
+            this.position = position;
+        }
+    }
+
+    private boolean isPublished(long position) {
+        return sequences.get((int) position & mask) == position + 1;
+    }
+
+    private boolean isUnregistrationDue() {
+        Unregistration unregistration = unregistrations.peek();
+        return unregistration != null && unregistration.position <= head;
+    }
+
+    private class Writer implements Runnable {
+
+        @Override
+        public void run() {
+            while (true) {
+                // records published before close() was called are appended by the last drain
+                boolean stop = closed;
+                if (drain() == 0) {
+                    if (stop) {
+                        return;
+                    }
+                    writerIdle = true;
+                    // a record published before the flag was set does not wake up the writer
+                    if (!isPublished(head) && !isUnregistrationDue() && !closed) {
+                        LockSupport.park(this);
+                    }
+                    writerIdle = false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870.ie;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Converts between epoch milliseconds and the seven octets of a CP56Time2a time tag without creating
+ * {@link java.util.Calendar} instances. The offsets of a time zone are looked up in its {@link
+ * ZoneRules} and cached until the next offset transition, so encoding and decoding do not allocate
+ * while the cached offsets remain valid. The cache holds one entry per time zone ID, so that
+ * connections with different time zones do not evict each other, and it also hits for the copies
+ * returned by {@link TimeZone#getDefault()}.
+ */
+public final class CP56Time2a {
+
+    /** The number of octets of a CP56Time2a time tag. */
+    public static final int LENGTH = 7;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final int MILLIS_PER_HOUR = 3_600_000;
+
+    // bounds the cache if many custom time zones are used, real applications use a few zones only
+    private static final int MAX_CACHED_TIME_ZONES = 64;
+
+    private static final ConcurrentMap<String, Offsets> offsetsByTimeZone = new ConcurrentHashMap<>();
+
+    private CP56Time2a() {}
+
+    /**
+     * Encodes the given timestamp as a valid CP56Time2a time tag using the default time zone.
+     *
+     * @param timestamp the timestamp in ms since epoch
+     * @param buffer the buffer to write to
+     * @param offset the position of the first octet
+     * @return the number of octets written
+     */
+    public static int encode(long timestamp, byte[] buffer, int offset) {
+        return encode(timestamp, TimeZone.getDefault(), false, buffer, offset);
+    }
+
+    /**
+     * Encodes the given timestamp as a CP56Time2a time tag. The summer time flag is set if daylight
+     * saving time is in effect in the given time zone at that instant.
+     *
+     * @param timestamp the timestamp in ms since epoch
+     * @param timeZone the time zone of the encoded local time
+     * @param invalid true if the time shall be marked as invalid
+     * @param buffer the buffer to write to
+     * @param offset the position of the first octet
+     * @return the number of octets written
+     */
+    public static int encode(long timestamp, TimeZone timeZone, boolean invalid, byte[] buffer, int offset) {
+        Offsets zoneOffsets = offsetsAt(timeZone, timestamp);
+        long localMillis = timestamp + zoneOffsets.totalOffset;
+
+        long days = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(localMillis, MILLIS_PER_DAY);
+        int millisOfMinute = millisOfDay % 60_000;
+        int minute = millisOfDay / 60_000 % 60;
+        int hour = millisOfDay / MILLIS_PER_HOUR;
+        // 1970-01-01 was a Thursday, CP56Time2a counts from Monday (1) to Sunday (7)
+        int dayOfWeek = (int) Math.floorMod(days + 3, 7L) + 1;
+
+        // civil from days algorithm of the proleptic Gregorian calendar
+        long z = days + 719_468;
+        long era = Math.floorDiv(z, 146_097L);
+        int dayOfEra = (int) (z - era * 146_097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int dayOfMonth = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        buffer[offset] = (byte) millisOfMinute;
+        buffer[offset + 1] = (byte) (millisOfMinute >> 8);
+        buffer[offset + 2] = (byte) (invalid ? minute | 0x80 : minute);
+        buffer[offset + 3] = (byte) (zoneOffsets.isSummerTime() ? hour | 0x80 : hour);
+        buffer[offset + 4] = (byte) (dayOfMonth | (dayOfWeek << 5));
+        buffer[offset + 5] = (byte) month;
+        buffer[offset + 6] = (byte) Math.floorMod(year, 100L);
+        return LENGTH;
+    }
+
+    /**
+     * Decodes the CP56Time2a time tag at the given offset using the default time zone. The year is
+     * assumed to lie between 1970 and 2069.
+     *
+     * @param buffer the buffer to read from
+     * @param offset the position of the first octet
+     * @return the timestamp in ms since epoch
+     */
+    public static long decodeEpochMillis(byte[] buffer, int offset) {
+        return decodeEpochMillis(buffer, offset, 1970, TimeZone.getDefault());
+    }
+
+    /**
+     * Decodes the CP56Time2a time tag at the given offset. See {@link IeTime56#getTimestamp(int,
+     * TimeZone)} for the meaning of the start of century.
+     *
+     * @param buffer the buffer to read from
+     * @param offset the position of the first octet
+     * @param startOfCentury the earliest possible year
+     * @param timeZone the time zone of the encoded local time
+     * @return the timestamp in ms since epoch
+     */
+    public static long decodeEpochMillis(byte[] buffer, int offset, int startOfCentury, TimeZone timeZone) {
+        return decodeEpochMillis(
+                (buffer[offset] & 0xff) | ((buffer[offset + 1] & 0xff) << 8),
+                buffer[offset + 2],
+                buffer[offset + 3],
+                buffer[offset + 4],
+                buffer[offset + 5],
+                buffer[offset + 6],
+                startOfCentury,
+                timeZone);
+    }
+
+    /**
+     * Decodes the CP56Time2a time tag at the given absolute position of the buffer, the position of
+     * the buffer is not changed.
+     *
+     * @param buffer the buffer to read from
+     * @param offset the absolute position of the first octet
+     * @param startOfCentury the earliest possible year
+     * @param timeZone the time zone of the encoded local time
+     * @return the timestamp in ms since epoch
+     */
+    public static long decodeEpochMillis(ByteBuffer buffer, int offset, int startOfCentury, TimeZone timeZone) {
+        return decodeEpochMillis(
+                (buffer.get(offset) & 0xff) | ((buffer.get(offset + 1) & 0xff) << 8),
+                buffer.get(offset + 2),
+                buffer.get(offset + 3),
+                buffer.get(offset + 4),
+                buffer.get(offset + 5),
+                buffer.get(offset + 6),
+                startOfCentury,
+                timeZone);
+    }
+
+    private static long decodeEpochMillis(
+            int millisOfMinute,
+            byte minuteOctet,
+            byte hourOctet,
+            byte dayOctet,
+            byte monthOctet,
+            byte yearOctet,
+            int startOfCentury,
+            TimeZone timeZone) {
+        int year = yearOctet & 0x7f;
+        int century = startOfCentury / 100 * 100;
+        if (year < (startOfCentury % 100)) {
+            century += 100;
+        }
+
+        long localMillis = daysSinceEpoch(year + century, monthOctet & 0x0f, dayOctet & 0x1f) * MILLIS_PER_DAY
+                + (hourOctet & 0x1f) * (long) MILLIS_PER_HOUR
+                + (minuteOctet & 0x3f) * 60_000L
+                + millisOfMinute;
+        long summerTimeOffset = (hourOctet & 0x80) == 0x80 ? MILLIS_PER_HOUR : 0;
+
+        // the standard offset is taken at the instant the local time most likely refers to
+        Offsets zoneOffsets = cachedOffsets(timeZone);
+        long timestamp;
+        if (zoneOffsets != null) {
+            timestamp = localMillis - zoneOffsets.standardOffset - summerTimeOffset;
+            if (zoneOffsets.contains(timestamp)) {
+                return timestamp;
+            }
+        }
+        zoneOffsets = offsetsAt(timeZone, localMillis - timeZone.getRawOffset() - summerTimeOffset);
+        return localMillis - zoneOffsets.standardOffset - summerTimeOffset;
+    }
+
+    /**
+     * Returns the local time of the given instant in ms since 1970-01-01T00:00 of the given time zone.
+     */
+    static long localMillis(long timestamp, TimeZone timeZone) {
+        return timestamp + offsetsAt(timeZone, timestamp).totalOffset;
+    }
+
+    private static long daysSinceEpoch(int year, int month, int dayOfMonth) {
+        // days from civil algorithm of the proleptic Gregorian calendar
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + dayOfMonth - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468;
+    }
+
+    private static Offsets offsetsAt(TimeZone timeZone, long timestamp) {
+        Offsets zoneOffsets = cachedOffsets(timeZone);
+        if (zoneOffsets != null && zoneOffsets.contains(timestamp)) {
+            return zoneOffsets;
+        }
+        ZoneRules rules = zoneOffsets != null ? zoneOffsets.rules : rules(timeZone);
+        zoneOffsets = new Offsets(timeZone, rules, timestamp);
+        if (offsetsByTimeZone.size() >= MAX_CACHED_TIME_ZONES) {
+            offsetsByTimeZone.clear();
+        }
+        offsetsByTimeZone.put(timeZone.getID(), zoneOffsets);
+        return zoneOffsets;
+    }
+
+    /**
+     * Returns the cached offsets of the given time zone, null if there are none. The time zone is
+     * looked up by its ID, equal copies of a time zone share the cached offsets. Zones with the same
+     * ID but other rules, e.g. custom zones, replace each other.
+     */
+    private static Offsets cachedOffsets(TimeZone timeZone) {
+        Offsets zoneOffsets = offsetsByTimeZone.get(timeZone.getID());
+        if (zoneOffsets != null && (zoneOffsets.timeZone == timeZone || zoneOffsets.timeZone.hasSameRules(timeZone))) {
+            return zoneOffsets;
+        }
+        return null;
+    }
+
+    private static ZoneRules rules(TimeZone timeZone) {
+        try {
+            // a custom time zone may use the ID of a region with other rules
+            if (TimeZone.getTimeZone(timeZone.getID()).hasSameRules(timeZone)) {
+                return timeZone.toZoneId().getRules();
+            }
+        } catch (DateTimeException e) {
+            // handled below
+        }
+        // custom time zones without a region ID only provide their raw offset
+        return ZoneOffset.ofTotalSeconds(timeZone.getRawOffset() / 1000).getRules();
+    }
+
+    /** The offsets of a time zone between two offset transitions. */
+    private static class Offsets {
+
+        private final TimeZone timeZone;
+        private final ZoneRules rules;
+        private final int totalOffset;
+        private final int standardOffset;
+        private final long validFrom;
+        private final long validUntil;
+
+        Offsets(TimeZone timeZone, ZoneRules rules, long timestamp) {
+            this.timeZone = timeZone;
+            this.rules = rules;
+
+            Instant instant = Instant.ofEpochMilli(timestamp);
+            ZoneOffset offset = rules.getOffset(instant);
+            this.totalOffset = offset.getTotalSeconds() * 1000;
+            this.standardOffset = rules.getStandardOffset(instant).getTotalSeconds() * 1000;
+
+            ZoneOffsetTransition previous = rules.previousTransition(instant);
+            if (previous == null) {
+                validFrom = Long.MIN_VALUE;
+            } else if (previous.getOffsetAfter().equals(offset)) {
+                validFrom = previous.toEpochSecond() * 1000;
+            } else {
+                // the instant is exactly at a transition
+                validFrom = timestamp;
+            }
+            ZoneOffsetTransition next = rules.nextTransition(instant);
+            validUntil = next == null ? Long.MAX_VALUE : next.toEpochSecond() * 1000;
+        }
+
+        boolean contains(long timestamp) {
+            return timestamp >= validFrom && timestamp < validUntil;
+        }
+
+        boolean isSummerTime() {
+            return totalOffset != standardOffset;
+        }
+    }
+}
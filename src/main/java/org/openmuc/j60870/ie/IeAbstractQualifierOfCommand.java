@@ -20,9 +20,6 @@
  */
 package org.openmuc.j60870.ie;
 
-import java.io.DataInputStream;
-import java.io.IOException;
-
 abstract class IeAbstractQualifierOfCommand extends InformationElement {
 
     protected int value;
@@ -40,8 +37,8 @@ abstract class IeAbstractQualifierOfCommand extends InformationElement {
         }
     }
 
-    IeAbstractQualifierOfCommand(DataInputStream is) throws IOException {
-        value = (is.readByte() & 0xff);
+    IeAbstractQualifierOfCommand(int value) {
+        this.value = value;
     }
 
     @Override
@@ -20,8 +20,6 @@
  */
 package org.openmuc.j60870.ie;
 
-import java.io.DataInputStream;
-import java.io.IOException;
 import java.text.MessageFormat;
 
 abstract class IeAbstractQuality extends InformationElement {
@@ -46,8 +44,8 @@ abstract class IeAbstractQuality extends InformationElement {
         }
     }
 
-    IeAbstractQuality(DataInputStream is) throws IOException {
-        value = is.readUnsignedByte();
+    IeAbstractQuality(int value) {
+        this.value = value;
     }
 
     @Override
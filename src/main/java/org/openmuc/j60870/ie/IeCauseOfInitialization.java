@@ -26,6 +26,14 @@ import java.io.IOException;
 /** Represents a cause of initialization (COI) information element. */
 public class IeCauseOfInitialization extends InformationElement {
 
+    private static final IeCauseOfInitialization[] INSTANCES = new IeCauseOfInitialization[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeCauseOfInitialization(i & 0x7f, (i & 0x80) == 0x80);
+        }
+    }
+
     private final int value;
     private final boolean initAfterParameterChange;
 
@@ -46,12 +54,18 @@ public class IeCauseOfInitialization extends InformationElement {
         this.initAfterParameterChange = initAfterParameterChange;
     }
 
-    IeCauseOfInitialization(DataInputStream is) throws IOException {
-        int b1 = (is.readByte() & 0xff);
-
-        initAfterParameterChange = ((b1 & 0x80) == 0x80);
+    /**
+     * Returns the cached instance for the given encoded COI.
+     *
+     * @param value the encoded COI byte
+     * @return the cached instance
+     */
+    public static IeCauseOfInitialization of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
 
-        value = b1 & 0x7f;
+    static IeCauseOfInitialization decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     @Override
@@ -28,6 +28,14 @@ import java.util.Map;
 /** Represents a double command (DCO) information element. */
 public class IeDoubleCommand extends IeAbstractQualifierOfCommand {
 
+    private static final IeDoubleCommand[] INSTANCES = new IeDoubleCommand[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeDoubleCommand(i);
+        }
+    }
+
     /**
      * Create the Double Command Information Element.
      *
@@ -41,8 +49,22 @@ public class IeDoubleCommand extends IeAbstractQualifierOfCommand {
         value |= commandState.getId();
     }
 
-    IeDoubleCommand(DataInputStream is) throws IOException {
-        super(is);
+    private IeDoubleCommand(int value) {
+        super(value);
+    }
+
+    /**
+     * Returns the cached instance for the given encoded DCO.
+     *
+     * @param value the encoded DCO byte
+     * @return the cached instance
+     */
+    public static IeDoubleCommand of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeDoubleCommand decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     public DoubleCommandState getCommandState() {
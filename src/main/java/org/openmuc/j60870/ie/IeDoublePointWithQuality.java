@@ -26,6 +26,14 @@ import java.io.IOException;
 /** Represents a double-point information with quality descriptor (DIQ) information element. */
 public class IeDoublePointWithQuality extends IeAbstractQuality {
 
+    private static final IeDoublePointWithQuality[] INSTANCES = new IeDoublePointWithQuality[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeDoublePointWithQuality(i);
+        }
+    }
+
     public IeDoublePointWithQuality(
             DoublePointInformation dpi, boolean blocked, boolean substituted, boolean notTopical, boolean invalid) {
         super(blocked, substituted, notTopical, invalid);
@@ -45,8 +53,22 @@ public class IeDoublePointWithQuality extends IeAbstractQuality {
         }
     }
 
-    IeDoublePointWithQuality(DataInputStream is) throws IOException {
-        super(is);
+    private IeDoublePointWithQuality(int value) {
+        super(value);
+    }
+
+    /**
+     * Returns the cached instance for the given encoded DIQ.
+     *
+     * @param value the encoded DIQ byte
+     * @return the cached instance
+     */
+    public static IeDoublePointWithQuality of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeDoublePointWithQuality decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     public DoublePointInformation getDoublePointInformation() {
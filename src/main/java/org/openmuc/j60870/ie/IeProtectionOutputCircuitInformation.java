@@ -26,6 +26,15 @@ import java.io.IOException;
 /** Represents an output circuit information of protection equipment (OCI) information element. */
 public class IeProtectionOutputCircuitInformation extends InformationElement {
 
+    private static final IeProtectionOutputCircuitInformation[] INSTANCES =
+            new IeProtectionOutputCircuitInformation[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeProtectionOutputCircuitInformation(i);
+        }
+    }
+
     private int value;
 
     public IeProtectionOutputCircuitInformation(
@@ -47,8 +56,22 @@ public class IeProtectionOutputCircuitInformation extends InformationElement {
         }
     }
 
-    IeProtectionOutputCircuitInformation(DataInputStream is) throws IOException {
-        value = (is.readByte() & 0xff);
+    private IeProtectionOutputCircuitInformation(int value) {
+        this.value = value;
+    }
+
+    /**
+     * Returns the cached instance for the given encoded OCI.
+     *
+     * @param value the encoded OCI byte
+     * @return the cached instance
+     */
+    public static IeProtectionOutputCircuitInformation of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeProtectionOutputCircuitInformation decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     @Override
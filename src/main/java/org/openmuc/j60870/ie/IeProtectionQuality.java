@@ -26,6 +26,14 @@ import java.io.IOException;
 /** Represents a quality descriptor for events of protection equipment (QDP) information element. */
 public class IeProtectionQuality extends IeAbstractQuality {
 
+    private static final IeProtectionQuality[] INSTANCES = new IeProtectionQuality[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeProtectionQuality(i);
+        }
+    }
+
     public IeProtectionQuality(
             boolean elapsedTimeInvalid, boolean blocked, boolean substituted, boolean notTopical, boolean invalid) {
         super(blocked, substituted, notTopical, invalid);
@@ -35,8 +43,22 @@ public class IeProtectionQuality extends IeAbstractQuality {
         }
     }
 
-    IeProtectionQuality(DataInputStream is) throws IOException {
-        super(is);
+    private IeProtectionQuality(int value) {
+        super(value);
+    }
+
+    /**
+     * Returns the cached instance for the given encoded QDP.
+     *
+     * @param value the encoded QDP byte
+     * @return the cached instance
+     */
+    public static IeProtectionQuality of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeProtectionQuality decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     public boolean isElapsedTimeInvalid() {
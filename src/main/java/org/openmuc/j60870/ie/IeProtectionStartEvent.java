@@ -26,6 +26,14 @@ import java.io.IOException;
 /** Represents a start events of protection equipment (SPE) information element. */
 public class IeProtectionStartEvent extends InformationElement {
 
+    private static final IeProtectionStartEvent[] INSTANCES = new IeProtectionStartEvent[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeProtectionStartEvent(i);
+        }
+    }
+
     private int value;
 
     public IeProtectionStartEvent(
@@ -58,8 +66,22 @@ public class IeProtectionStartEvent extends InformationElement {
         }
     }
 
-    IeProtectionStartEvent(DataInputStream is) throws IOException {
-        value = (is.readByte() & 0xff);
+    private IeProtectionStartEvent(int value) {
+        this.value = value;
+    }
+
+    /**
+     * Returns the cached instance for the given encoded SPE.
+     *
+     * @param value the encoded SPE byte
+     * @return the cached instance
+     */
+    public static IeProtectionStartEvent of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeProtectionStartEvent decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     @Override
@@ -26,6 +26,14 @@ import java.io.IOException;
 /** Represents a qualifier of counter interrogation (QCC) information element. */
 public class IeQualifierOfCounterInterrogation extends InformationElement {
 
+    private static final IeQualifierOfCounterInterrogation[] INSTANCES = new IeQualifierOfCounterInterrogation[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeQualifierOfCounterInterrogation(i & 0x3f, (i >> 6) & 0x03);
+        }
+    }
+
     private final int request;
     private final int freeze;
 
@@ -34,10 +42,18 @@ public class IeQualifierOfCounterInterrogation extends InformationElement {
         this.freeze = freeze;
     }
 
-    IeQualifierOfCounterInterrogation(DataInputStream is) throws IOException {
-        int b1 = (is.readByte() & 0xff);
-        request = b1 & 0x3f;
-        freeze = (b1 >> 6) & 0x03;
+    /**
+     * Returns the cached instance for the given encoded QCC.
+     *
+     * @param value the encoded QCC byte
+     * @return the cached instance
+     */
+    public static IeQualifierOfCounterInterrogation of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeQualifierOfCounterInterrogation decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     @Override
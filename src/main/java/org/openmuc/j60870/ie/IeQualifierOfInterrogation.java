@@ -26,14 +26,32 @@ import java.io.IOException;
 /** Represents a qualifier of interrogation (QOI) information element. */
 public class IeQualifierOfInterrogation extends InformationElement {
 
+    private static final IeQualifierOfInterrogation[] INSTANCES = new IeQualifierOfInterrogation[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeQualifierOfInterrogation(i);
+        }
+    }
+
     private final int value;
 
     public IeQualifierOfInterrogation(int value) {
         this.value = value;
     }
 
-    IeQualifierOfInterrogation(DataInputStream is) throws IOException {
-        value = (is.readByte() & 0xff);
+    /**
+     * Returns the cached instance for the given encoded QOI.
+     *
+     * @param value the encoded QOI byte
+     * @return the cached instance
+     */
+    public static IeQualifierOfInterrogation of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeQualifierOfInterrogation decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     @Override
@@ -26,14 +26,32 @@ import java.io.IOException;
 /** Represents a qualifier of parameter activation (QPA) information element. */
 public class IeQualifierOfParameterActivation extends InformationElement {
 
+    private static final IeQualifierOfParameterActivation[] INSTANCES = new IeQualifierOfParameterActivation[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeQualifierOfParameterActivation(i);
+        }
+    }
+
     private final int value;
 
     public IeQualifierOfParameterActivation(int value) {
         this.value = value;
     }
 
+    /**
+     * Returns the cached instance for the given encoded QPA.
+     *
+     * @param value the encoded QPA byte
+     * @return the cached instance
+     */
+    public static IeQualifierOfParameterActivation of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
     static IeQualifierOfParameterActivation decode(DataInputStream is) throws IOException {
-        return new IeQualifierOfParameterActivation(is.readUnsignedByte());
+        return of(is.readByte());
     }
 
     @Override
@@ -26,6 +26,15 @@ import java.io.IOException;
 /** Represents a qualifier of parameter of measured values (QPM) information element. */
 public class IeQualifierOfParameterOfMeasuredValues extends InformationElement {
 
+    private static final IeQualifierOfParameterOfMeasuredValues[] INSTANCES =
+            new IeQualifierOfParameterOfMeasuredValues[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeQualifierOfParameterOfMeasuredValues(i & 0x3f, (i & 0x40) == 0x40, (i & 0x80) == 0x80);
+        }
+    }
+
     private final int kindOfParameter;
     private final boolean change;
     private final boolean notInOperation;
@@ -36,11 +45,18 @@ public class IeQualifierOfParameterOfMeasuredValues extends InformationElement {
         this.notInOperation = notInOperation;
     }
 
-    IeQualifierOfParameterOfMeasuredValues(DataInputStream is) throws IOException {
-        int b1 = (is.readByte() & 0xff);
-        kindOfParameter = b1 & 0x3f;
-        change = ((b1 & 0x40) == 0x40);
-        notInOperation = ((b1 & 0x80) == 0x80);
+    /**
+     * Returns the cached instance for the given encoded QPM.
+     *
+     * @param value the encoded QPM byte
+     * @return the cached instance
+     */
+    public static IeQualifierOfParameterOfMeasuredValues of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeQualifierOfParameterOfMeasuredValues decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     @Override
@@ -26,14 +26,32 @@ import java.io.IOException;
 /** Represents a qualifier of reset process command (QRP) information element. */
 public class IeQualifierOfResetProcessCommand extends InformationElement {
 
+    private static final IeQualifierOfResetProcessCommand[] INSTANCES = new IeQualifierOfResetProcessCommand[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeQualifierOfResetProcessCommand(i);
+        }
+    }
+
     private final int value;
 
     public IeQualifierOfResetProcessCommand(int value) {
         this.value = value;
     }
 
-    IeQualifierOfResetProcessCommand(DataInputStream is) throws IOException {
-        value = (is.readByte() & 0xff);
+    /**
+     * Returns the cached instance for the given encoded QRP.
+     *
+     * @param value the encoded QRP byte
+     * @return the cached instance
+     */
+    public static IeQualifierOfResetProcessCommand of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeQualifierOfResetProcessCommand decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     @Override
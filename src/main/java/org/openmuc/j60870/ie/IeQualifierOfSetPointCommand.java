@@ -26,6 +26,14 @@ import java.io.IOException;
 /** Represents a qualifier of set-point command (QOS) information element. */
 public class IeQualifierOfSetPointCommand extends InformationElement {
 
+    private static final IeQualifierOfSetPointCommand[] INSTANCES = new IeQualifierOfSetPointCommand[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeQualifierOfSetPointCommand(i & 0x7f, (i & 0x80) == 0x80);
+        }
+    }
+
     private final int ql;
     private final boolean select;
 
@@ -34,10 +42,18 @@ public class IeQualifierOfSetPointCommand extends InformationElement {
         this.select = select;
     }
 
-    IeQualifierOfSetPointCommand(DataInputStream is) throws IOException {
-        int b1 = (is.readByte() & 0xff);
-        ql = b1 & 0x7f;
-        select = ((b1 & 0x80) == 0x80);
+    /**
+     * Returns the cached instance for the given encoded QOS.
+     *
+     * @param value the encoded QOS byte
+     * @return the cached instance
+     */
+    public static IeQualifierOfSetPointCommand of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeQualifierOfSetPointCommand decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     @Override
@@ -26,6 +26,14 @@ import java.io.IOException;
 /** Represents a quality descriptor (QDS) information element. */
 public class IeQuality extends IeAbstractQuality {
 
+    private static final IeQuality[] INSTANCES = new IeQuality[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeQuality(i);
+        }
+    }
+
     public IeQuality(boolean overflow, boolean blocked, boolean substituted, boolean notTopical, boolean invalid) {
         super(blocked, substituted, notTopical, invalid);
 
@@ -34,8 +42,22 @@ public class IeQuality extends IeAbstractQuality {
         }
     }
 
-    IeQuality(DataInputStream is) throws IOException {
-        super(is);
+    private IeQuality(int value) {
+        super(value);
+    }
+
+    /**
+     * Returns the cached instance for the given encoded QDS.
+     *
+     * @param value the encoded QDS byte
+     * @return the cached instance
+     */
+    public static IeQuality of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeQuality decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     public boolean isOverflow() {
@@ -28,6 +28,14 @@ import java.util.Map;
 /** Represents a regulating step command (RCO) information element. */
 public class IeRegulatingStepCommand extends IeAbstractQualifierOfCommand {
 
+    private static final IeRegulatingStepCommand[] INSTANCES = new IeRegulatingStepCommand[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeRegulatingStepCommand(i);
+        }
+    }
+
     /**
      * Create a Regulating Step Command Information Element.
      *
@@ -41,8 +49,22 @@ public class IeRegulatingStepCommand extends IeAbstractQualifierOfCommand {
         value |= commandState.getId();
     }
 
-    IeRegulatingStepCommand(DataInputStream is) throws IOException {
-        super(is);
+    private IeRegulatingStepCommand(int value) {
+        super(value);
+    }
+
+    /**
+     * Returns the cached instance for the given encoded RCO.
+     *
+     * @param value the encoded RCO byte
+     * @return the cached instance
+     */
+    public static IeRegulatingStepCommand of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeRegulatingStepCommand decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     public StepCommandState getCommandState() {
@@ -26,6 +26,14 @@ import java.io.IOException;
 /** Represents a single command (SCO) information element. */
 public class IeSingleCommand extends IeAbstractQualifierOfCommand {
 
+    private static final IeSingleCommand[] INSTANCES = new IeSingleCommand[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeSingleCommand(i);
+        }
+    }
+
     public IeSingleCommand(boolean commandStateOn, int qualifier, boolean select) {
         super(qualifier, select);
 
@@ -34,8 +42,22 @@ public class IeSingleCommand extends IeAbstractQualifierOfCommand {
         }
     }
 
-    IeSingleCommand(DataInputStream is) throws IOException {
-        super(is);
+    private IeSingleCommand(int value) {
+        super(value);
+    }
+
+    /**
+     * Returns the cached instance for the given encoded SCO.
+     *
+     * @param value the encoded SCO byte
+     * @return the cached instance
+     */
+    public static IeSingleCommand of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeSingleCommand decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     public boolean isCommandStateOn() {
@@ -26,6 +26,14 @@ import java.io.IOException;
 /** Represents a single-point information with quality descriptor (SIQ) information element. */
 public class IeSinglePointWithQuality extends IeAbstractQuality {
 
+    private static final IeSinglePointWithQuality[] INSTANCES = new IeSinglePointWithQuality[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeSinglePointWithQuality(i);
+        }
+    }
+
     public IeSinglePointWithQuality(
             boolean on, boolean blocked, boolean substituted, boolean notTopical, boolean invalid) {
         super(blocked, substituted, notTopical, invalid);
@@ -35,8 +43,22 @@ public class IeSinglePointWithQuality extends IeAbstractQuality {
         }
     }
 
-    IeSinglePointWithQuality(DataInputStream is) throws IOException {
-        super(is);
+    private IeSinglePointWithQuality(int value) {
+        super(value);
+    }
+
+    /**
+     * Returns the cached instance for the given encoded SIQ.
+     *
+     * @param value the encoded SIQ byte
+     * @return the cached instance
+     */
+    public static IeSinglePointWithQuality of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeSinglePointWithQuality decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     public boolean isOn() {
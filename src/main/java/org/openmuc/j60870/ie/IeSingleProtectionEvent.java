@@ -26,6 +26,14 @@ import java.io.IOException;
 /** Represents a single event of protection equipment (SEP) information element. */
 public class IeSingleProtectionEvent extends InformationElement {
 
+    private static final IeSingleProtectionEvent[] INSTANCES = new IeSingleProtectionEvent[256];
+
+    static {
+        for (int i = 0; i < INSTANCES.length; i++) {
+            INSTANCES[i] = new IeSingleProtectionEvent(i);
+        }
+    }
+
     private int value;
 
     public IeSingleProtectionEvent(
@@ -66,8 +74,22 @@ public class IeSingleProtectionEvent extends InformationElement {
         }
     }
 
-    IeSingleProtectionEvent(DataInputStream is) throws IOException {
-        value = (is.readByte() & 0xff);
+    private IeSingleProtectionEvent(int value) {
+        this.value = value;
+    }
+
+    /**
+     * Returns the cached instance for the given encoded SEP.
+     *
+     * @param value the encoded SEP byte
+     * @return the cached instance
+     */
+    public static IeSingleProtectionEvent of(byte value) {
+        return INSTANCES[value & 0xff];
+    }
+
+    static IeSingleProtectionEvent decode(DataInputStream is) throws IOException {
+        return of(is.readByte());
     }
 
     @Override
@@ -22,21 +22,17 @@ package org.openmuc.j60870.ie;
 
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.util.Calendar;
+import java.util.TimeZone;
 
 /** Represents a two octet binary time (CP16Time2a) information element. */
 public class IeTime16 extends InformationElement {
 
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+
     private final byte[] value = new byte[2];
 
     public IeTime16(long timestamp) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTimeInMillis(timestamp);
-
-        int ms = calendar.get(Calendar.MILLISECOND) + 1000 * calendar.get(Calendar.SECOND);
-
-        value[0] = (byte) ms;
-        value[1] = (byte) (ms >> 8);
+        this((int) Math.floorMod(CP56Time2a.localMillis(timestamp, TimeZone.getDefault()), MILLIS_PER_MINUTE));
     }
 
     public IeTime16(int timeInMs) {
@@ -60,6 +56,33 @@ public class IeTime16 extends InformationElement {
         return (value[0] & 0xff) + ((value[1] & 0xff) << 8);
     }
 
+    /**
+     * Returns the timestamp in ms of this time tag using the default time zone, see {@link
+     * #getTimestamp(long, TimeZone)}.
+     *
+     * @param referenceTime a timestamp in ms within half a minute of the time tag
+     * @return the timestamp in ms since epoch
+     */
+    public long getTimestamp(long referenceTime) {
+        return getTimestamp(referenceTime, TimeZone.getDefault());
+    }
+
+    /**
+     * Returns the timestamp in ms of this time tag. CP16Time2a only stores the millisecond within the
+     * minute, so the minute is taken from the given reference time, e.g. the CP24Time2a or CP56Time2a
+     * time tag of the same information object. The result is the timestamp closest to the reference
+     * time.
+     *
+     * @param referenceTime a timestamp in ms within half a minute of the time tag
+     * @param timeZone the time zone of the encoded local time
+     * @return the timestamp in ms since epoch
+     */
+    public long getTimestamp(long referenceTime, TimeZone timeZone) {
+        long startOfMinute =
+                referenceTime - Math.floorMod(CP56Time2a.localMillis(referenceTime, timeZone), MILLIS_PER_MINUTE);
+        return IeTime24.nearest(startOfMinute + getTimeInMs(), referenceTime, MILLIS_PER_MINUTE);
+    }
+
     @Override
     public String toString() {
         return "Time16, time in ms: " + getTimeInMs();
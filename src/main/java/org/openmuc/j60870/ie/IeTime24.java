@@ -22,22 +22,17 @@ package org.openmuc.j60870.ie;
 
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.util.Calendar;
+import java.util.TimeZone;
 
 /** Represents a three octet binary time (CP24Time2a) information element. */
 public class IeTime24 extends InformationElement {
 
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+
     private final byte[] value = new byte[3];
 
     public IeTime24(long timestamp) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTimeInMillis(timestamp);
-
-        int ms = calendar.get(Calendar.MILLISECOND) + 1000 * calendar.get(Calendar.SECOND);
-
-        value[0] = (byte) ms;
-        value[1] = (byte) (ms >> 8);
-        value[2] = (byte) calendar.get(Calendar.MINUTE);
+        this((int) Math.floorMod(CP56Time2a.localMillis(timestamp, TimeZone.getDefault()), MILLIS_PER_HOUR));
     }
 
     public IeTime24(int timeInMs) {
@@ -62,8 +57,45 @@ public class IeTime24 extends InformationElement {
         return (value[0] & 0xff) + ((value[1] & 0xff) << 8) + value[2] * 60000;
     }
 
+    /**
+     * Returns the timestamp in ms of this time tag using the default time zone, see {@link
+     * #getTimestamp(long, TimeZone)}.
+     *
+     * @param referenceTime a timestamp in ms within half an hour of the time tag
+     * @return the timestamp in ms since epoch
+     */
+    public long getTimestamp(long referenceTime) {
+        return getTimestamp(referenceTime, TimeZone.getDefault());
+    }
+
+    /**
+     * Returns the timestamp in ms of this time tag. CP24Time2a only stores the minute and millisecond
+     * within the hour, so the hour is taken from the given reference time, e.g. the time of reception.
+     * The result is the timestamp closest to the reference time.
+     *
+     * @param referenceTime a timestamp in ms within half an hour of the time tag
+     * @param timeZone the time zone of the encoded local time
+     * @return the timestamp in ms since epoch
+     */
+    public long getTimestamp(long referenceTime, TimeZone timeZone) {
+        int timeInHour = (value[0] & 0xff) + ((value[1] & 0xff) << 8) + (value[2] & 0x3f) * 60000;
+        long startOfHour =
+                referenceTime - Math.floorMod(CP56Time2a.localMillis(referenceTime, timeZone), MILLIS_PER_HOUR);
+        return nearest(startOfHour + timeInHour, referenceTime, MILLIS_PER_HOUR);
+    }
+
     @Override
     public String toString() {
         return "Time24, time in ms: " + getTimeInMs();
     }
+
+    static long nearest(long timestamp, long referenceTime, long period) {
+        if (timestamp - referenceTime > period / 2) {
+            return timestamp - period;
+        }
+        if (referenceTime - timestamp > period / 2) {
+            return timestamp + period;
+        }
+        return timestamp;
+    }
 }
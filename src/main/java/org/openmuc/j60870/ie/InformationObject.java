@@ -69,36 +69,38 @@ public class InformationObject {
             case M_SP_NA_1:
                 informationElements = new InformationElement[numberOfSequenceElements][1];
                 for (int i = 0; i < numberOfSequenceElements; i++) {
-                    informationElements[i][0] = new IeSinglePointWithQuality(is);
+                    informationElements[i][0] = IeSinglePointWithQuality.decode(is);
                 }
                 break;
             // 2
             case M_SP_TA_1:
-                informationElements = new InformationElement[][] {{new IeSinglePointWithQuality(is), new IeTime24(is)}};
+                informationElements =
+                        new InformationElement[][] {{IeSinglePointWithQuality.decode(is), new IeTime24(is)}};
                 break;
             // 3
             case M_DP_NA_1:
                 informationElements = new InformationElement[numberOfSequenceElements][1];
                 for (int i = 0; i < numberOfSequenceElements; i++) {
-                    informationElements[i][0] = new IeDoublePointWithQuality(is);
+                    informationElements[i][0] = IeDoublePointWithQuality.decode(is);
                 }
                 break;
             // 4
             case M_DP_TA_1:
-                informationElements = new InformationElement[][] {{new IeDoublePointWithQuality(is), new IeTime24(is)}};
+                informationElements =
+                        new InformationElement[][] {{IeDoublePointWithQuality.decode(is), new IeTime24(is)}};
                 break;
             // 5
             case M_ST_NA_1:
                 informationElements = new InformationElement[numberOfSequenceElements][2];
                 for (int i = 0; i < numberOfSequenceElements; i++) {
                     informationElements[i][0] = new IeValueWithTransientState(is);
-                    informationElements[i][1] = new IeQuality(is);
+                    informationElements[i][1] = IeQuality.decode(is);
                 }
                 break;
             // 6
             case M_ST_TA_1:
                 informationElements = new InformationElement[][] {
-                    {new IeValueWithTransientState(is), new IeQuality(is), new IeTime24(is)}
+                    {new IeValueWithTransientState(is), IeQuality.decode(is), new IeTime24(is)}
                 };
                 break;
             // 7
@@ -106,13 +108,13 @@ public class InformationObject {
                 informationElements = new InformationElement[numberOfSequenceElements][2];
                 for (int i = 0; i < numberOfSequenceElements; i++) {
                     informationElements[i][0] = new IeBinaryStateInformation(is);
-                    informationElements[i][1] = new IeQuality(is);
+                    informationElements[i][1] = IeQuality.decode(is);
                 }
                 break;
             // 8
             case M_BO_TA_1:
                 informationElements = new InformationElement[][] {
-                    {new IeBinaryStateInformation(is), new IeQuality(is), new IeTime24(is)}
+                    {new IeBinaryStateInformation(is), IeQuality.decode(is), new IeTime24(is)}
                 };
                 break;
             // 9
@@ -120,39 +122,40 @@ public class InformationObject {
                 informationElements = new InformationElement[numberOfSequenceElements][2];
                 for (InformationElement[] informationElementCombination : informationElements) {
                     informationElementCombination[0] = new IeNormalizedValue(is);
-                    informationElementCombination[1] = new IeQuality(is);
+                    informationElementCombination[1] = IeQuality.decode(is);
                 }
                 break;
             // 10
             case M_ME_TA_1:
                 informationElements =
-                        new InformationElement[][] {{new IeNormalizedValue(is), new IeQuality(is), new IeTime24(is)}};
+                        new InformationElement[][] {{new IeNormalizedValue(is), IeQuality.decode(is), new IeTime24(is)}
+                        };
                 break;
             // 11
             case M_ME_NB_1:
                 informationElements = new InformationElement[numberOfSequenceElements][2];
                 for (InformationElement[] informationElementCombination : informationElements) {
                     informationElementCombination[0] = new IeScaledValue(is);
-                    informationElementCombination[1] = new IeQuality(is);
+                    informationElementCombination[1] = IeQuality.decode(is);
                 }
                 break;
             // 12
             case M_ME_TB_1:
                 informationElements =
-                        new InformationElement[][] {{new IeScaledValue(is), new IeQuality(is), new IeTime24(is)}};
+                        new InformationElement[][] {{new IeScaledValue(is), IeQuality.decode(is), new IeTime24(is)}};
                 break;
             // 13
             case M_ME_NC_1:
                 informationElements = new InformationElement[numberOfSequenceElements][2];
                 for (InformationElement[] informationElementCombination : informationElements) {
                     informationElementCombination[0] = new IeShortFloat(is);
-                    informationElementCombination[1] = new IeQuality(is);
+                    informationElementCombination[1] = IeQuality.decode(is);
                 }
                 break;
             // 14
             case M_ME_TC_1:
                 informationElements =
-                        new InformationElement[][] {{new IeShortFloat(is), new IeQuality(is), new IeTime24(is)}};
+                        new InformationElement[][] {{new IeShortFloat(is), IeQuality.decode(is), new IeTime24(is)}};
                 break;
             // 15
             case M_IT_NA_1:
@@ -169,21 +172,26 @@ public class InformationObject {
             // 17
             case M_EP_TA_1:
                 informationElements = new InformationElement[][] {
-                    {new IeSingleProtectionEvent(is), new IeTime16(is), new IeTime24(is)}
+                    {IeSingleProtectionEvent.decode(is), new IeTime16(is), new IeTime24(is)}
                 };
                 break;
             // 18
             case M_EP_TB_1:
                 informationElements = new InformationElement[][] {
-                    {new IeProtectionStartEvent(is), new IeProtectionQuality(is), new IeTime16(is), new IeTime24(is)}
+                    {
+                        IeProtectionStartEvent.decode(is),
+                        IeProtectionQuality.decode(is),
+                        new IeTime16(is),
+                        new IeTime24(is)
+                    }
                 };
                 break;
             // 19
             case M_EP_TC_1:
                 informationElements = new InformationElement[][] {
                     {
-                        new IeProtectionOutputCircuitInformation(is),
-                        new IeProtectionQuality(is),
+                        IeProtectionOutputCircuitInformation.decode(is),
+                        IeProtectionQuality.decode(is),
                         new IeTime16(is),
                         new IeTime24(is)
                     }
@@ -194,7 +202,7 @@ public class InformationObject {
                 informationElements = new InformationElement[numberOfSequenceElements][2];
                 for (InformationElement[] informationElementCombination : informationElements) {
                     informationElementCombination[0] = new IeStatusAndStatusChanges(is);
-                    informationElementCombination[1] = new IeQuality(is);
+                    informationElementCombination[1] = IeQuality.decode(is);
                 }
                 break;
             // 21
@@ -207,40 +215,40 @@ public class InformationObject {
             // 30
             case M_SP_TB_1:
                 informationElements =
-                        new InformationElement[][] {{new IeSinglePointWithQuality(is), IeTime56.decode(is)}};
+                        new InformationElement[][] {{IeSinglePointWithQuality.decode(is), IeTime56.decode(is)}};
                 break;
             // 31
             case M_DP_TB_1:
                 informationElements =
-                        new InformationElement[][] {{new IeDoublePointWithQuality(is), IeTime56.decode(is)}};
+                        new InformationElement[][] {{IeDoublePointWithQuality.decode(is), IeTime56.decode(is)}};
                 break;
             // 32
             case M_ST_TB_1:
                 informationElements = new InformationElement[][] {
-                    {new IeValueWithTransientState(is), new IeQuality(is), IeTime56.decode(is)}
+                    {new IeValueWithTransientState(is), IeQuality.decode(is), IeTime56.decode(is)}
                 };
                 break;
             // 33
             case M_BO_TB_1:
                 informationElements = new InformationElement[][] {
-                    {new IeBinaryStateInformation(is), new IeQuality(is), IeTime56.decode(is)}
+                    {new IeBinaryStateInformation(is), IeQuality.decode(is), IeTime56.decode(is)}
                 };
                 break;
             // 34
             case M_ME_TD_1:
-                informationElements =
-                        new InformationElement[][] {{new IeNormalizedValue(is), new IeQuality(is), IeTime56.decode(is)}
-                        };
+                informationElements = new InformationElement[][] {
+                    {new IeNormalizedValue(is), IeQuality.decode(is), IeTime56.decode(is)}
+                };
                 break;
             // 35
             case M_ME_TE_1:
                 informationElements =
-                        new InformationElement[][] {{new IeScaledValue(is), new IeQuality(is), IeTime56.decode(is)}};
+                        new InformationElement[][] {{new IeScaledValue(is), IeQuality.decode(is), IeTime56.decode(is)}};
                 break;
             // 36
             case M_ME_TF_1:
                 informationElements =
-                        new InformationElement[][] {{new IeShortFloat(is), new IeQuality(is), IeTime56.decode(is)}};
+                        new InformationElement[][] {{new IeShortFloat(is), IeQuality.decode(is), IeTime56.decode(is)}};
                 break;
             // 37
             case M_IT_TB_1:
@@ -250,21 +258,26 @@ public class InformationObject {
             // 38
             case M_EP_TD_1:
                 informationElements = new InformationElement[][] {
-                    {new IeSingleProtectionEvent(is), new IeTime16(is), IeTime56.decode(is)}
+                    {IeSingleProtectionEvent.decode(is), new IeTime16(is), IeTime56.decode(is)}
                 };
                 break;
             // 39
             case M_EP_TE_1:
                 informationElements = new InformationElement[][] {
-                    {new IeProtectionStartEvent(is), new IeProtectionQuality(is), new IeTime16(is), IeTime56.decode(is)}
+                    {
+                        IeProtectionStartEvent.decode(is),
+                        IeProtectionQuality.decode(is),
+                        new IeTime16(is),
+                        IeTime56.decode(is)
+                    }
                 };
                 break;
             // 40
             case M_EP_TF_1:
                 informationElements = new InformationElement[][] {
                     {
-                        new IeProtectionOutputCircuitInformation(is),
-                        new IeProtectionQuality(is),
+                        IeProtectionOutputCircuitInformation.decode(is),
+                        IeProtectionQuality.decode(is),
                         new IeTime16(is),
                         IeTime56.decode(is)
                     }
@@ -272,30 +285,31 @@ public class InformationObject {
                 break;
             // 45
             case C_SC_NA_1:
-                informationElements = new InformationElement[][] {{new IeSingleCommand(is)}};
+                informationElements = new InformationElement[][] {{IeSingleCommand.decode(is)}};
                 break;
             // 46
             case C_DC_NA_1:
-                informationElements = new InformationElement[][] {{new IeDoubleCommand(is)}};
+                informationElements = new InformationElement[][] {{IeDoubleCommand.decode(is)}};
                 break;
             // 47
             case C_RC_NA_1:
-                informationElements = new InformationElement[][] {{new IeRegulatingStepCommand(is)}};
+                informationElements = new InformationElement[][] {{IeRegulatingStepCommand.decode(is)}};
                 break;
             // 48
             case C_SE_NA_1:
                 informationElements =
-                        new InformationElement[][] {{new IeNormalizedValue(is), new IeQualifierOfSetPointCommand(is)}};
+                        new InformationElement[][] {{new IeNormalizedValue(is), IeQualifierOfSetPointCommand.decode(is)}
+                        };
                 break;
             // 49
             case C_SE_NB_1:
                 informationElements =
-                        new InformationElement[][] {{new IeScaledValue(is), new IeQualifierOfSetPointCommand(is)}};
+                        new InformationElement[][] {{new IeScaledValue(is), IeQualifierOfSetPointCommand.decode(is)}};
                 break;
             // 50
             case C_SE_NC_1:
                 informationElements =
-                        new InformationElement[][] {{new IeShortFloat(is), new IeQualifierOfSetPointCommand(is)}};
+                        new InformationElement[][] {{new IeShortFloat(is), IeQualifierOfSetPointCommand.decode(is)}};
                 break;
             // 51
             case C_BO_NA_1:
@@ -303,33 +317,33 @@ public class InformationObject {
                 break;
             // 58
             case C_SC_TA_1:
-                informationElements = new InformationElement[][] {{new IeSingleCommand(is), IeTime56.decode(is)}};
+                informationElements = new InformationElement[][] {{IeSingleCommand.decode(is), IeTime56.decode(is)}};
                 break;
             // 59
             case C_DC_TA_1:
-                informationElements = new InformationElement[][] {{new IeDoubleCommand(is), IeTime56.decode(is)}};
+                informationElements = new InformationElement[][] {{IeDoubleCommand.decode(is), IeTime56.decode(is)}};
                 break;
             // 60
             case C_RC_TA_1:
                 informationElements =
-                        new InformationElement[][] {{new IeRegulatingStepCommand(is), IeTime56.decode(is)}};
+                        new InformationElement[][] {{IeRegulatingStepCommand.decode(is), IeTime56.decode(is)}};
                 break;
             // 61
             case C_SE_TA_1:
                 informationElements = new InformationElement[][] {
-                    {new IeNormalizedValue(is), new IeQualifierOfSetPointCommand(is), IeTime56.decode(is)}
+                    {new IeNormalizedValue(is), IeQualifierOfSetPointCommand.decode(is), IeTime56.decode(is)}
                 };
                 break;
             // 62
             case C_SE_TB_1:
                 informationElements = new InformationElement[][] {
-                    {new IeScaledValue(is), new IeQualifierOfSetPointCommand(is), IeTime56.decode(is)}
+                    {new IeScaledValue(is), IeQualifierOfSetPointCommand.decode(is), IeTime56.decode(is)}
                 };
                 break;
             // 63
             case C_SE_TC_1:
                 informationElements = new InformationElement[][] {
-                    {new IeShortFloat(is), new IeQualifierOfSetPointCommand(is), IeTime56.decode(is)}
+                    {new IeShortFloat(is), IeQualifierOfSetPointCommand.decode(is), IeTime56.decode(is)}
                 };
                 break;
             // 64
@@ -339,15 +353,15 @@ public class InformationObject {
                 break;
             // 70
             case M_EI_NA_1:
-                informationElements = new InformationElement[][] {{new IeCauseOfInitialization(is)}};
+                informationElements = new InformationElement[][] {{IeCauseOfInitialization.decode(is)}};
                 break;
             // 100
             case C_IC_NA_1:
-                informationElements = new InformationElement[][] {{new IeQualifierOfInterrogation(is)}};
+                informationElements = new InformationElement[][] {{IeQualifierOfInterrogation.decode(is)}};
                 break;
             // 101
             case C_CI_NA_1:
-                informationElements = new InformationElement[][] {{new IeQualifierOfCounterInterrogation(is)}};
+                informationElements = new InformationElement[][] {{IeQualifierOfCounterInterrogation.decode(is)}};
                 break;
             // 102
             case C_RD_NA_1:
@@ -363,7 +377,7 @@ public class InformationObject {
                 break;
             // 105
             case C_RP_NA_1:
-                informationElements = new InformationElement[][] {{new IeQualifierOfResetProcessCommand(is)}};
+                informationElements = new InformationElement[][] {{IeQualifierOfResetProcessCommand.decode(is)}};
                 break;
             // 106
             case C_CD_NA_1:
@@ -377,19 +391,19 @@ public class InformationObject {
             // 110
             case P_ME_NA_1:
                 informationElements = new InformationElement[][] {
-                    {new IeNormalizedValue(is), new IeQualifierOfParameterOfMeasuredValues(is)}
+                    {new IeNormalizedValue(is), IeQualifierOfParameterOfMeasuredValues.decode(is)}
                 };
                 break;
             // 111
             case P_ME_NB_1:
                 informationElements = new InformationElement[][] {
-                    {new IeScaledValue(is), new IeQualifierOfParameterOfMeasuredValues(is)}
+                    {new IeScaledValue(is), IeQualifierOfParameterOfMeasuredValues.decode(is)}
                 };
                 break;
             // 112
             case P_ME_NC_1:
                 informationElements = new InformationElement[][] {
-                    {new IeShortFloat(is), new IeQualifierOfParameterOfMeasuredValues(is)}
+                    {new IeShortFloat(is), IeQualifierOfParameterOfMeasuredValues.decode(is)}
                 };
                 break;
             // 113
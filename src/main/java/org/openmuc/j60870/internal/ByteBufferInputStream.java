@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870.internal;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream reading a region of a {@link ByteBuffer} without copying it. The buffer may be a
+ * direct buffer. Its position and limit are not modified. The stream can be pointed to a new region
+ * using {@link #setBuffer(ByteBuffer, int, int)} so that a single instance can be reused for every
+ * received frame.
+ */
+public final class ByteBufferInputStream extends InputStream {
+
+    private ByteBuffer buffer;
+    private int position;
+    private int limit;
+
+    /**
+     * Sets the region that is read by this stream.
+     *
+     * @param buffer the buffer to read from
+     * @param offset the index of the first byte to read
+     * @param length the number of bytes that can be read
+     */
+    public void setBuffer(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    @Override
+    public int read() {
+        if (position >= limit) {
+            return -1;
+        }
+        return buffer.get(position++) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int n = Math.min(len, limit - position);
+        if (n <= 0) {
+            return -1;
+        }
+        for (int i = 0; i < n; i++) {
+            b[off + i] = buffer.get(position++);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(n, limit - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+}
@@ -1,64 +0,0 @@
-/*
- * Copyright 2014-2024 Fraunhofer ISE
- *
- * This file is part of j60870.
- * For more information visit http://www.openmuc.org
- *
- * j60870 is free software: you can redistribute it and/or modify
- * it under the terms of the GNU General Public License as published by
- * the Free Software Foundation, either version 3 of the License, or
- * (at your option) any later version.
- *
- * j60870 is distributed in the hope that it will be useful,
- * but WITHOUT ANY WARRANTY; without even the implied warranty of
- * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- * GNU General Public License for more details.
- *
- * You should have received a copy of the GNU General Public License
- * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
- *
- */
-package org.openmuc.j60870.internal;
-
-import java.util.ArrayDeque;
-import java.util.Queue;
-import java.util.concurrent.Executor;
-
-public class SerialExecutor implements Executor {
-
-    private final Queue<Runnable> tasks = new ArrayDeque<>();
-    private final Executor executor;
-    private final Object lock = new Object();
-    private Runnable active;
-
-    public SerialExecutor(Executor executor) {
-        this.executor = executor;
-    }
-
-    @Override
-    public void execute(final Runnable r) {
-        synchronized (lock) {
-            tasks.offer(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        r.run();
-                    } finally {
-                        scheduleNext();
-                    }
-                }
-            });
-            if (active == null) {
-                scheduleNext();
-            }
-        }
-    }
-
-    private void scheduleNext() {
-        synchronized (lock) {
-            if ((active = tasks.poll()) != null) {
-                executor.execute(active);
-            }
-        }
-    }
-}
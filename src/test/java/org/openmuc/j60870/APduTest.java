@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import org.openmuc.j60870.APdu.ApciType;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.InformationObject;
+import org.openmuc.j60870.internal.ByteBufferInputStream;
+import org.openmuc.j60870.internal.ExtendedDataInputStream;
+
+public class APduTest {
+
+    private final ConnectionSettings settings = new ConnectionSettings();
+
+    @Test
+    public void testDecodeIFrameFromDirectBufferWithOffset() throws IOException {
+        ASdu aSdu = new ASdu(
+                ASduType.M_ME_NC_1,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                0,
+                5,
+                new InformationObject(4711, new IeShortFloat(1.5f), new IeQuality(false, false, false, false, true)));
+        byte[] asduBytes = new byte[255];
+        int asduLength = aSdu.encode(asduBytes, 0, settings);
+
+        byte[] frame = new byte[255];
+        int frameLength =
+                new APdu(17, 4, ApciType.I_FORMAT, Arrays.copyOf(asduBytes, asduLength)).encode(frame, settings);
+
+        int offset = 10;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(512);
+        buffer.position(offset);
+        buffer.put(frame, 0, frameLength);
+
+        APdu aPdu = APdu.decode(buffer, offset + 2, frame[1] & 0xff);
+
+        assertEquals(ApciType.I_FORMAT, aPdu.getApciType());
+        assertEquals(17, aPdu.getSendSeqNumber());
+        assertEquals(4, aPdu.getReceiveSeqNumber());
+        assertEquals(asduLength, aPdu.getASduLength());
+        assertArrayEquals(Arrays.copyOf(asduBytes, asduLength), aPdu.getASduBuffer());
+
+        ByteBufferInputStream is = new ByteBufferInputStream();
+        is.setBuffer(aPdu.getFrameBuffer(), aPdu.getASduOffset(), aPdu.getASduLength());
+        ASdu decoded = ASdu.decode(new ExtendedDataInputStream(is), settings, aPdu.getASduLength());
+
+        assertEquals(5, decoded.getCommonAddress());
+        assertEquals(4711, decoded.getInformationObjects()[0].getInformationObjectAddress());
+        IeShortFloat value = (IeShortFloat) decoded.getInformationObjects()[0].getInformationElements()[0][0];
+        assertEquals(1.5f, value.getValue(), 0f);
+    }
+
+    @Test
+    public void testEncodeIFormatInPlace() {
+        ASdu aSdu = new ASdu(
+                ASduType.M_ME_NC_1,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                0,
+                5,
+                new InformationObject(4711, new IeShortFloat(1.5f), new IeQuality(false, false, false, false, true)));
+        byte[] asduBytes = new byte[255];
+        int asduLength = aSdu.encode(asduBytes, 0, settings);
+        byte[] expected = new byte[255];
+        int expectedLength = new APdu(32767, 300, ApciType.I_FORMAT, Arrays.copyOf(asduBytes, asduLength))
+                .encode(expected, settings);
+
+        byte[] frame = new byte[APdu.MAX_APDU_LENGTH + 2];
+        int frameLength = APdu.encodeIFormatHeader(frame, aSdu.encode(frame, APdu.HEADER_LENGTH, settings), 32767, 300);
+
+        assertEquals(expectedLength, frameLength);
+        assertArrayEquals(Arrays.copyOf(expected, expectedLength), Arrays.copyOf(frame, frameLength));
+    }
+
+    @Test
+    public void testDecodeSFrame() throws IOException {
+        byte[] frame = new byte[6];
+        new APdu(0, 12345, ApciType.S_FORMAT).encode(frame, settings);
+
+        APdu aPdu = APdu.decode(ByteBuffer.wrap(frame), 2, 4);
+
+        assertEquals(ApciType.S_FORMAT, aPdu.getApciType());
+        assertEquals(12345, aPdu.getReceiveSeqNumber());
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecodeInvalidLength() throws IOException {
+        APdu.decode(ByteBuffer.allocate(8), 2, 2);
+    }
+}
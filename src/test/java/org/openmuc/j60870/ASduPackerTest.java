@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.IeSinglePointWithQuality;
+import org.openmuc.j60870.ie.IeTime56;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class ASduPackerTest {
+
+    private final ConnectionSettings settings = new ConnectionSettings();
+
+    @Test
+    public void testContiguousAddressesArePackedAsSequence() {
+        ASduPacker packer = newPacker();
+        for (int i = 0; i < 100; i++) {
+            add(packer, 5000 + i);
+        }
+
+        List<ASdu> aSdus = packer.pack();
+
+        // 48 element sets of 5 bytes fit behind a single IOA, but only 30 information objects
+        assertEquals(3, aSdus.size());
+        assertEquals(48, aSdus.get(0).getSequenceLength());
+        assertEquals(48, aSdus.get(1).getSequenceLength());
+        assertEquals(4, aSdus.get(2).getSequenceLength());
+        assertTrue(aSdus.get(0).isSequenceOfElements());
+        assertEquals(5048, aSdus.get(1).getInformationObjects()[0].getInformationObjectAddress());
+        assertEquals(0, packer.size());
+        assertFitsIntoApdu(aSdus);
+    }
+
+    @Test
+    public void testScatteredAddressesArePackedAsObjects() {
+        ASduPacker packer = newPacker();
+        for (int i = 0; i < 100; i++) {
+            add(packer, 2 * i);
+        }
+        // a short run does not pay off against a full ASDU of information objects
+        add(packer, 1000);
+        add(packer, 1001);
+
+        List<ASdu> aSdus = packer.pack();
+
+        assertEquals(4, aSdus.size());
+        for (ASdu aSdu : aSdus) {
+            assertFalse(aSdu.isSequenceOfElements());
+        }
+        assertEquals(30, aSdus.get(0).getSequenceLength());
+        assertEquals(12, aSdus.get(3).getSequenceLength());
+        InformationObject[] last = aSdus.get(3).getInformationObjects();
+        assertEquals(1001, last[last.length - 1].getInformationObjectAddress());
+        assertFitsIntoApdu(aSdus);
+    }
+
+    @Test
+    public void testTimeTaggedTypesAreNotPackedAsSequence() {
+        ASduPacker packer = new ASduPacker(ASduType.M_SP_TB_1, CauseOfTransmission.SPONTANEOUS, 1, settings);
+        for (int i = 0; i < 40; i++) {
+            packer.add(100 + i, new IeSinglePointWithQuality(true, false, false, false, false), new IeTime56(0));
+        }
+
+        List<ASdu> aSdus = packer.pack();
+
+        // 11 bytes per information object, the companion standard defines M_SP_TB_1 with SQ=0 only
+        assertEquals(2, aSdus.size());
+        for (ASdu aSdu : aSdus) {
+            assertFalse(aSdu.isSequenceOfElements());
+        }
+        assertEquals(22, aSdus.get(0).getSequenceLength());
+        assertEquals(18, aSdus.get(1).getSequenceLength());
+        assertEquals(139, aSdus.get(1).getInformationObjects()[17].getInformationObjectAddress());
+        assertFitsIntoApdu(aSdus);
+    }
+
+    private ASduPacker newPacker() {
+        return new ASduPacker(ASduType.M_ME_NC_1, CauseOfTransmission.INTERROGATED_BY_STATION, 1, settings);
+    }
+
+    private static void add(ASduPacker packer, int informationObjectAddress) {
+        packer.add(
+                informationObjectAddress,
+                new IeShortFloat(informationObjectAddress),
+                new IeQuality(false, false, false, false, false));
+    }
+
+    private void assertFitsIntoApdu(List<ASdu> aSdus) {
+        byte[] buffer = new byte[512];
+        for (ASdu aSdu : aSdus) {
+            assertTrue(aSdu.encode(buffer, 0, settings) <= APdu.MAX_APDU_LENGTH - 4);
+        }
+    }
+}
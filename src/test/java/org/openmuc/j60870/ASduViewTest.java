@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.TimeZone;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeNormalizedValue;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeSinglePointWithQuality;
+import org.openmuc.j60870.ie.IeTime56;
+import org.openmuc.j60870.ie.InformationElement;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class ASduViewTest {
+
+    private final ConnectionSettings settings = new ConnectionSettings();
+
+    @Test
+    public void testSequenceOfNormalizedValues() throws IOException {
+        ASdu aSdu = new ASdu(
+                ASduType.M_ME_NA_1,
+                true,
+                CauseOfTransmission.PERIODIC,
+                false,
+                false,
+                0,
+                7,
+                new InformationObject(100, new InformationElement[][] {
+                    {new IeNormalizedValue(-16384), new IeQuality(false, false, false, false, false)},
+                    {new IeNormalizedValue(8192), new IeQuality(true, false, false, false, true)}
+                }));
+
+        ASduView view = wrap(aSdu, 3);
+
+        assertEquals(ASduType.M_ME_NA_1, view.getTypeIdentification());
+        assertTrue(view.isSequenceOfElements());
+        assertEquals(CauseOfTransmission.PERIODIC, view.getCauseOfTransmission());
+        assertEquals(7, view.getCommonAddress());
+        assertEquals(2, view.size());
+        assertEquals(100, view.ioa(0));
+        assertEquals(101, view.ioa(1));
+        assertEquals(-16384, view.intValue(0));
+        assertEquals(0.25f, view.floatValue(1), 0f);
+        assertEquals(0x00, view.quality(0));
+        assertEquals(0x81, view.quality(1));
+        assertFalse(view.hasTimeTag());
+    }
+
+    @Test
+    public void testSinglePointsWithTimeTag() throws IOException {
+        long timestamp = 1_700_000_123_456L;
+        TimeZone timeZone = TimeZone.getTimeZone("Europe/Berlin");
+        ASdu aSdu = new ASdu(
+                ASduType.M_SP_TB_1,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                0,
+                1,
+                new InformationObject(
+                        4711,
+                        new IeSinglePointWithQuality(true, false, true, false, false),
+                        new IeTime56(timestamp, timeZone, false)),
+                new InformationObject(
+                        4712,
+                        new IeSinglePointWithQuality(false, false, false, false, true),
+                        new IeTime56(timestamp + 1000, timeZone, false)));
+
+        ASduView view = wrap(aSdu, 0);
+        view.setTimeZone(timeZone);
+
+        assertFalse(view.isSequenceOfElements());
+        assertEquals(4711, view.ioa(0));
+        assertEquals(4712, view.ioa(1));
+        assertEquals(1, view.intValue(0));
+        assertEquals(0, view.intValue(1));
+        assertEquals(0x20, view.quality(0));
+        assertEquals(0x80, view.quality(1));
+        assertTrue(view.hasTimeTag());
+        assertEquals(timestamp, view.timestampMillis(0));
+        assertEquals(timestamp + 1000, view.timestampMillis(1));
+        assertEquals(new IeTime56(timestamp, timeZone, false).getTimestamp(), view.timestampMillis(0));
+    }
+
+    @Test(expected = UnknownAsduTypeException.class)
+    public void testTypeNotAllowed() throws IOException {
+        ConnectionSettings settings = new ConnectionSettings();
+        settings.setAllowedTypes(Collections.singletonList(ASduType.M_SP_NA_1));
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] {0x0d, 0x00, 0x03, 0x00, 0x01, 0x00});
+        new ASduView(settings).wrap(buffer, 0, 6);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedAsdu() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] {0x0d, 0x02, 0x03, 0x00, 0x01, 0x00, 0x01, 0x00, 0x00});
+        new ASduView(2, 2, 3).wrap(buffer, 0, 9);
+    }
+
+    @Test
+    public void testCopyToOtherFieldLengthsWithMappedAddresses() throws IOException {
+        ASdu aSdu = new ASdu(
+                ASduType.M_ME_NA_1,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                5,
+                7,
+                new InformationObject(
+                        100, new IeNormalizedValue(-16384), new IeQuality(false, false, false, false, false)),
+                new InformationObject(
+                        200, new IeNormalizedValue(8192), new IeQuality(true, false, false, false, true)));
+        ASduView view = wrap(aSdu, 3);
+
+        AddressTable ioaTable = new AddressTable();
+        ioaTable.put(42L << 24 | 200, 300);
+        byte[] copy = new byte[249];
+        int length = view.copyTo(copy, 1, 1, 2, 42, ioaTable, 42L << 24);
+
+        ConnectionSettings copySettings = new ConnectionSettings();
+        copySettings.setCotFieldLength(1);
+        copySettings.setCommonAddressFieldLength(1);
+        copySettings.setIoaFieldLength(2);
+        ASduView copyView = new ASduView(copySettings).wrap(ByteBuffer.wrap(copy), 0, length);
+
+        assertEquals(CauseOfTransmission.SPONTANEOUS, copyView.getCauseOfTransmission());
+        assertEquals(42, copyView.getCommonAddress());
+        assertEquals(2, copyView.size());
+        assertEquals(100, copyView.ioa(0));
+        assertEquals(300, copyView.ioa(1));
+        assertEquals(-16384, copyView.intValue(0));
+        assertEquals(0x81, copyView.quality(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCopyToWithAddressOutOfRange() throws IOException {
+        ASdu aSdu = new ASdu(
+                ASduType.M_ME_NA_1,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                0,
+                7,
+                new InformationObject(
+                        70000, new IeNormalizedValue(0), new IeQuality(false, false, false, false, false)));
+        wrap(aSdu, 0).copyTo(new byte[249], 2, 2, 2, 7, null, 0);
+    }
+
+    private ASduView wrap(ASdu aSdu, int offset) throws IOException {
+        byte[] bytes = new byte[255];
+        int length = aSdu.encode(bytes, offset, settings);
+        return new ASduView(settings).wrap(ByteBuffer.wrap(bytes), offset, length);
+    }
+}
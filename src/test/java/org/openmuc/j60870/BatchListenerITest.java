@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQualifierOfInterrogation;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class BatchListenerITest {
+
+    private static final int NUM_ASDUS = 200;
+    private static final int MAX_BATCH_SIZE = 32;
+
+    private final List<List<ASdu>> batches = new ArrayList<>();
+
+    @Test
+    public void testBatchesAreBoundedAndOrdered() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        Server server = Server.builder().setPort(port).build();
+        server.start(new ServerListener());
+
+        Connection connection = null;
+        try {
+            connection = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(port)
+                    .setMaxBatchSize(MAX_BATCH_SIZE)
+                    .setMaxBatchLinger(50)
+                    .setConnectionEventListener(new ClientListener())
+                    .build();
+            connection.startDataTransfer();
+            connection.interrogation(1, CauseOfTransmission.ACTIVATION, new IeQualifierOfInterrogation(20));
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (numReceived() < NUM_ASDUS && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(NUM_ASDUS, numReceived());
+            synchronized (batches) {
+                // the linger time lets the listener receive full batches although the ASDUs arrive in
+                // bursts of k
+                assertTrue(batches.size() < NUM_ASDUS / 2);
+                int expectedIoa = 0;
+                for (List<ASdu> batch : batches) {
+                    assertTrue(batch.size() <= MAX_BATCH_SIZE);
+                    for (ASdu aSdu : batch) {
+                        assertEquals(expectedIoa++, aSdu.getInformationObjects()[0].getInformationObjectAddress());
+                    }
+                }
+            }
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    private int numReceived() {
+        synchronized (batches) {
+            int numReceived = 0;
+            for (List<ASdu> batch : batches) {
+                numReceived += batch.size();
+            }
+            return numReceived;
+        }
+    }
+
+    private class ServerListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {
+                    for (int i = 0; i < NUM_ASDUS; i++) {
+                        connection.sendAsync(new ASdu(
+                                ASduType.M_ME_NC_1,
+                                false,
+                                CauseOfTransmission.INTERROGATED_BY_STATION,
+                                false,
+                                false,
+                                0,
+                                aSdu.getCommonAddress(),
+                                new InformationObject(
+                                        i, new IeShortFloat(i), new IeQuality(false, false, false, false, false))));
+                    }
+                }
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+
+    private class ClientListener implements BatchConnectionEventListener {
+
+        @Override
+        public void newASdus(Connection connection, List<ASdu> aSdus) {
+            synchronized (batches) {
+                batches.add(aSdus);
+            }
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {}
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
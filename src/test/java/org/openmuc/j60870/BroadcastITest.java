@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class BroadcastITest {
+
+    private static final int NUM_STARTED = 3;
+
+    @Test
+    public void testBroadcastToStartedConnections() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        Server server = Server.builder().setPort(port).build();
+        server.start(new ServerListener());
+
+        List<Connection> clients = new ArrayList<>();
+        List<BlockingQueue<ASdu>> received = new ArrayList<>();
+        try {
+            for (int i = 0; i <= NUM_STARTED; i++) {
+                BlockingQueue<ASdu> aSdus = new LinkedBlockingQueue<>();
+                Connection client = new ClientConnectionBuilder("127.0.0.1")
+                        .setPort(port)
+                        .setMaxUnconfirmedIPdusReceived(1)
+                        .setConnectionEventListener(new ClientListener(aSdus))
+                        .build();
+                clients.add(client);
+                received.add(aSdus);
+                // the last client does not start the data transfer and is skipped
+                if (i < NUM_STARTED) {
+                    client.startDataTransfer();
+                }
+            }
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (server.getConnections().size() < NUM_STARTED + 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(NUM_STARTED + 1, server.getConnections().size());
+
+            List<CompletableFuture<Void>> futures = server.broadcast(new ASdu(
+                    ASduType.M_ME_NC_1,
+                    false,
+                    CauseOfTransmission.SPONTANEOUS,
+                    false,
+                    false,
+                    0,
+                    7,
+                    new InformationObject(
+                            4711, new IeShortFloat(2.5f), new IeQuality(false, false, false, false, false))));
+
+            assertEquals(NUM_STARTED, futures.size());
+            for (CompletableFuture<Void> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            for (int i = 0; i < NUM_STARTED; i++) {
+                ASdu aSdu = received.get(i).poll(5, TimeUnit.SECONDS);
+                assertNotNull(aSdu);
+                assertEquals(7, aSdu.getCommonAddress());
+                InformationObject informationObject = aSdu.getInformationObjects()[0];
+                assertEquals(4711, informationObject.getInformationObjectAddress());
+                assertEquals(2.5f, ((IeShortFloat) informationObject.getInformationElements()[0][0]).getValue(), 0);
+            }
+            assertNull(received.get(NUM_STARTED).poll(100, TimeUnit.MILLISECONDS));
+
+            clients.get(0).close();
+            deadline = System.currentTimeMillis() + 5_000;
+            while (server.getConnections().size() > NUM_STARTED && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(NUM_STARTED, server.getConnections().size());
+        } finally {
+            for (Connection client : clients) {
+                client.close();
+            }
+            server.stop();
+        }
+    }
+
+    private static class ServerListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {}
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+
+    private static class ClientListener implements ConnectionEventListener {
+
+        private final BlockingQueue<ASdu> aSdus;
+
+        ClientListener(BlockingQueue<ASdu> aSdus) {
+            this.aSdus = aSdus;
+        }
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {
+            aSdus.add(aSdu);
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {}
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
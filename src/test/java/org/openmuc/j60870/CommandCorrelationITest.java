@@ -0,0 +1,238 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQualifierOfInterrogation;
+import org.openmuc.j60870.ie.IeSingleCommand;
+import org.openmuc.j60870.ie.IeTime56;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class CommandCorrelationITest {
+
+    @Test
+    public void testConfirmationTerminationAndTimeout() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        Server server = Server.builder().setPort(port).build();
+        server.start(new ServerListener(false));
+
+        Connection connection = null;
+        try {
+            connection = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(port)
+                    .setConnectionEventListener(new ClientListener())
+                    .build();
+            connection.startDataTransfer();
+
+            // single commands are confirmed and terminated
+            CommandFuture singleCommand = connection.sendCommand(command(ASduType.C_SC_NA_1, 42), 5000);
+            ASdu confirmation = singleCommand.getConfirmation().get(5, TimeUnit.SECONDS);
+            ASdu termination = singleCommand.getTermination().get(5, TimeUnit.SECONDS);
+            assertEquals(CauseOfTransmission.ACTIVATION_CON, confirmation.getCauseOfTransmission());
+            assertFalse(confirmation.isNegativeConfirm());
+            assertEquals(CauseOfTransmission.ACTIVATION_TERMINATION, termination.getCauseOfTransmission());
+
+            // interrogations are rejected by this server
+            CommandFuture interrogation = connection.sendCommand(
+                    new ASdu(
+                            ASduType.C_IC_NA_1,
+                            false,
+                            CauseOfTransmission.ACTIVATION,
+                            false,
+                            false,
+                            0,
+                            1,
+                            new InformationObject(0, new IeQualifierOfInterrogation(20))),
+                    5000);
+            assertTrue(interrogation.getConfirmation().get(5, TimeUnit.SECONDS).isNegativeConfirm());
+            assertTrue(interrogation.getTermination().get(5, TimeUnit.SECONDS).isNegativeConfirm());
+
+            // clock synchronizations are ignored by this server
+            CommandFuture clockSynchronization = connection.sendCommand(
+                    new ASdu(
+                            ASduType.C_CS_NA_1,
+                            false,
+                            CauseOfTransmission.ACTIVATION,
+                            false,
+                            false,
+                            0,
+                            1,
+                            new InformationObject(0, new IeTime56(System.currentTimeMillis()))),
+                    200);
+            try {
+                clockSynchronization.getConfirmation().get(5, TimeUnit.SECONDS);
+                fail("command did not time out");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof InterruptedIOException);
+            }
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testSelectBeforeOperateAndClockSynchronization() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        Server server = Server.builder().setPort(port).build();
+        server.start(new ServerListener(true));
+
+        Connection connection = null;
+        try {
+            connection = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(port)
+                    .setConnectionEventListener(new ClientListener())
+                    .build();
+            connection.startDataTransfer();
+
+            // the select is only confirmed, so the execute can be sent right after its confirmation
+            CommandFuture select = connection.sendCommand(command(ASduType.C_SC_NA_1, 42, true), 5000);
+            ASdu confirmation = select.getConfirmation().get(5, TimeUnit.SECONDS);
+            assertEquals(CauseOfTransmission.ACTIVATION_CON, confirmation.getCauseOfTransmission());
+            assertSame(confirmation, select.getTermination().get(5, TimeUnit.SECONDS));
+
+            CommandFuture execute = connection.sendCommand(command(ASduType.C_SC_NA_1, 42, false), 5000);
+            assertEquals(
+                    CauseOfTransmission.ACTIVATION_CON,
+                    execute.getConfirmation().get(5, TimeUnit.SECONDS).getCauseOfTransmission());
+            assertEquals(
+                    CauseOfTransmission.ACTIVATION_TERMINATION,
+                    execute.getTermination().get(5, TimeUnit.SECONDS).getCauseOfTransmission());
+
+            // clock synchronizations are only confirmed and may be repeated
+            for (int i = 0; i < 2; i++) {
+                CommandFuture clockSynchronization = connection.sendCommand(
+                        new ASdu(
+                                ASduType.C_CS_NA_1,
+                                false,
+                                CauseOfTransmission.ACTIVATION,
+                                false,
+                                false,
+                                0,
+                                1,
+                                new InformationObject(0, new IeTime56(System.currentTimeMillis()))),
+                        5000);
+                ASdu clockConfirmation = clockSynchronization.getTermination().get(5, TimeUnit.SECONDS);
+                assertEquals(CauseOfTransmission.ACTIVATION_CON, clockConfirmation.getCauseOfTransmission());
+            }
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    private static ASdu command(ASduType type, int informationObjectAddress) {
+        return command(type, informationObjectAddress, false);
+    }
+
+    private static ASdu command(ASduType type, int informationObjectAddress, boolean select) {
+        return new ASdu(
+                type,
+                false,
+                CauseOfTransmission.ACTIVATION,
+                false,
+                false,
+                0,
+                1,
+                new InformationObject(informationObjectAddress, new IeSingleCommand(true, 0, select)));
+    }
+
+    private static class ServerListener implements ServerEventListener {
+
+        private final boolean confirmClockSynchronization;
+
+        ServerListener(boolean confirmClockSynchronization) {
+            this.confirmClockSynchronization = confirmClockSynchronization;
+        }
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {
+                    try {
+                        switch (aSdu.getTypeIdentification()) {
+                            case C_SC_NA_1:
+                                connection.sendConfirmation(aSdu);
+                                IeSingleCommand singleCommand = (IeSingleCommand)
+                                        aSdu.getInformationObjects()[0].getInformationElements()[0][0];
+                                if (!singleCommand.isSelect()) {
+                                    connection.sendActivationTermination(aSdu);
+                                }
+                                break;
+                            case C_CS_NA_1:
+                                if (confirmClockSynchronization) {
+                                    connection.sendConfirmation(aSdu);
+                                }
+                                break;
+                            case C_IC_NA_1:
+                                connection.sendConfirmation(aSdu, aSdu.getCommonAddress(), true);
+                                break;
+                            default:
+                                break;
+                        }
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+
+    private static class ClientListener implements ConnectionEventListener {
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {}
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {}
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class ConcurrentSendITest {
+
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_ASDUS_PER_THREAD = 250;
+
+    private final AtomicInteger serverASdus = new AtomicInteger();
+    private final AtomicInteger clientASdus = new AtomicInteger();
+    private final AtomicReference<Exception> error = new AtomicReference<>();
+
+    @Test
+    public void testConcurrentSendersInBothDirections() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        Server server = Server.builder().setPort(port).build();
+        server.start(new ServerListener());
+
+        Connection connection = null;
+        try {
+            connection = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(port)
+                    .setConnectionEventListener(new ClientListener())
+                    .build();
+            connection.startDataTransfer();
+
+            // the first ASDU makes the server send its ASDUs while the client threads are sending
+            final Connection clientConnection = connection;
+            final CountDownLatch sent = new CountDownLatch(NUM_THREADS);
+            for (int i = 0; i < NUM_THREADS; i++) {
+                final int offset = i * NUM_ASDUS_PER_THREAD;
+                new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    for (int j = 0; j < NUM_ASDUS_PER_THREAD; j++) {
+                                        clientConnection.send(measuredValue(offset + j));
+                                    }
+                                } catch (Exception e) {
+                                    error.set(e);
+                                } finally {
+                                    sent.countDown();
+                                }
+                            }
+                        })
+                        .start();
+            }
+
+            assertTrue(sent.await(20, TimeUnit.SECONDS));
+            awaitCount(serverASdus, NUM_THREADS * NUM_ASDUS_PER_THREAD);
+            awaitCount(clientASdus, NUM_THREADS * NUM_ASDUS_PER_THREAD);
+            assertEquals(null, error.get());
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    private static ASdu measuredValue(int ioa) {
+        return new ASdu(
+                ASduType.M_ME_NC_1,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                0,
+                1,
+                new InformationObject(ioa, new IeShortFloat(ioa), new IeQuality(false, false, false, false, false)));
+    }
+
+    private static void awaitCount(AtomicInteger counter, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (counter.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, counter.get());
+    }
+
+    private class ServerListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(final Connection connection, ASdu aSdu) {
+                    if (serverASdus.incrementAndGet() != 1) {
+                        return;
+                    }
+                    new Thread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        for (int i = 0; i < NUM_THREADS * NUM_ASDUS_PER_THREAD; i++) {
+                                            connection.send(measuredValue(i));
+                                        }
+                                    } catch (Exception e) {
+                                        error.set(e);
+                                    }
+                                }
+                            })
+                            .start();
+                }
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+
+    private class ClientListener implements ConnectionEventListener {
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {
+            clientASdus.incrementAndGet();
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {}
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.openmuc.j60870.ConnectionManager.Link;
+import org.openmuc.j60870.ConnectionManager.LinkState;
+
+public class ConnectionManagerITest {
+
+    private final Semaphore interrogations = new Semaphore(0);
+    private final BlockingQueue<Connection> serverConnections = new LinkedBlockingQueue<>();
+
+    @Test
+    public void testReconnectAndInterrogate() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        ConnectionManager manager =
+                new ConnectionManager().setReconnectDelay(20, 100).setGeneralInterrogation(true);
+        Server server = null;
+        try {
+            Link link = manager.addLink(new ClientConnectionBuilder("127.0.0.1").setPort(port));
+
+            // nobody listens yet
+            awaitFailures(link, 2);
+            assertNotNull(link.getLastError());
+            assertNull(link.getConnection());
+
+            server = Server.builder().setPort(port).build();
+            server.start(new ServerListener());
+
+            awaitConnects(link, 1);
+            assertTrue(interrogations.tryAcquire(5, TimeUnit.SECONDS));
+            assertEquals(0, link.getNumFailures());
+            assertNotNull(link.getConnection());
+            assertEquals(1, manager.getNumLinks(LinkState.CONNECTED));
+
+            serverConnections.take().close();
+
+            awaitConnects(link, 2);
+            assertTrue(interrogations.tryAcquire(5, TimeUnit.SECONDS));
+
+            manager.close();
+            assertEquals(LinkState.CLOSED, link.getState());
+        } finally {
+            manager.close();
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    private static void awaitFailures(Link link, int numFailures) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (link.getNumFailures() < numFailures) {
+            assertTrue("link did not fail", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitConnects(Link link, int numConnects) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (link.getNumConnects() < numConnects || link.getState() != LinkState.CONNECTED) {
+            assertTrue("link did not connect", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private class ServerListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            serverConnections.add(connection);
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {
+                    if (aSdu.getTypeIdentification() == ASduType.C_IC_NA_1) {
+                        interrogations.release();
+                    }
+                }
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.IeSingleCommand;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class GatewayITest {
+
+    private final BlockingQueue<Connection> rtuConnections = new LinkedBlockingQueue<>();
+    private final BlockingQueue<ASdu> rtuASdus = new LinkedBlockingQueue<>();
+    private final BlockingQueue<ASdu> masterASdus = new LinkedBlockingQueue<>();
+
+    @Test
+    public void testForwardingWithAddressRewriting() throws Exception {
+        int rtuPort = TestUtils.getAvailablePort();
+        int gatewayPort = TestUtils.getAvailablePort();
+
+        // the RTU uses shorter fields than the masters
+        Server rtu = Server.builder()
+                .setPort(rtuPort)
+                .setCotFieldLength(1)
+                .setIoaFieldLength(2)
+                .build();
+        rtu.start(new RtuListener());
+
+        Gateway gateway = new Gateway();
+        Server server = Server.builder().setPort(gatewayPort).build();
+        Connection master = null;
+        try {
+            Connection upstream = gateway.addUpstream(new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(rtuPort)
+                    .setCotFieldLength(1)
+                    .setIoaFieldLength(2));
+            gateway.mapCommonAddress(upstream, 1, 101).mapInformationObjectAddress(101, 10, 100010);
+            server.start(gateway);
+
+            master = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(gatewayPort)
+                    .setMaxUnconfirmedIPdusReceived(1)
+                    .setConnectionEventListener(new MasterListener())
+                    .build();
+            master.startDataTransfer();
+
+            Connection rtuConnection = rtuConnections.poll(5, TimeUnit.SECONDS);
+            assertNotNull(rtuConnection);
+
+            // monitoring direction, mapped and unmapped common address
+            rtuConnection.send(measuredValue(1, 10, 1.5f));
+            rtuConnection.send(measuredValue(7, 20, 2.5f));
+
+            ASdu aSdu = masterASdus.poll(5, TimeUnit.SECONDS);
+            assertMeasuredValue(aSdu, 101, 100010, 1.5f);
+            aSdu = masterASdus.poll(5, TimeUnit.SECONDS);
+            assertMeasuredValue(aSdu, 7, 20, 2.5f);
+
+            // control direction, the confirmation of the RTU is rewritten back
+            master.singleCommand(101, CauseOfTransmission.ACTIVATION, 100010, new IeSingleCommand(true, 0, false));
+            aSdu = rtuASdus.poll(5, TimeUnit.SECONDS);
+            assertNotNull(aSdu);
+            assertEquals(ASduType.C_SC_NA_1, aSdu.getTypeIdentification());
+            assertEquals(1, aSdu.getCommonAddress());
+            assertEquals(10, aSdu.getInformationObjects()[0].getInformationObjectAddress());
+
+            aSdu = masterASdus.poll(5, TimeUnit.SECONDS);
+            assertNotNull(aSdu);
+            assertEquals(CauseOfTransmission.ACTIVATION_CON, aSdu.getCauseOfTransmission());
+            assertEquals(101, aSdu.getCommonAddress());
+            assertEquals(100010, aSdu.getInformationObjects()[0].getInformationObjectAddress());
+
+            // learned route of the unmapped common address
+            master.singleCommand(7, CauseOfTransmission.ACTIVATION, 20, new IeSingleCommand(false, 0, false));
+            aSdu = rtuASdus.poll(5, TimeUnit.SECONDS);
+            assertNotNull(aSdu);
+            assertEquals(7, aSdu.getCommonAddress());
+            assertEquals(20, aSdu.getInformationObjects()[0].getInformationObjectAddress());
+            assertNotNull(masterASdus.poll(5, TimeUnit.SECONDS));
+
+            // no station is known for the common address
+            master.singleCommand(999, CauseOfTransmission.ACTIVATION, 1, new IeSingleCommand(true, 0, false));
+            aSdu = masterASdus.poll(5, TimeUnit.SECONDS);
+            assertNotNull(aSdu);
+            assertEquals(CauseOfTransmission.UNKNOWN_COMMON_ADDRESS_OF_ASDU, aSdu.getCauseOfTransmission());
+            assertTrue(aSdu.isNegativeConfirm());
+            assertEquals(999, aSdu.getCommonAddress());
+
+            assertEquals(0, gateway.getNumDroppedASdus());
+        } finally {
+            if (master != null) {
+                master.close();
+            }
+            gateway.close();
+            server.stop();
+            rtu.stop();
+        }
+    }
+
+    @Test
+    public void testFullDownstreamQueueHoldsUpstreamAcknowledgements() throws Exception {
+        int rtuPort = TestUtils.getAvailablePort();
+        int gatewayPort = TestUtils.getAvailablePort();
+
+        Server rtu = Server.builder().setPort(rtuPort).build();
+        rtu.start(new RtuListener());
+
+        Gateway gateway = new Gateway().setMaxForwardingDelay(5000);
+        // the master does not acknowledge before t2, so the queue stays full
+        Server server = Server.builder()
+                .setPort(gatewayPort)
+                .setMaxNumOfOutstandingIPdus(2)
+                .setMaxOutboundQueueSize(2)
+                .build();
+        Connection master = null;
+        try {
+            gateway.addUpstream(new ClientConnectionBuilder("127.0.0.1").setPort(rtuPort));
+            server.start(gateway);
+
+            master = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(gatewayPort)
+                    .setConnectionEventListener(new MasterListener())
+                    .build();
+            master.startDataTransfer();
+
+            Connection rtuConnection = rtuConnections.poll(5, TimeUnit.SECONDS);
+            assertNotNull(rtuConnection);
+            for (int i = 0; i < 20; i++) {
+                rtuConnection.sendAsync(measuredValue(1, i, i));
+            }
+
+            // the reader does not wait, the RTU is stopped by its send window (k = 12) instead
+            long deadline = System.currentTimeMillis() + 1000;
+            while (gateway.getNumForwardedASdus() < 12 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(gateway.getNumForwardedASdus() >= 12);
+            Thread.sleep(200);
+            assertTrue(gateway.getNumForwardedASdus() < 20);
+            assertEquals(12, rtuConnection.getNumUnconfirmedAPdusSent());
+
+            // the acknowledgements are released after the maximum forwarding delay
+            deadline = System.currentTimeMillis() + 10_000;
+            while (gateway.getNumForwardedASdus() < 20 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(20, gateway.getNumForwardedASdus());
+        } finally {
+            if (master != null) {
+                master.close();
+            }
+            gateway.close();
+            server.stop();
+            rtu.stop();
+        }
+    }
+
+    private static ASdu measuredValue(int commonAddress, int ioa, float value) {
+        return new ASdu(
+                ASduType.M_ME_NC_1,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                0,
+                commonAddress,
+                new InformationObject(ioa, new IeShortFloat(value), new IeQuality(false, false, false, false, false)));
+    }
+
+    private static void assertMeasuredValue(ASdu aSdu, int commonAddress, int ioa, float value) {
+        assertNotNull(aSdu);
+        assertEquals(ASduType.M_ME_NC_1, aSdu.getTypeIdentification());
+        assertEquals(CauseOfTransmission.SPONTANEOUS, aSdu.getCauseOfTransmission());
+        assertEquals(commonAddress, aSdu.getCommonAddress());
+        InformationObject informationObject = aSdu.getInformationObjects()[0];
+        assertEquals(ioa, informationObject.getInformationObjectAddress());
+        assertEquals(value, ((IeShortFloat) informationObject.getInformationElements()[0][0]).getValue(), 0);
+    }
+
+    private class RtuListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            rtuConnections.add(connection);
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {
+                    rtuASdus.add(aSdu);
+                    try {
+                        connection.sendConfirmation(aSdu);
+                    } catch (IOException e) {
+                        // the test fails waiting for the confirmation
+                    }
+                }
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+
+    private class MasterListener implements ConnectionEventListener {
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {
+            masterASdus.add(aSdu);
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {}
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQualifierOfInterrogation;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class ListenerOverflowITest {
+
+    private static final int NUM_ASDUS = 100;
+    private static final int MAX_QUEUE_SIZE = 4;
+
+    private final CountDownLatch firstASduReceived = new CountDownLatch(1);
+    private final CountDownLatch listenerReleased = new CountDownLatch(1);
+    private final CountDownLatch connectionClosed = new CountDownLatch(1);
+    private final AtomicInteger clientASdus = new AtomicInteger();
+
+    @Test
+    public void testDropOldest() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        Server server = startServer(port);
+
+        Connection connection = null;
+        try {
+            connection = connect(port, OverflowPolicy.DROP_OLDEST);
+
+            assertTrue(firstASduReceived.await(5, TimeUnit.SECONDS));
+            // the listener blocks until all ASDUs have been received, so only the newest are queued
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (connection.getNumDroppedASdus() < NUM_ASDUS - 1 - MAX_QUEUE_SIZE
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            listenerReleased.countDown();
+
+            deadline = System.currentTimeMillis() + 5_000;
+            while (clientASdus.get() < 1 + MAX_QUEUE_SIZE && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+
+            assertEquals(NUM_ASDUS - 1 - MAX_QUEUE_SIZE, connection.getNumDroppedASdus());
+            assertEquals(1 + MAX_QUEUE_SIZE, clientASdus.get());
+            assertTrue(!connection.isClosed());
+        } finally {
+            listenerReleased.countDown();
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testCloseConnection() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        Server server = startServer(port);
+
+        Connection connection = null;
+        try {
+            connection = connect(port, OverflowPolicy.CLOSE_CONNECTION);
+
+            // the queue may overflow before the first ASDU has been handed to the listener
+            assertTrue(connectionClosed.await(5, TimeUnit.SECONDS));
+            assertTrue(connection.isClosed());
+            assertTrue(clientASdus.get() <= 1);
+        } finally {
+            listenerReleased.countDown();
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    private Server startServer(int port) throws IOException {
+        Server server = Server.builder().setPort(port).build();
+        server.start(new ServerListener());
+        return server;
+    }
+
+    private Connection connect(int port, OverflowPolicy overflowPolicy) throws IOException {
+        Connection connection = new ClientConnectionBuilder("127.0.0.1")
+                .setPort(port)
+                .setMaxListenerQueueSize(MAX_QUEUE_SIZE)
+                .setListenerOverflowPolicy(overflowPolicy)
+                .setConnectionEventListener(new ClientListener())
+                .build();
+        connection.startDataTransfer();
+        connection.interrogation(1, CauseOfTransmission.ACTIVATION, new IeQualifierOfInterrogation(20));
+        return connection;
+    }
+
+    private class ServerListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {
+                    for (int i = 0; i < NUM_ASDUS; i++) {
+                        connection.sendAsync(new ASdu(
+                                ASduType.M_ME_NC_1,
+                                false,
+                                CauseOfTransmission.SPONTANEOUS,
+                                false,
+                                false,
+                                0,
+                                aSdu.getCommonAddress(),
+                                new InformationObject(
+                                        i, new IeShortFloat(i), new IeQuality(false, false, false, false, false))));
+                    }
+                }
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+
+    private class ClientListener implements ConnectionEventListener {
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {
+            clientASdus.incrementAndGet();
+            firstASduReceived.countDown();
+            try {
+                listenerReleased.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {
+            connectionClosed.countDown();
+        }
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
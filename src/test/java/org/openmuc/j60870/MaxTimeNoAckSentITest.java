@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class MaxTimeNoAckSentITest {
+
+    private final BlockingQueue<Connection> serverConnections = new LinkedBlockingQueue<>();
+    private final CountDownLatch clientASduReceived = new CountDownLatch(1);
+
+    @Test
+    public void testIFrameReceivedWhileSendingIsAcknowledgedByT2() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        Server server = Server.builder().setPort(port).build();
+        server.start(new ServerListener());
+
+        Connection connection = null;
+        try {
+            connection = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(port)
+                    .setMaxTimeNoAckSent(1000)
+                    .setConnectionEventListener(new ClientListener())
+                    .build();
+            connection.startDataTransfer();
+
+            Connection serverConnection = serverConnections.poll(5, TimeUnit.SECONDS);
+            assertNotNull(serverConnection);
+            serverConnection.send(measuredValue());
+            assertTrue(clientASduReceived.await(5, TimeUnit.SECONDS));
+            // the reader schedules t2 after it has passed the ASDU on to the listener
+            Thread.sleep(100);
+
+            // a sender that read the receive sequence number before the I-frame was accepted cancels
+            // t2 once it has written its I-frame, and then stops sending
+            connection.cancelMaxTimeNoAckSentTimer();
+
+            long deadline = System.currentTimeMillis() + 3000;
+            while (serverConnection.getNumUnconfirmedAPdusSent() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, serverConnection.getNumUnconfirmedAPdusSent());
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    private static ASdu measuredValue() {
+        return new ASdu(
+                ASduType.M_ME_NC_1,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                0,
+                1,
+                new InformationObject(1, new IeShortFloat(1), new IeQuality(false, false, false, false, false)));
+    }
+
+    private class ServerListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            serverConnections.add(connection);
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {}
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+
+    private class ClientListener implements ConnectionEventListener {
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {
+            clientASduReceived.countDown();
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {}
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.IeSinglePointWithQuality;
+import org.openmuc.j60870.ie.IeTime56;
+import org.openmuc.j60870.ie.InformationElement;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class MeasurementArraysTest {
+
+    private final ConnectionSettings settings = new ConnectionSettings();
+
+    @Test
+    public void testSequenceOfShortFloats() throws IOException {
+        InformationElement[][] elements = new InformationElement[48][];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = new InformationElement[] {
+                new IeShortFloat(i * 0.5f), new IeQuality(false, false, false, false, i % 2 == 1)
+            };
+        }
+        ASdu aSdu = new ASdu(
+                ASduType.M_ME_NC_1,
+                true,
+                CauseOfTransmission.INTERROGATED_BY_STATION,
+                false,
+                false,
+                0,
+                5,
+                new InformationObject(1000, elements));
+
+        MeasurementArrays arrays = wrap(aSdu).toMeasurementArrays();
+
+        assertEquals(ASduType.M_ME_NC_1, arrays.getTypeIdentification());
+        assertEquals(CauseOfTransmission.INTERROGATED_BY_STATION, arrays.getCauseOfTransmission());
+        assertEquals(5, arrays.getCommonAddress());
+        assertEquals(48, arrays.size());
+        assertEquals(1000, arrays.ioa(0));
+        assertEquals(1047, arrays.ioa(47));
+        assertEquals(23.5f, arrays.getFloatValues()[47], 0f);
+        assertEquals(0x00, arrays.getQualities()[0]);
+        assertEquals((byte) 0x80, arrays.getQualities()[1]);
+        assertNull(arrays.getShortValues());
+        assertNull(arrays.getIntValues());
+        assertNull(arrays.getTimestamps());
+    }
+
+    @Test
+    public void testReuseForSinglePointsWithTimeTag() throws IOException {
+        long timestamp = 1_700_000_123_456L;
+        ASdu aSdu = new ASdu(
+                ASduType.M_SP_TB_1,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                0,
+                1,
+                new InformationObject(
+                        7, new IeSinglePointWithQuality(true, false, false, false, false), new IeTime56(timestamp)),
+                new InformationObject(
+                        3,
+                        new IeSinglePointWithQuality(false, true, false, false, false),
+                        new IeTime56(timestamp + 1)));
+
+        MeasurementArrays arrays = new MeasurementArrays();
+        arrays.set(wrap(aSdu));
+        int[] intValues = arrays.getIntValues();
+        arrays.set(wrap(aSdu));
+
+        assertSame(intValues, arrays.getIntValues());
+        assertEquals(2, arrays.size());
+        assertEquals(7, arrays.ioa(0));
+        assertEquals(3, arrays.ioa(1));
+        assertArrayEquals(new int[] {1, 0}, Arrays.copyOf(arrays.getIntValues(), 2));
+        assertEquals(0x10, arrays.getQualities()[1]);
+        assertEquals(timestamp, arrays.getTimestamps()[0]);
+        assertEquals(timestamp + 1, arrays.getTimestamps()[1]);
+        assertNull(arrays.getFloatValues());
+    }
+
+    private ASduView wrap(ASdu aSdu) throws IOException {
+        byte[] bytes = new byte[255];
+        int length = aSdu.encode(bytes, 0, settings);
+        return new ASduView(settings).wrap(ByteBuffer.wrap(bytes), 0, length);
+    }
+}
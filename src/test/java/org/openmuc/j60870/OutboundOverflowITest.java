@@ -0,0 +1,341 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class OutboundOverflowITest {
+
+    private static final int MAX_QUEUE_SIZE = 4;
+
+    private final BlockingQueue<Connection> serverConnections = new LinkedBlockingQueue<>();
+    private final BlockingQueue<ASdu> clientASdus = new LinkedBlockingQueue<>();
+    private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+    private int port;
+
+    @Test
+    public void testCoalesceWhileStopped() throws Exception {
+        Server server = startServer(OutboundOverflowPolicy.COALESCE);
+        Connection clientConnection = null;
+        try {
+            clientConnection = connect();
+            Connection connection = serverConnections.poll(5, TimeUnit.SECONDS);
+            assertNotNull(connection);
+            assertTrue(connection.isStopped());
+
+            send(connection, 1, 1);
+            send(connection, 2, 10);
+            send(connection, 1, 2);
+            send(connection, 1, 3);
+            send(connection, 2, 20);
+
+            assertEquals(2, connection.getNumQueuedASdus());
+            assertEquals(3, connection.getNumCoalescedASdus());
+            assertEquals(0, connection.getNumDroppedOutboundASdus());
+
+            clientConnection.startDataTransfer();
+
+            assertValue(clientASdus.poll(5, TimeUnit.SECONDS), 1, 3);
+            assertValue(clientASdus.poll(5, TimeUnit.SECONDS), 2, 20);
+            for (CompletableFuture<Void> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            assertEquals(0, connection.getNumQueuedASdus());
+            assertEquals(2, connection.getPeakNumQueuedASdus());
+        } finally {
+            close(clientConnection, server);
+        }
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        Server server = startServer(OutboundOverflowPolicy.DROP_OLDEST);
+        Connection clientConnection = null;
+        try {
+            clientConnection = connect();
+            Connection connection = serverConnections.poll(5, TimeUnit.SECONDS);
+            assertNotNull(connection);
+
+            for (int i = 0; i < MAX_QUEUE_SIZE + 2; i++) {
+                send(connection, i, i);
+            }
+            assertFalse(connection.isWritable());
+            assertEquals(MAX_QUEUE_SIZE, connection.getNumQueuedASdus());
+            assertEquals(2, connection.getNumDroppedOutboundASdus());
+            assertRejected(futures.get(0));
+            assertRejected(futures.get(1));
+
+            clientConnection.startDataTransfer();
+
+            for (int i = 2; i < MAX_QUEUE_SIZE + 2; i++) {
+                assertValue(clientASdus.poll(5, TimeUnit.SECONDS), i, i);
+                futures.get(i).get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            close(clientConnection, server);
+        }
+    }
+
+    @Test
+    public void testReject() throws Exception {
+        Server server = startServer(OutboundOverflowPolicy.REJECT);
+        Connection clientConnection = null;
+        try {
+            clientConnection = connect();
+            Connection connection = serverConnections.poll(5, TimeUnit.SECONDS);
+            assertNotNull(connection);
+
+            for (int i = 0; i < MAX_QUEUE_SIZE + 2; i++) {
+                send(connection, i, i);
+            }
+            assertEquals(MAX_QUEUE_SIZE, connection.getNumQueuedASdus());
+            assertEquals(2, connection.getNumDroppedOutboundASdus());
+            assertRejected(futures.get(MAX_QUEUE_SIZE));
+            assertRejected(futures.get(MAX_QUEUE_SIZE + 1));
+
+            clientConnection.startDataTransfer();
+
+            for (int i = 0; i < MAX_QUEUE_SIZE; i++) {
+                assertValue(clientASdus.poll(5, TimeUnit.SECONDS), i, i);
+                futures.get(i).get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            close(clientConnection, server);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testBlockingSendWhileStopped() throws Exception {
+        Server server = startServer(OutboundOverflowPolicy.REJECT);
+        Connection clientConnection = null;
+        try {
+            clientConnection = connect();
+            Connection connection = serverConnections.poll(5, TimeUnit.SECONDS);
+            assertNotNull(connection);
+            assertTrue(connection.isStopped());
+
+            send(connection, 1, 1);
+            send(connection, 2, 2);
+            assertEquals(2, connection.getNumQueuedASdus());
+
+            // only sendAsync queues while stopped, a blocking send fails instead of waiting for the start
+            try {
+                connection.send(measurement(3, 3));
+                throw new AssertionError("send did not fail while stopped");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            assertEquals(2, connection.getNumQueuedASdus());
+
+            clientConnection.startDataTransfer();
+            connection.send(measurement(3, 3));
+
+            assertValue(clientASdus.poll(5, TimeUnit.SECONDS), 1, 1);
+            assertValue(clientASdus.poll(5, TimeUnit.SECONDS), 2, 2);
+            assertValue(clientASdus.poll(5, TimeUnit.SECONDS), 3, 3);
+        } finally {
+            close(clientConnection, server);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testBlockedSendIsKeptAndFailsOnStop() throws Exception {
+        port = TestUtils.getAvailablePort();
+        Server server = Server.builder()
+                .setPort(port)
+                .setMaxNumOfOutstandingIPdus(1)
+                .setMaxOutboundQueueSize(MAX_QUEUE_SIZE)
+                .setOutboundOverflowPolicy(OutboundOverflowPolicy.DROP_OLDEST)
+                .setQueueWhileStopped(true)
+                .build();
+        server.start(new ServerListener());
+        // a raw peer that starts the data transfer but never confirms an I-frame, so the send window stays full
+        Socket peer = new Socket("127.0.0.1", port);
+        try {
+            final Connection connection = serverConnections.poll(5, TimeUnit.SECONDS);
+            assertNotNull(connection);
+            peer.getOutputStream().write(new byte[] {0x68, 0x04, 0x07, 0x00, 0x00, 0x00});
+            while (connection.isStopped()) {
+                Thread.sleep(10);
+            }
+            send(connection, 0, 0);
+
+            BlockingQueue<Exception> sendFailures = new LinkedBlockingQueue<>();
+            Thread sender = startBlockingSend(connection, 9, sendFailures);
+            while (connection.getNumQueuedASdus() < 1) {
+                Thread.sleep(10);
+            }
+            for (int i = 1; i < MAX_QUEUE_SIZE; i++) {
+                send(connection, i, i);
+            }
+
+            // the overflow policy discards the oldest ASDUs queued by sendAsync, but not the older blocked send
+            send(connection, MAX_QUEUE_SIZE, MAX_QUEUE_SIZE);
+            send(connection, MAX_QUEUE_SIZE + 1, MAX_QUEUE_SIZE + 1);
+            assertEquals(MAX_QUEUE_SIZE, connection.getNumQueuedASdus());
+            assertEquals(2, connection.getNumDroppedOutboundASdus());
+            assertRejected(futures.get(1));
+            assertRejected(futures.get(2));
+            assertTrue(sender.isAlive());
+
+            // the blocked send is woken up and fails once the data transfer is stopped
+            peer.getOutputStream().write(new byte[] {0x68, 0x04, 0x13, 0x00, 0x00, 0x00});
+            assertTrue(sendFailures.poll(5, TimeUnit.SECONDS) instanceof IllegalArgumentException);
+            assertEquals(MAX_QUEUE_SIZE - 1, connection.getNumQueuedASdus());
+        } finally {
+            peer.close();
+            server.stop();
+        }
+    }
+
+    private static Thread startBlockingSend(
+            final Connection connection, final int ioa, final BlockingQueue<Exception> failures) {
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    connection.send(measurement(ioa, ioa));
+                } catch (IOException | IllegalArgumentException e) {
+                    failures.add(e);
+                }
+            }
+        });
+        sender.start();
+        return sender;
+    }
+
+    private Server startServer(OutboundOverflowPolicy overflowPolicy) throws IOException {
+        port = TestUtils.getAvailablePort();
+        Server server = Server.builder()
+                .setPort(port)
+                .setMaxOutboundQueueSize(MAX_QUEUE_SIZE)
+                .setOutboundOverflowPolicy(overflowPolicy)
+                .setQueueWhileStopped(true)
+                .build();
+        server.start(new ServerListener());
+        return server;
+    }
+
+    private Connection connect() throws IOException {
+        return new ClientConnectionBuilder("127.0.0.1")
+                .setPort(port)
+                .setMaxUnconfirmedIPdusReceived(1)
+                .setConnectionEventListener(new ClientListener())
+                .build();
+    }
+
+    private void send(Connection connection, int ioa, float value) {
+        futures.add(connection.sendAsync(measurement(ioa, value)));
+    }
+
+    private static ASdu measurement(int ioa, float value) {
+        return new ASdu(
+                ASduType.M_ME_NC_1,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                0,
+                1,
+                new InformationObject(ioa, new IeShortFloat(value), new IeQuality(false, false, false, false, false)));
+    }
+
+    private static void assertValue(ASdu aSdu, int ioa, float value) {
+        assertNotNull(aSdu);
+        InformationObject informationObject = aSdu.getInformationObjects()[0];
+        assertEquals(ioa, informationObject.getInformationObjectAddress());
+        assertEquals(value, ((IeShortFloat) informationObject.getInformationElements()[0][0]).getValue(), 0);
+    }
+
+    private static void assertRejected(CompletableFuture<Void> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            return;
+        }
+        throw new AssertionError("future completed normally");
+    }
+
+    private static void close(Connection clientConnection, Server server) {
+        if (clientConnection != null) {
+            clientConnection.close();
+        }
+        server.stop();
+    }
+
+    private class ServerListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            serverConnections.add(connection);
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {}
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+
+    private class ClientListener implements ConnectionEventListener {
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {
+            clientASdus.add(aSdu);
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {}
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class PcapngCaptureITest {
+
+    private static final int NUM_ASDUS = 20;
+    private static final byte[] STARTDT_ACT = new byte[] {0x68, 0x04, 0x07, 0x00, 0x00, 0x00};
+
+    @Test
+    public void testCaptureClientAndServer() throws Exception {
+        File file = File.createTempFile("j60870", ".pcapng");
+        file.deleteOnExit();
+
+        PcapngCapture capture = PcapngCapture.open(file);
+        int port = exchange(capture);
+        // the endpoints of the closed connections are released
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (capture.getNumConnections() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, capture.getNumConnections());
+        capture.close();
+        assertEquals(0, capture.getNumDroppedRecords());
+
+        List<byte[]> packets = readPackets(file);
+        assertEquals(capture.getNumRecords(), packets.size());
+
+        // STARTDT act is captured as sent by the client and as received by the server
+        int numStartDtAct = 0;
+        for (byte[] packet : packets) {
+            ByteBuffer buffer = ByteBuffer.wrap(packet);
+            assertEquals(0x0800, buffer.getShort(12) & 0xffff);
+            assertEquals(0x45, buffer.get(14));
+            assertEquals(6, buffer.get(23));
+            assertEquals(0, checksum(packet, 14, 20));
+            int tcpLength = (buffer.getShort(16) & 0xffff) - 20;
+            assertEquals(packet.length - 34, tcpLength);
+
+            byte[] payload = new byte[tcpLength - 20];
+            System.arraycopy(packet, 54, payload, 0, payload.length);
+            assertEquals(0x68, payload[0]);
+            assertEquals(payload.length - 2, payload[1] & 0xff);
+            if (Arrays.equals(STARTDT_ACT, payload)) {
+                assertEquals(port, buffer.getShort(36) & 0xffff);
+                numStartDtAct++;
+            }
+        }
+        assertEquals(2, numStartDtAct);
+    }
+
+    @Test
+    public void testRotation() throws Exception {
+        File directory = Files.createTempDirectory("j60870").toFile();
+        File file = new File(directory, "iec104.pcapng");
+
+        PcapngCapture capture = PcapngCapture.open(file, 4096, 1024, 2);
+        exchange(capture);
+        capture.close();
+
+        File[] files = directory.listFiles();
+        assertNotNull(files);
+        assertEquals(2, files.length);
+        assertFalse(file.exists());
+        // only the two newest files are kept
+        int lastIndex = 0;
+        for (File rotatedFile : files) {
+            String name = rotatedFile.getName();
+            lastIndex = Math.max(lastIndex, Integer.parseInt(name.substring(7, name.indexOf('.'))));
+        }
+        assertTrue(lastIndex >= 2);
+        assertTrue(PcapngCapture.rotatedFile(file, lastIndex - 1).exists());
+        assertEquals(
+                "iec104-" + lastIndex + ".pcapng",
+                PcapngCapture.rotatedFile(file, lastIndex).getName());
+
+        for (File rotatedFile : files) {
+            assertTrue(rotatedFile.length() <= 1024 + 512);
+            readPackets(rotatedFile);
+            rotatedFile.delete();
+        }
+        directory.delete();
+    }
+
+    private static int exchange(PcapngCapture capture) throws Exception {
+        int port = TestUtils.getAvailablePort();
+        Server server = Server.builder().setPort(port).setPcapngCapture(capture).build();
+        server.start(new ServerListener());
+        BlockingQueue<ASdu> received = new LinkedBlockingQueue<>();
+        Connection client = new ClientConnectionBuilder("127.0.0.1")
+                .setPort(port)
+                .setMaxUnconfirmedIPdusReceived(1)
+                .setPcapngCapture(capture)
+                .setConnectionEventListener(new ClientListener(received))
+                .build();
+        try {
+            client.startDataTransfer();
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (server.getConnections().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            for (int i = 0; i < NUM_ASDUS; i++) {
+                server.broadcast(new ASdu(
+                        ASduType.M_ME_NC_1,
+                        false,
+                        CauseOfTransmission.SPONTANEOUS,
+                        false,
+                        false,
+                        0,
+                        1,
+                        new InformationObject(
+                                100 + i, new IeShortFloat(i), new IeQuality(false, false, false, false, false))));
+            }
+            for (int i = 0; i < NUM_ASDUS; i++) {
+                assertNotNull(received.poll(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            client.close();
+            server.stop();
+        }
+        return port;
+    }
+
+    private static List<byte[]> readPackets(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+
+        assertEquals(0x0a0d0d0a, buffer.getInt(0));
+        assertEquals(0x1a2b3c4d, buffer.getInt(8));
+        int position = buffer.getInt(4);
+        assertEquals(1, buffer.getInt(position));
+        assertEquals(1, buffer.getShort(position + 8));
+        position += buffer.getInt(position + 4);
+
+        List<byte[]> packets = new ArrayList<>();
+        while (position < buffer.limit()) {
+            int blockLength = buffer.getInt(position + 4);
+            assertEquals(6, buffer.getInt(position));
+            assertEquals(blockLength, buffer.getInt(position + blockLength - 4));
+            byte[] packet = new byte[buffer.getInt(position + 20)];
+            System.arraycopy(buffer.array(), position + 28, packet, 0, packet.length);
+            packets.add(packet);
+            position += blockLength;
+        }
+        assertEquals(buffer.limit(), position);
+        return packets;
+    }
+
+    private static int checksum(byte[] packet, int offset, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i += 2) {
+            sum += ((packet[offset + i] & 0xff) << 8) | (packet[offset + i + 1] & 0xff);
+        }
+        while ((sum >> 16) != 0) {
+            sum = (sum & 0xffff) + (sum >> 16);
+        }
+        return ~sum & 0xffff;
+    }
+
+    private static class ServerListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {}
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+
+    private static class ClientListener implements ConnectionEventListener {
+
+        private final BlockingQueue<ASdu> aSdus;
+
+        ClientListener(BlockingQueue<ASdu> aSdus) {
+            this.aSdus = aSdus;
+        }
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {
+            aSdus.add(aSdu);
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {}
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQualifierOfInterrogation;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.IeSinglePointWithQuality;
+import org.openmuc.j60870.ie.InformationElement;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class ProcessImageITest {
+
+    private static final int NUM_MEASUREMENTS = 300;
+    private static final int NUM_SINGLE_POINTS = 5;
+
+    private final BlockingQueue<ASdu> clientASdus = new LinkedBlockingQueue<>();
+
+    @Test
+    public void testStore() {
+        ProcessImage processImage = new ProcessImage();
+        for (int i = 0; i < 100_000; i++) {
+            processImage.addDataPoint(i % 4, i, ASduType.M_ME_NB_1);
+        }
+        processImage.addDataPoint(5, 0xffffff, ASduType.M_ME_NC_1);
+
+        processImage.update(3, 99_999, -1234, 0x20, 42);
+        processImage.update(5, 0xffffff, 1.25f, 0);
+
+        assertEquals(100_001, processImage.size());
+        assertTrue(processImage.contains(0, 0));
+        assertFalse(processImage.contains(1, 0));
+        assertEquals(ASduType.M_ME_NB_1, processImage.getType(3, 99_999));
+        assertEquals(-1234, processImage.getIntValue(3, 99_999));
+        assertEquals(0x20, processImage.getQuality(3, 99_999));
+        assertEquals(42, processImage.getTimestamp(3, 99_999));
+        assertEquals(0x80, processImage.getQuality(2, 2));
+        assertEquals(1.25f, processImage.getFloatValue(5, 0xffffff), 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUpdateWithWrongValueType() {
+        ProcessImage processImage = new ProcessImage();
+        processImage.addDataPoint(1, 1, ASduType.M_SP_NA_1);
+        processImage.update(1, 1, 1.0f, 0);
+    }
+
+    @Test
+    public void testInterrogationAndSpontaneousReports() throws Exception {
+        ProcessImage processImage = new ProcessImage();
+        for (int i = 0; i < NUM_MEASUREMENTS; i++) {
+            processImage.addDataPoint(1, 1000 + i, ASduType.M_ME_NC_1);
+            processImage.update(1, 1000 + i, (float) i, 0);
+        }
+        for (int i = 0; i < NUM_SINGLE_POINTS; i++) {
+            processImage.addDataPoint(1, i, ASduType.M_SP_NA_1);
+        }
+        processImage.addDataPoint(2, 1, ASduType.M_SP_NA_1);
+
+        int port = TestUtils.getAvailablePort();
+        Server server =
+                Server.builder().setPort(port).setProcessImage(processImage).build();
+        server.start(new ServerListener());
+
+        Connection connection = null;
+        try {
+            connection = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(port)
+                    .setConnectionEventListener(new ClientListener())
+                    .build();
+            connection.startDataTransfer();
+            connection.interrogation(1, CauseOfTransmission.ACTIVATION, new IeQualifierOfInterrogation(20));
+
+            ASdu confirmation = next();
+            assertEquals(CauseOfTransmission.ACTIVATION_CON, confirmation.getCauseOfTransmission());
+            assertFalse(confirmation.isNegativeConfirm());
+
+            int numMeasurements = 0;
+            int numSinglePoints = 0;
+            ASdu aSdu;
+            while ((aSdu = next()).getCauseOfTransmission() == CauseOfTransmission.INTERROGATED_BY_STATION) {
+                assertEquals(1, aSdu.getCommonAddress());
+                // the contiguous addresses are packed into sequences of elements
+                assertTrue(aSdu.isSequenceOfElements());
+                InformationObject informationObject = aSdu.getInformationObjects()[0];
+                InformationElement[][] elementSets = informationObject.getInformationElements();
+                for (int i = 0; i < elementSets.length; i++) {
+                    if (aSdu.getTypeIdentification() == ASduType.M_ME_NC_1) {
+                        IeShortFloat value = (IeShortFloat) elementSets[i][0];
+                        assertEquals(informationObject.getInformationObjectAddress() + i - 1000, value.getValue(), 0f);
+                        numMeasurements++;
+                    } else {
+                        numSinglePoints++;
+                    }
+                }
+            }
+            assertEquals(NUM_MEASUREMENTS, numMeasurements);
+            assertEquals(NUM_SINGLE_POINTS, numSinglePoints);
+            assertEquals(CauseOfTransmission.ACTIVATION_TERMINATION, aSdu.getCauseOfTransmission());
+
+            processImage.update(1, 3, 1, 0);
+            aSdu = next();
+            assertEquals(ASduType.M_SP_TB_1, aSdu.getTypeIdentification());
+            assertEquals(CauseOfTransmission.SPONTANEOUS, aSdu.getCauseOfTransmission());
+            assertEquals(3, aSdu.getInformationObjects()[0].getInformationObjectAddress());
+            assertTrue(
+                    ((IeSinglePointWithQuality) aSdu.getInformationObjects()[0].getInformationElements()[0][0]).isOn());
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testInterrogationDuringSpontaneousReports() throws Exception {
+        final ProcessImage processImage = new ProcessImage();
+        // the addresses are not contiguous, so that the interrogation is answered with many ASDUs
+        for (int i = 0; i < NUM_MEASUREMENTS * 10; i++) {
+            processImage.addDataPoint(1, 2 * i, ASduType.M_ME_NC_1);
+        }
+
+        int port = TestUtils.getAvailablePort();
+        Server server =
+                Server.builder().setPort(port).setProcessImage(processImage).build();
+        server.start(new ServerListener());
+
+        Thread updater = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int value = 0; value < 500; value++) {
+                        processImage.update(1, 2 * value, (float) value, 0);
+                        if (value % 10 == 0) {
+                            Thread.sleep(1);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        Connection connection = null;
+        try {
+            connection = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(port)
+                    .setConnectionEventListener(new ClientListener())
+                    .build();
+            connection.startDataTransfer();
+            // the spontaneous ASDUs wait in the outbound queue while the interrogation is answered
+            for (int i = 0; i < 200; i++) {
+                processImage.update(1, 2 * i, (float) -i, 0);
+            }
+            updater.start();
+            connection.interrogation(1, CauseOfTransmission.ACTIVATION, new IeQualifierOfInterrogation(20));
+
+            int numInterrogated = 0;
+            ASdu aSdu;
+            while ((aSdu = next()).getCauseOfTransmission() != CauseOfTransmission.ACTIVATION_TERMINATION) {
+                if (aSdu.getCauseOfTransmission() == CauseOfTransmission.INTERROGATED_BY_STATION) {
+                    numInterrogated += aSdu.getInformationObjects().length;
+                }
+            }
+            assertEquals(NUM_MEASUREMENTS * 10, numInterrogated);
+        } finally {
+            updater.join();
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    private ASdu next() throws InterruptedException {
+        ASdu aSdu = clientASdus.poll(5, TimeUnit.SECONDS);
+        if (aSdu == null) {
+            throw new AssertionError("no ASDU received");
+        }
+        return aSdu;
+    }
+
+    private static class ServerListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {}
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+
+    private class ClientListener implements ConnectionEventListener {
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {
+            clientASdus.add(aSdu);
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {}
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.openmuc.j60870.ConnectionManager.Link;
+import org.openmuc.j60870.ConnectionManager.LinkGroup;
+import org.openmuc.j60870.ConnectionManager.LinkState;
+import org.openmuc.j60870.ie.IeNormalizedValue;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeScaledValue;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class RedundancyGroupITest {
+
+    private static final int COMMON_ADDRESS = 1;
+    private static final int IOA = 100;
+
+    private final BlockingQueue<Received> received = new LinkedBlockingQueue<>();
+
+    @Test
+    public void testSwitchoverReplaysUnconfirmedEvents() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        ProcessImage processImage = new ProcessImage();
+        processImage.addDataPoint(COMMON_ADDRESS, IOA, ASduType.M_ME_NB_1);
+        RedundancyGroup redundancyGroup = new RedundancyGroup("front-ends", null);
+        Server server = Server.builder()
+                .setPort(port)
+                .setProcessImage(processImage)
+                .addRedundancyGroup(redundancyGroup)
+                .build();
+        server.start(new ServerListener());
+
+        ConnectionManager manager = new ConnectionManager().setReconnectDelay(20, 100);
+        try {
+            // both links come from the same client address, so they are in the same server group
+            LinkGroup group = manager.addRedundancyGroup(clientBuilder(port), clientBuilder(port));
+            Link first = awaitActive(group);
+            Link second = group.getLinks().get(0) == first
+                    ? group.getLinks().get(1)
+                    : group.getLinks().get(0);
+            awaitState(second, LinkState.STANDBY);
+            assertNotNull(redundancyGroup.getActiveConnection());
+
+            // the client confirms after w = 8 I-frames only, so these stay unconfirmed
+            for (int value = 1; value <= 3; value++) {
+                processImage.update(COMMON_ADDRESS, IOA, value, 0);
+            }
+            Connection firstConnection = first.getConnection();
+            assertEquals(3, receive(firstConnection, 3).size());
+
+            manager.removeLink(first);
+            awaitState(second, LinkState.CONNECTED);
+            processImage.update(COMMON_ADDRESS, IOA, 4, 0);
+
+            Set<Integer> values = receive(second.getConnection(), 4);
+            for (int value = 1; value <= 4; value++) {
+                assertTrue("missing value " + value, values.contains(value));
+            }
+            assertNotSame(firstConnection, second.getConnection());
+        } finally {
+            manager.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testStartOfAnotherConnectionClosesThePreviousOne() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        RedundancyGroup redundancyGroup = new RedundancyGroup("front-ends", null);
+        Server server = Server.builder()
+                .setPort(port)
+                .addRedundancyGroup(redundancyGroup)
+                .build();
+        ServerListener serverListener = new ServerListener();
+        server.start(serverListener);
+
+        Connection first = null;
+        Connection second = null;
+        try {
+            first = clientBuilder(port).build();
+            first.startDataTransfer();
+            second = clientBuilder(port).build();
+            // the previous link is not stopped by its controlling station before
+            second.startDataTransfer();
+
+            IOException cause = serverListener.closeCauses.poll(5, TimeUnit.SECONDS);
+            assertNotNull(cause);
+            assertEquals("Another connection of the redundancy group has been started.", cause.getMessage());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!first.isClosed() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(first.isClosed());
+
+            Connection active = redundancyGroup.getActiveConnection();
+            assertNotNull(active);
+            assertTrue(!active.isClosed() && !active.isStopped());
+            redundancyGroup.sendAsync(value(5));
+            assertEquals(1, receive(second, 1).size());
+        } finally {
+            if (first != null) {
+                first.close();
+            }
+            if (second != null) {
+                second.close();
+            }
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testBufferedASdusAreCoalescedWhenAConnectionIsStarted() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        RedundancyGroup redundancyGroup = new RedundancyGroup("front-ends", null);
+        Server server = Server.builder()
+                .setPort(port)
+                .setOutboundOverflowPolicy(OutboundOverflowPolicy.COALESCE)
+                .addRedundancyGroup(redundancyGroup)
+                .build();
+        server.start(new ServerListener());
+
+        Connection connection = null;
+        try {
+            // buffered by the group, as no connection is active
+            for (int value = 1; value <= 5; value++) {
+                redundancyGroup.sendAsync(value(value));
+            }
+            connection = clientBuilder(port).build();
+            connection.startDataTransfer();
+
+            // the buffered values of the data point are replaced by the latest one
+            Received next = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(next);
+            assertEquals(5, next.value);
+            assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    private static ASdu value(int value) {
+        return new ASdu(
+                ASduType.M_ME_NB_1,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                0,
+                COMMON_ADDRESS,
+                new InformationObject(IOA, new IeScaledValue(value), new IeQuality(false, false, false, false, false)));
+    }
+
+    private ClientConnectionBuilder clientBuilder(int port) throws IOException {
+        return new ClientConnectionBuilder("127.0.0.1").setPort(port).setConnectionEventListener(new ClientListener());
+    }
+
+    private Set<Integer> receive(Connection connection, int numValues) throws InterruptedException {
+        Set<Integer> values = new HashSet<>();
+        while (values.size() < numValues) {
+            Received next = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull("values received: " + values, next);
+            if (next.connection == connection) {
+                values.add(next.value);
+            }
+        }
+        return values;
+    }
+
+    private static Link awaitActive(LinkGroup group) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            Link active = group.getActiveLink();
+            if (active != null && active.getState() == LinkState.CONNECTED) {
+                return active;
+            }
+            assertTrue("no link became active", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitState(Link link, LinkState state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (link.getState() != state) {
+            assertTrue("link is " + link.getState(), System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static class Received {
+        private final Connection connection;
+        private final int value;
+
+        Received(Connection connection, int value) {
+            this.connection = connection;
+            this.value = value;
+        }
+    }
+
+    private class ClientListener implements ConnectionEventListener {
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {
+            if (aSdu.getCauseOfTransmission() == CauseOfTransmission.SPONTANEOUS) {
+                IeNormalizedValue value =
+                        (IeNormalizedValue) aSdu.getInformationObjects()[0].getInformationElements()[0][0];
+                received.add(new Received(connection, value.getUnnormalizedValue()));
+            }
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {}
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+
+    private static class ServerListener implements ServerEventListener {
+
+        private final BlockingQueue<IOException> closeCauses = new LinkedBlockingQueue<>();
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {}
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {
+                    closeCauses.add(cause);
+                }
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+}
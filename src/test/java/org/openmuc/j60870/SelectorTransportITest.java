@@ -0,0 +1,263 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSocketFactory;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQualifierOfInterrogation;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class SelectorTransportITest {
+
+    private static final int NUM_CLIENTS = 20;
+    private static final int NUM_ASDUS = 50;
+
+    private final AtomicInteger serverASdus = new AtomicInteger();
+    private final AtomicInteger clientASdus = new AtomicInteger();
+    private final CountDownLatch clientsClosed = new CountDownLatch(NUM_CLIENTS);
+
+    @Test
+    public void testManyConnectionsOnFewEventLoops() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        Server server = Server.builder().setPort(port).useSelectorTransport(2).build();
+        server.start(new ServerListener());
+
+        Connection[] connections = new Connection[NUM_CLIENTS];
+        try {
+            for (int i = 0; i < NUM_CLIENTS; i++) {
+                connections[i] = new ClientConnectionBuilder("127.0.0.1")
+                        .setPort(port)
+                        .useSelectorTransport(2)
+                        .setConnectionEventListener(new ClientListener())
+                        .build();
+                connections[i].startDataTransfer();
+            }
+
+            for (Connection connection : connections) {
+                connection.interrogation(1, CauseOfTransmission.ACTIVATION, new IeQualifierOfInterrogation(20));
+            }
+
+            awaitCount(serverASdus, NUM_CLIENTS);
+            awaitCount(clientASdus, NUM_CLIENTS * NUM_ASDUS);
+        } finally {
+            for (Connection connection : connections) {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+            server.stop();
+        }
+
+        assertTrue(clientsClosed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBlockedListenerDoesNotStallEventLoop() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        // the server uses its own threads, so that the event loops only serve the client connections
+        Server server = Server.builder().setPort(port).build();
+        server.start(new ServerListener());
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger blockedASdus = new AtomicInteger();
+        Connection blocked = null;
+        Connection[] others = new Connection[2];
+        try {
+            // the listener queue of this connection fills up while its listener waits
+            blocked = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(port)
+                    .useSelectorTransport(2)
+                    .setMaxListenerQueueSize(4)
+                    .setListenerOverflowPolicy(OverflowPolicy.BLOCK)
+                    .setConnectionEventListener(new ClientListener() {
+
+                        @Override
+                        public void newASdu(Connection connection, ASdu aSdu) {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            blockedASdus.incrementAndGet();
+                        }
+                    })
+                    .build();
+            blocked.startDataTransfer();
+            blocked.interrogation(1, CauseOfTransmission.ACTIVATION, new IeQualifierOfInterrogation(20));
+
+            // the event loops are assigned in turn, so one of these shares the event loop
+            for (int i = 0; i < others.length; i++) {
+                others[i] = new ClientConnectionBuilder("127.0.0.1")
+                        .setPort(port)
+                        .useSelectorTransport(2)
+                        .setConnectionEventListener(new ClientListener())
+                        .build();
+                others[i].startDataTransfer();
+                others[i].interrogation(1, CauseOfTransmission.ACTIVATION, new IeQualifierOfInterrogation(20));
+            }
+            awaitCount(clientASdus, others.length * NUM_ASDUS);
+            assertEquals(0, blockedASdus.get());
+
+            release.countDown();
+            awaitCount(blockedASdus, NUM_ASDUS);
+        } finally {
+            release.countDown();
+            if (blocked != null) {
+                blocked.close();
+            }
+            for (Connection connection : others) {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testDifferentNumberOfThreadsIsRejected() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        Server server = Server.builder().setPort(port).useSelectorTransport(2).build();
+        server.start(new ServerListener());
+
+        Connection connection = null;
+        try {
+            connection = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(port)
+                    .useSelectorTransport(2)
+                    .setConnectionEventListener(new ClientListener())
+                    .build();
+            try {
+                new ClientConnectionBuilder("127.0.0.1")
+                        .setPort(port)
+                        .useSelectorTransport(3)
+                        .setConnectionEventListener(new ClientListener())
+                        .build();
+                throw new AssertionError("client connection with a different number of threads built");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testSslIsRejected() throws Exception {
+        try {
+            Server.builder()
+                    .setSocketFactory(SSLServerSocketFactory.getDefault())
+                    .useSelectorTransport(1)
+                    .build();
+            throw new AssertionError("server with SSL built");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new ClientConnectionBuilder("127.0.0.1")
+                    .setSocketFactory(SSLSocketFactory.getDefault())
+                    .useSelectorTransport(1)
+                    .build();
+            throw new AssertionError("client connection with SSL built");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static void awaitCount(AtomicInteger counter, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (counter.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, counter.get());
+    }
+
+    private class ServerListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {
+                    serverASdus.incrementAndGet();
+                    try {
+                        for (int i = 0; i < NUM_ASDUS; i++) {
+                            connection.send(new ASdu(
+                                    ASduType.M_ME_NC_1,
+                                    false,
+                                    CauseOfTransmission.INTERROGATED_BY_STATION,
+                                    false,
+                                    false,
+                                    0,
+                                    aSdu.getCommonAddress(),
+                                    new InformationObject(
+                                            i, new IeShortFloat(i), new IeQuality(false, false, false, false, false))));
+                        }
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+
+    private class ClientListener implements ConnectionEventListener {
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {
+            clientASdus.incrementAndGet();
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {
+            clientsClosed.countDown();
+        }
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQualifierOfInterrogation;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class SendAsyncITest {
+
+    private static final int NUM_ASDUS = 100;
+    private static final int K = 12;
+    private static final int MAX_QUEUE_SIZE = 5;
+
+    private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+    private final AtomicInteger clientASdus = new AtomicInteger();
+
+    @Test
+    public void testConfirmationAndBackpressure() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        Server server = Server.builder()
+                .setPort(port)
+                .setMaxNumOfOutstandingIPdus(K)
+                .setMaxOutboundQueueSize(MAX_QUEUE_SIZE)
+                .build();
+        server.start(new ServerListener());
+
+        Connection connection = null;
+        try {
+            // the client confirms the received I-frames only after t2
+            connection = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(port)
+                    .setMaxUnconfirmedIPdusReceived(NUM_ASDUS)
+                    .setMaxTimeNoAckSent(1000)
+                    .setConnectionEventListener(new ClientListener())
+                    .build();
+            connection.startDataTransfer();
+            connection.interrogation(1, CauseOfTransmission.ACTIVATION, new IeQualifierOfInterrogation(20));
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (futures.size() < NUM_ASDUS && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            int confirmed = 0;
+            int rejected = 0;
+            synchronized (futures) {
+                assertEquals(NUM_ASDUS, futures.size());
+                for (CompletableFuture<Void> future : futures) {
+                    try {
+                        future.get(5, TimeUnit.SECONDS);
+                        confirmed++;
+                    } catch (ExecutionException e) {
+                        assertTrue(e.getCause() instanceof RejectedExecutionException);
+                        rejected++;
+                    }
+                }
+            }
+
+            assertEquals(K + MAX_QUEUE_SIZE, confirmed);
+            assertEquals(NUM_ASDUS - K - MAX_QUEUE_SIZE, rejected);
+            assertEquals(K + MAX_QUEUE_SIZE, clientASdus.get());
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testConfirmationWhileListenerIsBusy() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        // the server confirms every received I-frame at once
+        Server server =
+                Server.builder().setPort(port).setMaxUnconfirmedIPdusReceived(1).build();
+        server.start(new ServerEventListener() {
+
+            @Override
+            public ConnectionEventListener connectionIndication(Connection connection) {
+                return new ConnectionEventListener() {
+
+                    @Override
+                    public void newASdu(Connection connection, ASdu aSdu) {
+                        if (aSdu.getTypeIdentification() == ASduType.C_IC_NA_1) {
+                            connection.sendAsync(measurement(aSdu.getCommonAddress(), 0));
+                        }
+                    }
+
+                    @Override
+                    public void connectionClosed(Connection connection, IOException cause) {}
+
+                    @Override
+                    public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+                };
+            }
+
+            @Override
+            public void serverStoppedListeningIndication(IOException e) {}
+
+            @Override
+            public void connectionAttemptFailed(IOException e) {}
+        });
+
+        final CountDownLatch listenerBlocked = new CountDownLatch(1);
+        final CountDownLatch releaseListener = new CountDownLatch(1);
+        Connection connection = null;
+        try {
+            connection = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(port)
+                    .setMaxNumOfOutstandingIPdus(K)
+                    .setConnectionEventListener(new ConnectionEventListener() {
+
+                        @Override
+                        public void newASdu(Connection connection, ASdu aSdu) {
+                            listenerBlocked.countDown();
+                            try {
+                                releaseListener.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+
+                        @Override
+                        public void connectionClosed(Connection connection, IOException cause) {}
+
+                        @Override
+                        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+                    })
+                    .build();
+            connection.startDataTransfer();
+            connection.interrogation(1, CauseOfTransmission.ACTIVATION, new IeQualifierOfInterrogation(20));
+            assertTrue(listenerBlocked.await(5, TimeUnit.SECONDS));
+
+            // more ASDUs than fit into the send window, so that the outbound queue has to be drained
+            List<CompletableFuture<Void>> sent = new ArrayList<>();
+            for (int i = 0; i < 3 * K; i++) {
+                sent.add(connection.sendAsync(measurement(1, i)));
+            }
+            for (CompletableFuture<Void> future : sent) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            releaseListener.countDown();
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testSendAsyncDoesNotWaitForStalledWrite() throws Exception {
+        // the peer starts the data transfer and then stops reading, so the socket buffers fill up
+        final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        final CountDownLatch peerStarted = new CountDownLatch(1);
+        Thread peer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket socket = serverSocket.accept()) {
+                    socket.getInputStream().read(new byte[6]);
+                    socket.getOutputStream().write(new byte[] {0x68, 0x04, 0x0b, 0x00, 0x00, 0x00});
+                    peerStarted.countDown();
+                    Thread.sleep(30_000);
+                } catch (IOException | InterruptedException e) {
+                    // the test is finished
+                }
+            }
+        });
+        peer.start();
+
+        Connection connection = null;
+        try {
+            connection = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(serverSocket.getLocalPort())
+                    .setMaxNumOfOutstandingIPdus(32767)
+                    .setConnectionEventListener(new ClientListener())
+                    .build();
+            connection.startDataTransfer();
+            assertTrue(peerStarted.await(5, TimeUnit.SECONDS));
+
+            final Connection writer = connection;
+            final AtomicInteger numSent = new AtomicInteger();
+            new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                while (true) {
+                                    writer.send(largeASdu());
+                                    numSent.incrementAndGet();
+                                }
+                            } catch (IOException | IllegalArgumentException e) {
+                                // the connection has been closed
+                            }
+                        }
+                    })
+                    .start();
+
+            // waits until the sending thread is stuck in a socket write while holding the write lock
+            int previous = -1;
+            while (numSent.get() != previous) {
+                previous = numSent.get();
+                Thread.sleep(500);
+            }
+
+            final CountDownLatch returned = new CountDownLatch(1);
+            new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            writer.sendAsync(measurement(1, 1));
+                            returned.countDown();
+                        }
+                    })
+                    .start();
+            assertTrue(returned.await(2, TimeUnit.SECONDS));
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            peer.interrupt();
+            serverSocket.close();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testBlockingSendIsServedInOrderWithQueuedASdus() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        final BlockingQueue<Integer> received = new LinkedBlockingQueue<>();
+        // the server confirms every received I-frame at once
+        Server server =
+                Server.builder().setPort(port).setMaxUnconfirmedIPdusReceived(1).build();
+        server.start(new ServerEventListener() {
+
+            @Override
+            public ConnectionEventListener connectionIndication(Connection connection) {
+                return new ConnectionEventListener() {
+
+                    @Override
+                    public void newASdu(Connection connection, ASdu aSdu) {
+                        if (aSdu.getCommonAddress() == 1) {
+                            received.add(aSdu.getInformationObjects()[0].getInformationObjectAddress());
+                        }
+                    }
+
+                    @Override
+                    public void connectionClosed(Connection connection, IOException cause) {}
+
+                    @Override
+                    public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+                };
+            }
+
+            @Override
+            public void serverStoppedListeningIndication(IOException e) {}
+
+            @Override
+            public void connectionAttemptFailed(IOException e) {}
+        });
+
+        final AtomicBoolean producing = new AtomicBoolean(true);
+        Connection connection = null;
+        try {
+            connection = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(port)
+                    .setMaxNumOfOutstandingIPdus(2)
+                    .setConnectionEventListener(new ClientListener())
+                    .build();
+            connection.startDataTransfer();
+
+            // a blocking send is written after the ASDUs queued by sendAsync before it
+            for (int i = 0; i < 10; i++) {
+                connection.sendAsync(measurement(1, i));
+            }
+            connection.send(measurement(1, 100));
+            for (int i = 0; i < 10; i++) {
+                assertEquals(Integer.valueOf(i), received.poll(5, TimeUnit.SECONDS));
+            }
+            assertEquals(Integer.valueOf(100), received.poll(5, TimeUnit.SECONDS));
+
+            // a steady stream of sendAsync calls keeps the outbound queue from ever becoming empty, but
+            // does not starve a blocking sender
+            final Connection producer = connection;
+            new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = 0; producing.get(); i++) {
+                                producer.sendAsync(measurement(2, i & 0xffff));
+                            }
+                        }
+                    })
+                    .start();
+            while (connection.getNumQueuedASdus() == 0) {
+                Thread.sleep(10);
+            }
+            connection.send(measurement(1, 200));
+            assertEquals(Integer.valueOf(200), received.poll(5, TimeUnit.SECONDS));
+        } finally {
+            producing.set(false);
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    private static ASdu largeASdu() {
+        InformationObject[] informationObjects = new InformationObject[30];
+        for (int i = 0; i < informationObjects.length; i++) {
+            informationObjects[i] =
+                    new InformationObject(i, new IeShortFloat(i), new IeQuality(false, false, false, false, false));
+        }
+        return new ASdu(
+                ASduType.M_ME_NC_1, false, CauseOfTransmission.SPONTANEOUS, false, false, 0, 1, informationObjects);
+    }
+
+    private static ASdu measurement(int commonAddress, int informationObjectAddress) {
+        return new ASdu(
+                ASduType.M_ME_NC_1,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                0,
+                commonAddress,
+                new InformationObject(
+                        informationObjectAddress,
+                        new IeShortFloat(informationObjectAddress),
+                        new IeQuality(false, false, false, false, false)));
+    }
+
+    private class ServerListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {
+                    synchronized (futures) {
+                        for (int i = 0; i < NUM_ASDUS; i++) {
+                            futures.add(connection.sendAsync(new ASdu(
+                                    ASduType.M_ME_NC_1,
+                                    false,
+                                    CauseOfTransmission.INTERROGATED_BY_STATION,
+                                    false,
+                                    false,
+                                    0,
+                                    aSdu.getCommonAddress(),
+                                    new InformationObject(
+                                            i,
+                                            new IeShortFloat(i),
+                                            new IeQuality(false, false, false, false, false)))));
+                        }
+                    }
+                }
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+
+    private class ClientListener implements ConnectionEventListener {
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {
+            clientASdus.incrementAndGet();
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {}
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
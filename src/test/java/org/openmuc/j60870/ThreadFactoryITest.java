@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQualifierOfInterrogation;
+
+public class ThreadFactoryITest {
+
+    private final Set<Thread> serverThreads = Collections.synchronizedSet(new HashSet<Thread>());
+    private final Set<Thread> clientThreads = Collections.synchronizedSet(new HashSet<Thread>());
+    private final AtomicBoolean serverListenerOnFactoryThread = new AtomicBoolean();
+    private final AtomicBoolean clientListenerOnFactoryThread = new AtomicBoolean();
+    private final CountDownLatch serverASduReceived = new CountDownLatch(1);
+    private final CountDownLatch clientASduReceived = new CountDownLatch(1);
+
+    @Test
+    public void testThreadsAreCreatedByFactory() throws Exception {
+        int port = TestUtils.getAvailablePort();
+        Server server = Server.builder()
+                .setPort(port)
+                .setThreadFactory(new RecordingThreadFactory(serverThreads))
+                .build();
+        server.start(new ServerListener());
+
+        Connection connection = null;
+        try {
+            connection = new ClientConnectionBuilder("127.0.0.1")
+                    .setPort(port)
+                    .setThreadFactory(new RecordingThreadFactory(clientThreads))
+                    .setConnectionEventListener(new ClientListener())
+                    .build();
+            connection.startDataTransfer();
+            connection.interrogation(1, CauseOfTransmission.ACTIVATION, new IeQualifierOfInterrogation(20));
+
+            assertTrue(serverASduReceived.await(5, TimeUnit.SECONDS));
+            assertTrue(clientASduReceived.await(5, TimeUnit.SECONDS));
+            assertTrue(serverListenerOnFactoryThread.get());
+            assertTrue(clientListenerOnFactoryThread.get());
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            server.stop();
+        }
+    }
+
+    private static class RecordingThreadFactory implements ThreadFactory {
+
+        private final Set<Thread> threads;
+
+        RecordingThreadFactory(Set<Thread> threads) {
+            this.threads = threads;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r);
+            threads.add(thread);
+            return thread;
+        }
+    }
+
+    private class ServerListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {
+                    serverListenerOnFactoryThread.set(serverThreads.contains(Thread.currentThread()));
+                    try {
+                        connection.sendConfirmation(aSdu);
+                    } catch (IOException e) {
+                        // the client will not receive the confirmation
+                    }
+                    serverASduReceived.countDown();
+                }
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+
+    private class ClientListener implements ConnectionEventListener {
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {
+            clientListenerOnFactoryThread.set(clientThreads.contains(Thread.currentThread()));
+            clientASduReceived.countDown();
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {}
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
@@ -21,6 +21,10 @@
 package org.openmuc.j60870;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.*;
 import static org.powermock.reflect.Whitebox.setInternalState;
@@ -29,6 +33,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.awaitility.Awaitility;
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
@@ -82,4 +87,82 @@ public class TimeoutManagerTest {
 
         exec.shutdown();
     }
+
+    @Test
+    public void testRescheduleAndCancel() throws Exception {
+        TimeoutManager tm = new TimeoutManager(5);
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        exec.execute(tm);
+
+        final AtomicInteger executions = new AtomicInteger();
+        final TimeoutTask rescheduled = new TimeoutTask(100) {
+            @Override
+            protected void execute() {
+                executions.incrementAndGet();
+            }
+        };
+        TimeoutTask canceled = new TimeoutTask(150) {
+            @Override
+            protected void execute() {
+                executions.addAndGet(100);
+            }
+        };
+
+        long t0 = System.nanoTime();
+        tm.addTimerTask(rescheduled);
+        tm.addTimerTask(canceled);
+        Thread.sleep(60);
+        tm.addTimerTask(rescheduled);
+        canceled.cancel();
+
+        Awaitility.await().atMost(1, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() throws Exception {
+                return rescheduled.isDone();
+            }
+        });
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) >= 160);
+        assertEquals(1, executions.get());
+        assertFalse(canceled.isPlanned());
+
+        tm.cancel();
+        exec.shutdown();
+    }
+
+    @Test
+    public void testSharedInstancePerTickDuration() {
+        TimeoutManager first = TimeoutManager.acquire(7);
+        TimeoutManager second = TimeoutManager.acquire(7);
+        TimeoutManager other = TimeoutManager.acquire(13);
+        try {
+            assertSame(first, second);
+            assertNotSame(first, other);
+        } finally {
+            TimeoutManager.release(first);
+            TimeoutManager.release(second);
+            TimeoutManager.release(other);
+        }
+        TimeoutManager next = TimeoutManager.acquire(7);
+        TimeoutManager.release(next);
+        assertNotSame(first, next);
+    }
+
+    @Test
+    public void testRescheduleWhileExecuting() {
+        final TimeoutTask[] task = new TimeoutTask[1];
+        task[0] = new TimeoutTask(100) {
+            @Override
+            protected void execute() {
+                // e.g. t3 is reset by a write while the expired timeout is handled
+                task[0].updateDueTime();
+            }
+        };
+        task[0].updateDueTime();
+        task[0].executeManually();
+
+        assertFalse(task[0].isDone());
+        assertTrue(task[0].isPlanned());
+    }
 }
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeQuality;
+import org.openmuc.j60870.ie.IeShortFloat;
+import org.openmuc.j60870.ie.InformationObject;
+
+public class TrafficJournalITest {
+
+    private static final int NUM_ASDUS = 5;
+    private static final double SPEED = 4;
+
+    @Test
+    public void testRecordAndReplay() throws Exception {
+        File journalFile = File.createTempFile("j60870", ".journal");
+        journalFile.deleteOnExit();
+
+        TrafficJournal journal = TrafficJournal.open(journalFile);
+        record(journal);
+        journal.close();
+        assertEquals(0, journal.getNumDroppedRecords());
+
+        int numIFrames = 0;
+        long firstTimestamp = 0;
+        long lastTimestamp = 0;
+        try (JournalReader reader = new JournalReader(journalFile)) {
+            assertTrue(reader.next());
+            assertEquals(1, reader.getConnectionId());
+            assertTrue(reader.isSent());
+            assertArrayEquals(new byte[] {0x68, 0x04, 0x07, 0x00, 0x00, 0x00}, reader.getFrame());
+
+            assertTrue(reader.next());
+            assertFalse(reader.isSent());
+            assertArrayEquals(new byte[] {0x68, 0x04, 0x0b, 0x00, 0x00, 0x00}, reader.getFrame());
+
+            while (reader.next()) {
+                if (reader.isIFrame()) {
+                    assertFalse(reader.isSent());
+                    byte[] frame = reader.getFrame();
+                    assertEquals(frame.length - 2, frame[1] & 0xff);
+                    assertEquals(numIFrames, (frame[2] & 0xff) >> 1);
+                    if (numIFrames == 0) {
+                        firstTimestamp = reader.getTimestamp();
+                    }
+                    lastTimestamp = reader.getTimestamp();
+                    numIFrames++;
+                }
+            }
+        }
+        assertEquals(NUM_ASDUS, numIFrames);
+        assertTrue(journal.getNumRecords() > NUM_ASDUS + 2);
+
+        // a remainder that could not be truncated, e.g. on Windows, is not read as records
+        long length = journalFile.length();
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            byte[] firstRecord = new byte[TrafficJournal.RECORD_HEADER_LENGTH + 6];
+            file.seek(TrafficJournal.FILE_HEADER_LENGTH);
+            file.readFully(firstRecord);
+            file.seek(length);
+            file.write(firstRecord);
+        }
+        long numRecords = 0;
+        try (JournalReader reader = new JournalReader(journalFile)) {
+            while (reader.next()) {
+                numRecords++;
+            }
+        }
+        assertEquals(journal.getNumRecords(), numRecords);
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.setLength(length);
+        }
+
+        // the traffic received by the client is reproduced by another server
+        int port = TestUtils.getAvailablePort();
+        Server server = Server.builder().setPort(port).build();
+        server.start(new ServerListener());
+        BlockingQueue<ASdu> received = new LinkedBlockingQueue<>();
+        Connection client = connect(port, received, null);
+        try {
+            awaitConnections(server, 1);
+
+            JournalReplay replay = new JournalReplay(journalFile).setReplayReceived(true);
+            assertEquals(NUM_ASDUS, replay.setSpeed(0).replay(server));
+            assertReceived(received);
+
+            long start = System.nanoTime();
+            assertEquals(NUM_ASDUS, replay.setSpeed(SPEED).replay(server));
+            assertTrue(System.nanoTime() - start >= (long) ((lastTimestamp - firstTimestamp) / SPEED));
+            assertReceived(received);
+
+            // nothing was sent by the recorded client
+            assertEquals(0, new JournalReplay(journalFile).replay(server));
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    private static void record(TrafficJournal journal) throws Exception {
+        int port = TestUtils.getAvailablePort();
+        Server server = Server.builder().setPort(port).build();
+        server.start(new ServerListener());
+        BlockingQueue<ASdu> received = new LinkedBlockingQueue<>();
+        Connection client = connect(port, received, journal);
+        try {
+            awaitConnections(server, 1);
+            for (int i = 0; i < NUM_ASDUS; i++) {
+                server.broadcast(newASdu(i));
+                Thread.sleep(20);
+            }
+            assertReceived(received);
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    private static Connection connect(int port, BlockingQueue<ASdu> received, TrafficJournal journal)
+            throws IOException {
+        Connection client = new ClientConnectionBuilder("127.0.0.1")
+                .setPort(port)
+                .setMaxUnconfirmedIPdusReceived(1)
+                .setTrafficJournal(journal)
+                .setConnectionEventListener(new ClientListener(received))
+                .build();
+        client.startDataTransfer();
+        return client;
+    }
+
+    private static void awaitConnections(Server server, int numConnections) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (server.getConnections().size() < numConnections && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(numConnections, server.getConnections().size());
+    }
+
+    private static void assertReceived(BlockingQueue<ASdu> received) throws InterruptedException {
+        for (int i = 0; i < NUM_ASDUS; i++) {
+            ASdu aSdu = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(aSdu);
+            assertEquals(100 + i, aSdu.getInformationObjects()[0].getInformationObjectAddress());
+        }
+    }
+
+    private static ASdu newASdu(int i) {
+        return new ASdu(
+                ASduType.M_ME_NC_1,
+                false,
+                CauseOfTransmission.SPONTANEOUS,
+                false,
+                false,
+                0,
+                1,
+                new InformationObject(100 + i, new IeShortFloat(i), new IeQuality(false, false, false, false, false)));
+    }
+
+    private static class ServerListener implements ServerEventListener {
+
+        @Override
+        public ConnectionEventListener connectionIndication(Connection connection) {
+            return new ConnectionEventListener() {
+
+                @Override
+                public void newASdu(Connection connection, ASdu aSdu) {}
+
+                @Override
+                public void connectionClosed(Connection connection, IOException cause) {}
+
+                @Override
+                public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+            };
+        }
+
+        @Override
+        public void serverStoppedListeningIndication(IOException e) {}
+
+        @Override
+        public void connectionAttemptFailed(IOException e) {}
+    }
+
+    private static class ClientListener implements ConnectionEventListener {
+
+        private final BlockingQueue<ASdu> aSdus;
+
+        ClientListener(BlockingQueue<ASdu> aSdus) {
+            this.aSdus = aSdus;
+        }
+
+        @Override
+        public void newASdu(Connection connection, ASdu aSdu) {
+            aSdus.add(aSdu);
+        }
+
+        @Override
+        public void connectionClosed(Connection connection, IOException cause) {}
+
+        @Override
+        public void dataTransferStateChanged(Connection connection, boolean stopped) {}
+    }
+}
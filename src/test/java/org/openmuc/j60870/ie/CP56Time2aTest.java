@@ -24,6 +24,9 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.openmuc.j60870.internal.HexUtils.hexToBytes;
 
+import java.util.Calendar;
+import java.util.Random;
+import java.util.SimpleTimeZone;
 import java.util.TimeZone;
 import org.junit.After;
 import org.junit.Before;
@@ -110,6 +113,89 @@ public class CP56Time2aTest {
         assertEquals(1553994030000L, ts.getTimestamp());
     }
 
+    @Test
+    public void staticCodecMatchesCalendar() {
+        Random random = new Random(60870);
+        byte[] buffer = new byte[CP56Time2a.LENGTH];
+        for (String id : new String[] {"CET", "Europe/Berlin", "America/New_York", "Asia/Kolkata", "UTC"}) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            for (int i = 0; i < 10_000; i++) {
+                // 1971 until 2068, the local year must not leave the century starting in 1970
+                long timestamp = 31_536_000_000L + (long) (random.nextDouble() * 3_092_601_600_000L);
+
+                assertEquals(CP56Time2a.LENGTH, CP56Time2a.encode(timestamp, timeZone, false, buffer, 0));
+                assertArrayEquals(id + " " + timestamp, calendarEncode(timestamp, timeZone), buffer);
+                assertEquals(timestamp, CP56Time2a.decodeEpochMillis(buffer, 0, 1970, timeZone));
+            }
+        }
+    }
+
+    @Test
+    public void staticCodecAroundTransitions() {
+        TimeZone timeZone = TimeZone.getTimeZone("Europe/Berlin");
+        byte[] buffer = new byte[CP56Time2a.LENGTH];
+        // 2018-10-28T01:00Z and 2019-03-31T01:00Z
+        for (long transition : new long[] {1540688400000L, 1553994000000L}) {
+            for (long timestamp = transition - 7_200_000L; timestamp < transition + 7_200_000L; timestamp += 59_999L) {
+                CP56Time2a.encode(timestamp, timeZone, false, buffer, 0);
+                assertArrayEquals(calendarEncode(timestamp, timeZone), buffer);
+                assertEquals(timestamp, CP56Time2a.decodeEpochMillis(buffer, 0, 1970, timeZone));
+            }
+        }
+    }
+
+    @Test
+    public void staticCodecWithAlternatingTimeZones() {
+        byte[] buffer = new byte[CP56Time2a.LENGTH];
+        TimeZone[] timeZones = {
+            TimeZone.getTimeZone("Europe/Berlin"),
+            TimeZone.getTimeZone("America/New_York"),
+            // same ID as the cached UTC entry would have, but other rules
+            new SimpleTimeZone(3 * 3_600_000, "UTC"),
+            TimeZone.getTimeZone("UTC"),
+            TimeZone.getDefault()
+        };
+        for (int i = 0; i < 1_000; i++) {
+            long timestamp = 1540688400000L + i * 3_600_123L;
+            for (TimeZone timeZone : timeZones) {
+                CP56Time2a.encode(timestamp, timeZone, false, buffer, 0);
+                assertArrayEquals(timeZone.getID() + " " + timestamp, calendarEncode(timestamp, timeZone), buffer);
+                assertEquals(timestamp, CP56Time2a.decodeEpochMillis(buffer, 0, 1970, timeZone));
+            }
+        }
+    }
+
+    @Test
+    public void time24NearestToReferenceTime() {
+        // 28.10.2018 01:00:30 CET DST (UTC+2)
+        long timestamp = 1540681230000L;
+        IeTime24 time24 = new IeTime24(timestamp);
+
+        assertEquals(timestamp, time24.getTimestamp(timestamp + 1_500_000L));
+        assertEquals(timestamp, time24.getTimestamp(timestamp - 1_500_000L));
+        assertEquals(timestamp, new IeTime16(timestamp).getTimestamp(timestamp + 20_000L));
+    }
+
+    private static byte[] calendarEncode(long timestamp, TimeZone timeZone) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(timestamp);
+
+        int ms = calendar.get(Calendar.MILLISECOND) + 1000 * calendar.get(Calendar.SECOND);
+        int hour = calendar.get(Calendar.HOUR_OF_DAY);
+        if (timeZone.inDaylightTime(calendar.getTime())) {
+            hour |= 0x80;
+        }
+        return new byte[] {
+            (byte) ms,
+            (byte) (ms >> 8),
+            (byte) calendar.get(Calendar.MINUTE),
+            (byte) hour,
+            (byte) (calendar.get(Calendar.DAY_OF_MONTH) + ((((calendar.get(Calendar.DAY_OF_WEEK) + 5) % 7) + 1) << 5)),
+            (byte) (calendar.get(Calendar.MONTH) + 1),
+            (byte) (calendar.get(Calendar.YEAR) % 100)
+        };
+    }
+
     private void testIeTime56(
             long timestamp, boolean invalid, String timezone, boolean expectedDST, byte[] expectedEncodedBytes) {
         TimeZone timeZone = TimeZone.getTimeZone(timezone);
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014-2024 Fraunhofer ISE
+ *
+ * This file is part of j60870.
+ * For more information visit http://www.openmuc.org
+ *
+ * j60870 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * j60870 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with j60870.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.openmuc.j60870.ie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import org.junit.Test;
+import org.openmuc.j60870.ie.IeDoublePointWithQuality.DoublePointInformation;
+
+public class IeFlyweightTest {
+
+    @Test
+    public void testAllEncodingsRoundTrip() {
+        byte[] buffer = new byte[1];
+        for (int i = 0; i < 256; i++) {
+            IeQuality quality = IeQuality.of((byte) i);
+            assertEquals(1, quality.encode(buffer, 0));
+            assertEquals((byte) i, buffer[0]);
+
+            IeQualifierOfCounterInterrogation qcc = IeQualifierOfCounterInterrogation.of((byte) i);
+            qcc.encode(buffer, 0);
+            assertEquals((byte) i, buffer[0]);
+
+            IeQualifierOfParameterOfMeasuredValues qpm = IeQualifierOfParameterOfMeasuredValues.of((byte) i);
+            qpm.encode(buffer, 0);
+            assertEquals((byte) i, buffer[0]);
+        }
+    }
+
+    @Test
+    public void testDecodeReturnsCachedInstance() throws IOException {
+        DataInputStream is = new DataInputStream(new ByteArrayInputStream(new byte[] {(byte) 0x92, (byte) 0x92}));
+
+        IeDoublePointWithQuality first = IeDoublePointWithQuality.decode(is);
+        IeDoublePointWithQuality second = IeDoublePointWithQuality.decode(is);
+
+        assertSame(first, second);
+        assertEquals(DoublePointInformation.ON, first.getDoublePointInformation());
+        assertTrue(first.isBlocked());
+        assertTrue(first.isInvalid());
+    }
+}